@@ -0,0 +1,154 @@
+package org.fit.shopnuochoa.component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Automaton Aho–Corasick: tìm tất cả từ khóa trong một lần duyệt chuỗi (O(độ dài chuỗi + số kết quả))
+ *
+ * - Dựng một lần, sau đó chỉ đọc nên dùng chung được giữa các thread
+ * - Chỉ nhận kết quả đứng trọn từ: từ khóa bắt đầu / kết thúc bằng chữ hoặc số thì ký tự kề bên
+ *   không được là chữ hoặc số ("men" không khớp trong "women"); từ khóa là ký hiệu ("<", "->") thì không cần
+ * - Chuỗi đầu vào phải được chuẩn hóa giống từ khóa (caller tự lowercase / bỏ dấu nếu cần)
+ *
+ * @param <V> giá trị gắn với mỗi từ khóa
+ */
+public final class AhoCorasickMatcher<V> {
+
+    /**
+     * Một kết quả khớp: vị trí [start, end) trong chuỗi và giá trị của từ khóa
+     */
+    public record Match<V>(int start, int end, V value) {
+    }
+
+    private final Node<V> root;
+    private final boolean empty;
+
+    private AhoCorasickMatcher(Node<V> root, boolean empty) {
+        this.root = root;
+        this.empty = empty;
+    }
+
+    public static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Tìm tất cả từ khóa đứng trọn từ trong chuỗi, theo thứ tự vị trí kết thúc
+     */
+    public List<Match<V>> findAll(CharSequence text) {
+        List<Match<V>> matches = new ArrayList<>();
+        if (empty || text == null) {
+            return matches;
+        }
+        Node<V> node = root;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            while (node != root && node.next(c) == null) {
+                node = node.fail;
+            }
+            Node<V> next = node.next(c);
+            node = next != null ? next : root;
+
+            for (Output<V> output : node.outputs) {
+                int start = i + 1 - output.length();
+                if (isWholeWord(text, start, i + 1, output.keyword())) {
+                    matches.add(new Match<>(start, i + 1, output.value));
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static boolean isWholeWord(CharSequence text, int start, int end, String keyword) {
+        if (Character.isLetterOrDigit(keyword.charAt(0))
+                && start > 0 && Character.isLetterOrDigit(text.charAt(start - 1))) {
+            return false;
+        }
+        return !Character.isLetterOrDigit(keyword.charAt(keyword.length() - 1))
+                || end >= text.length() || !Character.isLetterOrDigit(text.charAt(end));
+    }
+
+    /**
+     * Builder: thêm từ khóa rồi gọi {@link #build()} (dựng trie + liên kết fail theo BFS)
+     */
+    public static final class Builder<V> {
+        private final Node<V> root = new Node<>();
+        private boolean empty = true;
+
+        private Builder() {
+        }
+
+        public Builder<V> add(String keyword, V value) {
+            if (keyword == null || keyword.isEmpty()) {
+                return this;
+            }
+            Node<V> node = root;
+            for (int i = 0; i < keyword.length(); i++) {
+                node = node.child(keyword.charAt(i));
+            }
+            node.outputs = append(node.outputs, new Output<>(keyword, value));
+            empty = false;
+            return this;
+        }
+
+        public AhoCorasickMatcher<V> build() {
+            ArrayDeque<Node<V>> queue = new ArrayDeque<>();
+            root.fail = root;
+            for (Node<V> child : root.children.values()) {
+                child.fail = root;
+                queue.add(child);
+            }
+            while (!queue.isEmpty()) {
+                Node<V> node = queue.poll();
+                for (Map.Entry<Character, Node<V>> entry : node.children.entrySet()) {
+                    char c = entry.getKey();
+                    Node<V> child = entry.getValue();
+                    Node<V> fail = node.fail;
+                    while (fail != root && fail.next(c) == null) {
+                        fail = fail.fail;
+                    }
+                    Node<V> target = fail.next(c);
+                    child.fail = target != null && target != child ? target : root;
+                    // Gộp output của nút fail để khi duyệt không phải lần theo chuỗi fail
+                    for (Output<V> output : child.fail.outputs) {
+                        child.outputs = append(child.outputs, output);
+                    }
+                    queue.add(child);
+                }
+            }
+            return new AhoCorasickMatcher<>(root, empty);
+        }
+
+        private static <V> Output<V>[] append(Output<V>[] outputs, Output<V> output) {
+            Output<V>[] result = Arrays.copyOf(outputs, outputs.length + 1);
+            result[outputs.length] = output;
+            return result;
+        }
+    }
+
+    private record Output<V>(String keyword, V value) {
+        int length() {
+            return keyword.length();
+        }
+    }
+
+    private static final class Node<V> {
+        private final Map<Character, Node<V>> children = new HashMap<>(4);
+        private Node<V> fail;
+        @SuppressWarnings("unchecked")
+        private Output<V>[] outputs = new Output[0];
+
+        Node<V> next(char c) {
+            return children.get(c);
+        }
+
+        Node<V> child(char c) {
+            return children.computeIfAbsent(c, k -> new Node<>());
+        }
+    }
+}
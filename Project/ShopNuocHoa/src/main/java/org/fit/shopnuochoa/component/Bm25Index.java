@@ -0,0 +1,345 @@
+package org.fit.shopnuochoa.component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.function.IntPredicate;
+
+/**
+ * Inverted index xếp hạng BM25, cập nhật tăng dần
+ *
+ * - Mỗi tài liệu có khóa int (vd productId) và tần suất từ đã đánh trọng số theo trường (BM25F rút gọn)
+ * - Posting list sắp theo số thứ tự tài liệu; upsert cấp số mới ở cuối nên danh sách luôn tăng dần,
+ *   tài liệu cũ chỉ bị đánh dấu xóa và được dọn khi số posting chết vượt ngưỡng
+ * - Top-k bằng WAND: mỗi từ có cận trên điểm, tài liệu không thể lọt top-k bị nhảy qua mà không tính điểm
+ * - Toàn bộ tập khớp (không tính điểm, không giới hạn k) cho các trang sắp theo cột khác và cho số đếm
+ * - Từ khóa không có trong từ điển được mở rộng theo tiền tố ("sauv" → "sauvage") để tìm khi đang gõ dở
+ * - KHÔNG thread-safe: caller tự đồng bộ (nhiều luồng đọc / một luồng ghi)
+ */
+public final class Bm25Index {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int MAX_PREFIX_EXPANSIONS = 5;
+    private static final double COMPACT_RATIO = 0.5;
+
+    private final TreeMap<String, PostingList> postings = new TreeMap<>();
+    private final Map<Integer, Document> documentsByKey = new HashMap<>();
+    private int[] keyByDoc = new int[64];
+    private float[] lengthByDoc = new float[64];
+    private final BitSet live = new BitSet();
+    private int nextDoc;
+    private double totalLength;
+    private int deadPostings;
+    private int livePostings;
+
+    /**
+     * Kết quả: khóa và điểm BM25
+     */
+    public record Hit(int key, float score) {
+    }
+
+    private record Document(int number, String[] terms, float length) {
+    }
+
+    /**
+     * Thêm mới hoặc thay nội dung của khóa
+     *
+     * @param termFrequencies từ (đã chuẩn hóa) → tần suất đã nhân trọng số trường
+     */
+    public void upsert(int key, Map<String, Float> termFrequencies) {
+        remove(key);
+        if (termFrequencies.isEmpty()) {
+            return;
+        }
+
+        int doc = nextDoc++;
+        if (doc == keyByDoc.length) {
+            keyByDoc = Arrays.copyOf(keyByDoc, doc * 2);
+            lengthByDoc = Arrays.copyOf(lengthByDoc, doc * 2);
+        }
+        float length = 0;
+        for (float tf : termFrequencies.values()) {
+            length += tf;
+        }
+        keyByDoc[doc] = key;
+        lengthByDoc[doc] = length;
+        live.set(doc);
+        totalLength += length;
+
+        termFrequencies.forEach((term, tf) -> postings.computeIfAbsent(term, t -> new PostingList()).add(doc, tf));
+        livePostings += termFrequencies.size();
+        documentsByKey.put(key, new Document(doc, termFrequencies.keySet().toArray(new String[0]), length));
+    }
+
+    /**
+     * Xóa khóa khỏi index
+     */
+    public void remove(int key) {
+        Document document = documentsByKey.remove(key);
+        if (document == null) {
+            return;
+        }
+        live.clear(document.number);
+        totalLength -= document.length;
+        for (String term : document.terms) {
+            postings.get(term).liveCount--;
+        }
+        livePostings -= document.terms.length;
+        deadPostings += document.terms.length;
+        if (deadPostings > COMPACT_RATIO * Math.max(livePostings, 1)) {
+            compact();
+        }
+    }
+
+    /** Số tài liệu trong index */
+    public int size() {
+        return documentsByKey.size();
+    }
+
+    /**
+     * Top-k tài liệu theo điểm BM25
+     *
+     * @param words          các từ khóa (đã chuẩn hóa như lúc index)
+     * @param minShouldMatch số từ khóa tối thiểu tài liệu phải chứa
+     * @param filter         điều kiện thêm trên khóa (null = không lọc)
+     * @return kết quả, điểm giảm dần
+     */
+    public List<Hit> search(List<String> words, int k, int minShouldMatch, IntPredicate filter) {
+        int documentCount = documentsByKey.size();
+        if (words.isEmpty() || k <= 0 || documentCount == 0) {
+            return List.of();
+        }
+        float averageLength = (float) (totalLength / documentCount);
+
+        List<Cursor> cursors = new ArrayList<>();
+        List<String> distinctWords = new ArrayList<>(new LinkedHashSet<>(words));
+        for (int group = 0; group < distinctWords.size() && group < Long.SIZE; group++) {
+            for (PostingList list : termsFor(distinctWords.get(group))) {
+                cursors.add(new Cursor(list, group, idf(list.liveCount, documentCount), averageLength));
+            }
+        }
+        int required = Math.max(1, minShouldMatch);
+        if (cursors.isEmpty()) {
+            return List.of();
+        }
+
+        PriorityQueue<Hit> top = new PriorityQueue<>(k, (a, b) -> Float.compare(a.score(), b.score()));
+        float threshold = 0;
+        while (true) {
+            cursors.removeIf(Cursor::exhausted);
+            cursors.sort((a, b) -> Integer.compare(a.doc(), b.doc()));
+
+            // Pivot: vị trí đầu tiên mà tổng cận trên vượt ngưỡng VÀ đủ số từ khóa
+            int pivot = -1;
+            float bound = 0;
+            for (int i = 0; i < cursors.size(); i++) {
+                bound += cursors.get(i).upperBound;
+                if (bound > threshold && i + 1 >= required) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                break;
+            }
+
+            int pivotDoc = cursors.get(pivot).doc();
+            if (cursors.get(0).doc() == pivotDoc) {
+                float score = 0;
+                long groups = 0;
+                for (Cursor cursor : cursors) {
+                    if (cursor.doc() != pivotDoc) {
+                        break;
+                    }
+                    score += cursor.score(lengthByDoc[pivotDoc]);
+                    groups |= 1L << cursor.group;
+                    cursor.next();
+                }
+                if (live.get(pivotDoc) && Long.bitCount(groups) >= required
+                        && (top.size() < k || score > threshold)
+                        && (filter == null || filter.test(keyByDoc[pivotDoc]))) {
+                    top.add(new Hit(keyByDoc[pivotDoc], score));
+                    if (top.size() > k) {
+                        top.poll();
+                    }
+                    if (top.size() == k) {
+                        threshold = top.peek().score();
+                    }
+                }
+            } else {
+                // Các tài liệu trước pivotDoc không thể lọt top-k: nhảy thẳng tới pivotDoc
+                for (int i = 0; i < pivot; i++) {
+                    cursors.get(i).advanceTo(pivotDoc);
+                }
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(top);
+        hits.sort((a, b) -> Float.compare(b.score(), a.score()));
+        return hits;
+    }
+
+    /**
+     * Mọi tài liệu khớp, cùng điều kiện với {@link #search} (kể cả mở rộng tiền tố) nhưng không tính điểm
+     *
+     * @return khóa của các tài liệu khớp, theo thứ tự thêm vào index
+     */
+    public List<Integer> matchAll(List<String> words, int minShouldMatch) {
+        if (words.isEmpty() || documentsByKey.isEmpty()) {
+            return List.of();
+        }
+        List<String> distinctWords = new ArrayList<>(new LinkedHashSet<>(words));
+        int required = Math.max(1, minShouldMatch);
+        byte[] groupCounts = new byte[nextDoc];
+        BitSet groupDocs = new BitSet(nextDoc);
+        for (int group = 0; group < distinctWords.size() && group < Long.SIZE; group++) {
+            groupDocs.clear();
+            for (PostingList list : termsFor(distinctWords.get(group))) {
+                for (int i = 0; i < list.size; i++) {
+                    groupDocs.set(list.docs[i]);
+                }
+            }
+            for (int doc = groupDocs.nextSetBit(0); doc >= 0; doc = groupDocs.nextSetBit(doc + 1)) {
+                groupCounts[doc]++;
+            }
+        }
+
+        List<Integer> keys = new ArrayList<>();
+        for (int doc = live.nextSetBit(0); doc >= 0; doc = live.nextSetBit(doc + 1)) {
+            if (groupCounts[doc] >= required) {
+                keys.add(keyByDoc[doc]);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Posting list của từ; không có thì lấy các từ có tiền tố này (nhiều tài liệu nhất trước)
+     */
+    private List<PostingList> termsFor(String word) {
+        PostingList exact = postings.get(word);
+        if (exact != null) {
+            return exact.liveCount > 0 ? List.of(exact) : List.of();
+        }
+        if (word.length() < 2) {
+            return List.of();
+        }
+        List<PostingList> expansions = new ArrayList<>();
+        for (PostingList list : postings.subMap(word, word + Character.MAX_VALUE).values()) {
+            if (list.liveCount > 0) {
+                expansions.add(list);
+            }
+        }
+        expansions.sort((a, b) -> Integer.compare(b.liveCount, a.liveCount));
+        return expansions.size() > MAX_PREFIX_EXPANSIONS ? expansions.subList(0, MAX_PREFIX_EXPANSIONS) : expansions;
+    }
+
+    private static float idf(int documentFrequency, int documentCount) {
+        return (float) Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    /**
+     * Bỏ posting của tài liệu đã xóa, tính lại tần suất lớn nhất của từng từ
+     */
+    private void compact() {
+        postings.values().removeIf(list -> {
+            list.retain(live);
+            return list.size == 0;
+        });
+        deadPostings = 0;
+    }
+
+    private static final class PostingList {
+        int[] docs = new int[4];
+        float[] frequencies = new float[4];
+        int size;
+        int liveCount;
+        float maxFrequency;
+
+        void add(int doc, float frequency) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docs[size] = doc;
+            frequencies[size] = frequency;
+            size++;
+            liveCount++;
+            maxFrequency = Math.max(maxFrequency, frequency);
+        }
+
+        void retain(BitSet live) {
+            int kept = 0;
+            maxFrequency = 0;
+            for (int i = 0; i < size; i++) {
+                if (live.get(docs[i])) {
+                    docs[kept] = docs[i];
+                    frequencies[kept] = frequencies[i];
+                    maxFrequency = Math.max(maxFrequency, frequencies[i]);
+                    kept++;
+                }
+            }
+            size = kept;
+        }
+    }
+
+    private static final class Cursor {
+        final PostingList list;
+        final int group;
+        final float idf;
+        final float averageLength;
+        // Cận trên: tf lớn nhất, độ dài chuẩn hóa nhỏ nhất có thể (1 - b)
+        final float upperBound;
+        int position;
+
+        Cursor(PostingList list, int group, float idf, float averageLength) {
+            this.list = list;
+            this.group = group;
+            this.idf = idf;
+            this.averageLength = averageLength;
+            float tf = list.maxFrequency;
+            this.upperBound = idf * tf * (K1 + 1) / (tf + K1 * (1 - B));
+        }
+
+        boolean exhausted() {
+            return position >= list.size;
+        }
+
+        int doc() {
+            return list.docs[position];
+        }
+
+        float score(float length) {
+            float tf = list.frequencies[position];
+            return idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / averageLength));
+        }
+
+        void next() {
+            position++;
+        }
+
+        /**
+         * Nhảy tới posting đầu tiên có doc >= target (galloping + tìm nhị phân)
+         */
+        void advanceTo(int target) {
+            int step = 1;
+            int low = position;
+            int high = position;
+            while (high < list.size && list.docs[high] < target) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            high = Math.min(high, list.size);
+            int found = Arrays.binarySearch(list.docs, low, high, target);
+            position = found >= 0 ? found : -found - 1;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package org.fit.shopnuochoa.component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+/**
+ * Index vector HNSW (Hierarchical Navigable Small World) tìm láng giềng gần nhất xấp xỉ
+ *
+ * - Vector được lượng tử hóa int8 (mỗi vector kèm 1 hệ số scale): 1 byte / chiều thay vì 4
+ * - Vector thưa (embedding văn bản): tích vô hướng chỉ duyệt các chiều khác 0 của một vế
+ * - Độ tương đồng = tích vô hướng; vector đầu vào đã chuẩn hóa L2 thì đó chính là cosine
+ * - Mỗi phần tử có một khóa int (vd productId). Upsert = đánh dấu node cũ đã xóa rồi chèn node mới;
+ *   node đã xóa vẫn dùng để đi trên đồ thị nhưng không bao giờ được trả về
+ * - Tìm có bộ lọc khóa: bộ lọc áp ngay trong lúc đi trên tầng 0 (node bị loại vẫn là đường đi),
+ *   nên vẫn trả đủ k kết quả hợp lệ khi bộ lọc loại phần lớn đồ thị
+ * - KHÔNG thread-safe: nhiều luồng search cùng lúc được, nhưng upsert / remove phải được caller khóa riêng
+ */
+public final class HnswVectorIndex {
+
+    private final int dimension;
+    private final int maxLinks;        // số cạnh tối đa mỗi node ở tầng > 0
+    private final int maxLinksLevel0;  // tầng 0 dày gấp đôi
+    private final int efConstruction;
+    private final double levelFactor;
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<Integer, Integer> nodeByKey = new HashMap<>();
+    private int entryPoint = -1;
+    private int topLevel = -1;
+    private int deletedCount;
+
+    /**
+     * Kết quả tìm kiếm: khóa và độ tương đồng (≈ cosine, -1..1)
+     */
+    public record Hit(int key, float similarity) {
+    }
+
+    /**
+     * @param dimension      số chiều vector
+     * @param maxLinks       M trong bài báo HNSW (thường 12-32)
+     * @param efConstruction độ rộng tìm kiếm khi chèn (lớn hơn → đồ thị tốt hơn, chèn chậm hơn)
+     */
+    public HnswVectorIndex(int dimension, int maxLinks, int efConstruction) {
+        if (dimension <= 0 || maxLinks < 2 || efConstruction < maxLinks) {
+            throw new IllegalArgumentException("Invalid HNSW parameters");
+        }
+        this.dimension = dimension;
+        this.maxLinks = maxLinks;
+        this.maxLinksLevel0 = maxLinks * 2;
+        this.efConstruction = efConstruction;
+        this.levelFactor = 1.0 / Math.log(maxLinks);
+    }
+
+    /**
+     * Thêm mới hoặc thay vector của khóa
+     */
+    public void upsert(int key, float[] vector) {
+        remove(key);
+
+        Vector quantized = quantize(vector);
+        int level = randomLevel();
+        int id = nodes.size();
+        Node node = new Node(key, quantized, level, maxLinks, maxLinksLevel0);
+        nodes.add(node);
+        nodeByKey.put(key, id);
+
+        if (entryPoint < 0) {
+            entryPoint = id;
+            topLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        for (int l = topLevel; l > level; l--) {
+            current = greedyClosest(quantized, current, l);
+        }
+        for (int l = Math.min(level, topLevel); l >= 0; l--) {
+            List<Candidate> found = searchLayer(quantized, current, efConstruction, l, null);
+            for (Candidate neighbor : selectNeighbors(found, maxLinks)) {
+                node.link(l, neighbor.node);
+                connect(neighbor.node, id, l);
+            }
+            current = found.get(0).node;
+        }
+
+        if (level > topLevel) {
+            topLevel = level;
+            entryPoint = id;
+        }
+    }
+
+    /**
+     * Xóa khóa khỏi kết quả tìm kiếm (node vẫn nằm trong đồ thị làm đường đi)
+     */
+    public void remove(int key) {
+        Integer id = nodeByKey.remove(key);
+        if (id != null) {
+            nodes.get(id).deleted = true;
+            deletedCount++;
+        }
+    }
+
+    /**
+     * Top-k khóa gần query nhất
+     *
+     * @param ef độ rộng tìm kiếm ở tầng 0 (>= k; lớn hơn → recall cao hơn, chậm hơn)
+     * @return kết quả, độ tương đồng giảm dần
+     */
+    public List<Hit> search(float[] query, int k, int ef) {
+        return search(query, k, ef, key -> true);
+    }
+
+    /**
+     * Top-k khóa gần query nhất trong các khóa được {@code acceptKey} chấp nhận
+     *
+     * @param ef        độ rộng tìm kiếm ở tầng 0 (>= k; lớn hơn → recall cao hơn, chậm hơn)
+     * @param acceptKey bộ lọc khóa, gọi trong lúc tìm (không giữ lại sau khi trả kết quả)
+     * @return kết quả, độ tương đồng giảm dần
+     */
+    public List<Hit> search(float[] query, int k, int ef, IntPredicate acceptKey) {
+        if (entryPoint < 0 || k <= 0) {
+            return List.of();
+        }
+        Vector quantized = quantize(query);
+
+        int current = entryPoint;
+        for (int l = topLevel; l > 0; l--) {
+            current = greedyClosest(quantized, current, l);
+        }
+        List<Candidate> found = searchLayer(quantized, current, Math.max(ef, k), 0, id -> {
+            Node node = nodes.get(id);
+            return !node.deleted && acceptKey.test(node.key);
+        });
+
+        List<Hit> hits = new ArrayList<>(Math.min(k, found.size()));
+        for (int i = 0; i < found.size() && hits.size() < k; i++) {
+            Candidate candidate = found.get(i);
+            hits.add(new Hit(nodes.get(candidate.node).key, candidate.similarity));
+        }
+        return hits;
+    }
+
+    /** Số khóa đang có trong index */
+    public int size() {
+        return nodeByKey.size();
+    }
+
+    /** Số node đã xóa vẫn còn trong đồ thị */
+    public int deletedCount() {
+        return deletedCount;
+    }
+
+    // ========== ĐỒ THỊ ==========
+
+    private int randomLevel() {
+        return (int) (-Math.log(1.0 - random.nextDouble()) * levelFactor);
+    }
+
+    /**
+     * Đi tham lam trên một tầng: chuyển sang láng giềng gần hơn cho tới khi không còn cải thiện
+     */
+    private int greedyClosest(Vector query, int start, int level) {
+        int current = start;
+        float best = query.similarity(nodes.get(current).vector);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            Node node = nodes.get(current);
+            for (int i = 0; i < node.linkCounts[level]; i++) {
+                int neighbor = node.links[level][i];
+                float s = query.similarity(nodes.get(neighbor).vector);
+                if (s > best) {
+                    best = s;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search trên một tầng, giữ {@code ef} node tốt nhất
+     *
+     * @param accept null = mọi node; khác null thì chỉ node được chấp nhận vào kết quả,
+     *               node bị loại vẫn được mở rộng (đi qua) như bình thường
+     * @return các node tìm được, độ tương đồng giảm dần
+     */
+    private List<Candidate> searchLayer(Vector query, int start, int ef, int level, IntPredicate accept) {
+        BitSet visited = new BitSet(nodes.size());
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>(Candidate.BEST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Candidate.WORST_FIRST);
+
+        Candidate first = new Candidate(start, query.similarity(nodes.get(start).vector));
+        visited.set(start);
+        toVisit.add(first);
+        if (accept == null || accept.test(start)) {
+            results.add(first);
+        }
+
+        while (!toVisit.isEmpty()) {
+            Candidate candidate = toVisit.poll();
+            if (results.size() >= ef && candidate.similarity < results.peek().similarity) {
+                break;
+            }
+            Node node = nodes.get(candidate.node);
+            for (int i = 0; i < node.linkCounts[level]; i++) {
+                int neighbor = node.links[level][i];
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                float s = query.similarity(nodes.get(neighbor).vector);
+                if (results.size() < ef || s > results.peek().similarity) {
+                    Candidate next = new Candidate(neighbor, s);
+                    toVisit.add(next);
+                    if (accept == null || accept.test(neighbor)) {
+                        results.add(next);
+                        if (results.size() > ef) {
+                            results.poll();
+                        }
+                    }
+                }
+            }
+        }
+
+        List<Candidate> sorted = new ArrayList<>(results);
+        sorted.sort(Candidate.BEST_FIRST);
+        return sorted;
+    }
+
+    /**
+     * Heuristic chọn láng giềng của HNSW: ưu tiên các node gần query hơn là gần các node đã chọn
+     * (giữ cạnh đi theo nhiều hướng), thiếu thì lấp bằng các node còn lại gần nhất
+     *
+     * @param candidates độ tương đồng giảm dần
+     */
+    private List<Candidate> selectNeighbors(List<Candidate> candidates, int limit) {
+        if (candidates.size() <= limit) {
+            return candidates;
+        }
+        List<Candidate> selected = new ArrayList<>(limit);
+        List<Candidate> skipped = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() == limit) {
+                break;
+            }
+            Vector vector = nodes.get(candidate.node).vector;
+            boolean diverse = true;
+            for (Candidate chosen : selected) {
+                if (vector.similarity(nodes.get(chosen.node).vector) > candidate.similarity) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                skipped.add(candidate);
+            }
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < limit; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    /**
+     * Thêm cạnh owner → target; danh sách đầy thì chọn lại bằng heuristic
+     */
+    private void connect(int owner, int target, int level) {
+        Node node = nodes.get(owner);
+        if (node.linkCounts[level] < node.links[level].length) {
+            node.link(level, target);
+            return;
+        }
+        List<Candidate> candidates = new ArrayList<>(node.linkCounts[level] + 1);
+        for (int i = 0; i < node.linkCounts[level]; i++) {
+            int neighbor = node.links[level][i];
+            candidates.add(new Candidate(neighbor, node.vector.similarity(nodes.get(neighbor).vector)));
+        }
+        candidates.add(new Candidate(target, node.vector.similarity(nodes.get(target).vector)));
+        candidates.sort(Candidate.BEST_FIRST);
+
+        node.linkCounts[level] = 0;
+        for (Candidate kept : selectNeighbors(candidates, node.links[level].length)) {
+            node.link(level, kept.node);
+        }
+    }
+
+    // ========== VECTOR INT8 ==========
+
+    /**
+     * Lượng tử hóa đối xứng: q[i] = round(v[i] / scale), scale = max|v| / 127
+     */
+    private Vector quantize(float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.length);
+        }
+        float maxAbs = 0;
+        for (float v : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        byte[] values = new byte[dimension];
+        if (maxAbs == 0) {
+            return new Vector(values, 0, new int[0]);
+        }
+        float scale = maxAbs / 127f;
+        int nonZeroCount = 0;
+        for (int i = 0; i < dimension; i++) {
+            values[i] = (byte) Math.round(vector[i] / scale);
+            if (values[i] != 0) {
+                nonZeroCount++;
+            }
+        }
+        int[] nonZero = new int[nonZeroCount];
+        for (int i = 0, k = 0; i < dimension; i++) {
+            if (values[i] != 0) {
+                nonZero[k++] = i;
+            }
+        }
+        return new Vector(values, scale, nonZero);
+    }
+
+    /**
+     * Vector int8 + scale + danh sách chiều khác 0
+     */
+    private record Vector(byte[] values, float scale, int[] nonZero) {
+
+        float similarity(Vector other) {
+            byte[] otherValues = other.values;
+            int dot = 0;
+            for (int i : nonZero) {
+                dot += values[i] * otherValues[i];
+            }
+            return dot * scale * other.scale;
+        }
+    }
+
+    private static final class Node {
+        final int key;
+        final Vector vector;
+        final int[][] links;      // tầng → id các node láng giềng
+        final int[] linkCounts;
+        boolean deleted;
+
+        Node(int key, Vector vector, int level, int maxLinks, int maxLinksLevel0) {
+            this.key = key;
+            this.vector = vector;
+            this.links = new int[level + 1][];
+            this.linkCounts = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                links[l] = new int[l == 0 ? maxLinksLevel0 : maxLinks];
+            }
+        }
+
+        void link(int level, int target) {
+            links[level][linkCounts[level]++] = target;
+        }
+    }
+
+    private record Candidate(int node, float similarity) {
+        static final Comparator<Candidate> BEST_FIRST = (a, b) -> Float.compare(b.similarity, a.similarity);
+        static final Comparator<Candidate> WORST_FIRST = (a, b) -> Float.compare(a.similarity, b.similarity);
+    }
+}
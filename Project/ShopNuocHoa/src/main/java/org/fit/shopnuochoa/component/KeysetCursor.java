@@ -0,0 +1,44 @@
+package org.fit.shopnuochoa.component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Con trỏ phân trang keyset (seek): giá trị cột sắp xếp + id của phần tử cuối trang trước
+ *
+ * - Trang kế tiếp lọc "(sortKey, id) sau con trỏ" trên index thay vì OFFSET: trang N tốn như trang 1
+ * - Mã hóa base64 URL-safe để đặt vào query string (?cursor=...)
+ * - Con trỏ sai định dạng (sửa tay trên URL) coi như không có → về trang đầu
+ */
+public record KeysetCursor(String key, int id) {
+
+    private static final char SEPARATOR = '|';
+
+    public static KeysetCursor of(Object key, int id) {
+        return new KeysetCursor(key != null ? key.toString() : "", id);
+    }
+
+    public String encode() {
+        String raw = key + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return null nếu cursor rỗng hoặc không hợp lệ
+     */
+    public static KeysetCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            if (separator < 0) {
+                return null;
+            }
+            return new KeysetCursor(raw.substring(0, separator), Integer.parseInt(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
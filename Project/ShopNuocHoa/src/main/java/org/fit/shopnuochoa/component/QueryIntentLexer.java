@@ -0,0 +1,578 @@
+package org.fit.shopnuochoa.component;
+
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Phân tích ý định câu hỏi của trợ lý tư vấn trong MỘT lần duyệt (không regex, không gọi API)
+ *
+ * - Từ điển intent (Việt + Anh) được dựng thành automaton Aho–Corasick một lần khi khởi động
+ * - Giá tiền được tách bằng tokenizer viết tay: "500k", "1,5 triệu", "500.000đ", "1-2tr"
+ * - Toán tử giá ("dưới", "trên", "đến", "-") chỉ áp dụng cho số đứng ngay sau / giữa chúng
+ * - Từ khóa phải đứng trọn từ: "men" không khớp trong "women", "hi" không khớp trong "hiện"
+ */
+@Component
+public class QueryIntentLexer {
+
+    /**
+     * Các cờ intent, key trùng với key trong Map intent của ProductConsultantService
+     */
+    public enum Intent {
+        GREETING("isGreeting"),
+        PRICE_QUERY("isPriceQuery"),
+        CHEAP("isCheapQuery"),
+        EXPENSIVE("isExpensiveQuery"),
+        BEST_SELLING("isBestSelling"),
+        HOT_TREND("isHotTrend"),
+        RECOMMENDATION("isRecommendation"),
+        TOP_RATED("isTopRated"),
+        NEW_PRODUCTS("isNewProducts"),
+        SUPERLATIVE("isSuperlative"),
+        COMPARISON("isComparison"),
+        AVAILABILITY("isAvailability");
+
+        private final String key;
+
+        Intent(String key) {
+            this.key = key;
+        }
+
+        public String key() {
+            return key;
+        }
+    }
+
+    /**
+     * Vai trò cú pháp của một từ khóa (ngoài các cờ intent nó bật)
+     */
+    private enum Role {
+        NONE, GENDER_MALE, GENDER_FEMALE, GENDER_UNISEX,
+        PRICE_MAX, PRICE_MIN, RANGE_TO,
+        PRODUCT_MARKER_WORD, PRODUCT_MARKER_PHRASE
+    }
+
+    private record Term(String keyword, Role role, Set<Intent> intents) {
+    }
+
+    /**
+     * Một số tiền trong câu: [start, end) và giá trị chưa nhân đơn vị.
+     * multiplier = 0 nghĩa là không ghi đơn vị.
+     */
+    public record PriceAmount(int start, int end, double number, double multiplier) {
+
+        public boolean hasUnit() {
+            return multiplier > 0;
+        }
+
+        /**
+         * Giá trị VNĐ; không có đơn vị thì số nhỏ hơn 1000 được hiểu là nghìn ("dưới 500" = 500k)
+         */
+        public double value() {
+            if (hasUnit()) {
+                return number * multiplier;
+            }
+            return number < 1000 ? number * 1000 : number;
+        }
+
+        PriceAmount withMultiplier(double newMultiplier) {
+            return new PriceAmount(start, end, number, newMultiplier);
+        }
+    }
+
+    /**
+     * Kết quả phân tích
+     */
+    public static final class QueryIntents {
+        private final Set<Intent> intents = EnumSet.noneOf(Intent.class);
+        private String gender;
+        private Double minPrice;
+        private Double maxPrice;
+        private String productName;
+        private String descriptiveText;
+
+        public boolean has(Intent intent) {
+            return intents.contains(intent);
+        }
+
+        public String getGender() {
+            return gender;
+        }
+
+        public Double getMinPrice() {
+            return minPrice;
+        }
+
+        public Double getMaxPrice() {
+            return maxPrice;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        /**
+         * Phần mô tả tự do còn lại sau khi bỏ từ khóa intent, giới tính, giá, "nước hoa"... và từ nối
+         * ("mùi gỗ ấm cho mùa đông" → "mùi gỗ ấm mùa đông"); null nếu không còn gì
+         */
+        public String getDescriptiveText() {
+            return descriptiveText;
+        }
+    }
+
+    // Từ nối / từ hỏi không dấu thường gặp ngay sau tên sản phẩm
+    private static final Set<String> NAME_STOP_WORDS = Set.of(
+            "cho", "va", "voi", "la", "gi", "nao", "co", "khong", "gia", "bao", "nhieu", "ko", "k");
+    private static final int MAX_PRODUCT_NAME_WORDS = 5;
+
+    // Từ nối / đại từ / từ hỏi không mang nghĩa mô tả mùi hương (so khớp sau khi NFC + lowercase)
+    private static final Set<String> DESCRIPTION_STOP_WORDS = Set.of(
+            "cho", "và", "với", "là", "gì", "nào", "có", "không", "ko", "của", "ở", "để", "này", "đó", "thì",
+            "hay", "hoặc", "những", "các", "một", "loại", "chai", "mình", "tôi", "em", "anh", "chị", "bạn", "shop",
+            "muốn", "cần", "tìm", "mua", "nhé", "nha", "ạ", "ơi", "đi", "được", "khoảng", "tầm", "từ",
+            "va", "voi", "la", "gi", "nao", "co", "khong", "cua", "minh", "toi", "ban", "muon", "can", "tim");
+
+    private static final String[][] UNITS = {
+            {"triệu", "1000000"}, {"trieu", "1000000"}, {"tr", "1000000"}, {"củ", "1000000"},
+            {"nghìn", "1000"}, {"nghin", "1000"}, {"ngàn", "1000"}, {"ngan", "1000"}, {"k", "1000"},
+            {"vnđ", "1"}, {"vnd", "1"}, {"đồng", "1"}, {"dong", "1"}, {"đ", "1"},
+            // Dung tích - không phải giá
+            {"ml", "-1"}
+    };
+
+    private final AhoCorasickMatcher<Term> matcher;
+
+    public QueryIntentLexer() {
+        AhoCorasickMatcher.Builder<Term> builder = AhoCorasickMatcher.builder();
+        for (Term term : lexicon()) {
+            builder.add(term.keyword(), term);
+        }
+        this.matcher = builder.build();
+    }
+
+    private static List<Term> lexicon() {
+        List<Term> terms = new ArrayList<>();
+
+        // ========== GREETING (chỉ tính khi đứng đầu câu) ==========
+        add(terms, Role.NONE, EnumSet.of(Intent.GREETING),
+                "xin chào", "chào", "hello", "hi", "hey", "chào bạn", "chào shop");
+
+        // ========== PRICE ==========
+        add(terms, Role.NONE, EnumSet.of(Intent.PRICE_QUERY), "giá", "price", "bao nhiêu");
+        add(terms, Role.NONE, EnumSet.of(Intent.PRICE_QUERY, Intent.CHEAP), "rẻ");
+        add(terms, Role.NONE, EnumSet.of(Intent.PRICE_QUERY, Intent.EXPENSIVE), "đắt", "mắc");
+        add(terms, Role.NONE, EnumSet.of(Intent.CHEAP),
+                "giá tốt", "sinh viên", "học sinh", "bình dân", "giá mềm", "giá rẻ");
+        add(terms, Role.NONE, EnumSet.of(Intent.EXPENSIVE), "cao cấp", "sang trọng", "giá cao");
+
+        // ========== PRICE OPERATORS ==========
+        add(terms, Role.PRICE_MAX, EnumSet.of(Intent.CHEAP), "dưới", "duoi");
+        add(terms, Role.PRICE_MAX, EnumSet.noneOf(Intent.class), "<", "thấp hơn", "ít hơn");
+        add(terms, Role.PRICE_MIN, EnumSet.of(Intent.EXPENSIVE), "trên", "tren");
+        add(terms, Role.PRICE_MIN, EnumSet.noneOf(Intent.class), ">", "cao hơn", "nhiều hơn");
+        add(terms, Role.RANGE_TO, EnumSet.noneOf(Intent.class), "đến", "den", "tới", "-", "->", "~");
+
+        // ========== PRODUCT QUERIES ==========
+        add(terms, Role.NONE, EnumSet.of(Intent.BEST_SELLING),
+                "bán chạy", "phổ biến", "bán nhiều", "được ưa chuộng");
+        add(terms, Role.NONE, EnumSet.of(Intent.HOT_TREND), "hot trend", "thịnh hành", "hot", "xu hướng", "trend");
+        add(terms, Role.NONE, EnumSet.of(Intent.RECOMMENDATION), "gợi ý", "tư vấn", "đề xuất", "giúp", "help", "recommend");
+        add(terms, Role.NONE, EnumSet.of(Intent.TOP_RATED), "đánh giá cao", "rating cao", "chất lượng");
+        add(terms, Role.NONE, EnumSet.of(Intent.NEW_PRODUCTS), "mới", "ra mắt", "new");
+
+        // ========== SUPERLATIVE ("nhất" → chỉ trả về 1 sản phẩm) ==========
+        // Các cụm chứa từ khóa ngắn hơn ("bán chạy nhất" ⊃ "bán chạy") bật luôn cờ của từ đó vì mọi kết quả khớp đều được tính
+        add(terms, Role.NONE, EnumSet.of(Intent.SUPERLATIVE), "đắt nhất", "rẻ nhất", "mắc nhất", "cao nhất",
+                "thấp nhất", "bán chạy nhất", "phổ biến nhất", "nổi tiếng nhất");
+        add(terms, Role.NONE, EnumSet.of(Intent.SUPERLATIVE, Intent.TOP_RATED), "tốt nhất");
+
+        // ========== GENDER ==========
+        add(terms, Role.GENDER_MALE, EnumSet.noneOf(Intent.class), "nam", "nam giới", "men");
+        add(terms, Role.GENDER_FEMALE, EnumSet.noneOf(Intent.class), "nữ", "nu", "nữ giới", "women");
+        add(terms, Role.GENDER_UNISEX, EnumSet.noneOf(Intent.class), "unisex", "cả nam và nữ", "cả nam lẫn nữ");
+
+        // ========== PRODUCT NAME MARKERS ==========
+        add(terms, Role.PRODUCT_MARKER_WORD, EnumSet.noneOf(Intent.class), "nước hoa", "nuoc hoa", "perfume");
+        add(terms, Role.PRODUCT_MARKER_PHRASE, EnumSet.noneOf(Intent.class), "sản phẩm", "san pham", "sp", "product");
+
+        // ========== OTHER ==========
+        add(terms, Role.NONE, EnumSet.of(Intent.COMPARISON), "so sánh", "compare", "khác nhau");
+        add(terms, Role.NONE, EnumSet.of(Intent.AVAILABILITY), "còn hàng", "có hàng", "availability", "stock");
+        return terms;
+    }
+
+    private static void add(List<Term> terms, Role role, Set<Intent> intents, String... keywords) {
+        for (String keyword : keywords) {
+            terms.add(new Term(normalize(keyword), role, intents));
+        }
+    }
+
+    /**
+     * Chữ thường + dựng sẵn dấu (NFC) để từ khóa và câu hỏi so khớp theo cùng một dạng
+     */
+    private static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Phân tích câu hỏi: cờ intent, giới tính, khoảng giá, tên sản phẩm
+     */
+    public QueryIntents analyze(String query) {
+        QueryIntents result = new QueryIntents();
+        if (query == null || query.isBlank()) {
+            return result;
+        }
+        String text = normalize(query.strip());
+        List<AhoCorasickMatcher.Match<Term>> matches = matcher.findAll(text);
+        List<PriceAmount> amounts = tokenizePrices(text);
+
+        boolean male = false;
+        boolean female = false;
+        boolean unisex = false;
+        for (AhoCorasickMatcher.Match<Term> match : matches) {
+            Term term = match.value();
+            for (Intent intent : term.intents()) {
+                if (intent != Intent.GREETING || match.start() == 0) {
+                    result.intents.add(intent);
+                }
+            }
+            switch (term.role()) {
+                case GENDER_MALE -> male = true;
+                case GENDER_FEMALE -> female = true;
+                case GENDER_UNISEX -> unisex = true;
+                default -> {
+                }
+            }
+        }
+        result.gender = unisex ? "UNISEX" : male ? "NAM" : female ? "NU" : null;
+
+        List<PriceAmount> priceOperands = resolvePriceBounds(text, matches, amounts, result);
+        result.productName = extractProductName(text, matches, priceSpans(amounts, priceOperands),
+                result.has(Intent.GREETING));
+        result.descriptiveText = descriptiveText(text, matches, amounts);
+        return result;
+    }
+
+    // ========== MÔ TẢ TỰ DO ==========
+
+    /**
+     * Các từ không thuộc từ khóa nào, không phải số / giá, không phải từ nối (giữ thứ tự trong câu)
+     */
+    private static String descriptiveText(String text, List<AhoCorasickMatcher.Match<Term>> matches,
+                                          List<PriceAmount> amounts) {
+        boolean[] covered = new boolean[text.length()];
+        for (AhoCorasickMatcher.Match<Term> match : matches) {
+            for (int i = match.start(); i < match.end(); i++) {
+                covered[i] = true;
+            }
+        }
+        for (PriceAmount amount : amounts) {
+            for (int i = amount.start(); i < amount.end(); i++) {
+                covered[i] = true;
+            }
+        }
+
+        StringBuilder words = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            if (!Character.isLetterOrDigit(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int start = i;
+            boolean wordCovered = false;
+            boolean hasLetter = false;
+            while (i < text.length() && (Character.isLetterOrDigit(text.charAt(i))
+                    || Character.getType(text.charAt(i)) == Character.NON_SPACING_MARK)) {
+                wordCovered |= covered[i];
+                hasLetter |= Character.isLetter(text.charAt(i));
+                i++;
+            }
+            String word = text.substring(start, i);
+            if (!wordCovered && hasLetter && !DESCRIPTION_STOP_WORDS.contains(word)) {
+                if (!words.isEmpty()) {
+                    words.append(' ');
+                }
+                words.append(word);
+            }
+        }
+        return words.isEmpty() ? null : words.toString();
+    }
+
+    // ========== PRICE ==========
+
+    /**
+     * "dưới X" → max, "trên X" → min, "X đến Y" / "X-Y" → khoảng (khoảng được ưu tiên).
+     * Số trong khoảng không ghi đơn vị thì dùng đơn vị của số còn lại ("1-2tr", "từ 1 đến 2 triệu").
+     *
+     * @return các số đã được dùng làm giá (kể cả số không ghi đơn vị đứng cạnh toán tử)
+     */
+    private static List<PriceAmount> resolvePriceBounds(String text, List<AhoCorasickMatcher.Match<Term>> matches,
+                                                        List<PriceAmount> amounts, QueryIntents result) {
+        List<PriceAmount> operands = new ArrayList<>();
+        if (amounts.isEmpty()) {
+            return operands;
+        }
+        for (AhoCorasickMatcher.Match<Term> op : matches) {
+            Role role = op.value().role();
+            if ((role != Role.PRICE_MAX && role != Role.PRICE_MIN && role != Role.RANGE_TO)
+                    || isInsideLongerOperator(op, matches)) {
+                continue;
+            }
+            PriceAmount after = amountStartingAt(amounts, skipSpaces(text, op.end()));
+            if (after == null) {
+                continue;
+            }
+            if (role == Role.RANGE_TO) {
+                PriceAmount before = amountEndingAt(amounts, skipSpacesBackward(text, op.start()));
+                if (before != null) {
+                    if (!before.hasUnit() && after.hasUnit()) {
+                        before = before.withMultiplier(after.multiplier());
+                    } else if (before.hasUnit() && !after.hasUnit()) {
+                        after = after.withMultiplier(before.multiplier());
+                    }
+                    result.minPrice = Math.min(before.value(), after.value());
+                    result.maxPrice = Math.max(before.value(), after.value());
+                    operands.add(before);
+                    operands.add(after);
+                    return operands;
+                }
+            } else if (role == Role.PRICE_MAX) {
+                result.maxPrice = after.value();
+                operands.add(after);
+            } else {
+                result.minPrice = after.value();
+                operands.add(after);
+            }
+        }
+        return operands;
+    }
+
+    /**
+     * Vùng chữ là giá tiền (gồm cả đơn vị): số có đơn vị ("300 nghìn", "2tr") và số đứng cạnh toán tử giá ("500 đến 700k").
+     * Số trơn không gắn toán tử nào vẫn có thể là một phần tên ("212 vip", "chanel no 5").
+     */
+    private static List<PriceAmount> priceSpans(List<PriceAmount> amounts, List<PriceAmount> operands) {
+        List<PriceAmount> spans = new ArrayList<>(operands);
+        for (PriceAmount amount : amounts) {
+            if (amount.hasUnit()) {
+                spans.add(amount);
+            }
+        }
+        return spans;
+    }
+
+    // "->" chứa cả "-" và ">": chỉ toán tử dài nhất được tính
+    private static boolean isInsideLongerOperator(AhoCorasickMatcher.Match<Term> op,
+                                                  List<AhoCorasickMatcher.Match<Term>> matches) {
+        for (AhoCorasickMatcher.Match<Term> other : matches) {
+            if (other != op && other.start() <= op.start() && other.end() >= op.end()
+                    && other.end() - other.start() > op.end() - op.start()
+                    && other.value().role() == Role.RANGE_TO) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static PriceAmount amountStartingAt(List<PriceAmount> amounts, int position) {
+        for (PriceAmount amount : amounts) {
+            if (amount.start() == position) {
+                return amount;
+            }
+        }
+        return null;
+    }
+
+    private static PriceAmount amountEndingAt(List<PriceAmount> amounts, int position) {
+        for (PriceAmount amount : amounts) {
+            if (amount.end() == position) {
+                return amount;
+            }
+        }
+        return null;
+    }
+
+    private static int skipSpaces(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipSpacesBackward(String text, int i) {
+        while (i > 0 && Character.isWhitespace(text.charAt(i - 1))) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * Tách các số tiền trong câu (đã lowercase).
+     * "500.000" / "1,000,000" là phân cách hàng nghìn, "1.5" / "1,5" là số thập phân.
+     * Số đi kèm "ml" (dung tích) bị bỏ qua.
+     */
+    public static List<PriceAmount> tokenizePrices(String text) {
+        List<PriceAmount> amounts = new ArrayList<>();
+        if (text == null) {
+            return amounts;
+        }
+        String lower = normalize(text);
+        int i = 0;
+        while (i < lower.length()) {
+            char c = lower.charAt(i);
+            if (!isDigit(c) || (i > 0 && Character.isLetterOrDigit(lower.charAt(i - 1)))) {
+                i++;
+                continue;
+            }
+
+            int start = i;
+            StringBuilder digits = new StringBuilder();
+            boolean grouped = false;
+            boolean decimal = false;
+            while (i < lower.length() && isDigit(lower.charAt(i))) {
+                digits.append(lower.charAt(i++));
+            }
+            while (i + 1 < lower.length() && (lower.charAt(i) == '.' || lower.charAt(i) == ',')
+                    && isDigit(lower.charAt(i + 1)) && !decimal) {
+                int groupStart = i + 1;
+                int groupEnd = groupStart;
+                while (groupEnd < lower.length() && isDigit(lower.charAt(groupEnd))) {
+                    groupEnd++;
+                }
+                if (groupEnd - groupStart == 3) {
+                    grouped = true;
+                    digits.append(lower, groupStart, groupEnd);
+                } else if (!grouped) {
+                    decimal = true;
+                    digits.append('.').append(lower, groupStart, groupEnd);
+                } else {
+                    break;
+                }
+                i = groupEnd;
+            }
+
+            int unitStart = skipSpaces(lower, i);
+            double multiplier = 0;
+            int end = i;
+            for (String[] unit : UNITS) {
+                if (lower.startsWith(unit[0], unitStart)) {
+                    int unitEnd = unitStart + unit[0].length();
+                    if (unitEnd >= lower.length() || !Character.isLetter(lower.charAt(unitEnd))) {
+                        multiplier = Double.parseDouble(unit[1]);
+                        end = unitEnd;
+                        break;
+                    }
+                }
+            }
+            if (multiplier >= 0) {
+                amounts.add(new PriceAmount(start, end, Double.parseDouble(digits.toString()), multiplier));
+            }
+            i = Math.max(end, i);
+        }
+        return amounts;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // ========== PRODUCT NAME ==========
+
+    /**
+     * Tên sản phẩm = các từ không dấu (a-z, 0-9) đứng ngay sau "nước hoa" / "sản phẩm"...,
+     * dừng ở từ khóa intent, giá tiền hoặc từ nối. Câu toàn chữ không dấu thì lấy từ đầu câu.
+     */
+    private static String extractProductName(String text, List<AhoCorasickMatcher.Match<Term>> matches,
+                                             List<PriceAmount> priceSpans, boolean greeting) {
+        boolean[] covered = new boolean[text.length()];
+        for (AhoCorasickMatcher.Match<Term> match : matches) {
+            for (int i = match.start(); i < match.end(); i++) {
+                covered[i] = true;
+            }
+        }
+        for (PriceAmount amount : priceSpans) {
+            for (int i = amount.start(); i < amount.end(); i++) {
+                covered[i] = true;
+            }
+        }
+
+        String best = null;
+        Role bestRole = null;
+        for (AhoCorasickMatcher.Match<Term> match : matches) {
+            Role role = match.value().role();
+            if (role != Role.PRODUCT_MARKER_WORD && role != Role.PRODUCT_MARKER_PHRASE) {
+                continue;
+            }
+            String name = asciiWordsFrom(text, match.end(), covered);
+            // "nước hoa ..." ưu tiên hơn "sản phẩm ..."; cùng loại thì lấy lần xuất hiện cuối
+            if (name != null && (best == null || role == Role.PRODUCT_MARKER_WORD || bestRole == role)) {
+                best = name;
+                bestRole = role;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+
+        if (!greeting && text.length() > 3 && isAsciiAlphanumeric(text)) {
+            return asciiWordsFrom(text, 0, covered);
+        }
+        return null;
+    }
+
+    private static String asciiWordsFrom(String text, int from, boolean[] covered) {
+        List<String> words = new ArrayList<>();
+        int i = from;
+        while (words.size() < MAX_PRODUCT_NAME_WORDS) {
+            int start = skipSpaces(text, i);
+            if (start == i && i != from && i < text.length()) {
+                break;
+            }
+            int end = start;
+            while (end < text.length() && isAsciiLetterOrDigit(text.charAt(end))) {
+                end++;
+            }
+            if (end == start || (end < text.length() && Character.isLetter(text.charAt(end)))
+                    || covered[start]) {
+                break;
+            }
+            String word = text.substring(start, end);
+            // "100ml", "500k": dung tích / giá, không phải tên
+            if (NAME_STOP_WORDS.contains(word) || (isDigit(word.charAt(0)) && !isAllDigits(word))) {
+                break;
+            }
+            words.add(word);
+            i = end;
+        }
+        return words.isEmpty() ? null : String.join(" ", words);
+    }
+
+    private static boolean isAllDigits(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if (!isDigit(word.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsciiAlphanumeric(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!isAsciiLetterOrDigit(c) && !Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return (c >= 'a' && c <= 'z') || isDigit(c);
+    }
+}
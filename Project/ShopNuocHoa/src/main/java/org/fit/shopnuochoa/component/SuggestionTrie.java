@@ -0,0 +1,152 @@
+package org.fit.shopnuochoa.component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Trie tiền tố cho gợi ý khi gõ (autocomplete)
+ *
+ * - Mỗi node lưu sẵn top gợi ý (theo trọng số) của mọi khóa bên dưới nó: tra cứu chỉ đi theo tiền tố, O(độ dài tiền tố)
+ * - Một giá trị có thể gắn với nhiều khóa (vd từng hậu tố theo từ của tên); top của mỗi node không lặp giá trị
+ * - Con của node lưu bằng mảng ký tự đã sắp + tìm nhị phân (gọn hơn HashMap cho hàng chục nghìn node)
+ * - Dựng một lần, sau đó chỉ đọc nên dùng chung được giữa các thread
+ * - Khóa và tiền tố tra cứu phải được chuẩn hóa giống nhau (caller tự lowercase / bỏ dấu)
+ *
+ * @param <V> giá trị gợi ý (so sánh bằng equals khi loại trùng)
+ */
+public final class SuggestionTrie<V> {
+
+    private final Node<V> root;
+
+    private SuggestionTrie(Node<V> root) {
+        this.root = root;
+    }
+
+    /**
+     * @param maxSuggestions số gợi ý tối đa lưu ở mỗi node
+     */
+    public static <V> Builder<V> builder(int maxSuggestions) {
+        if (maxSuggestions <= 0) {
+            throw new IllegalArgumentException("maxSuggestions must be positive");
+        }
+        return new Builder<>(maxSuggestions);
+    }
+
+    /**
+     * Các gợi ý có khóa bắt đầu bằng tiền tố, trọng số giảm dần
+     */
+    public List<V> suggest(String prefix) {
+        if (prefix == null) {
+            return List.of();
+        }
+        Node<V> node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.next(prefix.charAt(i));
+        }
+        return node != null ? node.suggestions : List.of();
+    }
+
+    /**
+     * Builder: thêm khóa rồi gọi {@link #build()} (tính top gợi ý từ lá lên gốc)
+     */
+    public static final class Builder<V> {
+        private final int maxSuggestions;
+        private final BuildNode<V> root = new BuildNode<>();
+
+        private Builder(int maxSuggestions) {
+            this.maxSuggestions = maxSuggestions;
+        }
+
+        public Builder<V> add(String key, V value, double weight) {
+            if (key == null || key.isEmpty() || value == null) {
+                return this;
+            }
+            BuildNode<V> node = root;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.children.computeIfAbsent(key.charAt(i), c -> new BuildNode<>());
+            }
+            node.own.merge(value, weight, Math::max);
+            return this;
+        }
+
+        public SuggestionTrie<V> build() {
+            return new SuggestionTrie<>(freeze(root).node);
+        }
+
+        /**
+         * Đệ quy theo độ dài khóa (tên sản phẩm tối đa vài trăm ký tự)
+         */
+        private Frozen<V> freeze(BuildNode<V> source) {
+            int size = source.children.size();
+            char[] labels = new char[size];
+            @SuppressWarnings("unchecked")
+            Node<V>[] children = new Node[size];
+
+            // Đoạn trie không rẽ nhánh (phần lớn node): dùng chung top của node con
+            if (size == 1 && source.own.isEmpty()) {
+                Map.Entry<Character, BuildNode<V>> only = source.children.firstEntry();
+                Frozen<V> child = freeze(only.getValue());
+                labels[0] = only.getKey();
+                children[0] = child.node;
+                return new Frozen<>(new Node<>(labels, children, child.node.suggestions), child.top);
+            }
+
+            // Ứng viên: giá trị tại chính node + top của từng con (top của con đã đủ đại diện cho cây con)
+            Map<V, Double> candidates = new LinkedHashMap<>(source.own);
+            int i = 0;
+            for (Map.Entry<Character, BuildNode<V>> entry : source.children.entrySet()) {
+                Frozen<V> child = freeze(entry.getValue());
+                labels[i] = entry.getKey();
+                children[i] = child.node;
+                i++;
+                for (Ranked<V> ranked : child.top) {
+                    candidates.merge(ranked.value, ranked.weight, Math::max);
+                }
+            }
+
+            List<Ranked<V>> top = new ArrayList<>(candidates.size());
+            candidates.forEach((value, weight) -> top.add(new Ranked<>(value, weight)));
+            top.sort((a, b) -> Double.compare(b.weight, a.weight));
+            List<Ranked<V>> kept = top.size() > maxSuggestions ? top.subList(0, maxSuggestions) : top;
+
+            List<V> suggestions = new ArrayList<>(kept.size());
+            for (Ranked<V> ranked : kept) {
+                suggestions.add(ranked.value);
+            }
+            return new Frozen<>(new Node<>(labels, children, List.copyOf(suggestions)), List.copyOf(kept));
+        }
+    }
+
+    private static final class BuildNode<V> {
+        // TreeMap: ký tự con đã sắp sẵn cho mảng tìm nhị phân
+        final TreeMap<Character, BuildNode<V>> children = new TreeMap<>();
+        final Map<V, Double> own = new LinkedHashMap<>(2);
+    }
+
+    private record Ranked<V>(V value, double weight) {
+    }
+
+    private record Frozen<V>(Node<V> node, List<Ranked<V>> top) {
+    }
+
+    private static final class Node<V> {
+        private final char[] labels;
+        private final Node<V>[] children;
+        private final List<V> suggestions;
+
+        Node(char[] labels, Node<V>[] children, List<V> suggestions) {
+            this.labels = labels;
+            this.children = children;
+            this.suggestions = suggestions;
+        }
+
+        Node<V> next(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return i >= 0 ? children[i] : null;
+        }
+    }
+}
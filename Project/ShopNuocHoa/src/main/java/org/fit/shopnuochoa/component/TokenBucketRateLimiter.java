@@ -0,0 +1,76 @@
+package org.fit.shopnuochoa.component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limiter token bucket theo từng client, không khóa
+ *
+ * - Mỗi bucket chứa tối đa {@code capacity} lượt, hồi đầy sau {@code refillPeriod} (hồi đều từng lượt)
+ * - Bucket chỉ là MỘT số long: thời điểm bucket sẽ đầy trở lại (thuật toán GCRA, tương đương token bucket).
+ *   Lấy lượt = CAS trên số đó nên nhiều request cùng lúc không thể vượt quota
+ * - Bucket lưu trong Caffeine giới hạn kích thước; bucket không dùng quá {@code refillPeriod}
+ *   (tức là đã đầy lại) bị xóa mà không mất thông tin → bộ nhớ không tăng theo số khách
+ */
+public final class TokenBucketRateLimiter {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final LongSupplier nanoClock;
+    private final Cache<String, AtomicLong> buckets;
+
+    /**
+     * @param capacity     số lượt tối đa dùng liền một lúc
+     * @param refillPeriod thời gian để bucket rỗng hồi đầy
+     * @param maxClients   số client được theo dõi cùng lúc (vượt quá thì bucket ít dùng nhất bị bỏ)
+     */
+    public TokenBucketRateLimiter(int capacity, Duration refillPeriod, long maxClients) {
+        this(capacity, refillPeriod, maxClients, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock đồng hồ kiểu System.nanoTime (cũng dùng cho hạn xóa bucket của Caffeine)
+     */
+    TokenBucketRateLimiter(int capacity, Duration refillPeriod, long maxClients, LongSupplier nanoClock) {
+        if (capacity <= 0 || refillPeriod.isZero() || refillPeriod.isNegative()) {
+            throw new IllegalArgumentException("capacity and refillPeriod must be positive");
+        }
+        this.nanosPerToken = refillPeriod.toNanos() / capacity;
+        this.burstNanos = nanosPerToken * capacity;
+        this.nanoClock = nanoClock;
+        this.buckets = Caffeine.newBuilder()
+                .ticker(nanoClock::getAsLong)
+                .maximumSize(maxClients)
+                .expireAfterAccess(refillPeriod)
+                .build();
+    }
+
+    /**
+     * Lấy một lượt cho client
+     *
+     * @param clientKey session ID / IP...
+     * @return 0 nếu được phép, ngược lại số giây phải chờ (tối thiểu 1)
+     */
+    public long tryAcquire(String clientKey) {
+        AtomicLong fullAt = buckets.get(clientKey, k -> new AtomicLong(Long.MIN_VALUE));
+        while (true) {
+            long now = nanoClock.getAsLong();
+            long current = fullAt.get();
+            // Bucket đã đầy từ trước → tính như đầy đúng lúc này
+            long base = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+            long next = base + nanosPerToken;
+            if (next - now > burstNanos) {
+                long waitNanos = next - now - burstNanos;
+                return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.fit.shopnuochoa.component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Tiện ích xử lý chuỗi tiếng Việt cho tìm kiếm
+ * - Bỏ dấu (folding): "Nước Hoa Đẹp" → "nuoc hoa dep"
+ * - Tách từ theo ký tự chữ / số
+ */
+public final class VietnameseTextUtils {
+
+    private VietnameseTextUtils() {
+    }
+
+    /**
+     * Chuyển về chữ thường và bỏ toàn bộ dấu tiếng Việt (kể cả đ/Đ)
+     */
+    public static String fold(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (c == 'đ' || c == 'Đ') {
+                c = 'd';
+            }
+            sb.append(c);
+        }
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Bỏ dấu rồi tách thành các từ (chỉ giữ chữ cái và chữ số)
+     */
+    public static List<String> foldedTokens(String text) {
+        String folded = fold(text);
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean wordChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
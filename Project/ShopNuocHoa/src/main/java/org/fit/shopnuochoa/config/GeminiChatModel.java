@@ -1,7 +1,9 @@
 package org.fit.shopnuochoa.config;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import org.springframework.ai.chat.messages.AssistantMessage;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
@@ -10,11 +12,31 @@ import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.*;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
-
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Component
 public class GeminiChatModel implements ChatModel {
@@ -28,8 +50,38 @@ public class GeminiChatModel implements ChatModel {
     @Value("${gemini.base.url}")
     private String baseUrl;
 
-    private final RestTemplate restTemplate;
+    // ========== HTTP CLIENT CONFIGURATION ==========
+    @Value("${gemini.http.connect-timeout-ms:3000}")
+    private long connectTimeoutMs;       // Timeout mở kết nối
+
+    @Value("${gemini.http.read-timeout-ms:20000}")
+    private long readTimeoutMs;          // Timeout cho mỗi lần gọi API
+
+    @Value("${gemini.http.total-timeout-ms:30000}")
+    private long totalTimeoutMs;         // Deadline tổng của call(), tính cả các lần retry
+
+    // ========== CIRCUIT BREAKER CONFIGURATION ==========
+    @Value("${gemini.circuit.failure-threshold:5}")
+    private int circuitFailureThreshold; // Số lỗi 429/503/timeout liên tiếp để mở mạch
+
+    @Value("${gemini.circuit.open-ms:30000}")
+    private long circuitOpenMs;          // Thời gian fail fast trước khi cho 1 request thử
+
+    // ========== CONCURRENCY LIMIT CONFIGURATION (AIMD) ==========
+    @Value("${gemini.concurrency.initial-limit:4}")
+    private int concurrencyInitialLimit; // Số request đồng thời ban đầu
+
+    @Value("${gemini.concurrency.max-limit:16}")
+    private int concurrencyMaxLimit;     // Trần số request đồng thời
+
+    @Value("${gemini.concurrency.max-queue-wait-ms:5000}")
+    private long maxQueueWaitMs;         // Chờ lượt quá lâu → bỏ, tầng service trả câu trả lời mẫu
+
+    // HttpClient của JDK: pool kết nối keep-alive, HTTP/2, gọi bất đồng bộ (không giữ thread khi chờ)
+    private HttpClient httpClient;
     private final ObjectMapper objectMapper;
+    private CircuitBreaker circuitBreaker;
+    private ConcurrencyLimiter concurrencyLimiter;
 
     // ========== RETRY CONFIGURATION ==========
     // Retry khi gặp lỗi 429 (Too Many Requests) hoặc 503 (Service Unavailable)
@@ -38,10 +90,19 @@ public class GeminiChatModel implements ChatModel {
     private static final double RETRY_DELAY_MULTIPLIER = 2.0;  // Nhân đôi mỗi lần retry
 
     public GeminiChatModel() {
-        this.restTemplate = new RestTemplate();
         this.objectMapper = new ObjectMapper();
     }
 
+    @PostConstruct
+    void initHttpClient() {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        this.circuitBreaker = new CircuitBreaker(circuitFailureThreshold, circuitOpenMs);
+        this.concurrencyLimiter = new ConcurrencyLimiter(concurrencyInitialLimit, concurrencyMaxLimit);
+    }
+
     @Override
     public ChatResponse call(Prompt prompt) {
         // ========== IDENTIFY CALL TYPE ==========
@@ -55,162 +116,638 @@ public class GeminiChatModel implements ChatModel {
         System.out.println("🎯 " + callType + " Starting API Call");
         System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
 
-        // ========== RETRY MECHANISM với EXPONENTIAL BACKOFF ==========
-        int attempts = 0;
-        long retryDelay = INITIAL_RETRY_DELAY_MS;
-        Exception lastException = null;
+        // ========== CIRCUIT BREAKER ==========
+        // Gemini đang quá tải / hết quota → fail fast để tầng service trả câu trả lời mẫu ngay
+        if (!circuitBreaker.allowRequest()) {
+            System.err.println("⛔ " + callType + " Circuit breaker OPEN - failing fast");
+            throw new RuntimeException("Gemini circuit breaker is open - skipping API call");
+        }
 
-        while (attempts < MAX_RETRY_ATTEMPTS) {
-            try {
-                attempts++;
-                System.out.println("🔄 " + callType + " Attempt " + attempts + "/" + MAX_RETRY_ATTEMPTS);
+        // ========== RETRY MECHANISM với EXPONENTIAL BACKOFF (BẤT ĐỒNG BỘ) ==========
+        // Backoff được lên lịch bằng delayed executor, không Thread.sleep trên thread của request
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(totalTimeoutMs);
+        LlmPriority priority = LlmPriority.current();
+        CallHandle handle = new CallHandle();
+        CompletableFuture<ChatResponse> future = callWithRetry(prompt, callType, priority, handle, 1, INITIAL_RETRY_DELAY_MS, deadline);
 
-                return executeApiCall(prompt);
+        try {
+            return future.get(remainingMillis(deadline), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Hủy cả chuỗi bên trong (đang chờ lượt / đang chờ Gemini trả lời); lỗi được ghi nhận một lần ở callWithRetry
+            handle.cancel(true);
+            future.cancel(true);
+            System.err.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+            System.err.println("❌ " + callType + " Deadline exceeded (" + totalTimeoutMs + "ms)");
+            System.err.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+            throw new RuntimeException("Error calling Gemini API: deadline of " + totalTimeoutMs + "ms exceeded", e);
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e);
+            throw cause instanceof RuntimeException runtime ? runtime : new RuntimeException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            handle.cancel(false);
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Gemini API call interrupted", e);
+        }
+    }
 
-            } catch (Exception e) {
-                lastException = e;
-                String errorMsg = e.getMessage();
+    /**
+     * Một lần gọi API; nếu lỗi tạm thời (429/503) thì lên lịch lần gọi kế tiếp sau thời gian backoff.
+     * Mỗi lần gọi (kể cả retry) phải xếp hàng lấy lượt từ concurrency limiter.
+     */
+    private CompletableFuture<ChatResponse> callWithRetry(Prompt prompt, String callType, LlmPriority priority,
+                                                          CallHandle handle, int attempt, long retryDelay, long deadline) {
+        System.out.println("🔄 " + callType + " Attempt " + attempt + "/" + MAX_RETRY_ATTEMPTS);
+
+        return limitedApiCall(prompt, priority, handle, deadline)
+            .thenApply(response -> {
+                circuitBreaker.recordSuccess();
+                return response;
+            })
+            .exceptionallyCompose(error -> {
+                Throwable cause = unwrap(error);
+                String errorMsg = String.valueOf(cause.getMessage());
+
+                // Chờ lượt quá lâu / caller đã bỏ trước khi request được gửi: không phải lỗi của Gemini, không retry
+                if (cause instanceof RejectedExecutionException || cause instanceof CancellationException) {
+                    System.err.println("⏳ " + callType + " " + errorMsg);
+                    circuitBreaker.recordIgnored();
+                    return CompletableFuture.failedFuture(cause);
+                }
 
                 // Log chi tiết lỗi
                 System.err.println("⚠️ " + callType + " API Error: " + errorMsg);
 
                 // Kiểm tra xem có phải lỗi cần retry không
-                boolean shouldRetry = errorMsg.contains("429") ||     // Too Many Requests
-                                     errorMsg.contains("503") ||     // Service Unavailable
-                                     errorMsg.contains("RESOURCE_EXHAUSTED") ||
-                                     errorMsg.contains("overloaded");
+                boolean shouldRetry = isRetryable(errorMsg);
+                if (shouldRetry || cause instanceof HttpTimeoutException) {
+                    circuitBreaker.recordFailure();
+                } else {
+                    circuitBreaker.recordIgnored();
+                }
 
-                if (!shouldRetry || attempts >= MAX_RETRY_ATTEMPTS) {
+                if (handle.isCancelled()) {
+                    return CompletableFuture.failedFuture(cause);
+                }
+                if (!shouldRetry || attempt >= MAX_RETRY_ATTEMPTS) {
                     if (!shouldRetry) {
                         System.err.println("❌ " + callType + " Non-retryable error - stopping");
                     } else {
-                        System.err.println("❌ " + callType + " Max retry attempts reached (" + attempts + "/" + MAX_RETRY_ATTEMPTS + ")");
+                        System.err.println("❌ " + callType + " Max retry attempts reached (" + attempt + "/" + MAX_RETRY_ATTEMPTS + ")");
                         if (errorMsg.contains("429")) {
                             System.err.println("💡 TIP: API quota exhausted. Wait 1 minute or create new API key at: https://aistudio.google.com/apikey");
                         } else {
                             System.err.println("💡 TIP: Gemini server is overloaded. Wait 1-2 minutes and try again.");
                         }
                     }
-                    throw e;
+                    return CompletableFuture.failedFuture(cause);
                 }
 
-                // ========== PARSE RETRY DELAY TỪ API RESPONSE ==========
-                // Google API trả về retry delay trong error message
-                long suggestedDelay = retryDelay;
-                try {
-                    // Tìm "Please retry in XX.XXs" trong error message
-                    if (errorMsg.contains("Please retry in")) {
-                        String delayStr = errorMsg.substring(errorMsg.indexOf("Please retry in") + 16);
-                        delayStr = delayStr.substring(0, delayStr.indexOf("s"));
-                        double delaySec = Double.parseDouble(delayStr);
-                        suggestedDelay = (long)(delaySec * 1000); // Convert to milliseconds
-                        System.out.println("📌 " + callType + " Google suggests retry in: " + delaySec + "s");
-                    }
-                } catch (Exception parseError) {
-                    // Nếu parse lỗi, dùng exponential backoff mặc định
+                long suggestedDelay = parseSuggestedDelay(errorMsg, retryDelay, callType);
+
+                // Không retry nếu mạch vừa mở hoặc lần chờ kế tiếp vượt deadline tổng
+                if (circuitBreaker.isOpen()) {
+                    System.err.println("⛔ " + callType + " Circuit breaker opened - stopping retries");
+                    return CompletableFuture.failedFuture(cause);
+                }
+                if (suggestedDelay >= remainingMillis(deadline)) {
+                    System.err.println("❌ " + callType + " Retry in " + suggestedDelay + "ms would exceed deadline - stopping");
+                    return CompletableFuture.failedFuture(cause);
                 }
 
-                // Xác định loại lỗi để log cho rõ
-                String errorType = "Unknown";
-                if (errorMsg.contains("429")) errorType = "429 Too Many Requests";
-                else if (errorMsg.contains("503")) errorType = "503 Service Unavailable";
-                else if (errorMsg.contains("RESOURCE_EXHAUSTED")) errorType = "Resource Exhausted";
-                else if (errorMsg.contains("overloaded")) errorType = "Server Overloaded";
+                // Log và lên lịch retry (không chặn thread nào trong lúc chờ)
+                System.out.println("⚠️ " + callType + " Error: " + errorType(errorMsg) + " - Retrying in " + suggestedDelay + "ms... (Attempt " + attempt + "/" + MAX_RETRY_ATTEMPTS + ")");
+                Executor delayed = CompletableFuture.delayedExecutor(suggestedDelay, TimeUnit.MILLISECONDS);
 
-                // Log và chờ trước khi retry
-                System.out.println("⚠️ " + callType + " Error: " + errorType + " - Retrying in " + suggestedDelay + "ms... (Attempt " + attempts + "/" + MAX_RETRY_ATTEMPTS + ")");
+                // Exponential backoff: Tăng thời gian chờ cho lần sau
+                long nextDelay = (long) (retryDelay * RETRY_DELAY_MULTIPLIER);
+                return CompletableFuture.runAsync(() -> { }, delayed)
+                    .thenCompose(ignored -> callWithRetry(prompt, callType, priority, handle, attempt + 1, nextDelay, deadline));
+            });
+    }
 
+    /**
+     * Lấy lượt từ concurrency limiter (chờ tối đa maxQueueWaitMs) rồi gọi API; trả lượt khi có kết quả.
+     * Caller đã hủy thì bỏ chỗ trong hàng chờ / trả lượt mà không gửi request.
+     */
+    private CompletableFuture<ChatResponse> limitedApiCall(Prompt prompt, LlmPriority priority, CallHandle handle, long deadline) {
+        if (handle.isCancelled()) {
+            return CompletableFuture.failedFuture(new CancellationException("Gemini call cancelled before sending"));
+        }
+        long maxWait = Math.min(maxQueueWaitMs, remainingMillis(deadline));
+        CompletableFuture<Void> permit = concurrencyLimiter.acquire(priority, maxWait);
+        handle.track(permit);
+        return permit
+            .thenCompose(ignored -> {
+                if (handle.isCancelled()) {
+                    concurrencyLimiter.releaseCancelled();
+                    return CompletableFuture.failedFuture(new CancellationException("Gemini call cancelled before sending"));
+                }
+                CompletableFuture<ChatResponse> call;
                 try {
-                    Thread.sleep(suggestedDelay);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    throw new RuntimeException("Retry interrupted", ie);
+                    call = executeApiCall(prompt, handle, deadline);
+                } catch (RuntimeException e) {
+                    call = CompletableFuture.failedFuture(e);
                 }
-
-                // Exponential backoff: Tăng thời gian chờ cho lần sau
-                retryDelay = (long)(retryDelay * RETRY_DELAY_MULTIPLIER);
-            }
-        }
-
-        // Nếu hết số lần retry, throw exception cuối cùng
-        System.err.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
-        System.err.println("❌ " + callType + " FAILED after " + MAX_RETRY_ATTEMPTS + " attempts");
-        System.err.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
-        throw new RuntimeException("Error calling Gemini API after " + MAX_RETRY_ATTEMPTS +
-                                 " attempts: " + (lastException != null ? lastException.getMessage() : "Unknown error"),
-                                 lastException);
+                return call.whenComplete((response, error) -> {
+                    Throwable cause = error != null ? unwrap(error) : null;
+                    if (cause instanceof CancellationException) {
+                        concurrencyLimiter.releaseCancelled();
+                    } else {
+                        concurrencyLimiter.release(cause != null && isOverload(cause));
+                    }
+                });
+            });
     }
 
     /**
-     * Thực hiện API call thực tế đến Gemini
+     * Thực hiện API call thực tế đến Gemini (bất đồng bộ)
      *
-     * @param prompt Prompt từ Spring AI
+     * @param prompt   Prompt từ Spring AI
+     * @param handle   hủy được exchange đang chờ khi caller hết deadline
+     * @param deadline deadline tổng (System.nanoTime) - timeout của lần gọi không vượt quá deadline
      * @return ChatResponse
      */
-    private ChatResponse executeApiCall(Prompt prompt) {
+    private CompletableFuture<ChatResponse> executeApiCall(Prompt prompt, CallHandle handle, long deadline) {
+        // Call Gemini API using baseUrl from config
+        String url = baseUrl + model + ":generateContent?key=" + apiKey;
+        long timeout = Math.max(1, Math.min(readTimeoutMs, remainingMillis(deadline)));
+
+        // Debugging API key (CHỈ để debug, NÊN XÓA trong production)
+        // System.out.println("Using API Key: " + apiKey);
+
+        HttpRequest request;
         try {
-            // Build request
-            Map<String, Object> requestBody = new HashMap<>();
-            List<Map<String, Object>> contents = new ArrayList<>();
-
-            // Add messages from prompt
-            prompt.getInstructions().forEach(message -> {
-                Map<String, Object> content = new HashMap<>();
-                Map<String, String> part = new HashMap<>();
-                part.put("text", message.getContent());
-                content.put("parts", List.of(part));
-                contents.add(content);
-            });
+            request = buildHttpRequest(url, prompt, timeout);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(new RuntimeException("Error calling Gemini API: " + e.getMessage(), e));
+        }
 
-            requestBody.put("contents", contents);
+        CompletableFuture<HttpResponse<String>> exchange =
+                httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        handle.track(exchange);
+        return exchange
+            .exceptionally(error -> {
+                // Hết deadline tổng khi Gemini chưa trả lời: tính như timeout của lần gọi (1 lỗi cho circuit breaker)
+                if (unwrap(error) instanceof CancellationException && handle.isDeadlineExceeded()) {
+                    throw new CompletionException(new HttpTimeoutException("Gemini call cancelled at deadline while awaiting response"));
+                }
+                throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+            })
+            .thenApply(response -> {
+                // Parse response
+                if (response.statusCode() != 200 || response.body() == null) {
+                    // Giữ mã lỗi + body trong message để retry mechanism phân loại (429, 503, "Please retry in"...)
+                    throw new RuntimeException("Error calling Gemini API: " + response.statusCode() + " " + response.body());
+                }
 
-            // Set headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
+                String text;
+                try {
+                    text = extractText(objectMapper.readTree(response.body()));
+                } catch (JsonProcessingException e) {
+                    throw new RuntimeException("Error calling Gemini API: invalid JSON response", e);
+                }
 
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
+                if (text == null) {
+                    throw new RuntimeException("Failed to get valid response from Gemini");
+                }
 
-            // Call Gemini API using baseUrl from config
-            String url = baseUrl + model + ":generateContent?key=" + apiKey;
+                // Create AssistantMessage from text
+                AssistantMessage assistantMessage = new AssistantMessage(text);
+                Generation generation = new Generation(assistantMessage);
+                return new ChatResponse(List.of(generation));
+            });
+    }
 
-            // Debugging API key (CHỈ để debug, NÊN XÓA trong production)
-            // System.out.println("Using API Key: " + apiKey);
+    /**
+     * Streaming: gọi endpoint streamGenerateContent (SSE) và phát từng đoạn text ngay khi Gemini trả về
+     *
+     * Không retry: khi đã gửi token cho client thì không thể phát lại từ đầu,
+     * lỗi được đẩy xuống subscriber để tầng service tự fallback.
+     */
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.deferContextual(context -> streamWithPriority(prompt, LlmPriority.from(context)));
+    }
 
-            ResponseEntity<String> response = restTemplate.exchange(
-                    url,
-                    HttpMethod.POST,
-                    request,
-                    String.class
-            );
+    private Flux<ChatResponse> streamWithPriority(Prompt prompt, LlmPriority priority) {
+        return Flux.<ChatResponse>create(sink -> {
+            if (!circuitBreaker.allowRequest()) {
+                System.err.println("⛔ [STREAM] Circuit breaker OPEN - failing fast");
+                sink.error(new RuntimeException("Gemini circuit breaker is open - skipping API call"));
+                return;
+            }
+
+            // Thread boundedElastic được phép chờ lượt
+            try {
+                concurrencyLimiter.acquire(priority, maxQueueWaitMs).join();
+            } catch (CompletionException e) {
+                System.err.println("⏳ [STREAM] " + unwrap(e).getMessage());
+                circuitBreaker.recordIgnored();
+                sink.error(unwrap(e));
+                return;
+            }
 
-            // Parse response
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                JsonNode root = objectMapper.readTree(response.getBody());
-                JsonNode candidates = root.path("candidates");
+            String url = baseUrl + model + ":streamGenerateContent?alt=sse&key=" + apiKey;
+            System.out.println("🌊 [STREAM] Starting streaming API Call");
 
-                if (candidates.isArray() && candidates.size() > 0) {
-                    JsonNode parts = candidates.get(0).path("content").path("parts");
-                    if (parts.isArray() && parts.size() > 0) {
-                        String text = parts.get(0).path("text").asText();
+            boolean overloaded = false;
+            try {
+                HttpRequest request = buildHttpRequest(url, prompt, readTimeoutMs);
+                HttpResponse<Stream<String>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
 
-                        // Create AssistantMessage from text
-                        AssistantMessage assistantMessage = new AssistantMessage(text);
-                        Generation generation = new Generation(assistantMessage);
-                        return new ChatResponse(List.of(generation));
+                try (Stream<String> lines = response.body()) {
+                    if (response.statusCode() != 200) {
+                        String body = lines.collect(Collectors.joining("\n"));
+                        throw new IOException(response.statusCode() + " " + body);
+                    }
+
+                    Iterator<String> iterator = lines.iterator();
+                    // Mỗi sự kiện SSE là một dòng "data: {json}" chứa một đoạn câu trả lời
+                    while (!sink.isCancelled() && iterator.hasNext()) {
+                        String line = iterator.next();
+                        if (!line.startsWith("data:")) {
+                            continue;
+                        }
+                        String text = extractText(objectMapper.readTree(line.substring(5).trim()));
+                        if (text != null && !text.isEmpty()) {
+                            sink.next(new ChatResponse(List.of(new Generation(new AssistantMessage(text)))));
+                        }
                     }
                 }
+                circuitBreaker.recordSuccess();
+                sink.complete();
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                String errorMsg = String.valueOf(e.getMessage());
+                overloaded = isOverload(e);
+                if (overloaded) {
+                    circuitBreaker.recordFailure();
+                } else {
+                    circuitBreaker.recordIgnored();
+                }
+                System.err.println("⚠️ [STREAM] API Error: " + errorMsg);
+                sink.error(new RuntimeException("Error streaming from Gemini API: " + errorMsg, e));
+            } finally {
+                concurrencyLimiter.release(overloaded);
             }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
 
-            throw new RuntimeException("Failed to get valid response from Gemini");
+    private HttpRequest buildHttpRequest(String url, Prompt prompt, long timeoutMs) throws JsonProcessingException {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(timeoutMs))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        objectMapper.writeValueAsString(buildRequestBody(prompt)), StandardCharsets.UTF_8))
+                .build();
+    }
 
-        } catch (Exception e) {
-            // Re-throw để retry mechanism xử lý
-            throw new RuntimeException("Error calling Gemini API: " + e.getMessage(), e);
+    /**
+     * Body request theo định dạng Gemini: mỗi message của prompt là một content
+     */
+    private Map<String, Object> buildRequestBody(Prompt prompt) {
+        Map<String, Object> requestBody = new HashMap<>();
+        List<Map<String, Object>> contents = new ArrayList<>();
+
+        // Add messages from prompt
+        prompt.getInstructions().forEach(message -> {
+            Map<String, Object> content = new HashMap<>();
+            Map<String, String> part = new HashMap<>();
+            part.put("text", message.getContent());
+            content.put("parts", List.of(part));
+            contents.add(content);
+        });
+
+        requestBody.put("contents", contents);
+        return requestBody;
+    }
+
+    /**
+     * Lấy text của candidate đầu tiên, null nếu response không có text
+     */
+    private String extractText(JsonNode root) {
+        JsonNode candidates = root.path("candidates");
+        if (candidates.isArray() && candidates.size() > 0) {
+            JsonNode parts = candidates.get(0).path("content").path("parts");
+            if (parts.isArray() && parts.size() > 0) {
+                return parts.get(0).path("text").asText();
+            }
         }
+        return null;
+    }
+
+    private static boolean isRetryable(String errorMsg) {
+        return errorMsg.contains("429") ||     // Too Many Requests
+               errorMsg.contains("503") ||     // Service Unavailable
+               errorMsg.contains("RESOURCE_EXHAUSTED") ||
+               errorMsg.contains("overloaded");
+    }
+
+    // Gemini báo quá tải / hết quota hoặc không trả lời kịp → giảm số request đồng thời
+    private static boolean isOverload(Throwable error) {
+        return error instanceof HttpTimeoutException || isRetryable(String.valueOf(error.getMessage()));
+    }
+
+    // Xác định loại lỗi để log cho rõ
+    private static String errorType(String errorMsg) {
+        if (errorMsg.contains("429")) return "429 Too Many Requests";
+        if (errorMsg.contains("503")) return "503 Service Unavailable";
+        if (errorMsg.contains("RESOURCE_EXHAUSTED")) return "Resource Exhausted";
+        if (errorMsg.contains("overloaded")) return "Server Overloaded";
+        return "Unknown";
+    }
+
+    /**
+     * ========== PARSE RETRY DELAY TỪ API RESPONSE ==========
+     * Google API trả về retry delay trong error message ("Please retry in XX.XXs")
+     */
+    private static long parseSuggestedDelay(String errorMsg, long defaultDelay, String callType) {
+        try {
+            if (errorMsg.contains("Please retry in")) {
+                String delayStr = errorMsg.substring(errorMsg.indexOf("Please retry in") + 16);
+                delayStr = delayStr.substring(0, delayStr.indexOf("s"));
+                double delaySec = Double.parseDouble(delayStr);
+                System.out.println("📌 " + callType + " Google suggests retry in: " + delaySec + "s");
+                return (long) (delaySec * 1000); // Convert to milliseconds
+            }
+        } catch (Exception parseError) {
+            // Nếu parse lỗi, dùng exponential backoff mặc định
+        }
+        return defaultDelay;
+    }
+
+    private static long remainingMillis(long deadline) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
     }
 
     @Override
     public ChatOptions getDefaultOptions() {
         return null;  // No specific options needed
     }
+
+    /**
+     * Trạng thái hủy của một lần call(): giữ future đang chờ (lượt của limiter hoặc HTTP exchange)
+     * để caller hết deadline thì hủy luôn phần việc bên trong, không chỉ future bên ngoài
+     */
+    static final class CallHandle {
+        private volatile boolean cancelled;
+        private volatile boolean deadlineExceeded;
+        private volatile Future<?> pending;
+
+        void track(Future<?> future) {
+            pending = future;
+            // cancel() chạy trước track(): hủy ngay future vừa đăng ký
+            if (cancelled) {
+                future.cancel(true);
+            }
+        }
+
+        void cancel(boolean deadline) {
+            deadlineExceeded = deadline;
+            cancelled = true;
+            Future<?> future = pending;
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        boolean isDeadlineExceeded() {
+            return deadlineExceeded;
+        }
+    }
+
+    /**
+     * Circuit breaker cho Gemini API
+     *
+     * - CLOSED: gọi bình thường, đếm lỗi 429/503/timeout liên tiếp
+     * - OPEN: đủ ngưỡng lỗi → từ chối ngay trong openMillis (không tốn thread, không tốn quota)
+     * - HALF-OPEN: hết openMillis → cho đúng 1 request thử; thành công thì đóng, lỗi thì mở lại
+     */
+    static final class CircuitBreaker {
+        private final int failureThreshold;
+        private final long openMillis;
+        private final LongSupplier clock;   // millis
+
+        private int consecutiveFailures;
+        private long openedAt = -1;       // -1: mạch đóng
+        private boolean probeInFlight;
+
+        CircuitBreaker(int failureThreshold, long openMillis) {
+            this(failureThreshold, openMillis, System::currentTimeMillis);
+        }
+
+        CircuitBreaker(int failureThreshold, long openMillis, LongSupplier clock) {
+            this.failureThreshold = failureThreshold;
+            this.openMillis = openMillis;
+            this.clock = clock;
+        }
+
+        synchronized boolean allowRequest() {
+            if (openedAt < 0) {
+                return true;
+            }
+            if (clock.getAsLong() - openedAt < openMillis || probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+            System.out.println("🟡 Gemini circuit breaker HALF-OPEN - sending probe request");
+            return true;
+        }
+
+        synchronized boolean isOpen() {
+            return openedAt >= 0 && !probeInFlight;
+        }
+
+        synchronized void recordSuccess() {
+            if (openedAt >= 0) {
+                System.out.println("🟢 Gemini circuit breaker CLOSED");
+            }
+            consecutiveFailures = 0;
+            openedAt = -1;
+            probeInFlight = false;
+        }
+
+        synchronized void recordFailure() {
+            consecutiveFailures++;
+            if (probeInFlight || (openedAt < 0 && consecutiveFailures >= failureThreshold)) {
+                openedAt = clock.getAsLong();
+                probeInFlight = false;
+                System.err.println("🔴 Gemini circuit breaker OPEN for " + openMillis + "ms after "
+                        + consecutiveFailures + " consecutive failures");
+            }
+        }
+
+        /**
+         * Lỗi không liên quan tới tải của Gemini (vd: 400) - không tính vào ngưỡng, chỉ giải phóng lượt thử
+         */
+        synchronized void recordIgnored() {
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * Giới hạn số request đồng thời tới Gemini theo AIMD (tăng cộng, giảm nhân)
+     *
+     * - Thành công: limit += 1/limit (khoảng +1 sau mỗi "vòng" limit request)
+     * - 429 / RESOURCE_EXHAUSTED / 503 / timeout: limit giảm một nửa (tối đa một lần mỗi DECREASE_COOLDOWN_MS,
+     *   vì các request đang bay cùng nhận 429 một lúc)
+     * - Hết lượt thì xếp hàng theo {@link LlmPriority} (cùng mức thì đến trước được trước);
+     *   chờ quá thời hạn → RejectedExecutionException để tầng service trả câu trả lời mẫu
+     */
+    static final class ConcurrencyLimiter {
+        private static final int MIN_LIMIT = 1;
+        private static final double BACKOFF_RATIO = 0.5;
+        private static final long DECREASE_COOLDOWN_MS = 1000;
+
+        private final int maxLimit;
+        private final LongSupplier clock;   // millis
+        private final DelayScheduler scheduler;
+        private double limit;
+        private int inFlight;
+        private long lastDecreaseAt;
+        private long sequence;
+        private final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+                Comparator.comparing(Waiter::priority).thenComparingLong(Waiter::sequence));
+
+        private record Waiter(LlmPriority priority, long sequence, CompletableFuture<Void> permit) {
+        }
+
+        /**
+         * Hẹn giờ hết hạn chờ của waiter
+         */
+        interface DelayScheduler {
+            void schedule(Runnable task, long delayMillis);
+        }
+
+        ConcurrencyLimiter(int initialLimit, int maxLimit) {
+            this(initialLimit, maxLimit, System::currentTimeMillis,
+                    (task, delayMillis) -> CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS).execute(task));
+        }
+
+        ConcurrencyLimiter(int initialLimit, int maxLimit, LongSupplier clock, DelayScheduler scheduler) {
+            this.maxLimit = Math.max(MIN_LIMIT, maxLimit);
+            this.limit = Math.max(MIN_LIMIT, Math.min(initialLimit, this.maxLimit));
+            this.clock = clock;
+            this.scheduler = scheduler;
+            // Lần giảm đầu tiên không bị cooldown chặn
+            this.lastDecreaseAt = clock.getAsLong() - DECREASE_COOLDOWN_MS;
+        }
+
+        synchronized int limit() {
+            return (int) limit;
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+
+        synchronized int queued() {
+            return queue.size();
+        }
+
+        /**
+         * @return future hoàn thành khi có lượt (phải gọi {@link #release} hoặc {@link #releaseCancelled}
+         *         đúng một lần sau đó); hủy future khi đang chờ thì rời hàng chờ
+         */
+        synchronized CompletableFuture<Void> acquire(LlmPriority priority, long maxWaitMillis) {
+            if (queue.isEmpty() && inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            if (maxWaitMillis <= 0) {
+                return CompletableFuture.failedFuture(shed(0));
+            }
+            Waiter waiter = new Waiter(priority, sequence++, new CompletableFuture<>());
+            queue.add(waiter);
+            scheduler.schedule(() -> expire(waiter, maxWaitMillis), maxWaitMillis);
+            waiter.permit().whenComplete((ignored, error) -> {
+                if (error instanceof CancellationException) {
+                    synchronized (this) {
+                        queue.remove(waiter);
+                    }
+                }
+            });
+            return waiter.permit();
+        }
+
+        void release(boolean overloaded) {
+            List<Waiter> granted;
+            synchronized (this) {
+                inFlight--;
+                long now = clock.getAsLong();
+                if (overloaded) {
+                    if (now - lastDecreaseAt >= DECREASE_COOLDOWN_MS) {
+                        limit = Math.max(MIN_LIMIT, limit * BACKOFF_RATIO);
+                        lastDecreaseAt = now;
+                        System.err.println("📉 Gemini concurrency limit decreased to " + (int) limit
+                                + " (in flight: " + inFlight + ", queued: " + queue.size() + ")");
+                    }
+                } else {
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+                granted = grantWaiters();
+            }
+            complete(granted);
+        }
+
+        /**
+         * Trả lượt của request không đi tới Gemini / bị caller bỏ giữa chừng: không phải tín hiệu tải, giữ nguyên limit
+         */
+        void releaseCancelled() {
+            List<Waiter> granted;
+            synchronized (this) {
+                inFlight--;
+                granted = grantWaiters();
+            }
+            complete(granted);
+        }
+
+        private List<Waiter> grantWaiters() {
+            List<Waiter> granted = new ArrayList<>();
+            while (!queue.isEmpty() && inFlight < (int) limit) {
+                granted.add(queue.poll());
+                inFlight++;
+            }
+            return granted;
+        }
+
+        private void complete(List<Waiter> granted) {
+            // Hoàn thành ngoài lock: các stage phía sau (gửi HTTP) chạy ngay trên thread này
+            for (Waiter waiter : granted) {
+                if (!waiter.permit().complete(null)) {
+                    // Waiter đã hết hạn / bị hủy: trả lại lượt mà không tính là request thành công
+                    releaseCancelled();
+                }
+            }
+        }
+
+        private void expire(Waiter waiter, long maxWaitMillis) {
+            boolean removed;
+            synchronized (this) {
+                removed = queue.remove(waiter);
+            }
+            if (removed) {
+                waiter.permit().completeExceptionally(shed(maxWaitMillis));
+            }
+        }
+
+        private RejectedExecutionException shed(long waitedMillis) {
+            return new RejectedExecutionException("Gemini concurrency limit reached - request shed after waiting "
+                    + waitedMillis + "ms");
+        }
+    }
 }
@@ -0,0 +1,81 @@
+package org.fit.shopnuochoa.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+/**
+ * Hibernate second-level cache (JCache, provider Caffeine) cho dữ liệu ít thay đổi mà trang nào cũng đọc
+ *
+ * - Entity: Product, Category, Coupon (READ_WRITE: ghi qua Hibernate tự cập nhật cache sau commit)
+ * - Collection Category.products, query cache cho danh sách danh mục / quốc gia / tra mã coupon
+ * - Mỗi region có giới hạn số phần tử + thời gian sống (an toàn khi DB bị sửa ngoài ứng dụng)
+ * - Region timestamps của query cache không được giới hạn / hết hạn (mất timestamp = query cache trả dữ liệu cũ)
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    public static final String PRODUCT_REGION = "product";
+    public static final String CATEGORY_REGION = "category";
+    public static final String CATEGORY_PRODUCTS_REGION = "category.products";
+    public static final String COUPON_REGION = "coupon";
+    public static final String CATALOG_QUERY_REGION = "catalog-queries";
+    public static final String DEFAULT_QUERY_REGION = "default-query-results-region";
+    public static final String TIMESTAMPS_REGION = "default-update-timestamps-region";
+
+    @Value("${hibernate.l2cache.product.max-size:20000}")
+    private long productMaxSize;
+
+    @Value("${hibernate.l2cache.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager() {
+        CachingProvider provider = Caching.getCachingProvider(CaffeineCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(provider.getDefaultURI(), getClass().getClassLoader());
+
+        Duration ttl = Duration.ofMinutes(ttlMinutes);
+        createCache(cacheManager, PRODUCT_REGION, productMaxSize, ttl);
+        createCache(cacheManager, CATEGORY_REGION, 1_000, ttl);
+        createCache(cacheManager, CATEGORY_PRODUCTS_REGION, 1_000, ttl);
+        createCache(cacheManager, COUPON_REGION, 2_000, ttl);
+        createCache(cacheManager, CATALOG_QUERY_REGION, 1_000, ttl);
+        createCache(cacheManager, DEFAULT_QUERY_REGION, 1_000, ttl);
+        createCache(cacheManager, TIMESTAMPS_REGION, 0, null);
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheManagerCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+    }
+
+    /**
+     * @param maxSize 0 = không giới hạn
+     * @param ttl     null = không hết hạn
+     */
+    private static void createCache(CacheManager cacheManager, String region, long maxSize, Duration ttl) {
+        if (cacheManager.getCache(region) != null) {
+            return;
+        }
+        CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+        if (maxSize > 0) {
+            configuration.setMaximumSize(OptionalLong.of(maxSize));
+        }
+        if (ttl != null) {
+            configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+        }
+        configuration.setStatisticsEnabled(true);
+        cacheManager.createCache(region, configuration);
+    }
+}
@@ -0,0 +1,57 @@
+package org.fit.shopnuochoa.config;
+
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Độ ưu tiên của request gọi Gemini khi phải xếp hàng chờ lượt (khai báo theo thứ tự ưu tiên giảm dần)
+ *
+ * - Gọi đồng bộ (call): đặt bằng {@link #callWith} trên thread của request
+ * - Streaming: đặt vào Reactor Context bằng {@link #asContext()} (thread chạy stream khác thread request)
+ */
+public enum LlmPriority {
+    CART_WITH_ITEMS,   // Khách đang có hàng trong giỏ - sắp mua
+    CUSTOMER,          // Khách đã đăng nhập
+    ANONYMOUS;         // Khách vãng lai
+
+    private static final String CONTEXT_KEY = LlmPriority.class.getName();
+    private static final ThreadLocal<LlmPriority> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Chạy work với độ ưu tiên này trên thread hiện tại
+     */
+    public <T> T callWith(Callable<T> work) throws Exception {
+        LlmPriority previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return work.call();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    public Context asContext() {
+        return Context.of(CONTEXT_KEY, this);
+    }
+
+    /**
+     * Độ ưu tiên của thread hiện tại, mặc định {@link #ANONYMOUS}
+     */
+    public static LlmPriority current() {
+        LlmPriority priority = CURRENT.get();
+        return priority != null ? priority : ANONYMOUS;
+    }
+
+    /**
+     * Độ ưu tiên trong Reactor Context, nếu không có thì lấy theo thread hiện tại
+     */
+    public static LlmPriority from(ContextView context) {
+        return context.getOrDefault(CONTEXT_KEY, current());
+    }
+}
@@ -1,5 +1,6 @@
 package org.fit.shopnuochoa.controller;
 
+import org.fit.shopnuochoa.dto.KeysetSlice;
 import org.fit.shopnuochoa.model.Comment;
 import org.fit.shopnuochoa.model.Users;
 import org.fit.shopnuochoa.service.CommentService;
@@ -158,7 +159,7 @@ public class CommentController {
      */
     @GetMapping("/admin")
     @PreAuthorize("hasAnyRole('ADMIN')")
-    public String showAdminCommentList(@RequestParam(defaultValue = "0") int page,
+    public String showAdminCommentList(@RequestParam(required = false) String cursor,
                                        @RequestParam(defaultValue = "10") int size,
                                        @RequestParam(value = "action", required = false) String action,
                                        @RequestParam(value = "id", required = false) Integer id,
@@ -170,10 +171,11 @@ public class CommentController {
             return "redirect:/api/comments/admin";
         }
 
-        Pageable pageable = PageRequest.of(page, size);
-        Page<Comment> commentPage = commentService.getAll(pageable);
+        // Phân trang keyset theo id (mới nhất trước), không COUNT(*)
+        KeysetSlice<Comment> commentSlice = commentService.getAllAfter(cursor, size);
 
-        model.addAttribute("commentPage", commentPage);
+        model.addAttribute("comments", commentSlice.content());
+        KeysetPaginationModel.addAttributes(model, commentSlice, cursor);
 
         // Trả về file admin-comment.html
         return "screen/admin/admin-comment";
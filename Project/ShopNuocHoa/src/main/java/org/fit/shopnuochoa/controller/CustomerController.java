@@ -1,10 +1,8 @@
 package org.fit.shopnuochoa.controller;
 
+import org.fit.shopnuochoa.dto.KeysetSlice;
 import org.fit.shopnuochoa.model.Customer;
 import org.fit.shopnuochoa.service.CustomerService;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -26,10 +24,9 @@ public class CustomerController {
     @GetMapping("/list")
     public String showCategoryList(@RequestParam(value = "action", required = false) String action,
                                    @RequestParam(value = "id", required = false) Integer id,
-                                   @RequestParam(defaultValue = "0") int page,
+                                   @RequestParam(required = false) String cursor,
                                    @RequestParam(defaultValue = "4") int size,
                                    Model model) {
-        Pageable pageable = PageRequest.of(page, size);
         // Xử lý hành động xóa nếu có
         if ("delete".equals(action) && id != null) {
             customerService.deleteCustomer(id); // Gọi service để xóa
@@ -37,8 +34,10 @@ public class CustomerController {
         }
 
         // Lấy danh sách tất cả phòng ban để hiển thị
-        Page<Customer> customers = customerService.getAll(pageable);
-        model.addAttribute("customers", customers);
+        // Phân trang keyset theo id, không COUNT(*)
+        KeysetSlice<Customer> customers = customerService.getAllAfter(cursor, size);
+        model.addAttribute("customers", customers.content());
+        KeysetPaginationModel.addAttributes(model, customers, cursor);
         return "screen/admin/admin-customer-list"; // Trả về file view department-list.html
     }
 
@@ -1,6 +1,7 @@
 package org.fit.shopnuochoa.controller;
 
 import org.fit.shopnuochoa.Enum.Role;
+import org.fit.shopnuochoa.dto.KeysetSlice;
 import org.fit.shopnuochoa.model.Customer;
 import org.fit.shopnuochoa.model.Orders;
 import org.fit.shopnuochoa.model.Users;
@@ -9,9 +10,6 @@ import org.fit.shopnuochoa.service.CustomerService;
 import org.fit.shopnuochoa.service.OrderService;
 import org.fit.shopnuochoa.service.ProductService;
 import org.fit.shopnuochoa.service.UserService;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
@@ -113,11 +111,11 @@ public class DashboardController {
     @GetMapping
     @PreAuthorize("hasAnyRole('ADMIN')")
     public String showOrders(Model model,
-                             @RequestParam(defaultValue = "0") int page) {
+                             @RequestParam(required = false) String cursor) {
 
         int pageSize = 5;
-        PageRequest pageable = PageRequest.of(page, pageSize, Sort.by("date").descending());
-        Page<Orders> ordersPage = ordersRepository.findAll(pageable);
+        // Phân trang keyset (date, id): không OFFSET / COUNT(*) trên bảng orders
+        KeysetSlice<Orders> ordersSlice = orderService.findAllAfter(cursor, pageSize);
 
         // Đếm user theo role
         long totalCustomers = userService.countByRole(Role.CUSTOMER);
@@ -160,8 +158,8 @@ public class DashboardController {
         model.addAttribute("totalUsers", totalUsers);
         model.addAttribute("totalCustomers", totalCustomers);
         model.addAttribute("totalAdmins", totalAdmins);
-        model.addAttribute("ordersPage", ordersPage);
-        model.addAttribute("orders", ordersPage.getContent());
+        model.addAttribute("orders", ordersSlice.content());
+        KeysetPaginationModel.addAttributes(model, ordersSlice, cursor);
         model.addAttribute("totalProducts", totalProducts);
 
         return "screen/admin/admin_dashboard";
@@ -1,7 +1,7 @@
 package org.fit.shopnuochoa.controller;
 
+import org.fit.shopnuochoa.dto.ProductCard;
 import org.fit.shopnuochoa.model.Category;
-import org.fit.shopnuochoa.model.Product;
 import org.fit.shopnuochoa.service.CategoryService;
 import org.fit.shopnuochoa.service.ProductService;
 import org.springframework.data.domain.PageRequest;
@@ -36,13 +36,13 @@ public class HomeController {
 
         // 2. Lấy Sản phẩm MỚI NHẤT (Sắp xếp theo ID giảm dần, lấy 8 sản phẩm)
         Pageable pageableNewest = PageRequest.of(0, 8, Sort.by("id").descending());
-        List<Product> newProducts = productService.getAll(pageableNewest).getContent();
+        List<ProductCard> newProducts = productService.getActiveCards(pageableNewest);
         model.addAttribute("newProducts", newProducts);
 
         // 3. Lấy Sản phẩm BÁN CHẠY (Sắp xếp theo ratingCount giảm dần)
         // Dùng 'ratingCount' để đồng bộ với logic trong ProductController
         Pageable pageableBestSelling = PageRequest.of(0, 8, Sort.by("ratingCount").descending());
-        List<Product> bestSellingProducts = productService.getAll(pageableBestSelling).getContent();
+        List<ProductCard> bestSellingProducts = productService.getActiveCards(pageableBestSelling);
         model.addAttribute("bestSellingProducts", bestSellingProducts);
 
         return "screen/customer/home";
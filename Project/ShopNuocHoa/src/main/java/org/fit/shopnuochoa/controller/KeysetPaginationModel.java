@@ -0,0 +1,21 @@
+package org.fit.shopnuochoa.controller;
+
+import org.fit.shopnuochoa.component.KeysetCursor;
+import org.fit.shopnuochoa.dto.KeysetSlice;
+import org.springframework.ui.Model;
+
+/**
+ * Thuộc tính model cho fragment phân trang keyset (fragment/keyset-pagination :: nav)
+ */
+final class KeysetPaginationModel {
+
+    private KeysetPaginationModel() {
+    }
+
+    static void addAttributes(Model model, KeysetSlice<?> slice, String cursor) {
+        model.addAttribute("keysetMode", true);
+        model.addAttribute("firstPage", KeysetCursor.decode(cursor) == null);
+        model.addAttribute("nextCursor", slice.nextCursor());
+        model.addAttribute("approximateTotal", slice.approximateTotal());
+    }
+}
@@ -1,6 +1,7 @@
 package org.fit.shopnuochoa.controller;
 
 import org.fit.shopnuochoa.component.SecurityUtils;
+import org.fit.shopnuochoa.dto.KeysetSlice;
 import org.fit.shopnuochoa.model.Customer;
 import org.fit.shopnuochoa.model.OrderLine;
 import org.fit.shopnuochoa.model.Orders;
@@ -51,20 +52,24 @@ public class OrderController {
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "5") int size,
             @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String cursor,
             Model model,
             Authentication authentication) {
 
         Pageable pageable = PageRequest.of(page, size);
-        Page<Orders> ordersPage;
+        Page<Orders> ordersPage = null;
+        KeysetSlice<Orders> ordersSlice = null;
 
         boolean isAdmin = authentication.getAuthorities().stream()
                 .anyMatch(r -> r.getAuthority().equals("ROLE_ADMIN"));
 
         if (isAdmin) {
             if (keyword != null && !keyword.trim().isEmpty()) {
+                // Tìm theo tên (LIKE) vẫn phân trang OFFSET có đánh số trang
                 ordersPage = orderService.searchByCustomerNameOrUsername(keyword.trim(), pageable);
             } else {
-                ordersPage = orderService.findAll(pageable);
+                // Phân trang keyset: trang sau tốn như trang đầu, không COUNT(*) trên bảng orders
+                ordersSlice = orderService.findAllAfter(cursor, size);
             }
         } else {
             //Customer xem đơn hàng của chính họ
@@ -81,11 +86,11 @@ public class OrderController {
                 return "error/404";
             }
 
-            ordersPage = orderService.findByCustomer(customer.getId(), pageable);
+            ordersSlice = orderService.findByCustomerAfter(customer.getId(), cursor, size);
         }
 
         // Lấy danh sách các đơn hàng ở trang hiện tại
-        List<Orders> ordersOnPage = ordersPage.getContent();
+        List<Orders> ordersOnPage = ordersSlice != null ? ordersSlice.content() : ordersPage.getContent();
 
         // Tạo Map<Integer, List<OrderLine>> mà HTML cần
         // (Giả sử bạn có hàm 'findAllByOrderId' trong OrderLineService)
@@ -98,10 +103,14 @@ public class OrderController {
         // Thêm Map này vào model
         model.addAttribute("orderLinesByOrder", orderLinesMap);
         // Truyền danh sách đơn hàng sang view
-        model.addAttribute("orders", ordersPage.getContent());
-        model.addAttribute("ordersPage", ordersPage);
-        model.addAttribute("currentPage", page);
-        model.addAttribute("totalPages", ordersPage.getTotalPages());
+        model.addAttribute("orders", ordersOnPage);
+        if (ordersSlice != null) {
+            KeysetPaginationModel.addAttributes(model, ordersSlice, cursor);
+        } else {
+            model.addAttribute("ordersPage", ordersPage);
+            model.addAttribute("currentPage", page);
+            model.addAttribute("totalPages", ordersPage.getTotalPages());
+        }
         model.addAttribute("keyword", keyword);
 
         return isAdmin
@@ -119,5 +128,4 @@ public class OrderController {
         }
         return "redirect:/api/orders/list";
     }
-
 }
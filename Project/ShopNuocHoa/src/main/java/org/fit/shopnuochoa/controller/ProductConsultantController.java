@@ -1,16 +1,27 @@
 package org.fit.shopnuochoa.controller;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.fit.shopnuochoa.config.LlmPriority;
 import org.fit.shopnuochoa.dto.ChatRequest;
 import org.fit.shopnuochoa.dto.ChatResponse;
+import org.fit.shopnuochoa.model.CartBean;
 import org.fit.shopnuochoa.model.Product;
+import org.fit.shopnuochoa.service.ConsultantResponseCache;
 import org.fit.shopnuochoa.service.ProductConsultantService;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @RestController
@@ -20,6 +31,10 @@ import java.util.stream.Collectors;
 public class ProductConsultantController {
 
     private final ProductConsultantService consultantService;
+    private final ConsultantResponseCache responseCache;
+
+    // Thời gian tối đa giữ kết nối SSE (đủ cho một câu trả lời dài của LLM)
+    private static final long STREAM_TIMEOUT_MS = 120_000;
 
     /**
      * Main chat endpoint - Hybrid LLM + Filter + RAG với Rate Limiting & Caching
@@ -31,28 +46,20 @@ public class ProductConsultantController {
     @PostMapping("/chat")
     public ResponseEntity<ChatResponse> chat(
             @RequestBody ChatRequest request,
-            HttpServletRequest httpRequest) {
+            HttpServletRequest httpRequest,
+            Authentication authentication) {
         try {
-            // ========== LẤY USER ID TỪ SESSION ==========
-            // Sử dụng session ID làm user identifier cho rate limiting
-            String userId = httpRequest.getSession().getId();
-
-            // Nếu không có session, dùng IP address
-            if (userId == null || userId.isEmpty()) {
-                userId = httpRequest.getRemoteAddr();
-            }
-
-            log.info("📨 Chat request from user: {} (session: {})", userId, httpRequest.getSession().getId());
+            String userId = resolveUserId(httpRequest);
+            LlmPriority priority = resolvePriority(httpRequest, authentication);
+            log.info("📨 Chat request from user: {} (priority: {})", userId, priority);
 
             // ========== GỌI SERVICE VỚI USER ID ==========
-            ProductConsultantService.ConsultationResult result =
-                consultantService.consultProductWithDetails(request.getMessage(), userId);
+            // Độ ưu tiên dùng khi phải xếp hàng chờ lượt gọi Gemini
+            ProductConsultantService.ConsultationResult result = priority.callWith(() ->
+                consultantService.consultProductWithDetails(request.getMessage(), userId));
 
             // Convert products to DTOs (limit to 3)
-            List<ChatResponse.ProductCardDTO> productDTOs = result.getProducts().stream()
-                .limit(3)
-                .map(this::convertToProductCard)
-                .collect(Collectors.toList());
+            List<ChatResponse.ProductCardDTO> productDTOs = toProductCards(result.getProducts());
 
             return ResponseEntity.ok(new ChatResponse(result.getResponse(), productDTOs));
 
@@ -74,6 +81,117 @@ public class ProductConsultantController {
         }
     }
 
+    /**
+     * Streaming chat endpoint (Server-Sent Events)
+     *
+     * Thứ tự sự kiện:
+     * - "products": danh sách product card (gửi ngay sau khi lọc xong)
+     * - "token": từng đoạn câu trả lời {"text": "..."} khi LLM sinh ra
+     * - "done": kết thúc stream
+     * - "error": lỗi giữa chừng (client giữ phần đã nhận)
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(
+            @RequestBody ChatRequest request,
+            HttpServletRequest httpRequest,
+            Authentication authentication) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        String userId = resolveUserId(httpRequest);
+        LlmPriority priority = resolvePriority(httpRequest, authentication);
+        log.info("📨 Streaming chat request from user: {} (priority: {})", userId, priority);
+
+        try {
+            ProductConsultantService.StreamingConsultation consultation =
+                consultantService.consultProductStreaming(request.getMessage(), userId);
+
+            // Product cards gửi trước để giao diện hiển thị ngay
+            emitter.send(SseEmitter.event().name("products").data(toProductCards(consultation.getProducts())));
+
+            Disposable subscription = consultation.getTokens().contextWrite(priority.asContext()).subscribe(
+                token -> {
+                    try {
+                        emitter.send(SseEmitter.event().name("token").data(Map.of("text", token)));
+                    } catch (IOException e) {
+                        // Client đã đóng kết nối
+                        throw new IllegalStateException("Client disconnected", e);
+                    }
+                },
+                error -> {
+                    log.warn("⚠️ Streaming stopped: {}", error.getMessage());
+                    try {
+                        emitter.send(SseEmitter.event().name("error").data(Map.of("message", "stream interrupted")));
+                    } catch (IOException ignored) {
+                        // Client đã đóng kết nối
+                    }
+                    emitter.complete();
+                },
+                () -> {
+                    try {
+                        emitter.send(SseEmitter.event().name("done").data(""));
+                    } catch (IOException ignored) {
+                        // Client đã đóng kết nối
+                    }
+                    emitter.complete();
+                });
+
+            // Client đóng tab / timeout → hủy luôn request tới Gemini
+            emitter.onCompletion(subscription::dispose);
+            emitter.onTimeout(subscription::dispose);
+            emitter.onError(e -> subscription.dispose());
+
+        } catch (Exception e) {
+            log.error("❌ Error in streaming consultation: {}", e.getMessage(), e);
+            emitter.completeWithError(e);
+        }
+        return emitter;
+    }
+
+    /**
+     * Thống kê cache câu trả lời (hit / miss / eviction) - chỉ dành cho admin
+     */
+    @GetMapping("/cache/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        return ResponseEntity.ok(responseCache.statistics());
+    }
+
+    /**
+     * Độ ưu tiên gọi Gemini: giỏ hàng có sản phẩm > đã đăng nhập > khách vãng lai
+     */
+    private LlmPriority resolvePriority(HttpServletRequest httpRequest, Authentication authentication) {
+        HttpSession session = httpRequest.getSession(false);
+        if (session != null && session.getAttribute("cart") instanceof CartBean cart && !cart.getItems().isEmpty()) {
+            return LlmPriority.CART_WITH_ITEMS;
+        }
+        if (authentication != null && authentication.isAuthenticated()) {
+            return LlmPriority.CUSTOMER;
+        }
+        return LlmPriority.ANONYMOUS;
+    }
+
+    /**
+     * User identifier cho rate limiting: session ID nếu đã có session, nếu không thì IP address.
+     * Dùng getSession(false) để không tạo session mới cho mỗi khách vãng lai;
+     * cookie session giả / hết hạn không có session tương ứng nên rơi về IP (không né được giới hạn).
+     */
+    private String resolveUserId(HttpServletRequest httpRequest) {
+        HttpSession session = httpRequest.getSession(false);
+        if (session != null) {
+            return "session:" + session.getId();
+        }
+        return "ip:" + httpRequest.getRemoteAddr();
+    }
+
+    /**
+     * Convert products to DTOs (limit to 3)
+     */
+    private List<ChatResponse.ProductCardDTO> toProductCards(List<Product> products) {
+        return products.stream()
+            .limit(3)
+            .map(this::convertToProductCard)
+            .collect(Collectors.toList());
+    }
+
     /**
      * Convert Product entity to ProductCardDTO
      */
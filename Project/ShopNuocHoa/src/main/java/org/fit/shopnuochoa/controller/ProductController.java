@@ -10,7 +10,9 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.fit.shopnuochoa.Enum.Gender;
 import org.fit.shopnuochoa.Enum.Volume;
 import org.fit.shopnuochoa.component.SecurityUtils;
+import org.fit.shopnuochoa.dto.ProductCard;
 import org.fit.shopnuochoa.dto.ProductImportDTO;
+import org.fit.shopnuochoa.dto.ProductSuggestion;
 import org.fit.shopnuochoa.model.Category;
 import org.fit.shopnuochoa.model.Comment;
 import org.fit.shopnuochoa.model.Product;
@@ -46,19 +48,25 @@ public class ProductController {
     private CommentService commentService;
     private WishlistService wishlistService;
     private UserService userService;
+    private ProductAutocompleteService autocompleteService;
+    private ProductFacetService facetService;
 
     public ProductController(ProductService productService,
                              CategoryService categoryService,
                              CommentService commentService,
                              SecurityUtils securityUtils,
                              WishlistService wishlistService,
-                             UserService userService) {
+                             UserService userService,
+                             ProductAutocompleteService autocompleteService,
+                             ProductFacetService facetService) {
         this.productService = productService;
         this.categoryService = categoryService;
         this.commentService = commentService;
         this.securityUtils = securityUtils;
         this.wishlistService = wishlistService;
         this.userService=userService;
+        this.autocompleteService = autocompleteService;
+        this.facetService = facetService;
     }
 
     @GetMapping("/list")
@@ -71,7 +79,7 @@ public class ProductController {
             @RequestParam(value = "gender", required = false) Gender gender,
             @RequestParam(value = "volume", required = false) Volume volume,
             @RequestParam(value = "rating", required = false) Double rating,
-            @RequestParam(value = "sort", required = false, defaultValue = "newest") String sort,
+            @RequestParam(value = "sort", required = false) String sort,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "6") int size,
             Model model,
@@ -82,19 +90,18 @@ public class ProductController {
         model.addAttribute("listCountryName", countryName);
         model.addAttribute("categories", categories);
 
-        Sort sortOption = switch (sort) {
-            case "priceDesc" -> Sort.by("price").descending();
-            case "priceAsc" -> Sort.by("price").ascending();
-            case "bestseller" -> Sort.by("ratingCount").descending();
-            default -> Sort.by("id").descending();
-        };
-        Pageable pageable = PageRequest.of(page, size, sortOption);
+        sort = resolveSort(sort, keyword);
+        Pageable pageable = PageRequest.of(page, size, toSort(sort));
 
-        Page<Product> productPage = productService.searchProducts(
+        Page<ProductCard> productPage = productService.searchProducts(
                 keyword, categoryId, price, maxPrice, countries, volume, gender, rating, pageable
         );
 
         model.addAttribute("productPage", productPage);
+        // Số lượng theo từng bộ lọc cho sidebar (bitmap trong RAM, không COUNT từng giá trị)
+        model.addAttribute("facets", facetService.count(
+                keyword, categoryId, price, maxPrice, countries, volume, gender, rating
+        ));
         model.addAttribute("keyword", keyword);
         model.addAttribute("categoryId", categoryId);
         model.addAttribute("price", price);
@@ -124,23 +131,21 @@ public class ProductController {
             @RequestParam(value = "volume", required = false) Volume volume,
             @RequestParam(value = "rating", required = false) Double rating,
             @RequestParam(value = "country", required = false) List<String> countries,
-            @RequestParam(value = "sort", required = false, defaultValue = "newest") String sort,
+            @RequestParam(value = "sort", required = false) String sort,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "6") int size,
             Model model) {
 
-        Sort sortOption = switch (sort) {
-            case "priceDesc" -> Sort.by("price").descending();
-            case "priceAsc" -> Sort.by("price").ascending();
-            case "bestseller" -> Sort.by("ratingCount").descending();
-            default -> Sort.by("id").descending();
-        };
-        Pageable pageable = PageRequest.of(page, size, sortOption);
+        sort = resolveSort(sort, keyword);
+        Pageable pageable = PageRequest.of(page, size, toSort(sort));
 
-        Page<Product> productPage = productService.searchProducts(
+        Page<ProductCard> productPage = productService.searchProducts(
                 keyword, categoryId, price, maxPrice, countries, volume, gender, rating, pageable
         );
         model.addAttribute("productPage", productPage);
+        model.addAttribute("facets", facetService.count(
+                keyword, categoryId, price, maxPrice, countries, volume, gender, rating
+        ));
         model.addAttribute("categoryId", categoryId);
         model.addAttribute("price", price);
         model.addAttribute("country", countries);
@@ -151,6 +156,35 @@ public class ProductController {
         return "fragment/product-ajax :: ajaxUpdate";
     }
 
+    /**
+     * Có từ khóa thì mặc định xếp theo độ liên quan; "relevance" không có từ khóa thì về "newest"
+     */
+    private static String resolveSort(String sort, String keyword) {
+        boolean hasKeyword = keyword != null && !keyword.isBlank();
+        if (sort == null || sort.isBlank()) {
+            return hasKeyword ? "relevance" : "newest";
+        }
+        return "relevance".equals(sort) && !hasKeyword ? "newest" : sort;
+    }
+
+    private static Sort toSort(String sort) {
+        return switch (sort) {
+            case "priceDesc" -> Sort.by("price").descending();
+            case "priceAsc" -> Sort.by("price").ascending();
+            case "bestseller" -> Sort.by("ratingCount").descending();
+            case "relevance" -> Sort.unsorted(); // Theo điểm BM25 của từ khóa
+            default -> Sort.by("id").descending();
+        };
+    }
+
+    // Gợi ý khi gõ ô tìm kiếm (trie trong bộ nhớ, không truy vấn DB)
+    @GetMapping("/suggest")
+    @ResponseBody
+    public List<ProductSuggestion> suggest(@RequestParam(value = "q", required = false) String query,
+                                           @RequestParam(defaultValue = "8") int limit) {
+        return autocompleteService.suggest(query, limit);
+    }
+
     @GetMapping("/form")
     @PreAuthorize("hasAnyRole('ADMIN')")
     public String showEmployeeForm(@RequestParam(value = "action", required = false, defaultValue = "add") String action,
@@ -289,7 +323,7 @@ public class ProductController {
                 product.setFavorite(false);
             }
 
-            List<Product> similarProducts = productService.findSimilarProducts(
+            List<ProductCard> similarProducts = productService.findSimilarProducts(
                     product.getCategory().getId(), id);
             model.addAttribute("similarProducts", similarProducts);
         }
@@ -1,15 +1,18 @@
 package org.fit.shopnuochoa.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.fit.shopnuochoa.service.EntityCacheService;
 import org.fit.shopnuochoa.service.OrderService;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 @Controller
 @RequiredArgsConstructor
@@ -17,6 +20,7 @@ import java.util.List;
 public class StatisticsController {
 
     private final OrderService orderService;
+    private final EntityCacheService entityCacheService;
 
     @GetMapping("/statistics")
     @PreAuthorize("hasAnyRole('ADMIN')")
@@ -42,4 +46,14 @@ public class StatisticsController {
 
         return "screen/admin/admin-statistics";
     }
-}
\ No newline at end of file
+
+    /**
+     * Thống kê Hibernate second-level cache (hit / miss theo region)
+     */
+    @GetMapping("/cache/stats")
+    @PreAuthorize("hasAnyRole('ADMIN')")
+    @ResponseBody
+    public Map<String, Object> cacheStats() {
+        return entityCacheService.statistics();
+    }
+}
@@ -1,6 +1,6 @@
 package org.fit.shopnuochoa.controller;
 
-import org.fit.shopnuochoa.model.Wishlist;
+import org.fit.shopnuochoa.dto.ProductCard;
 import org.fit.shopnuochoa.service.WishlistService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -58,7 +58,7 @@ public class WishlistController {
         }
 
         // 3. Lấy danh sách
-        List<Wishlist> wishlistItems = wishlistService.getWishlistByCustomerId(customerId);
+        List<ProductCard> wishlistItems = wishlistService.getWishlistCards(customerId);
         model.addAttribute("wishlistItems", wishlistItems);
 
         return "screen/customer/wishlist"; // Trả về view HTML
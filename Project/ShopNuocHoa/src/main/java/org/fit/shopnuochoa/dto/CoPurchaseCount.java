@@ -0,0 +1,5 @@
+package org.fit.shopnuochoa.dto;
+
+// Số đơn hàng có cùng lúc 2 sản phẩm (productId < otherProductId)
+public record CoPurchaseCount(Integer productId, Integer otherProductId, Long orders) {
+}
@@ -0,0 +1,23 @@
+package org.fit.shopnuochoa.dto;
+
+import org.fit.shopnuochoa.component.KeysetCursor;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+import java.util.function.Function;
+
+// Một trang phân trang keyset: không đánh số trang, không COUNT(*); nextCursor = null là trang cuối, approximateTotal có thể null
+public record KeysetSlice<T>(List<T> content, String nextCursor, Long approximateTotal) {
+
+    public static <T> KeysetSlice<T> of(Slice<T> slice, Function<T, KeysetCursor> cursorOf, Long approximateTotal) {
+        List<T> content = slice.getContent();
+        String nextCursor = slice.hasNext() && !content.isEmpty()
+                ? cursorOf.apply(content.get(content.size() - 1)).encode()
+                : null;
+        return new KeysetSlice<>(content, nextCursor, approximateTotal);
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,54 @@
+package org.fit.shopnuochoa.dto;
+
+import lombok.Getter;
+import org.fit.shopnuochoa.model.Product;
+
+/**
+ * Dữ liệu thẻ sản phẩm cho các trang danh sách (storefront, trang chủ, sản phẩm tương tự, yêu thích)
+ *
+ * - Nạp bằng 1 câu JPQL constructor expression JOIN category (xem ProductRepository.PRODUCT_CARD_SELECT):
+ *   không kéo cột mô tả (@Lob), không lazy-load category từng thẻ
+ * - Tên getter giống entity Product để các fragment Thymeleaf dùng chung
+ */
+@Getter
+public class ProductCard {
+
+    private final Integer id;
+    private final String name;
+    private final Double price;
+    private final String imageUrl;
+    private final String brandName;
+    private final Double averageRating;
+    private final Integer ratingCount;
+    private final Boolean hotTrend;
+    private final boolean inStock;
+
+    public ProductCard(Integer id, String name, Double price, String imageUrl, String brandName,
+                       Double averageRating, Integer ratingCount, Boolean hotTrend, Boolean inStock) {
+        this.id = id;
+        this.name = name;
+        this.price = price;
+        this.imageUrl = imageUrl;
+        this.brandName = brandName;
+        this.averageRating = averageRating;
+        this.ratingCount = ratingCount;
+        this.hotTrend = hotTrend;
+        this.inStock = Boolean.TRUE.equals(inStock);
+    }
+
+    /**
+     * Từ entity đã nạp sẵn category (vd snapshot catalog), không phát sinh query
+     */
+    public static ProductCard from(Product product) {
+        return new ProductCard(product.getId(), product.getName(), product.getPrice(), product.getImageUrl(),
+                product.getCategory() != null ? product.getCategory().getName() : null,
+                product.getAverageRating(), product.getRatingCount(), product.getHotTrend(), product.isInStock());
+    }
+
+    public String getImagePath() {
+        if (imageUrl == null || imageUrl.isEmpty()) {
+            return "/images/default-product.jpg";
+        }
+        return imageUrl;
+    }
+}
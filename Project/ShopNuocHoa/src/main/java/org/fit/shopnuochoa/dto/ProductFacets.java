@@ -0,0 +1,19 @@
+package org.fit.shopnuochoa.dto;
+
+import java.util.List;
+import java.util.Map;
+
+// Số sản phẩm theo từng giá trị bộ lọc của trang danh sách (đếm với mọi bộ lọc khác đang chọn, trừ chính nó)
+// Khóa: id danh mục, tên quốc gia, tên enum Gender / Volume, số sao tối thiểu; giá trị không có sản phẩm nào có thể vắng mặt
+public record ProductFacets(int total,
+                            Map<Integer, Integer> categories,
+                            Map<String, Integer> countries,
+                            Map<String, Integer> genders,
+                            Map<String, Integer> volumes,
+                            Map<Integer, Integer> ratings,
+                            List<PriceBucket> priceBuckets) {
+
+    // Khoảng giá [from, to); from / to null = không chặn phía đó
+    public record PriceBucket(int index, Double from, Double to, int count) {
+    }
+}
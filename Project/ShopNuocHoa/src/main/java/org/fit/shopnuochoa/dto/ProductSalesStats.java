@@ -0,0 +1,7 @@
+package org.fit.shopnuochoa.dto;
+
+import java.math.BigDecimal;
+
+// DTO nhận kết quả gom nhóm OrderLine theo sản phẩm (số lượng đã bán, doanh thu)
+public record ProductSalesStats(Integer productId, Long totalSold, BigDecimal totalRevenue) {
+}
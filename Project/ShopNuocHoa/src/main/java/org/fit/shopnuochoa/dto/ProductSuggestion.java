@@ -0,0 +1,5 @@
+package org.fit.shopnuochoa.dto;
+
+// Gợi ý tìm kiếm khi gõ: type = PRODUCT (id sản phẩm) hoặc BRAND (id danh mục / thương hiệu)
+public record ProductSuggestion(String type, Integer id, String label, Double price, String imageUrl) {
+}
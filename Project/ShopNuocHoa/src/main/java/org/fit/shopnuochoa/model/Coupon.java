@@ -3,12 +3,17 @@ package org.fit.shopnuochoa.model;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.*; // [IMPORT QUAN TRỌNG]
 import lombok.*;
+import org.fit.shopnuochoa.config.HibernateCacheConfig;
 import org.fit.shopnuochoa.service.OrderService;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCacheConfig.COUPON_REGION)
 @Table(name = "coupons")
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 @DiscriminatorColumn(name = "coupon_type", discriminatorType = DiscriminatorType.STRING)
@@ -11,7 +11,11 @@
     import java.util.Set;
 
     @Entity
-    @Table(name = "orders")
+    @Table(name = "orders", indexes = {
+            // Phân trang keyset (xem OrdersRepository.findSliceAfter / findSliceByCustomerAfter)
+            @Index(name = "idx_orders_date_id", columnList = "date, id"),
+            @Index(name = "idx_orders_customer_date_id", columnList = "customer_id, date, id")
+    })
     @Getter
     @Setter
     @NoArgsConstructor
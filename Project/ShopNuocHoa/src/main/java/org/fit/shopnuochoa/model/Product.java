@@ -6,12 +6,25 @@ import jakarta.validation.constraints.*; // [IMPORT QUAN TRỌNG]
 import lombok.*;
 import org.fit.shopnuochoa.Enum.Gender;
 import org.fit.shopnuochoa.Enum.Volume;
+import org.fit.shopnuochoa.config.HibernateCacheConfig;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import java.util.List;
 import java.util.Set;
 
 @Entity
-@Table(name = "products")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCacheConfig.PRODUCT_REGION)
+@Table(name = "products", indexes = {
+        // Phục vụ truy vấn lọc của trợ lý tư vấn khi chạy ở chế độ database (xem ProductFilterEngine)
+        @Index(name = "idx_products_category_price", columnList = "category_id, deleted, price"),
+        @Index(name = "idx_products_gender_price", columnList = "gender, deleted, price"),
+        @Index(name = "idx_products_deleted_price", columnList = "deleted, price"),
+        @Index(name = "idx_products_deleted_rating", columnList = "deleted, average_rating"),
+        @Index(name = "idx_products_deleted_rating_count", columnList = "deleted, rating_count"),
+        @Index(name = "idx_products_hot_trend", columnList = "hot_trend, deleted, rating_count")
+})
 @Getter
 @Setter
 @NoArgsConstructor
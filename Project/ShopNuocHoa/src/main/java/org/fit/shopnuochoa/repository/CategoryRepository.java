@@ -1,10 +1,14 @@
 package org.fit.shopnuochoa.repository;
 
+import jakarta.persistence.QueryHint;
+import org.fit.shopnuochoa.config.HibernateCacheConfig;
 import org.fit.shopnuochoa.model.Category;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 import java.util.List;
 import java.util.Optional;
@@ -12,7 +16,19 @@ import java.util.Optional;
 public interface CategoryRepository extends JpaRepository<Category, Integer> {
     Optional<Category> findByName(String name);
 
+    // Danh sách danh mục / quốc gia hiển thị trên mọi trang: lưu query cache (tự vô hiệu khi bảng categories đổi)
+    @Override
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = HibernateCacheConfig.CATALOG_QUERY_REGION)
+    })
+    List<Category> findAll();
+
     @Query("SELECT DISTINCT c.country FROM Category c WHERE c.country IS NOT NULL AND c.country <> ''")
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = HibernateCacheConfig.CATALOG_QUERY_REGION)
+    })
     List<String> findDistinctCountries();
 
     // Tìm kiếm theo tên với phân trang (không phân biệt hoa thường)
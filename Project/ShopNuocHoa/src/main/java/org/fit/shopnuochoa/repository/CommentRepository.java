@@ -3,6 +3,7 @@ package org.fit.shopnuochoa.repository;
 import org.fit.shopnuochoa.model.Comment;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -11,6 +12,10 @@ public interface CommentRepository extends JpaRepository<Comment, Integer> {
 
     Page<Comment> findByProductId(Integer productId, Pageable pageable);
 
+    // Phân trang keyset theo id (mới nhất trước), không COUNT(*); afterId = null → trang đầu
+    @Query("SELECT c FROM Comment c WHERE :afterId IS NULL OR c.id < :afterId ORDER BY c.id DESC")
+    Slice<Comment> findSliceAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
     @Query("SELECT AVG(c.rating) FROM Comment c WHERE c.product.id = :productId")
     Double findAverageRatingByProductId(@Param("productId") Integer productId);
 }
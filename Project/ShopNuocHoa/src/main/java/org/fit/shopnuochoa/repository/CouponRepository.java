@@ -1,8 +1,17 @@
 package org.fit.shopnuochoa.repository;
 
+import jakarta.persistence.QueryHint;
+import org.fit.shopnuochoa.config.HibernateCacheConfig;
 import org.fit.shopnuochoa.model.Coupon;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 
 public interface CouponRepository extends JpaRepository<Coupon, Integer> {
+    // Tra mã ở giỏ hàng / thanh toán: kết quả (id) lưu query cache, entity lấy từ L2 cache
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = HibernateCacheConfig.CATALOG_QUERY_REGION)
+    })
     Coupon findByCode(String code);
 }
@@ -1,8 +1,16 @@
 package org.fit.shopnuochoa.repository;
 
 import org.fit.shopnuochoa.model.Customer;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 public interface CustomerRepository extends JpaRepository<Customer, Integer> {
     Customer findByUserId(Integer userId);
+
+    // Phân trang keyset theo id (tăng dần), không COUNT(*); afterId = null → trang đầu
+    @Query("SELECT c FROM Customer c WHERE :afterId IS NULL OR c.id > :afterId ORDER BY c.id ASC")
+    Slice<Customer> findSliceAfter(@Param("afterId") Integer afterId, Pageable pageable);
 }
@@ -1,10 +1,16 @@
 package org.fit.shopnuochoa.repository;
 
+import org.fit.shopnuochoa.dto.CoPurchaseCount;
+import org.fit.shopnuochoa.dto.ProductSalesStats;
 import org.fit.shopnuochoa.model.OrderLine;
 import org.fit.shopnuochoa.model.OrderLineId;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -13,4 +19,46 @@ public interface OrderLineRepository extends JpaRepository<OrderLine, OrderLineI
      * Tự động tìm tất cả các OrderLine theo trường 'order.id'
      */
     List<OrderLine> findByOrderId(Integer orderId);
+
+    /**
+     * Số lượng đã bán và doanh thu của nhiều sản phẩm trong 1 query (GROUP BY)
+     * Sản phẩm chưa bán được không có trong kết quả
+     */
+    @Query("""
+        SELECT new org.fit.shopnuochoa.dto.ProductSalesStats(
+            ol.id.productId, SUM(ol.amount), SUM(ol.purchasePrice * ol.amount)
+        )
+        FROM OrderLine ol
+        WHERE ol.id.productId IN :productIds
+        GROUP BY ol.id.productId
+    """)
+    List<ProductSalesStats> findSalesStatsByProductIds(@Param("productIds") Collection<Integer> productIds);
+
+    /**
+     * Top sản phẩm bán chạy: gom nhóm, sắp xếp và giới hạn ngay trong database
+     */
+    @Query("""
+        SELECT new org.fit.shopnuochoa.dto.ProductSalesStats(
+            ol.id.productId, SUM(ol.amount), SUM(ol.purchasePrice * ol.amount)
+        )
+        FROM OrderLine ol
+        GROUP BY ol.id.productId
+        ORDER BY SUM(ol.amount) DESC, ol.id.productId
+    """)
+    List<ProductSalesStats> findTopSellingProducts(Pageable pageable);
+
+    /**
+     * Số lần mua cùng nhau của từng cặp sản phẩm (đơn đã hủy không tính), mỗi cặp một dòng
+     */
+    @Query("""
+        SELECT new org.fit.shopnuochoa.dto.CoPurchaseCount(
+            a.id.productId, b.id.productId, COUNT(a.id.orderId)
+        )
+        FROM OrderLine a, OrderLine b
+        WHERE a.id.orderId = b.id.orderId
+          AND a.id.productId < b.id.productId
+          AND a.order.status <> org.fit.shopnuochoa.Enum.OrderStatus.CANCELLED
+        GROUP BY a.id.productId, b.id.productId
+    """)
+    List<CoPurchaseCount> findCoPurchaseCounts();
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import org.fit.shopnuochoa.Enum.OrderStatus;
 import org.fit.shopnuochoa.model.Orders;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -35,6 +36,26 @@ public interface OrdersRepository extends JpaRepository<Orders, Integer> {
     """)
     Page<Orders> searchByCustomerNameOrUsername(String keyword, Pageable pageable);
 
+    // Phân trang keyset: đơn mới nhất trước, lấy các đơn đứng sau (date, id) của trang trước (date = null → trang đầu)
+    // Slice: không chạy COUNT(*); dùng index (date, id) nên trang nào cũng chỉ đọc size + 1 dòng
+    @Query("""
+    SELECT o FROM Orders o
+    WHERE :date IS NULL OR o.date < :date OR (o.date = :date AND o.id < :id)
+    ORDER BY o.date DESC, o.id DESC
+    """)
+    Slice<Orders> findSliceAfter(@Param("date") LocalDateTime date, @Param("id") Integer id, Pageable pageable);
+
+    @Query("""
+    SELECT o FROM Orders o
+    WHERE o.customer.id = :customerId
+      AND (:date IS NULL OR o.date < :date OR (o.date = :date AND o.id < :id))
+    ORDER BY o.date DESC, o.id DESC
+    """)
+    Slice<Orders> findSliceByCustomerAfter(@Param("customerId") Integer customerId,
+                                           @Param("date") LocalDateTime date,
+                                           @Param("id") Integer id,
+                                           Pageable pageable);
+
     List<Orders> findByStatus(OrderStatus status);
 
     @Query("SELECT o FROM Orders o JOIN FETCH o.orderLines WHERE o.id = :id")
@@ -2,18 +2,38 @@ package org.fit.shopnuochoa.repository;
 
 import org.fit.shopnuochoa.Enum.Gender;
 import org.fit.shopnuochoa.Enum.Volume;
+import org.fit.shopnuochoa.dto.ProductCard;
 import org.fit.shopnuochoa.dto.RatingStats;
 import org.fit.shopnuochoa.model.Product;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
-public interface ProductRepository extends JpaRepository<Product, Integer> {
+public interface ProductRepository extends JpaRepository<Product, Integer>, JpaSpecificationExecutor<Product> {
+
+    // Thẻ sản phẩm cho trang danh sách: chỉ các cột cần hiển thị + tên thương hiệu qua JOIN (alias p, c)
+    String PRODUCT_CARD_SELECT = "SELECT new org.fit.shopnuochoa.dto.ProductCard("
+            + "p.id, p.name, p.price, p.imageUrl, c.name, p.averageRating, p.ratingCount, p.hotTrend, "
+            + "CASE WHEN p.quantity > 0 THEN true ELSE false END) ";
+
+    // Điều kiện lọc của trang danh sách sản phẩm (dùng chung cho query nội dung và query đếm)
+    String SEARCH_FROM_WHERE = "FROM Product p JOIN p.category c WHERE "
+            + "p.deleted = false AND "
+            + "(:productIds IS NULL OR p.id IN :productIds) "
+            + "AND (:categoryId IS NULL OR c.id = :categoryId) "
+            + "AND (:price IS NULL OR p.price >= :price) "
+            + "AND (:maxPrice IS NULL OR p.price <= :maxPrice) "
+            + "AND (:countries IS NULL OR c.country IN :countries) "
+            + "AND (:volume IS NULL OR p.volume = :volume) "
+            + "AND (:gender IS NULL OR p.gender = :gender) "
+            + "AND (:rating IS NULL OR p.averageRating >= :rating)";
 
     // Tìm employee theo departmentId
     Page<Product> findByCategoryId(Integer categoryId, Pageable pageable);
@@ -32,8 +52,16 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
     @Query("SELECT e FROM Product e WHERE e.category.id=:categoryId and e.price > :price")
     Page<Product> findProductsByCategoryWithPriceGreaterThan(@Param("categoryId") Integer categoryId, @Param("price") Double price, Pageable pageable);
 
-    // Tìm các sản phẩm theo categoryId và Id không phải là productId được cung cấp
-    List<Product> findByCategoryIdAndIdNot(Integer categoryId, Integer productId);
+    // Thẻ sản phẩm cùng thương hiệu, số lượng theo pageable (dự phòng khi chưa có danh sách tương tự tính sẵn)
+    @Query(PRODUCT_CARD_SELECT + "FROM Product p JOIN p.category c "
+            + "WHERE c.id = :categoryId AND p.id <> :productId AND p.deleted = false ORDER BY p.id DESC")
+    List<ProductCard> findCardsByCategoryIdAndIdNot(@Param("categoryId") Integer categoryId,
+                                                    @Param("productId") Integer productId,
+                                                    Pageable pageable);
+
+    // Thẻ sản phẩm chưa xóa, thứ tự / số lượng theo pageable (trang chủ: mới nhất, bán chạy)
+    @Query(PRODUCT_CARD_SELECT + "FROM Product p JOIN p.category c WHERE p.deleted = false")
+    List<ProductCard> findActiveCards(Pageable pageable);
 
     // Soft delete queries
     @Query("SELECT p FROM Product p WHERE p.deleted = false")
@@ -42,24 +70,27 @@ public interface ProductRepository extends JpaRepository<Product, Integer> {
     @Query("SELECT p FROM Product p WHERE p.deleted = true")
     Page<Product> findAllDeleted(Pageable pageable);
 
+    // Nạp toàn bộ sản phẩm chưa xóa kèm category trong 1 câu query (dùng để dựng snapshot catalog)
+    @Query("SELECT p FROM Product p JOIN FETCH p.category WHERE p.deleted IS NULL OR p.deleted = false ORDER BY p.id")
+    List<Product> findAllActiveWithCategory();
+
+    // Các sản phẩm chưa xóa trong danh sách id kèm category (cập nhật snapshot catalog theo từng sản phẩm)
+    @Query("SELECT p FROM Product p JOIN FETCH p.category WHERE p.id IN :ids AND (p.deleted IS NULL OR p.deleted = false)")
+    List<Product> findActiveWithCategoryByIdIn(@Param("ids") Collection<Integer> ids);
+
+    @Query("SELECT p FROM Product p JOIN FETCH p.category WHERE p.id = :id")
+    Optional<Product> findByIdWithCategory(@Param("id") Integer id);
+
     @Query("SELECT COUNT(p) FROM Product p WHERE p.deleted = true")
     long countDeleted();
 
 
-    @Query("SELECT p FROM Product p WHERE "
-            + "p.deleted = false AND "
-            + "(:keyword IS NULL OR :keyword = '' OR LOWER(p.name) LIKE LOWER(CONCAT('%', :keyword, '%'))) "
-            + "AND (:categoryId IS NULL OR p.category.id = :categoryId) "
-            + "AND (:price IS NULL OR p.price >= :price) "
-            + "AND (:maxPrice IS NULL OR p.price <= :maxPrice) "
-            + "AND (:countries IS NULL OR p.category.country IN :countries) "
-            + "AND (:volume IS NULL OR p.volume = :volume) "
-            + "AND (:gender IS NULL OR p.gender = :gender) "
-
-            // [SỬA LỖI] Đổi p.ratingCount thành p.averageRating
-            + "AND (:rating IS NULL OR p.averageRating >= :rating)")
-    Page<Product> searchProducts(
-            @Param("keyword") String keyword,
+    // productIds: kết quả tra từ khóa trong ProductKeywordIndex (null = không lọc theo từ khóa)
+    // Trả về thẻ sản phẩm (1 query nội dung + 1 query đếm, không N+1 category)
+    @Query(value = PRODUCT_CARD_SELECT + SEARCH_FROM_WHERE,
+            countQuery = "SELECT COUNT(p) " + SEARCH_FROM_WHERE)
+    Page<ProductCard> searchProducts(
+            @Param("productIds") Collection<Integer> productIds,
             @Param("categoryId") Integer categoryId,
             @Param("price") Double price,
             @Param("maxPrice") Double maxPrice,
@@ -0,0 +1,33 @@
+package org.fit.shopnuochoa.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Số dòng ước lượng của bảng theo thống kê InnoDB (information_schema.TABLES.TABLE_ROWS)
+ *
+ * Đọc metadata, không quét bảng như COUNT(*); sai số có thể vài chục %, chỉ dùng để hiển thị "khoảng N mục".
+ */
+@Repository
+public class TableStatisticsRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * @return null nếu không lấy được (bảng không tồn tại, DB không hỗ trợ)
+     */
+    public Long estimateRowCount(String tableName) {
+        List<?> rows = entityManager.createNativeQuery(
+                        "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = :tableName")
+                .setParameter("tableName", tableName)
+                .getResultList();
+        if (rows.isEmpty() || !(rows.get(0) instanceof Number count)) {
+            return null;
+        }
+        return count.longValue();
+    }
+}
@@ -1,7 +1,10 @@
 package org.fit.shopnuochoa.repository;
 
+import org.fit.shopnuochoa.dto.ProductCard;
 import org.fit.shopnuochoa.model.Wishlist;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -13,4 +16,10 @@ public interface WishlistRepository extends JpaRepository<Wishlist, Integer> {
     boolean existsByCustomerIdAndProductId(Integer customerId, Integer productId);
 
     List<Wishlist> findAllByCustomerId(Integer customerId);
+
+    // Thẻ sản phẩm yêu thích của khách (1 query JOIN product + category), mới thêm trước
+    @Query(ProductRepository.PRODUCT_CARD_SELECT
+            + "FROM Wishlist w JOIN w.product p JOIN p.category c "
+            + "WHERE w.customer.id = :customerId ORDER BY w.createdAt DESC, w.id DESC")
+    List<ProductCard> findProductCardsByCustomerId(@Param("customerId") Integer customerId);
 }
\ No newline at end of file
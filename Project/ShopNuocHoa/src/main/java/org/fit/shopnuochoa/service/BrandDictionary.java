@@ -0,0 +1,150 @@
+package org.fit.shopnuochoa.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.fit.shopnuochoa.component.AhoCorasickMatcher;
+import org.fit.shopnuochoa.component.VietnameseTextUtils;
+import org.fit.shopnuochoa.model.Category;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Từ điển thương hiệu: tìm tên thương hiệu (danh mục) trong câu hỏi của khách
+ *
+ * - Automaton Aho–Corasick dựng từ tên danh mục + bí danh cấu hình ("christian dior" → Dior):
+ *   tìm mọi thương hiệu trong một lần duyệt câu hỏi, không đọc bảng categories mỗi request
+ * - So khớp sau khi bỏ dấu, đứng trọn từ
+ * - Danh mục thêm / sửa / xóa → đánh dấu cũ, lần tra kế tiếp dựng lại (danh mục ít nên dựng đồng bộ)
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BrandDictionary {
+
+    private final CategoryService categoryService;
+
+    // Dạng "bi danh:Ten thuong hieu,..." (bí danh trỏ tới thương hiệu không tồn tại thì bỏ qua)
+    @Value("${brand.aliases:}")
+    private String aliasConfig;
+
+    private volatile boolean stale = true;
+    private volatile AhoCorasickMatcher<String> matcher;
+
+    /**
+     * Thương hiệu đầu tiên xuất hiện trong câu hỏi (cùng vị trí thì lấy cụm dài nhất)
+     *
+     * @return tên danh mục đúng như trong DB, null nếu không có
+     */
+    public String findFirst(String query) {
+        String best = null;
+        int bestStart = Integer.MAX_VALUE;
+        int bestLength = 0;
+        for (AhoCorasickMatcher.Match<String> match : matcher().findAll(normalizeKey(query))) {
+            int length = match.end() - match.start();
+            if (match.start() < bestStart || (match.start() == bestStart && length > bestLength)) {
+                best = match.value();
+                bestStart = match.start();
+                bestLength = length;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Tất cả thương hiệu xuất hiện trong câu hỏi, không lặp, theo thứ tự xuất hiện
+     */
+    public List<String> findAll(String query) {
+        LinkedHashSet<String> brands = new LinkedHashSet<>();
+        for (AhoCorasickMatcher.Match<String> match : matcher().findAll(normalizeKey(query))) {
+            brands.add(match.value());
+        }
+        return new ArrayList<>(brands);
+    }
+
+    /**
+     * Câu hỏi (đã bỏ dấu) sau khi xóa mọi tên thương hiệu / bí danh; null nếu không còn từ nào
+     */
+    public String stripBrands(String query) {
+        String key = normalizeKey(query);
+        if (key.isEmpty()) {
+            return null;
+        }
+        StringBuilder stripped = new StringBuilder(key);
+        for (AhoCorasickMatcher.Match<String> match : matcher().findAll(key)) {
+            for (int i = match.start(); i < match.end(); i++) {
+                stripped.setCharAt(i, ' ');
+            }
+        }
+        String result = stripped.toString().trim().replaceAll("\\s+", " ");
+        return result.isEmpty() ? null : result;
+    }
+
+    private AhoCorasickMatcher<String> matcher() {
+        AhoCorasickMatcher<String> current = matcher;
+        if (current != null && !stale) {
+            return current;
+        }
+        synchronized (this) {
+            if (matcher == null || stale) {
+                // Xóa cờ TRƯỚC khi đọc DB: danh mục đổi trong lúc dựng sẽ dựng lại ở lần tra sau
+                stale = false;
+                try {
+                    matcher = build();
+                } catch (RuntimeException e) {
+                    stale = true;
+                    if (matcher == null) {
+                        throw e;
+                    }
+                    log.error("❌ Failed to rebuild brand dictionary, keeping previous one: ", e);
+                }
+            }
+            return matcher;
+        }
+    }
+
+    private AhoCorasickMatcher<String> build() {
+        Map<String, String> brandByKey = new HashMap<>();
+        for (Category category : categoryService.getAll()) {
+            String key = normalizeKey(category.getName());
+            if (!key.isEmpty()) {
+                brandByKey.put(key, category.getName());
+            }
+        }
+
+        Map<String, String> aliases = new HashMap<>();
+        for (String entry : aliasConfig.split(",")) {
+            int separator = entry.lastIndexOf(':');
+            if (separator <= 0) {
+                continue;
+            }
+            String brand = brandByKey.get(normalizeKey(entry.substring(separator + 1)));
+            String alias = normalizeKey(entry.substring(0, separator));
+            if (brand != null && !alias.isEmpty()) {
+                aliases.putIfAbsent(alias, brand);
+            }
+        }
+        // Tên thật luôn thắng bí danh trùng khóa
+        aliases.putAll(brandByKey);
+
+        AhoCorasickMatcher.Builder<String> builder = AhoCorasickMatcher.builder();
+        aliases.forEach(builder::add);
+        log.info("🏷️ Built brand dictionary: {} brands, {} keywords", brandByKey.size(), aliases.size());
+        return builder.build();
+    }
+
+    private static String normalizeKey(String text) {
+        return VietnameseTextUtils.fold(text).trim().replaceAll("\\s+", " ");
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryService.CategoryChangedEvent event) {
+        stale = true;
+    }
+}
@@ -3,6 +3,7 @@ package org.fit.shopnuochoa.service;
 import org.fit.shopnuochoa.model.Category;
 import org.fit.shopnuochoa.repository.CategoryRepository;
 import org.fit.shopnuochoa.repository.ProductRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -15,11 +16,19 @@ public class CategoryService {
     private CategoryRepository categoryRepository;
     private ProductRepository productRepository;
     private CloudinaryService cloudinaryService;
+    private ApplicationEventPublisher eventPublisher;
 
-    public CategoryService(CategoryRepository categoryRepository,ProductRepository productRepository,CloudinaryService cloudinaryService) {
+    public CategoryService(CategoryRepository categoryRepository,ProductRepository productRepository,CloudinaryService cloudinaryService,ApplicationEventPublisher eventPublisher) {
         this.categoryRepository = categoryRepository;
         this.productRepository = productRepository;
         this.cloudinaryService = cloudinaryService;
+        this.eventPublisher = eventPublisher;
+    }
+
+    /**
+     * Sự kiện phát ra sau khi thêm / sửa / xóa danh mục (thương hiệu)
+     */
+    public record CategoryChangedEvent(Integer categoryId) {
     }
     public List<String> findDistinctCountries(){
         return categoryRepository.findDistinctCountries();
@@ -44,7 +53,9 @@ public class CategoryService {
             category.setImgURL(url);
         }
 
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        eventPublisher.publishEvent(new CategoryChangedEvent(saved.getId()));
+        return saved;
     }
 
     // Cập nhật
@@ -57,7 +68,9 @@ public class CategoryService {
                 String newUrl = cloudinaryService.updateProductImage(imageFile, category.getImgURL());
                 category.setImgURL(newUrl);
             }
-            return categoryRepository.save(category);
+            Category saved = categoryRepository.save(category);
+            eventPublisher.publishEvent(new CategoryChangedEvent(saved.getId()));
+            return saved;
         });
     }
 
@@ -69,7 +82,10 @@ public class CategoryService {
         }
 
         Optional<Category> emp = categoryRepository.findById(id);
-        emp.ifPresent(categoryRepository::delete);   // Nếu có thì xoá
+        emp.ifPresent(category -> {
+            categoryRepository.delete(category);   // Nếu có thì xoá
+            eventPublisher.publishEvent(new CategoryChangedEvent(category.getId()));
+        });
         return emp;// Trả về Optional vừa xoá (nếu có)
     }
 
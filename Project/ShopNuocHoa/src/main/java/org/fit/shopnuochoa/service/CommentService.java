@@ -1,11 +1,15 @@
 package org.fit.shopnuochoa.service;
 
+import org.fit.shopnuochoa.component.KeysetCursor;
+import org.fit.shopnuochoa.dto.KeysetSlice;
 import org.fit.shopnuochoa.model.Comment;
 import org.fit.shopnuochoa.model.Customer;
 import org.fit.shopnuochoa.model.Product;
 import org.fit.shopnuochoa.repository.CommentRepository;
 import org.fit.shopnuochoa.repository.ProductRepository;
+import org.fit.shopnuochoa.repository.TableStatisticsRepository;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
@@ -17,15 +21,31 @@ public class CommentService {
     private CommentRepository commentRepository;
     private ProductService productService;
     private CustomerService customerService;
+    private TableStatisticsRepository tableStatisticsRepository;
 
-    public CommentService(CommentRepository commentRepository, ProductService productService, CustomerService customerService) {
+    public CommentService(CommentRepository commentRepository, ProductService productService, CustomerService customerService,
+                          TableStatisticsRepository tableStatisticsRepository) {
         this.commentRepository = commentRepository;
         this.productService = productService;
         this.customerService = customerService;
+        this.tableStatisticsRepository = tableStatisticsRepository;
     }
 
     public Page<Comment> getAll(Pageable pageable) {return commentRepository.findAll(pageable);}
 
+    /**
+     * Phân trang keyset bình luận (mới nhất trước), không COUNT(*)
+     *
+     * @param cursor con trỏ của trang trước (null / rỗng = trang đầu)
+     */
+    public KeysetSlice<Comment> getAllAfter(String cursor, int size) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        return KeysetSlice.of(
+                commentRepository.findSliceAfter(after != null ? after.id() : null, PageRequest.of(0, size)),
+                comment -> KeysetCursor.of(null, comment.getId()),
+                tableStatisticsRepository.estimateRowCount("comments"));
+    }
+
     public Comment getById(Integer id) {return commentRepository.findById(id).orElse(null);}
 
     public Page<Comment> getByProductId(Integer id, Pageable pageable) {return commentRepository.findByProductId(id, pageable);}
@@ -0,0 +1,104 @@
+package org.fit.shopnuochoa.service;
+
+import org.fit.shopnuochoa.model.Product;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Câu trả lời mẫu (không gọi LLM) dựng từ danh sách sản phẩm đã lọc
+ *
+ * Dùng khi Gemini không trả lời kịp trong ngân sách thời gian của request:
+ * cùng intent + cùng danh sách sản phẩm thì luôn ra cùng một câu trả lời.
+ */
+final class ConsultantAnswerTemplate {
+
+    private static final String NO_PRODUCT_MESSAGE =
+            "Dạ, hiện tại mình chưa tìm thấy sản phẩm phù hợp với yêu cầu của bạn. "
+            + "Bạn có thể thử từ khóa khác hoặc xem các sản phẩm nổi bật của shop nhé! 😊";
+
+    private ConsultantAnswerTemplate() {
+    }
+
+    /**
+     * @param intents  intent đã trích xuất (xem ProductConsultantService#createFallbackIntents)
+     * @param products sản phẩm sẽ trả về cho client (đã giới hạn số lượng)
+     */
+    static String render(Map<String, Object> intents, List<Product> products) {
+        if (products == null || products.isEmpty()) {
+            return NO_PRODUCT_MESSAGE;
+        }
+
+        StringBuilder answer = new StringBuilder(headline(intents, products.size()));
+        answer.append("\n");
+        for (Product p : products) {
+            answer.append("\n🌸 ").append(p.getName());
+            if (p.getCategory() != null && p.getCategory().getName() != null) {
+                answer.append(" (").append(p.getCategory().getName()).append(")");
+            }
+            if (p.getPrice() != null) {
+                answer.append(String.format(" - %,.0f VNĐ", p.getPrice()));
+            }
+            answer.append("\n→ ").append(details(p));
+        }
+        answer.append("\n\nBạn muốn mình tư vấn kỹ hơn về sản phẩm nào không ạ? 😊");
+        return answer.toString();
+    }
+
+    private static String headline(Map<String, Object> intents, int count) {
+        boolean single = count == 1;
+        if (flag(intents, "isSuperlative") && flag(intents, "isExpensiveQuery")) {
+            return "Dạ, sản phẩm cao cấp nhất phù hợp với bạn là:";
+        }
+        if (flag(intents, "isSuperlative") && flag(intents, "isCheapQuery")) {
+            return "Dạ, lựa chọn giá tốt nhất phù hợp với bạn là:";
+        }
+        if (flag(intents, "isBestSelling")) {
+            return single ? "Dạ, sản phẩm bán chạy nhất của shop là:" : "Dạ, đây là những sản phẩm bán chạy của shop:";
+        }
+        if (flag(intents, "isTopRated")) {
+            return single ? "Dạ, sản phẩm được đánh giá cao nhất là:" : "Dạ, đây là những sản phẩm được đánh giá cao:";
+        }
+        if (flag(intents, "isHotTrend")) {
+            return "Dạ, đây là những mùi hương đang thịnh hành:";
+        }
+        if (flag(intents, "isNewProducts")) {
+            return "Dạ, đây là những sản phẩm mới của shop:";
+        }
+        if (flag(intents, "isCheapQuery")) {
+            return "Dạ, đây là những lựa chọn giá tốt phù hợp với bạn:";
+        }
+        return single ? "Dạ, mình gợi ý cho bạn sản phẩm này:"
+                : String.format("Dạ, mình gợi ý cho bạn %d sản phẩm phù hợp:", count);
+    }
+
+    private static String details(Product p) {
+        StringBuilder details = new StringBuilder();
+        if (p.getVolume() != null) {
+            details.append(p.getVolume());
+        }
+        if (p.getGender() != null) {
+            appendPart(details, switch (p.getGender()) {
+                case NAM -> "dành cho nam";
+                case NU -> "dành cho nữ";
+                case UNISEX -> "unisex";
+            });
+        }
+        if (p.getAverageRating() != null && p.getAverageRating() > 0) {
+            appendPart(details, String.format("⭐ %.1f/5", p.getAverageRating()));
+        }
+        appendPart(details, p.isInStock() ? "còn hàng" : "tạm hết hàng");
+        return details.toString();
+    }
+
+    private static void appendPart(StringBuilder details, String part) {
+        if (details.length() > 0) {
+            details.append(" · ");
+        }
+        details.append(part);
+    }
+
+    private static boolean flag(Map<String, Object> intents, String key) {
+        return intents != null && Boolean.TRUE.equals(intents.get(key));
+    }
+}
@@ -0,0 +1,222 @@
+package org.fit.shopnuochoa.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.fit.shopnuochoa.model.Product;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache câu trả lời của trợ lý tư vấn
+ *
+ * - Caffeine (W-TinyLFU): câu hỏi hay gặp được giữ lại, câu hỏi hiếm không đẩy được chúng ra
+ * - TTL riêng cho từng entry, entry hết hạn được dọn bởi scheduler (không chờ đọc lại)
+ * - Thống kê hit / miss / eviction
+ * - Entry bị vô hiệu khi một sản phẩm nó nhắc tới thay đổi (giá, tồn kho, rating...)
+ *
+ * Hai tầng:
+ * 1. Theo câu hỏi đã normalize (trùng nguyên văn)
+ * 2. Theo chữ ký ý định (tiêu chí lọc chuẩn hóa + cờ intent): các câu diễn đạt khác nhau
+ *    nhưng cùng ý dùng lại danh sách sản phẩm đã lọc, và cả câu trả lời nếu an toàn
+ */
+@Component
+@Slf4j
+public class ConsultantResponseCache {
+
+    private static final int MAX_CACHE_SIZE = 1000;
+
+    private final Cache<String, CachedResponse> cache;
+    private final Cache<String, CachedResponse> intentCache;
+
+    // Số thứ tự thay đổi catalog: entry tạo trước lần thay đổi của sản phẩm nó nhắc tới là entry cũ
+    private final AtomicLong changeSequence = new AtomicLong();
+    private final ConcurrentHashMap<Integer, Long> productChangedAt = new ConcurrentHashMap<>();
+    private volatile long catalogChangedAt = 0;
+    private final AtomicLong invalidationCount = new AtomicLong();
+
+    /**
+     * Entry trong cache: kết quả, các sản phẩm đã dùng để trả lời, TTL và thời điểm tạo.
+     * Ở tầng ý định, result có thể null (chỉ dùng lại danh sách sản phẩm đã lọc).
+     */
+    private record CachedResponse(ProductConsultantService.ConsultationResult result,
+                                  List<Product> filteredProducts,
+                                  int[] productIds,
+                                  long ttlNanos,
+                                  long createdAtSequence) {
+    }
+
+    /**
+     * Kết quả tra cứu tầng ý định
+     *
+     * @param filteredProducts danh sách sản phẩm đã lọc cho chữ ký này
+     * @param result           câu trả lời dùng lại được, null nếu phải sinh lại bằng LLM
+     */
+    public record IntentHit(List<Product> filteredProducts, ProductConsultantService.ConsultationResult result) {
+    }
+
+    public ConsultantResponseCache() {
+        this.cache = newCache();
+        this.intentCache = newCache();
+    }
+
+    private static Cache<String, CachedResponse> newCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(MAX_CACHE_SIZE)
+                .expireAfter(new Expiry<String, CachedResponse>() {
+                    @Override
+                    public long expireAfterCreate(String key, CachedResponse value, long currentTime) {
+                        return value.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, CachedResponse value, long currentTime, long currentDuration) {
+                        return value.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, CachedResponse value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .scheduler(Scheduler.systemScheduler())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Số thứ tự hiện tại - lấy TRƯỚC khi lọc sản phẩm và truyền lại vào {@link #put}
+     */
+    public long currentSequence() {
+        return changeSequence.get();
+    }
+
+    /**
+     * @return kết quả đã cache, hoặc null nếu không có / hết hạn / sản phẩm liên quan đã thay đổi
+     */
+    public ProductConsultantService.ConsultationResult get(String key) {
+        CachedResponse cached = getFresh(cache, key);
+        return cached != null ? cached.result() : null;
+    }
+
+    /**
+     * Tra cứu tầng ý định
+     *
+     * @param signature chữ ký ý định (xem {@link ProductConsultantService})
+     * @return danh sách sản phẩm (và câu trả lời nếu có), hoặc null nếu không có / đã cũ
+     */
+    public IntentHit getByIntent(String signature) {
+        CachedResponse cached = getFresh(intentCache, signature);
+        return cached != null ? new IntentHit(cached.filteredProducts(), cached.result()) : null;
+    }
+
+    private CachedResponse getFresh(Cache<String, CachedResponse> tier, String key) {
+        CachedResponse cached = tier.getIfPresent(key);
+        if (cached == null) {
+            return null;
+        }
+        if (isStale(cached)) {
+            tier.asMap().remove(key, cached);
+            invalidationCount.incrementAndGet();
+            log.info("♻️ Cache entry invalidated (product changed): {}", key);
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * @param key              câu hỏi đã normalize
+     * @param result           kết quả trả về cho client
+     * @param referencedIds    id các sản phẩm đã đưa vào context để sinh câu trả lời
+     * @param ttl              thời gian sống của entry
+     * @param sequenceAtStart  giá trị {@link #currentSequence()} lấy trước khi lọc sản phẩm
+     */
+    public void put(String key, ProductConsultantService.ConsultationResult result,
+                    Collection<Integer> referencedIds, Duration ttl, long sequenceAtStart) {
+        int[] ids = referencedIds.stream().mapToInt(Integer::intValue).toArray();
+        putFresh(cache, key, new CachedResponse(result, null, ids, ttl.toNanos(), sequenceAtStart));
+    }
+
+    /**
+     * @param signature        chữ ký ý định
+     * @param filteredProducts toàn bộ sản phẩm đã lọc (context của câu trả lời)
+     * @param result           câu trả lời nếu dùng lại an toàn cho mọi câu cùng ý, ngược lại null
+     * @param ttl              thời gian sống của entry
+     * @param sequenceAtStart  giá trị {@link #currentSequence()} lấy trước khi lọc sản phẩm
+     */
+    public void putByIntent(String signature, List<Product> filteredProducts,
+                            ProductConsultantService.ConsultationResult result, Duration ttl, long sequenceAtStart) {
+        int[] ids = filteredProducts.stream().mapToInt(Product::getId).toArray();
+        putFresh(intentCache, signature,
+                new CachedResponse(result, List.copyOf(filteredProducts), ids, ttl.toNanos(), sequenceAtStart));
+    }
+
+    private void putFresh(Cache<String, CachedResponse> tier, String key, CachedResponse entry) {
+        if (isStale(entry)) {
+            // Catalog đã đổi trong lúc đang sinh câu trả lời → không cache
+            return;
+        }
+        tier.put(key, entry);
+    }
+
+    private boolean isStale(CachedResponse entry) {
+        if (catalogChangedAt > entry.createdAtSequence()) {
+            return true;
+        }
+        for (int productId : entry.productIds()) {
+            Long changedAt = productChangedAt.get(productId);
+            if (changedAt != null && changedAt > entry.createdAtSequence()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductService.ProductChangedEvent event) {
+        long sequence = changeSequence.incrementAndGet();
+        if (event.productId() == null) {
+            catalogChangedAt = sequence;
+        } else {
+            productChangedAt.put(event.productId(), sequence);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryService.CategoryChangedEvent event) {
+        catalogChangedAt = changeSequence.incrementAndGet();
+    }
+
+    /**
+     * Thống kê cache (hit / miss / eviction / invalidation)
+     */
+    public Map<String, Object> statistics() {
+        CacheStats stats = cache.stats();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("size", cache.estimatedSize());
+        result.put("maxSize", MAX_CACHE_SIZE);
+        result.put("hitCount", stats.hitCount());
+        result.put("missCount", stats.missCount());
+        result.put("hitRate", stats.hitRate());
+        result.put("evictionCount", stats.evictionCount());
+        result.put("invalidationCount", invalidationCount.get());
+
+        CacheStats intentStats = intentCache.stats();
+        result.put("intentSize", intentCache.estimatedSize());
+        result.put("intentHitCount", intentStats.hitCount());
+        result.put("intentMissCount", intentStats.missCount());
+        result.put("intentHitRate", intentStats.hitRate());
+        return result;
+    }
+}
@@ -20,6 +20,8 @@ public class CouponService {
     private CategoryRepository categoryRepo;
     @Autowired
     private OrderService orderService;
+    @Autowired
+    private EntityCacheService entityCacheService;
 
     /** Lấy toàn bộ coupon */
     public List<Coupon> getAll() {
@@ -31,7 +33,9 @@ public class CouponService {
     }
     /** Thêm coupon mới (đã phân loại đúng type trong entity) */
     public Coupon create(Coupon coupon) {
-        return couponRepo.save(coupon);
+        Coupon saved = couponRepo.save(coupon);
+        entityCacheService.evictCoupon(saved.getId());
+        return saved;
     }
 
     /** Cập nhật coupon theo ID */
@@ -65,7 +69,9 @@ public class CouponService {
             }
         }
 
-        return couponRepo.save(coupon);
+        Coupon saved = couponRepo.save(coupon);
+        entityCacheService.evictCoupon(saved.getId());
+        return saved;
     }
 
     /** Xóa coupon */
@@ -74,6 +80,7 @@ public class CouponService {
             throw new RuntimeException("Coupon không tồn tại!");
         }
         couponRepo.deleteById(id);
+        entityCacheService.evictCoupon(id);
     }
 
     /** Lấy 1 coupon theo ID */
@@ -1,10 +1,14 @@
 package org.fit.shopnuochoa.service;
 
+import org.fit.shopnuochoa.component.KeysetCursor;
+import org.fit.shopnuochoa.dto.KeysetSlice;
 import org.fit.shopnuochoa.model.Customer;
 import org.fit.shopnuochoa.model.Users;
 import org.fit.shopnuochoa.repository.CustomerRepository;
+import org.fit.shopnuochoa.repository.TableStatisticsRepository;
 import org.fit.shopnuochoa.repository.UserRepository;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,11 +20,26 @@ import java.util.Optional;
 public class CustomerService {
     private CustomerRepository customerRepository;
     private UserRepository userRepository;
-    public CustomerService(CustomerRepository customerRepository, UserRepository userRepository) {
+    private TableStatisticsRepository tableStatisticsRepository;
+    public CustomerService(CustomerRepository customerRepository, UserRepository userRepository, TableStatisticsRepository tableStatisticsRepository) {
         this.customerRepository = customerRepository;
         this.userRepository = userRepository;
+        this.tableStatisticsRepository = tableStatisticsRepository;
     }
     public Page<Customer> getAll(Pageable pageable) {return customerRepository.findAll(pageable);}
+
+    /**
+     * Phân trang keyset khách hàng (theo id), không COUNT(*)
+     *
+     * @param cursor con trỏ của trang trước (null / rỗng = trang đầu)
+     */
+    public KeysetSlice<Customer> getAllAfter(String cursor, int size) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        return KeysetSlice.of(
+                customerRepository.findSliceAfter(after != null ? after.id() : null, PageRequest.of(0, size)),
+                customer -> KeysetCursor.of(null, customer.getId()),
+                tableStatisticsRepository.estimateRowCount("customers"));
+    }
     public Customer getByUser(int id) {return customerRepository.findByUserId(id);}
     public Customer getById(Integer id) {return customerRepository.findById(id).orElse(null);}
     public Customer createCustomer(Customer customer, Integer userId) {
@@ -0,0 +1,124 @@
+package org.fit.shopnuochoa.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.RequiredArgsConstructor;
+import org.fit.shopnuochoa.config.HibernateCacheConfig;
+import org.fit.shopnuochoa.model.Category;
+import org.fit.shopnuochoa.model.Coupon;
+import org.fit.shopnuochoa.model.Product;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Quản lý Hibernate second-level cache (xem {@link HibernateCacheConfig}): xóa chủ động khi admin ghi dữ liệu + thống kê hit / miss
+ *
+ * - Ghi qua Hibernate đã tự cập nhật entity cache; phần phải xóa tay là collection phía inverse
+ *   (Category.products không đổi khi Product đổi danh mục), import hàng loạt và query cache của danh mục / coupon
+ */
+@Service
+@RequiredArgsConstructor
+public class EntityCacheService {
+
+    private static final String CATEGORY_PRODUCTS_ROLE = Category.class.getName() + ".products";
+
+    private static final List<String> REGIONS = List.of(
+            HibernateCacheConfig.PRODUCT_REGION,
+            HibernateCacheConfig.CATEGORY_REGION,
+            HibernateCacheConfig.CATEGORY_PRODUCTS_REGION,
+            HibernateCacheConfig.COUPON_REGION,
+            HibernateCacheConfig.CATALOG_QUERY_REGION,
+            HibernateCacheConfig.DEFAULT_QUERY_REGION);
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Xóa coupon khỏi cache sau khi thêm / sửa / xóa (kể cả kết quả tra mã đã lưu)
+     */
+    public void evictCoupon(Integer couponId) {
+        Cache cache = cache();
+        if (couponId != null) {
+            cache.evictEntityData(Coupon.class, couponId);
+        } else {
+            cache.evictEntityData(Coupon.class);
+        }
+        cache.evictQueryRegion(HibernateCacheConfig.CATALOG_QUERY_REGION);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductService.ProductChangedEvent event) {
+        Cache cache = cache();
+        cache.evictCollectionData(CATEGORY_PRODUCTS_ROLE);
+        if (event.productId() == null) {
+            // Import hàng loạt: không biết sản phẩm nào đổi
+            cache.evictEntityData(Product.class);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryService.CategoryChangedEvent event) {
+        Cache cache = cache();
+        if (event.categoryId() != null) {
+            cache.evictEntityData(Category.class, event.categoryId());
+        }
+        cache.evictCollectionData(CATEGORY_PRODUCTS_ROLE);
+        cache.evictQueryRegion(HibernateCacheConfig.CATALOG_QUERY_REGION);
+        // Coupon theo danh mục giữ tham chiếu tới danh mục
+        cache.evictEntityData(Coupon.class);
+    }
+
+    /**
+     * Thống kê cache (hit / miss / put, tỉ lệ hit) tổng và theo từng region
+     */
+    public Map<String, Object> statistics() {
+        Statistics stats = sessionFactory().getStatistics();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("statisticsEnabled", stats.isStatisticsEnabled());
+        result.put("hitCount", stats.getSecondLevelCacheHitCount());
+        result.put("missCount", stats.getSecondLevelCacheMissCount());
+        result.put("putCount", stats.getSecondLevelCachePutCount());
+        result.put("hitRate", hitRate(stats.getSecondLevelCacheHitCount(), stats.getSecondLevelCacheMissCount()));
+        result.put("queryHitCount", stats.getQueryCacheHitCount());
+        result.put("queryMissCount", stats.getQueryCacheMissCount());
+        result.put("queryHitRate", hitRate(stats.getQueryCacheHitCount(), stats.getQueryCacheMissCount()));
+        result.put("entityLoadCount", stats.getEntityLoadCount());
+        result.put("queryExecutionCount", stats.getQueryExecutionCount());
+
+        Map<String, Object> regions = new LinkedHashMap<>();
+        for (String region : REGIONS) {
+            CacheRegionStatistics regionStats = stats.getCacheRegionStatistics(region);
+            if (regionStats == null) {
+                continue;
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("hitCount", regionStats.getHitCount());
+            entry.put("missCount", regionStats.getMissCount());
+            entry.put("putCount", regionStats.getPutCount());
+            entry.put("hitRate", hitRate(regionStats.getHitCount(), regionStats.getMissCount()));
+            entry.put("size", regionStats.getElementCountInMemory());
+            regions.put(region, entry);
+        }
+        result.put("regions", regions);
+        return result;
+    }
+
+    private static double hitRate(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    private Cache cache() {
+        return sessionFactory().getCache();
+    }
+
+    private SessionFactory sessionFactory() {
+        return entityManagerFactory.unwrap(SessionFactory.class);
+    }
+}
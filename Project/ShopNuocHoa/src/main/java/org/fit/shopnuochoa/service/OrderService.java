@@ -1,18 +1,25 @@
 package org.fit.shopnuochoa.service;
 
 import org.fit.shopnuochoa.Enum.OrderStatus;
+import org.fit.shopnuochoa.component.KeysetCursor;
+import org.fit.shopnuochoa.dto.KeysetSlice;
 import org.fit.shopnuochoa.model.Customer;
 import org.fit.shopnuochoa.model.Orders;
 import org.fit.shopnuochoa.repository.CustomerRepository;
 import org.fit.shopnuochoa.repository.OrdersRepository;
+import org.fit.shopnuochoa.repository.TableStatisticsRepository;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -21,9 +28,11 @@ import java.util.Optional;
 public class OrderService {
     private OrdersRepository ordersRepository;
     private CustomerRepository customerRepository;
-    public OrderService(OrdersRepository ordersRepository,CustomerRepository customerRepository) {
+    private TableStatisticsRepository tableStatisticsRepository;
+    public OrderService(OrdersRepository ordersRepository,CustomerRepository customerRepository,TableStatisticsRepository tableStatisticsRepository) {
         this.ordersRepository = ordersRepository;
         this.customerRepository = customerRepository;
+        this.tableStatisticsRepository = tableStatisticsRepository;
     }
     public List<Orders> findAll() {return ordersRepository.findAll();}
     public List<Orders> getByCustomer(Integer customerId) {return ordersRepository.findByCustomerId(customerId);}
@@ -58,6 +67,43 @@ public class OrderService {
         return ordersRepository.findByCustomerId(id, pageable);
     }
 
+    /**
+     * Phân trang keyset toàn bộ đơn hàng (mới nhất trước), tổng số đơn là ước lượng từ thống kê bảng
+     *
+     * @param cursor con trỏ của trang trước (null / rỗng = trang đầu)
+     */
+    public KeysetSlice<Orders> findAllAfter(String cursor, int size) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        LocalDateTime date = parseDate(after);
+        Slice<Orders> slice = ordersRepository.findSliceAfter(date, date != null ? after.id() : null, PageRequest.of(0, size));
+        return KeysetSlice.of(slice, OrderService::cursorOf, tableStatisticsRepository.estimateRowCount("orders"));
+    }
+
+    /**
+     * Phân trang keyset đơn hàng của một khách (mới nhất trước), tổng số đơn đếm chính xác theo index customer_id
+     */
+    public KeysetSlice<Orders> findByCustomerAfter(int customerId, String cursor, int size) {
+        KeysetCursor after = KeysetCursor.decode(cursor);
+        LocalDateTime date = parseDate(after);
+        Slice<Orders> slice = ordersRepository.findSliceByCustomerAfter(customerId, date, date != null ? after.id() : null, PageRequest.of(0, size));
+        return KeysetSlice.of(slice, OrderService::cursorOf, ordersRepository.countByCustomerId(customerId));
+    }
+
+    private static KeysetCursor cursorOf(Orders order) {
+        return KeysetCursor.of(order.getDate(), order.getId());
+    }
+
+    private static LocalDateTime parseDate(KeysetCursor cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(cursor.key());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
     @Transactional
     public void confirmReceived(Integer orderId) {
         Orders order = ordersRepository.findById(orderId)
@@ -0,0 +1,170 @@
+package org.fit.shopnuochoa.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.fit.shopnuochoa.component.SuggestionTrie;
+import org.fit.shopnuochoa.component.VietnameseTextUtils;
+import org.fit.shopnuochoa.dto.ProductSuggestion;
+import org.fit.shopnuochoa.model.Category;
+import org.fit.shopnuochoa.model.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Gợi ý khi gõ ô tìm kiếm (tên sản phẩm, thương hiệu) từ trie trong bộ nhớ, không truy vấn DB mỗi phím
+ *
+ * - Khóa đã bỏ dấu; mỗi tên được thêm từ mọi vị trí đầu từ nên "sauv" khớp cả "Dior Sauvage"
+ * - Thứ tự gợi ý: sản phẩm bán chạy / đánh giá tốt trước; thương hiệu cộng dồn điểm các sản phẩm của nó
+ * - Catalog / danh mục thay đổi → đánh dấu cũ, lần gọi kế tiếp dựng lại trie ở nền (1 lượt tại một thời điểm)
+ *   và vẫn trả lời bằng trie cũ; chỉ chờ dựng khi chưa từng có trie
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductAutocompleteService {
+
+    public static final String TYPE_PRODUCT = "PRODUCT";
+    public static final String TYPE_BRAND = "BRAND";
+
+    private final ProductCatalogService catalogService;
+    private final ProductStatisticsService statisticsService;
+
+    // Số gợi ý lưu sẵn ở mỗi node trie (giới hạn trên của tham số limit)
+    @Value("${autocomplete.max-suggestions:8}")
+    private int maxSuggestions;
+
+    private final AtomicBoolean stale = new AtomicBoolean(true);
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private volatile SuggestionTrie<ProductSuggestion> trie;
+
+    /**
+     * Gợi ý cho phần người dùng đã gõ
+     *
+     * @return tối đa limit gợi ý, liên quan nhất trước (rỗng nếu chưa gõ chữ / số nào)
+     */
+    public List<ProductSuggestion> suggest(String query, int limit) {
+        String prefix = normalize(query);
+        if (prefix.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        long start = System.nanoTime();
+        List<ProductSuggestion> suggestions = currentTrie().suggest(prefix);
+        if (suggestions.size() > limit) {
+            suggestions = suggestions.subList(0, limit);
+        }
+        log.debug("⌨️ Autocomplete [{}]: {} suggestions in {} µs", prefix, suggestions.size(), (System.nanoTime() - start) / 1_000);
+        return suggestions;
+    }
+
+    /**
+     * Bỏ dấu, gộp khoảng trắng; khoảng trắng cuối được giữ ("dior " chỉ gợi ý từ đứng sau "dior")
+     */
+    static String normalize(String text) {
+        List<String> words = VietnameseTextUtils.foldedTokens(text);
+        if (words.isEmpty()) {
+            return "";
+        }
+        String joined = String.join(" ", words);
+        boolean trailingSpace = !Character.isLetterOrDigit(text.charAt(text.length() - 1));
+        return trailingSpace ? joined + " " : joined;
+    }
+
+    private SuggestionTrie<ProductSuggestion> currentTrie() {
+        SuggestionTrie<ProductSuggestion> current = trie;
+        if (current == null) {
+            synchronized (this) {
+                if (trie == null) {
+                    stale.set(false);
+                    trie = build();
+                }
+                return trie;
+            }
+        }
+        if (stale.get() && rebuilding.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    // Xóa cờ TRƯỚC khi đọc catalog: thay đổi đến trong lúc dựng sẽ kích hoạt lượt kế tiếp
+                    stale.set(false);
+                    trie = build();
+                } catch (RuntimeException e) {
+                    log.error("❌ Failed to rebuild autocomplete trie: ", e);
+                    stale.set(true);
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        }
+        return current;
+    }
+
+    private SuggestionTrie<ProductSuggestion> build() {
+        long start = System.nanoTime();
+        ProductCatalogSnapshot catalog = catalogService.current();
+        List<Integer> ids = new ArrayList<>(catalog.size());
+        for (int i = 0; i < catalog.size(); i++) {
+            ids.add(catalog.id(i));
+        }
+        Map<Integer, Integer> totalSold = statisticsService.getTotalSoldByProductIds(ids);
+
+        SuggestionTrie.Builder<ProductSuggestion> builder = SuggestionTrie.builder(maxSuggestions);
+        Map<Integer, Category> brands = new HashMap<>();
+        Map<Integer, Double> brandWeights = new HashMap<>();
+        for (int i = 0; i < catalog.size(); i++) {
+            Product p = catalog.product(i);
+            double weight = weight(p, totalSold.getOrDefault(p.getId(), 0));
+            addWordSuffixes(builder, p.getName(),
+                    new ProductSuggestion(TYPE_PRODUCT, p.getId(), p.getName(), p.getPrice(), p.getImagePath()), weight);
+
+            Category category = p.getCategory();
+            if (category != null && category.getId() != null) {
+                brands.putIfAbsent(category.getId(), category);
+                brandWeights.merge(category.getId(), weight, Double::sum);
+            }
+        }
+        // Thương hiệu xếp trên các sản phẩm của chính nó khi cùng khớp tiền tố
+        brands.forEach((id, category) -> addWordSuffixes(builder, category.getName(),
+                new ProductSuggestion(TYPE_BRAND, id, category.getName(), null, null), brandWeights.get(id)));
+
+        SuggestionTrie<ProductSuggestion> built = builder.build();
+        log.info("⌨️ Built autocomplete trie with {} products, {} brands in {} ms",
+                catalog.size(), brands.size(), (System.nanoTime() - start) / 1_000_000);
+        return built;
+    }
+
+    /**
+     * Điểm gợi ý: log(1 + đã bán) + (rating / 5) * log(1 + lượt đánh giá); cộng 1 để sản phẩm mới vẫn có mặt
+     */
+    private static double weight(Product p, int sold) {
+        double rating = p.getAverageRating() != null ? p.getAverageRating() : 0;
+        int ratingCount = p.getRatingCount() != null ? p.getRatingCount() : 0;
+        return 1 + Math.log1p(sold) + rating / 5 * Math.log1p(ratingCount);
+    }
+
+    private static void addWordSuffixes(SuggestionTrie.Builder<ProductSuggestion> builder, String text,
+                                        ProductSuggestion suggestion, double weight) {
+        List<String> words = VietnameseTextUtils.foldedTokens(text);
+        for (int i = 0; i < words.size(); i++) {
+            // Khớp từ đầu tên được ưu tiên hơn khớp giữa tên
+            double boost = i == 0 ? 1.0 : 0.8;
+            builder.add(String.join(" ", words.subList(i, words.size())), suggestion, weight * boost);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductService.ProductChangedEvent event) {
+        stale.set(true);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryService.CategoryChangedEvent event) {
+        stale.set(true);
+    }
+}
@@ -0,0 +1,129 @@
+package org.fit.shopnuochoa.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.fit.shopnuochoa.model.Product;
+import org.fit.shopnuochoa.repository.ProductRepository;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Quản lý snapshot catalog dùng chung cho trợ lý tư vấn
+ *
+ * - Mỗi lần sản phẩm / danh mục thay đổi (sau khi commit) thì tăng version
+ * - Sản phẩm thay đổi: lần đọc kế tiếp chỉ nạp lại các sản phẩm đó rồi chép snapshot cũ sang snapshot mới
+ *   ({@link ProductCatalogSnapshot#withChanges}); trừ tồn kho / cập nhật rating không nạp lại cả catalog
+ * - Dựng lại toàn bộ (1 query JOIN FETCH) khi: khởi động, danh mục đổi, import nhiều sản phẩm, xóa mềm sản phẩm
+ * - Người đọc không bao giờ bị khóa khi snapshot còn mới
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductCatalogService {
+
+    private final ProductRepository productRepository;
+
+    private final AtomicLong catalogVersion = new AtomicLong();
+    private final Object rebuildLock = new Object();
+    private final Set<Integer> changedProductIds = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebuildRequested;
+    private volatile ProductCatalogSnapshot snapshot;
+
+    /**
+     * Lấy snapshot hiện tại, cập nhật nếu catalog đã thay đổi
+     */
+    public ProductCatalogSnapshot current() {
+        ProductCatalogSnapshot current = snapshot;
+        if (current != null && current.getVersion() == catalogVersion.get()) {
+            return current;
+        }
+
+        synchronized (rebuildLock) {
+            // Đọc version và lấy thay đổi TRƯỚC khi query: thay đổi đến sau sẽ tăng version, lần đọc sau xử lý tiếp
+            long version = catalogVersion.get();
+            current = snapshot;
+            if (current != null && current.getVersion() == version) {
+                return current;
+            }
+            boolean rebuild = rebuildRequested || current == null;
+            rebuildRequested = false;
+            List<Integer> changed = new ArrayList<>(changedProductIds);
+            changedProductIds.removeAll(changed);
+
+            try {
+                long start = System.nanoTime();
+                ProductCatalogSnapshot patched = rebuild ? null : patch(current, version, changed);
+                if (patched != null) {
+                    current = patched;
+                    log.debug("📦 Updated {} products in catalog snapshot v{} in {} µs",
+                            changed.size(), version, (System.nanoTime() - start) / 1_000);
+                } else {
+                    current = ProductCatalogSnapshot.build(version, productRepository.findAllActiveWithCategory());
+                    log.info("📦 Rebuilt catalog snapshot v{} with {} products in {} ms",
+                            version, current.size(), (System.nanoTime() - start) / 1_000_000);
+                }
+                snapshot = current;
+                return current;
+            } catch (RuntimeException e) {
+                // Trả lại thay đổi để lần đọc sau thử lại
+                changedProductIds.addAll(changed);
+                if (rebuild) {
+                    rebuildRequested = true;
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Chép snapshot và thay các sản phẩm đã đổi; null nếu phải dựng lại toàn bộ (có sản phẩm bị xóa mềm)
+     */
+    private ProductCatalogSnapshot patch(ProductCatalogSnapshot current, long version, List<Integer> changed) {
+        List<Product> products = changed.isEmpty() ? List.of() : productRepository.findActiveWithCategoryByIdIn(changed);
+        if (products.size() < changed.size()) {
+            Set<Integer> active = new HashSet<>();
+            products.forEach(p -> active.add(p.getId()));
+            for (Integer productId : changed) {
+                if (!active.contains(productId) && current.indexOf(productId) >= 0) {
+                    return null;
+                }
+            }
+        }
+        return current.withChanges(version, products);
+    }
+
+    /**
+     * Version hiện tại của catalog (các index dựng từ snapshot dùng để biết khi nào cần dựng lại)
+     */
+    public long currentVersion() {
+        return catalogVersion.get();
+    }
+
+    // Chạy trước các listener khác để các cache phía sau không kịp dựng lại từ snapshot cũ
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductService.ProductChangedEvent event) {
+        if (event.productId() == null) {
+            rebuildRequested = true;
+        } else {
+            changedProductIds.add(event.productId());
+        }
+        catalogVersion.incrementAndGet();
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryService.CategoryChangedEvent event) {
+        rebuildRequested = true;
+        catalogVersion.incrementAndGet();
+    }
+}
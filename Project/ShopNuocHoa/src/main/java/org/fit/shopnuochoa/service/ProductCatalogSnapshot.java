@@ -0,0 +1,339 @@
+package org.fit.shopnuochoa.service;
+
+import org.fit.shopnuochoa.Enum.Gender;
+import org.fit.shopnuochoa.Enum.Volume;
+import org.fit.shopnuochoa.model.Product;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Snapshot bất biến của catalog (dạng cột) dùng cho bộ lọc của trợ lý tư vấn.
+ *
+ * Mỗi sản phẩm chưa xóa có một chỉ số (index) cố định trong snapshot:
+ * - Giá, rating, lượt đánh giá, tồn kho lưu trong mảng nguyên thủy
+ * - Gender, Volume, thương hiệu, hot trend, còn hàng lưu dạng BitSet
+ *
+ * Snapshot không bao giờ bị sửa sau khi dựng: khi catalog thay đổi thì dựng snapshot mới
+ * và thay tham chiếu (xem {@link ProductCatalogService}). Sửa vài sản phẩm thì snapshot mới
+ * được chép từ snapshot cũ ({@link #withChanges}): chỉ cột và BitSet có giá trị đổi mới bị sao chép.
+ */
+public final class ProductCatalogSnapshot {
+
+    private final long version;
+    private final long parentVersion;     // -1 nếu dựng toàn bộ
+    private final int[] changedIndexes;   // index đã đổi so với snapshot parentVersion
+    private final Product[] products;
+    private final int[] ids;
+    private final double[] prices;
+    private final double[] ratings;       // NaN nếu sản phẩm chưa có averageRating
+    private final int[] ratingCounts;
+    private final int[] quantities;
+    private final String[] namesLower;
+    private final String[] categoryNamesLower;
+
+    private final BitSet all;
+    private final BitSet inStock;
+    private final BitSet hotTrend;
+    private final BitSet[] byGender;
+    private final BitSet[] byVolume;
+    private final Map<String, BitSet> byCategory;
+    private final Map<Integer, Integer> indexById;
+
+    // Index phụ dựng lười (lazy) một lần cho mỗi snapshot
+    private volatile ProductNameIndex nameIndex;
+
+    private ProductCatalogSnapshot(long version, List<Product> source) {
+        int n = source.size();
+        this.version = version;
+        this.parentVersion = -1;
+        this.changedIndexes = new int[0];
+        this.products = source.toArray(new Product[0]);
+        this.ids = new int[n];
+        this.prices = new double[n];
+        this.ratings = new double[n];
+        this.ratingCounts = new int[n];
+        this.quantities = new int[n];
+        this.namesLower = new String[n];
+        this.categoryNamesLower = new String[n];
+
+        this.all = new BitSet(n);
+        this.inStock = new BitSet(n);
+        this.hotTrend = new BitSet(n);
+        this.byGender = newBitSets(Gender.values().length, n);
+        this.byVolume = newBitSets(Volume.values().length, n);
+        Map<String, BitSet> categories = new HashMap<>();
+        Map<Integer, Integer> idIndex = new HashMap<>(n * 2);
+
+        for (int i = 0; i < n; i++) {
+            Product p = products[i];
+            ids[i] = p.getId();
+            prices[i] = p.getPrice() != null ? p.getPrice() : 0.0;
+            ratings[i] = p.getAverageRating() != null ? p.getAverageRating() : Double.NaN;
+            ratingCounts[i] = p.getRatingCount() != null ? p.getRatingCount() : 0;
+            quantities[i] = p.getQuantity() != null ? p.getQuantity() : 0;
+            namesLower[i] = p.getName() != null ? p.getName().toLowerCase() : "";
+            String categoryName = p.getCategory() != null && p.getCategory().getName() != null
+                    ? p.getCategory().getName().toLowerCase() : "";
+            categoryNamesLower[i] = categoryName;
+
+            all.set(i);
+            if (quantities[i] > 0) inStock.set(i);
+            if (Boolean.TRUE.equals(p.getHotTrend())) hotTrend.set(i);
+            if (p.getGender() != null) byGender[p.getGender().ordinal()].set(i);
+            if (p.getVolume() != null) byVolume[p.getVolume().ordinal()].set(i);
+            categories.computeIfAbsent(categoryKey(categoryName), k -> new BitSet(n)).set(i);
+            idIndex.put(ids[i], i);
+        }
+
+        this.byCategory = Collections.unmodifiableMap(categories);
+        this.indexById = Collections.unmodifiableMap(idIndex);
+    }
+
+    /**
+     * Dựng snapshot từ danh sách sản phẩm (đã loại sản phẩm xóa mềm, đã fetch category)
+     */
+    public static ProductCatalogSnapshot build(long version, List<Product> activeProducts) {
+        return new ProductCatalogSnapshot(version, activeProducts);
+    }
+
+    /**
+     * Snapshot mới = snapshot này + các sản phẩm vừa sửa / thêm (chưa xóa mềm, đã fetch category)
+     *
+     * - Sản phẩm đã có giữ nguyên index; sản phẩm mới được nối vào cuối
+     * - Mảng cột được chép (vài KB), BitSet chỉ chép khi có bit đổi: đổi tồn kho không đụng tới gender / thương hiệu
+     * - Không xóa được sản phẩm (index phải cố định): sản phẩm bị xóa mềm thì caller dựng lại toàn bộ
+     */
+    public ProductCatalogSnapshot withChanges(long newVersion, List<Product> changed) {
+        return new ProductCatalogSnapshot(this, newVersion, changed);
+    }
+
+    private ProductCatalogSnapshot(ProductCatalogSnapshot base, long version, List<Product> changed) {
+        int appended = 0;
+        for (Product p : changed) {
+            if (!base.indexById.containsKey(p.getId())) {
+                appended++;
+            }
+        }
+        int oldSize = base.products.length;
+        int n = oldSize + appended;
+        this.version = version;
+        this.parentVersion = base.version;
+        this.products = Arrays.copyOf(base.products, n);
+        this.ids = Arrays.copyOf(base.ids, n);
+        this.prices = Arrays.copyOf(base.prices, n);
+        this.ratings = Arrays.copyOf(base.ratings, n);
+        this.ratingCounts = Arrays.copyOf(base.ratingCounts, n);
+        this.quantities = Arrays.copyOf(base.quantities, n);
+        this.namesLower = Arrays.copyOf(base.namesLower, n);
+        this.categoryNamesLower = Arrays.copyOf(base.categoryNamesLower, n);
+
+        // Copy-on-write: mỗi BitSet dùng chung chỉ bị chép ở lần sửa đầu tiên
+        Set<BitSet> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        BitSet allBits = base.all;
+        BitSet inStockBits = base.inStock;
+        BitSet hotTrendBits = base.hotTrend;
+        BitSet[] genders = base.byGender.clone();
+        BitSet[] volumes = base.byVolume.clone();
+        Map<String, BitSet> categories = new HashMap<>(base.byCategory);
+        Map<Integer, Integer> idIndex = appended > 0 ? new HashMap<>(base.indexById) : base.indexById;
+        boolean namesChanged = appended > 0;
+
+        int[] changedList = new int[changed.size()];
+        int next = oldSize;
+        for (int c = 0; c < changed.size(); c++) {
+            Product p = changed.get(c);
+            Integer existing = base.indexById.get(p.getId());
+            int i = existing != null ? existing : next++;
+            Product old = existing != null ? base.products[i] : null;
+            changedList[c] = i;
+
+            products[i] = p;
+            ids[i] = p.getId();
+            prices[i] = p.getPrice() != null ? p.getPrice() : 0.0;
+            ratings[i] = p.getAverageRating() != null ? p.getAverageRating() : Double.NaN;
+            ratingCounts[i] = p.getRatingCount() != null ? p.getRatingCount() : 0;
+            quantities[i] = p.getQuantity() != null ? p.getQuantity() : 0;
+            namesLower[i] = p.getName() != null ? p.getName().toLowerCase() : "";
+            String categoryName = p.getCategory() != null && p.getCategory().getName() != null
+                    ? p.getCategory().getName().toLowerCase() : "";
+            String oldCategoryName = old != null ? base.categoryNamesLower[i] : null;
+            categoryNamesLower[i] = categoryName;
+
+            if (old == null) {
+                allBits = writable(owned, allBits);
+                allBits.set(i);
+                idIndex.put(ids[i], i);
+            } else if (!Objects.equals(old.getName(), p.getName())) {
+                namesChanged = true;
+            }
+
+            boolean wasInStock = old != null && base.quantities[i] > 0;
+            if (wasInStock != quantities[i] > 0) {
+                inStockBits = writable(owned, inStockBits);
+                inStockBits.set(i, quantities[i] > 0);
+            }
+            boolean wasHot = old != null && Boolean.TRUE.equals(old.getHotTrend());
+            if (wasHot != Boolean.TRUE.equals(p.getHotTrend())) {
+                hotTrendBits = writable(owned, hotTrendBits);
+                hotTrendBits.set(i, !wasHot);
+            }
+            Gender oldGender = old != null ? old.getGender() : null;
+            if (oldGender != p.getGender()) {
+                if (oldGender != null) {
+                    genders[oldGender.ordinal()] = writable(owned, genders[oldGender.ordinal()]);
+                    genders[oldGender.ordinal()].clear(i);
+                }
+                if (p.getGender() != null) {
+                    genders[p.getGender().ordinal()] = writable(owned, genders[p.getGender().ordinal()]);
+                    genders[p.getGender().ordinal()].set(i);
+                }
+            }
+            Volume oldVolume = old != null ? old.getVolume() : null;
+            if (oldVolume != p.getVolume()) {
+                if (oldVolume != null) {
+                    volumes[oldVolume.ordinal()] = writable(owned, volumes[oldVolume.ordinal()]);
+                    volumes[oldVolume.ordinal()].clear(i);
+                }
+                if (p.getVolume() != null) {
+                    volumes[p.getVolume().ordinal()] = writable(owned, volumes[p.getVolume().ordinal()]);
+                    volumes[p.getVolume().ordinal()].set(i);
+                }
+            }
+            if (!categoryName.equals(oldCategoryName)) {
+                if (oldCategoryName != null) {
+                    BitSet bits = writable(owned, categories.get(categoryKey(oldCategoryName)));
+                    bits.clear(i);
+                    categories.put(categoryKey(oldCategoryName), bits);
+                }
+                BitSet bits = categories.get(categoryKey(categoryName));
+                if (bits != null) {
+                    bits = writable(owned, bits);
+                } else {
+                    bits = new BitSet(n);
+                    owned.add(bits);
+                }
+                bits.set(i);
+                categories.put(categoryKey(categoryName), bits);
+            }
+        }
+
+        this.changedIndexes = changedList;
+        this.all = allBits;
+        this.inStock = inStockBits;
+        this.hotTrend = hotTrendBits;
+        this.byGender = genders;
+        this.byVolume = volumes;
+        this.byCategory = Collections.unmodifiableMap(categories);
+        this.indexById = appended > 0 ? Collections.unmodifiableMap(idIndex) : idIndex;
+        // Index tên chỉ phụ thuộc tên + index: tên không đổi thì dùng lại
+        this.nameIndex = namesChanged ? null : base.nameIndex;
+    }
+
+    /**
+     * BitSet sửa được: bản gốc dùng chung với snapshot cũ thì chép một lần, bản đã thuộc snapshot mới thì trả lại luôn
+     */
+    private static BitSet writable(Set<BitSet> owned, BitSet bits) {
+        if (owned.contains(bits)) {
+            return bits;
+        }
+        BitSet copy = (BitSet) bits.clone();
+        owned.add(copy);
+        return copy;
+    }
+
+    private static BitSet[] newBitSets(int count, int size) {
+        BitSet[] sets = new BitSet[count];
+        for (int i = 0; i < count; i++) {
+            sets[i] = new BitSet(size);
+        }
+        return sets;
+    }
+
+    private static String categoryKey(String categoryName) {
+        return categoryName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // ========== TRUY VẤN BITSET (luôn trả về bản sao để caller tự do AND/ANDNOT) ==========
+
+    public BitSet allProducts() { return (BitSet) all.clone(); }
+
+    public BitSet inStockProducts() { return (BitSet) inStock.clone(); }
+
+    public BitSet hotTrendProducts() { return (BitSet) hotTrend.clone(); }
+
+    public BitSet productsWithGender(Gender gender) { return (BitSet) byGender[gender.ordinal()].clone(); }
+
+    public BitSet productsWithVolume(Volume volume) { return (BitSet) byVolume[volume.ordinal()].clone(); }
+
+    /**
+     * Sản phẩm thuộc thương hiệu (so sánh không phân biệt hoa thường)
+     */
+    public BitSet productsInCategory(String categoryName) {
+        if (categoryName == null) return new BitSet();
+        BitSet set = byCategory.get(categoryKey(categoryName));
+        return set != null ? (BitSet) set.clone() : new BitSet();
+    }
+
+    // ========== TRUY CẬP THEO CỘT ==========
+
+    public long getVersion() { return version; }
+
+    /** Version của snapshot được chép ra snapshot này ({@link #withChanges}), -1 nếu dựng toàn bộ */
+    public long getParentVersion() { return parentVersion; }
+
+    /** Index các sản phẩm đã sửa / thêm so với snapshot {@link #getParentVersion()} */
+    public int[] changedIndexes() { return changedIndexes.clone(); }
+
+    public int size() { return products.length; }
+
+    public Product product(int index) { return products[index]; }
+
+    public int id(int index) { return ids[index]; }
+
+    public double price(int index) { return prices[index]; }
+
+    /** NaN nếu sản phẩm chưa có rating */
+    public double rating(int index) { return ratings[index]; }
+
+    public int ratingCount(int index) { return ratingCounts[index]; }
+
+    public int quantity(int index) { return quantities[index]; }
+
+    public String nameLower(int index) { return namesLower[index]; }
+
+    public String categoryNameLower(int index) { return categoryNamesLower[index]; }
+
+    /**
+     * Index tìm tên gần đúng cho snapshot này (dựng ở lần gọi đầu tiên)
+     */
+    public ProductNameIndex nameIndex() {
+        ProductNameIndex index = nameIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = nameIndex;
+                if (index == null) {
+                    index = ProductNameIndex.build(this);
+                    nameIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return index của sản phẩm trong snapshot, -1 nếu không có (hoặc đã bị xóa mềm)
+     */
+    public int indexOf(Integer productId) {
+        Integer index = productId != null ? indexById.get(productId) : null;
+        return index != null ? index : -1;
+    }
+}
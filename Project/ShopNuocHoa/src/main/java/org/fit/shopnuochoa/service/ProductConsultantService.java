@@ -1,19 +1,35 @@
 package org.fit.shopnuochoa.service;
 
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.fit.shopnuochoa.model.Category;
+import org.fit.shopnuochoa.component.QueryIntentLexer;
+import org.fit.shopnuochoa.component.TokenBucketRateLimiter;
+import org.fit.shopnuochoa.config.LlmPriority;
 import org.fit.shopnuochoa.model.Product;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.chat.prompt.PromptTemplate;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.time.Instant;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -24,6 +40,9 @@ import java.util.concurrent.atomic.AtomicInteger;
  * - Response Caching: Cache câu trả lời 5 phút để tăng tốc
  * - Retry Mechanism: Tự động retry khi gặp lỗi tạm thời
  * - Fallback Response: Trả về database khi API lỗi
+ * - Single-flight: Câu hỏi trùng nhau đến cùng lúc chỉ gọi Gemini một lần
+ * - Streaming: Gửi sản phẩm trước, câu trả lời phát dần theo token (SSE)
+ * - Latency Budget: Gemini trả lời chậm quá ngân sách → trả câu trả lời mẫu từ sản phẩm đã lọc
  *
  * Architecture:
  * 1. Check Cache: Kiểm tra cache trước
@@ -45,17 +64,53 @@ public class ProductConsultantService {
     private final ProductStatisticsService statisticsService;
 
     // ========== RATE LIMITING ==========
-    // Giới hạn: 5 requests/phút/user
+    // Giới hạn: 5 requests/phút/user (token bucket, hồi 1 lượt mỗi 12 giây)
     private static final int MAX_REQUESTS_PER_MINUTE = 5;
     private static final long RATE_LIMIT_WINDOW_SECONDS = 60;
-    private final ConcurrentHashMap<String, RateLimitInfo> rateLimitMap = new ConcurrentHashMap<>();
+    // Số client theo dõi tối đa - bucket nhàn rỗi quá 1 phút tự bị xóa
+    private static final long RATE_LIMIT_MAX_CLIENTS = 10_000;
+    private final TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(
+        MAX_REQUESTS_PER_MINUTE, Duration.ofSeconds(RATE_LIMIT_WINDOW_SECONDS), RATE_LIMIT_MAX_CLIENTS);
 
     // ========== RESPONSE CACHING ==========
-    // Cache: 5 phút TTL, tối đa 100 entries
-    private static final long CACHE_TTL_SECONDS = 300;
-    private static final int MAX_CACHE_SIZE = 100;
-    private final ConcurrentHashMap<String, CachedResponse> responseCache = new ConcurrentHashMap<>();
-    private final CategoryService categoryService;
+    // Cache W-TinyLFU (Caffeine): 5 phút TTL cho câu trả lời, 1 giờ cho câu chào
+    private static final Duration CACHE_TTL = Duration.ofMinutes(5);
+    private static final Duration GREETING_CACHE_TTL = Duration.ofHours(1);
+    private final ConsultantResponseCache responseCache;
+    private final BrandDictionary brandDictionary;
+    private final QueryIntentLexer intentLexer;
+
+    // ========== PROMPT ==========
+    // Ngắn gọn: mọi token ở đây bị tính cho MỖI lần gọi Gemini
+    private static final String SYSTEM_PROMPT = """
+        Bạn là chuyên viên tư vấn nước hoa của ShopNuocHoa: thân thiện, tự nhiên, xưng "mình", gọi khách là "bạn".
+        Quy tắc:
+        1. Chỉ giới thiệu sản phẩm trong [SẢN PHẨM]; giá, tồn kho, đã bán phải đúng như dữ liệu, không bịa thông tin.
+        2. [THỐNG KÊ] chỉ để tham khảo, không phải danh sách giới thiệu.
+        3. Một sản phẩm (câu hỏi "nhất"): 2-3 câu gồm tên, hãng, giá, điểm nổi bật.
+           Nhiều sản phẩm: mỗi sản phẩm một dòng "🌸 Tên - Hãng: giá, điểm nổi bật".
+        4. Không có sản phẩm phù hợp: xin lỗi và gợi ý khách thử tiêu chí khác.
+        5. Điểm nổi bật chỉ lấy từ dữ liệu: đã bán > 0 → "đã có X khách tin dùng"; hot → "đang được yêu thích";
+           đánh giá → "X/5 sao"; tồn kho ít → "số lượng có hạn"; giá cao → "cao cấp"; giá thấp → "giá tốt".
+        6. Ngắn gọn, emoji vừa phải, kết thúc bằng một câu hỏi mở.
+        [SẢN PHẨM] là bảng, cột ngăn bằng "|", dòng đầu là tên cột, giá tính bằng VNĐ.
+        """;
+
+    // ========== SINGLE-FLIGHT ==========
+    // Request đang chạy theo câu hỏi đã normalize / theo chữ ký ý định (chỉ phần gọi LLM)
+    private static final long IN_FLIGHT_MAX_WAIT_SECONDS = 60;
+    private final ConcurrentHashMap<String, CompletableFuture<ConsultationResult>> queriesInFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<String>> answersInFlight = new ConcurrentHashMap<>();
+    // Stream đang phát theo câu hỏi đã normalize (request streaming đến sau dùng chung)
+    private final ConcurrentHashMap<String, StreamingConsultation> streamsInFlight = new ConcurrentHashMap<>();
+
+    // ========== LATENCY BUDGET ==========
+    // Gemini không trả lời kịp trong ngân sách → trả câu trả lời mẫu, câu trả lời đến muộn vẫn được lưu cache
+    @Value("${consultant.latency-budget-ms:8000}")
+    private long latencyBudgetMs;
+    private static final int LLM_MAX_THREADS = 32;
+    private final ExecutorService llmExecutor = new ThreadPoolExecutor(
+        0, LLM_MAX_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), llmThreadFactory());
 
     /**
      * Consultation result wrapper
@@ -73,32 +128,42 @@ public class ProductConsultantService {
         public List<Product> getProducts() { return products; }
     }
 
-    // ========== HELPER CLASSES FOR RATE LIMITING & CACHING ==========
-
     /**
-     * Rate limit tracking per user
+     * Streaming consultation: sản phẩm gửi trước, câu trả lời phát dần theo token
      */
-    private static class RateLimitInfo {
-        volatile long windowStart;
-        final AtomicInteger requestCount;
+    public static class StreamingConsultation {
+        private final List<Product> products;
+        private final Flux<String> tokens;
+
+        public StreamingConsultation(List<Product> products, Flux<String> tokens) {
+            this.products = products;
+            this.tokens = tokens;
+        }
 
-        RateLimitInfo(long windowStart) {
-            this.windowStart = windowStart;
-            this.requestCount = new AtomicInteger(0);
+        /**
+         * Câu trả lời đã có sẵn (cache, câu chào, rate limit...) → phát một lần
+         */
+        static StreamingConsultation of(ConsultationResult result) {
+            return new StreamingConsultation(result.getProducts(), Flux.just(result.getResponse()));
         }
+
+        public List<Product> getProducts() { return products; }
+        public Flux<String> getTokens() { return tokens; }
     }
 
+    // ========== HELPER CLASSES FOR RATE LIMITING & CACHING ==========
+
     /**
-     * Cached response with timestamp
+     * Kết quả các bước trước khi gọi LLM (intent, sản phẩm đã lọc, context RAG)
      */
-    private static class CachedResponse {
-        final ConsultationResult result;
-        final long timestamp;
-
-        CachedResponse(ConsultationResult result, long timestamp) {
-            this.result = result;
-            this.timestamp = timestamp;
-        }
+    private static class PreparedConsultation {
+        Map<String, Object> intents;
+        String intentSignature;
+        List<Product> filteredProducts = List.of();
+        List<Product> productsToReturn = List.of();
+        String productContext;
+        String statisticsContext;
+        ConsultationResult readyResult;  // != null khi trả lời được ngay, không cần gọi LLM
     }
 
     /**
@@ -109,182 +174,444 @@ public class ProductConsultantService {
      * @return ConsultationResult chứa response và danh sách sản phẩm
      */
     public ConsultationResult consultProductWithDetails(String userQuery, String userId) {
+        log.info("🔍 Starting Consultation for query: {} (userId: {})", userQuery, userId);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(latencyBudgetMs);
+
+        // ========== STEP 1: CHECK CACHE ==========
+        String normalizedQuery = normalizeQuery(userQuery);
+        long cacheSequence = responseCache.currentSequence();
+        ConsultationResult cachedResult = responseCache.get(normalizedQuery);
+        if (cachedResult != null) {
+            log.info("💾 Cache HIT - returning CACHED response for: {}", normalizedQuery);
+            return cachedResult;
+        }
+        log.info("❌ Cache MISS for query: {}", normalizedQuery);
+
+        // ========== STEP 2: CHECK RATE LIMIT ==========
+        long waitTime = rateLimiter.tryAcquire(userId);
+        if (waitTime > 0) {
+            String rateLimitMsg = String.format(
+                "⏰ Bạn đã gửi quá nhiều tin nhắn. Vui lòng đợi %d giây trước khi tiếp tục.",
+                waitTime
+            );
+            log.warn("🚫 Rate limit exceeded for user: {}", userId);
+            return new ConsultationResult(rateLimitMsg, List.of());
+        }
+
+        // ========== SINGLE-FLIGHT ==========
+        // Nhiều người hỏi cùng một câu cùng lúc → chỉ request đầu tiên chạy pipeline, các request khác chờ chung kết quả
+        try {
+            return singleFlight(queriesInFlight, normalizedQuery,
+                () -> runConsultation(userQuery, normalizedQuery, cacheSequence, deadline));
+        } catch (Exception e) {
+            log.error("❌ Error while waiting for in-flight consultation: ", e);
+            return new ConsultationResult(
+                "Xin lỗi, hệ thống đang bận. Vui lòng thử lại sau giây lát hoặc liên hệ bộ phận hỗ trợ. Cảm ơn bạn! 🙏",
+                List.of()
+            );
+        }
+    }
+
+    /**
+     * Pipeline tư vấn sau khi đã miss cache và qua rate limit (bước 3 → 6)
+     *
+     * @param deadline hết ngân sách thời gian (System.nanoTime) - quá hạn thì trả câu trả lời mẫu
+     */
+    private ConsultationResult runConsultation(String userQuery, String normalizedQuery,
+                                               long cacheSequence, long deadline) {
         // ========== DECLARE VARIABLES OUTSIDE TRY FOR FALLBACK ACCESS ==========
-        List<Product> filteredProducts = List.of();
-        String normalizedQuery = "";
+        PreparedConsultation prepared = null;
 
         try {
-            log.info("🔍 Starting Consultation for query: {} (userId: {})", userQuery, userId);
-
-            // ========== STEP 1: CHECK CACHE ==========
-            normalizedQuery = normalizeQuery(userQuery);
-            ConsultationResult cachedResult = getFromCache(normalizedQuery);
-            if (cachedResult != null) {
-                log.info("✅ Returning CACHED response");
-                return cachedResult;
+            prepared = prepareConsultation(userQuery, normalizedQuery, cacheSequence);
+            if (prepared.readyResult != null) {
+                return prepared.readyResult;
             }
+            PreparedConsultation ctx = prepared;
 
-            // ========== STEP 2: CHECK RATE LIMIT ==========
-            if (!checkRateLimit(userId)) {
-                long waitTime = getWaitTime(userId);
-                String rateLimitMsg = String.format(
-                    "⏰ Bạn đã gửi quá nhiều tin nhắn. Vui lòng đợi %d giây trước khi tiếp tục.",
-                    waitTime
-                );
-                log.warn("🚫 Rate limit exceeded for user: {}", userId);
-                return new ConsultationResult(rateLimitMsg, List.of());
+            // ========== PHASE 5: LLM GENERATION (CÓ NGÂN SÁCH THỜI GIAN) ==========
+            log.info("💬 [STEP 5] Generating LLM response...");
+            LlmPriority priority = LlmPriority.current();
+            CompletableFuture<String> answer;
+            try {
+                answer = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return priority.callWith(() -> generateAnswer(userQuery, ctx));
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, llmExecutor);
+            } catch (RejectedExecutionException e) {
+                answer = CompletableFuture.failedFuture(e);
             }
 
-            // ========== PHASE 3: INTENT EXTRACTION (REGEX ONLY - NO API CALL) ==========
-            // ⚡ OPTIMIZATION: Dùng regex thay vì LLM để giảm API calls từ 2 → 1
-            log.info("🧠 [STEP 3] Extracting intents using REGEX (no API call)...");
-            Map<String, Object> intents = createFallbackIntents(userQuery);
-            log.info("📊 Extracted intents: {}", intents);
+            // ========== STEP 6: SAVE TO CACHE ==========
+            // Lưu cả khi câu trả lời về sau khi request đã trả câu trả lời mẫu
+            answer.thenAccept(text -> {
+                saveToCache(normalizedQuery, ctx, new ConsultationResult(text, ctx.productsToReturn), cacheSequence);
+                log.info("✅ Consultation completed successfully");
+            });
 
-            // ========== GREETING HANDLING ==========
-            // Greeting không cần gọi API Gemini, trả về response cố định và CACHE
-            if ((Boolean) intents.getOrDefault("isGreeting", false)) {
-                log.info("👋 Greeting detected - returning cached response (no API call)");
-                String greetingResponse = "Chào bạn! 👋 Tôi là trợ lý AI tư vấn nước hoa của ShopNuocHoa. Tôi có thể giúp bạn tìm nước hoa phù hợp, tư vấn giá cả, thương hiệu và nhiều hơn nữa. Bạn cần tôi giúp gì nhé?";
+            try {
+                String enhancedResponse = answer.get(remainingMillis(deadline), TimeUnit.MILLISECONDS);
+                return new ConsultationResult(enhancedResponse, ctx.productsToReturn);
+            } catch (TimeoutException timeout) {
+                log.warn("⏱️ LLM did not answer within {} ms - returning template answer (late answer will be cached)",
+                    latencyBudgetMs);
+                return new ConsultationResult(
+                    ConsultantAnswerTemplate.render(ctx.intents, ctx.productsToReturn), ctx.productsToReturn);
+            } catch (ExecutionException llmError) {
+                // Nếu LLM lỗi, log chi tiết và throw để fallback xử lý
+                Throwable cause = llmError.getCause();
+                log.error("❌ LLM Generation failed: {}", cause.getMessage());
+                log.debug("LLM Error details:", cause);
+                throw cause instanceof Exception exception ? exception : llmError; // Re-throw để trigger fallback
+            }
 
-                // Cache greeting để lần sau không cần check intent nữa
-                ConsultationResult greetingResult = new ConsultationResult(greetingResponse, List.of());
-                saveToCache(normalizedQuery, greetingResult);
+        } catch (Exception e) {
+            log.error("❌ Error in consultation: ", e);
+            return buildFallbackResult(prepared != null ? prepared.filteredProducts : List.of(), e);
+        }
+    }
 
-                return greetingResult;
-            }
+    /**
+     * Streaming consultation: trả về danh sách sản phẩm ngay, câu trả lời phát dần theo token
+     *
+     * Cache / rate limit / lọc sản phẩm / single-flight / ngân sách thời gian giống hệt {@link #consultProductWithDetails}:
+     * - Cùng câu hỏi (đã normalize) đang chạy → dùng chung stream đang phát (phát lại từ đầu) hoặc chờ kết quả
+     *   của request thường đang chạy; request thường đến sau cũng chờ chung kết quả của stream
+     * - Token đầu tiên không về kịp trong latencyBudgetMs → phát câu trả lời mẫu từ sản phẩm đã lọc
+     * Câu trả lời hoàn chỉnh được lưu cache khi stream kết thúc.
+     */
+    public StreamingConsultation consultProductStreaming(String userQuery, String userId) {
+        log.info("🌊 Starting Streaming Consultation for query: {} (userId: {})", userQuery, userId);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(latencyBudgetMs);
 
-            // ========== PHASE 4: STRUCTURED FILTERING ==========
-            log.info("🔍 [STEP 4] Filtering products from database...");
+        String normalizedQuery = normalizeQuery(userQuery);
+        long cacheSequence = responseCache.currentSequence();
+        ConsultationResult cachedResult = responseCache.get(normalizedQuery);
+        if (cachedResult != null) {
+            log.info("💾 Cache HIT - streaming CACHED response for: {}", normalizedQuery);
+            return StreamingConsultation.of(cachedResult);
+        }
+
+        long waitTime = rateLimiter.tryAcquire(userId);
+        if (waitTime > 0) {
+            log.warn("🚫 Rate limit exceeded for user: {}", userId);
+            return StreamingConsultation.of(new ConsultationResult(String.format(
+                "⏰ Bạn đã gửi quá nhiều tin nhắn. Vui lòng đợi %d giây trước khi tiếp tục.", waitTime), List.of()));
+        }
+
+        // ========== SINGLE-FLIGHT ==========
+        CompletableFuture<ConsultationResult> mine = new CompletableFuture<>();
+        CompletableFuture<ConsultationResult> existing = queriesInFlight.putIfAbsent(normalizedQuery, mine);
+        if (existing != null) {
+            return joinInFlight(normalizedQuery, existing);
+        }
+        mine.orTimeout(IN_FLIGHT_MAX_WAIT_SECONDS, TimeUnit.SECONDS)
+            .whenComplete((result, error) -> {
+                // Xóa stream trước: chỉ request giữ khóa trong queriesInFlight mới được đăng ký stream
+                streamsInFlight.remove(normalizedQuery);
+                queriesInFlight.remove(normalizedQuery, mine);
+            });
+
+        PreparedConsultation prepared;
+        try {
+            prepared = prepareConsultation(userQuery, normalizedQuery, cacheSequence);
+        } catch (Exception e) {
+            log.error("❌ Error in streaming consultation: ", e);
+            ConsultationResult fallback = buildFallbackResult(List.of(), e);
+            mine.complete(fallback);
+            return StreamingConsultation.of(fallback);
+        }
+        if (prepared.readyResult != null) {
+            mine.complete(prepared.readyResult);
+            return StreamingConsultation.of(prepared.readyResult);
+        }
+
+        String template = ConsultantAnswerTemplate.render(prepared.intents, prepared.productsToReturn);
+
+        // Một lần gọi Gemini cho mọi client cùng câu hỏi; hủy khi không còn client nào nghe
+        Flux<String> shared = Flux.defer(() -> {
+                StringBuilder fullResponse = new StringBuilder();
+                return streamLLMResponse(userQuery, prepared.productContext, prepared.statisticsContext, prepared.intents)
+                    .doOnNext(fullResponse::append)
+                    .doOnComplete(() -> {
+                        log.info("✅ Streaming consultation completed ({} chars)", fullResponse.length());
+                        ConsultationResult result = new ConsultationResult(fullResponse.toString(), prepared.productsToReturn);
+                        saveToCache(normalizedQuery, prepared, result, cacheSequence);
+                        mine.complete(result);
+                    })
+                    .doOnError(e -> {
+                        log.error("❌ LLM Streaming failed: {}", e.getMessage());
+                        mine.complete(buildFallbackResult(prepared.filteredProducts, asException(e)));
+                    })
+                    .doOnCancel(() -> mine.complete(new ConsultationResult(template, prepared.productsToReturn)));
+            })
+            .replay()
+            .refCount();
+
+        Flux<String> tokens = Flux.defer(() -> {
+            AtomicBoolean started = new AtomicBoolean();
+            return shared
+                .timeout(Mono.defer(() -> Mono.delay(Duration.ofMillis(remainingMillis(deadline)))),
+                    token -> Mono.never(),
+                    Flux.defer(() -> {
+                        log.warn("⏱️ LLM did not start streaming within {} ms - returning template answer", latencyBudgetMs);
+                        return Flux.just(template);
+                    }))
+                .doOnNext(token -> started.set(true))
+                // Đã gửi một phần câu trả lời thì dừng lại, chưa gửi gì thì trả câu fallback
+                .onErrorResume(e -> started.get()
+                    ? Flux.empty()
+                    : Flux.just(buildFallbackResult(prepared.filteredProducts, asException(e)).getResponse()));
+        });
+
+        StreamingConsultation consultation = new StreamingConsultation(prepared.productsToReturn, tokens);
+        streamsInFlight.put(normalizedQuery, consultation);
+        if (mine.isDone()) {
+            // Đã kết thúc (hết hạn chờ) trước khi đăng ký: không để stream cũ lại trong map
+            streamsInFlight.remove(normalizedQuery, consultation);
+        }
+        return consultation;
+    }
+
+    /**
+     * Câu hỏi đang được request khác xử lý: dùng chung stream nếu là request streaming,
+     * ngược lại chờ kết quả (tối đa {@link #IN_FLIGHT_MAX_WAIT_SECONDS} giây) rồi phát một lần
+     */
+    private StreamingConsultation joinInFlight(String normalizedQuery, CompletableFuture<ConsultationResult> existing) {
+        log.info("🔗 Joining in-flight request: {}", normalizedQuery);
+        StreamingConsultation stream = streamsInFlight.get(normalizedQuery);
+        if (stream != null) {
+            return stream;
+        }
+        try {
+            return StreamingConsultation.of(existing.get(IN_FLIGHT_MAX_WAIT_SECONDS, TimeUnit.SECONDS));
+        } catch (Exception e) {
+            log.error("❌ Error while waiting for in-flight consultation: ", e);
+            return StreamingConsultation.of(new ConsultationResult(
+                "Xin lỗi, hệ thống đang bận. Vui lòng thử lại sau giây lát hoặc liên hệ bộ phận hỗ trợ. Cảm ơn bạn! 🙏",
+                List.of()
+            ));
+        }
+    }
+
+    /**
+     * Bước 3 → 4 dùng chung cho chế độ thường và streaming:
+     * trích intent, lọc sản phẩm (có tầng cache theo ý định), dựng context RAG, chọn sản phẩm trả về.
+     * Nếu trả lời được ngay (câu chào / cache theo ý định) thì readyResult khác null.
+     */
+    private PreparedConsultation prepareConsultation(String userQuery, String normalizedQuery, long cacheSequence) {
+        PreparedConsultation prepared = new PreparedConsultation();
+
+        // ========== PHASE 3: INTENT EXTRACTION (KEYWORD LEXER - NO API CALL) ==========
+        // ⚡ OPTIMIZATION: Dùng automaton từ khóa thay vì LLM để giảm API calls từ 2 → 1
+        log.info("🧠 [STEP 3] Extracting intents using keyword lexer (no API call)...");
+        Map<String, Object> intents = createFallbackIntents(userQuery);
+        prepared.intents = intents;
+        log.info("📊 Extracted intents: {}", intents);
+
+        // ========== GREETING HANDLING ==========
+        // Greeting không cần gọi API Gemini, trả về response cố định và CACHE
+        if ((Boolean) intents.getOrDefault("isGreeting", false)) {
+            log.info("👋 Greeting detected - returning cached response (no API call)");
+            String greetingResponse = "Chào bạn! 👋 Tôi là trợ lý AI tư vấn nước hoa của ShopNuocHoa. Tôi có thể giúp bạn tìm nước hoa phù hợp, tư vấn giá cả, thương hiệu và nhiều hơn nữa. Bạn cần tôi giúp gì nhé?";
+
+            // Cache greeting để lần sau không cần check intent nữa
+            ConsultationResult greetingResult = new ConsultationResult(greetingResponse, List.of());
+            responseCache.put(normalizedQuery, greetingResult, List.of(), GREETING_CACHE_TTL, cacheSequence);
+
+            prepared.readyResult = greetingResult;
+            return prepared;
+        }
 
-            // Build criteria from all intents without prioritization
-            ProductFilterEngine.FilterCriteria criteria = filterEngine.buildCriteriaFromIntents(intents);
-            log.info("📋 Filter criteria: minPrice={}, maxPrice={}, brand={}, gender={}, sortBy={}",
-                criteria.getMinPrice(), criteria.getMaxPrice(), criteria.getCategoryName(),
-                criteria.getGender(), criteria.getSortBy());
+        // ========== PHASE 4: STRUCTURED FILTERING ==========
+        log.info("🔍 [STEP 4] Filtering products from database...");
+
+        // Build criteria from all intents without prioritization
+        ProductFilterEngine.FilterCriteria criteria = filterEngine.buildCriteriaFromIntents(intents);
+        // Phần mô tả tự do ("mùi gỗ ấm cho mùa đông"): không nêu tên sản phẩm, không hỏi theo bảng xếp hạng
+        // → xếp các sản phẩm đã lọc theo độ tương đồng ngữ nghĩa (xem ProductSemanticIndex)
+        String descriptiveText = (String) intents.get("descriptiveText");
+        if (descriptiveText != null && criteria.getProductName() == null
+                && Boolean.TRUE.equals(criteria.getRankByRelevance())) {
+            criteria.setSemanticQuery(descriptiveText);
+        }
+        log.info("📋 Filter criteria: minPrice={}, maxPrice={}, brand={}, gender={}, sortBy={}",
+            criteria.getMinPrice(), criteria.getMaxPrice(), criteria.getCategoryName(),
+            criteria.getGender(), criteria.getSortBy());
+
+        // ========== TẦNG CACHE THEO Ý ĐỊNH ==========
+        // Câu hỏi khác chữ nhưng cùng tiêu chí lọc + cùng cờ intent → dùng lại kết quả
+        boolean isSuperlative = Boolean.TRUE.equals(intents.get("isSuperlative"));
+        prepared.intentSignature = buildIntentSignature(criteria, intents);
+        ConsultantResponseCache.IntentHit intentHit = responseCache.getByIntent(prepared.intentSignature);
+        if (intentHit != null && intentHit.result() != null) {
+            log.info("💾 Intent cache HIT - reusing answer for signature: {}", prepared.intentSignature);
+            ConsultationResult reused = intentHit.result();
+            List<Integer> reusedIds = intentHit.filteredProducts().stream().map(Product::getId).toList();
+            responseCache.put(normalizedQuery, reused, reusedIds, CACHE_TTL, cacheSequence);
+            prepared.filteredProducts = intentHit.filteredProducts();
+            prepared.readyResult = reused;
+            return prepared;
+        }
 
+        List<Product> filteredProducts;
+        if (intentHit != null) {
+            log.info("💾 Intent cache HIT - reusing {} filtered products", intentHit.filteredProducts().size());
+            filteredProducts = intentHit.filteredProducts();
+        } else {
             filteredProducts = filterEngine.filterProducts(criteria);
+        }
+        prepared.filteredProducts = filteredProducts;
 
-            // Generate context based on special queries for better LLM response
-            String productContext = vectorService.generateProductContext(filteredProducts);
-            String statisticsContext = "";
+        // Generate context based on special queries for better LLM response
+        prepared.productContext = vectorService.generateProductContext(filteredProducts);
+        prepared.statisticsContext = "";
 
-            // Only add statistics context for best-selling queries to show actual sales numbers
-            if ((Boolean) intents.getOrDefault("isBestSelling", false) && !filteredProducts.isEmpty()) {
-                log.info("🏆 Including best-selling statistics for reference");
-                statisticsContext = statisticsService.generateEnhancedStatistics();
-            }
+        // Only add statistics context for best-selling queries to show actual sales numbers
+        if ((Boolean) intents.getOrDefault("isBestSelling", false) && !filteredProducts.isEmpty()) {
+            log.info("🏆 Including best-selling statistics for reference");
+            prepared.statisticsContext = statisticsService.generateEnhancedStatistics();
+        }
 
-            log.info("🔎 Filtered {} products with criteria: {}", filteredProducts.size(), intents);
-            if (filteredProducts.isEmpty()) {
-                log.warn("⚠️ No products found for query: {}", userQuery);
-            } else {
-                log.info("📦 First 3 products: {}", filteredProducts.stream()
-                    .limit(3)
-                    .map(Product::getName)
-                    .collect(java.util.stream.Collectors.joining(", ")));
-            }
+        log.info("🔎 Filtered {} products with criteria: {}", filteredProducts.size(), intents);
+        if (filteredProducts.isEmpty()) {
+            log.warn("⚠️ No products found for query: {}", userQuery);
+        } else {
+            log.info("📦 First 3 products: {}", filteredProducts.stream()
+                .limit(3)
+                .map(Product::getName)
+                .collect(java.util.stream.Collectors.joining(", ")));
+        }
 
-            log.info("📚 Generated context with {} products", filteredProducts.size());
+        log.info("📚 Generated context with {} products (~{} tokens)", filteredProducts.size(),
+            ProductContextBuilder.estimateTokens(prepared.productContext) + ProductContextBuilder.estimateTokens(prepared.statisticsContext));
 
-            // ========== PHASE 5: LLM GENERATION ==========
-            String enhancedResponse;
-            try {
-                log.info("💬 [STEP 5] Generating LLM response...");
-                enhancedResponse = generateLLMResponse(
-                    userQuery,
-                    productContext,
-                    statisticsContext,
-                    intents
-                );
-            } catch (Exception llmError) {
-                // Nếu LLM lỗi, log chi tiết và throw để fallback xử lý
-                log.error("❌ LLM Generation failed: {}", llmError.getMessage());
-                log.debug("LLM Error details:", llmError);
-                throw llmError; // Re-throw để trigger fallback
-            }
+        // Determine how many products to return based on query intent and available products
+        int maxProductsToReturn = 3; // Default
 
-            log.info("✅ Consultation completed successfully");
+        // For superlative queries (nhất), return only 1 product
+        if (isSuperlative) {
+            maxProductsToReturn = 1;
+            log.info("🎯 Superlative query detected - returning only 1 product");
+        }
 
-            // Determine how many products to return based on query intent and available products
-            int maxProductsToReturn = 3; // Default
+        // Return products based on what's available
+        List<Product> productsToReturn;
+        if (filteredProducts.isEmpty()) {
+            productsToReturn = List.of(); // No products found
+        } else {
+            // Return min(available, maxToReturn)
+            int actualLimit = Math.min(filteredProducts.size(), maxProductsToReturn);
+            productsToReturn = filteredProducts.stream()
+                .limit(actualLimit)
+                .collect(java.util.stream.Collectors.toList());
+        }
 
-            // For superlative queries (nhất), return only 1 product
-            String queryLower = userQuery.toLowerCase();
-            if (queryLower.matches(".*(đắt nhất|rẻ nhất|mắc nhất|cao nhất|thấp nhất|tốt nhất|bán chạy nhất|phổ biến nhất|nổi tiếng nhất).*")) {
-                maxProductsToReturn = 1;
-                log.info("🎯 Superlative query detected - returning only 1 product");
-            }
+        // Log the exact products being returned
+        if (!productsToReturn.isEmpty()) {
+            log.info("🎯 Returning {} product(s) to client:", productsToReturn.size());
+            productsToReturn.forEach(p ->
+                log.info("  → {} (ID: {}, Price: {}, Brand: {})",
+                    p.getName(), p.getId(), p.getPrice(),
+                    p.getCategory() != null ? p.getCategory().getName() : "N/A")
+            );
+        } else {
+            log.info("🎯 No products to return");
+        }
+        prepared.productsToReturn = productsToReturn;
 
-            // Return products based on what's available
-            List<Product> productsToReturn;
-            if (filteredProducts.isEmpty()) {
-                productsToReturn = List.of(); // No products found
-            } else {
-                // Return min(available, maxToReturn)
-                int actualLimit = Math.min(filteredProducts.size(), maxProductsToReturn);
-                productsToReturn = filteredProducts.stream()
-                    .limit(actualLimit)
-                    .collect(java.util.stream.Collectors.toList());
-            }
+        return prepared;
+    }
 
-            // Log the exact products being returned
-            if (!productsToReturn.isEmpty()) {
-                log.info("🎯 Returning {} product(s) to client:", productsToReturn.size());
-                productsToReturn.forEach(p ->
-                    log.info("  → {} (ID: {}, Price: {}, Brand: {})",
-                        p.getName(), p.getId(), p.getPrice(),
-                        p.getCategory() != null ? p.getCategory().getName() : "N/A")
-                );
-            } else {
-                log.info("🎯 No products to return");
-            }
+    /**
+     * Gọi LLM; câu trả lời chỉ phụ thuộc chữ ký ý định thì các câu diễn đạt khác đang chờ dùng chung 1 lần gọi
+     */
+    private String generateAnswer(String userQuery, PreparedConsultation ctx) throws Exception {
+        if (isAnswerReusable(ctx.intents)) {
+            return singleFlight(answersInFlight, ctx.intentSignature,
+                () -> generateLLMResponse(userQuery, ctx.productContext, ctx.statisticsContext, ctx.intents));
+        }
+        return generateLLMResponse(userQuery, ctx.productContext, ctx.statisticsContext, ctx.intents);
+    }
 
-            // ========== STEP 6: SAVE TO CACHE ==========
-            ConsultationResult result = new ConsultationResult(enhancedResponse, productsToReturn);
-            saveToCache(normalizedQuery, result);
+    private static Exception asException(Throwable error) {
+        return error instanceof Exception exception ? exception : new IllegalStateException(error);
+    }
 
-            return result;
+    private static long remainingMillis(long deadline) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
 
-        } catch (Exception e) {
-            log.error("❌ Error in consultation: ", e);
+    private static ThreadFactory llmThreadFactory() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "consultant-llm-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 
-            // ========== FALLBACK: TRẢ VỀ RESPONSE CƠ BẢN ==========
-            // ⚠️ QUAN TRỌNG: KHÔNG GỌI extractQueryIntents() LẠI NỮA
-            // Sử dụng filteredProducts đã có hoặc tạo fallback response đơn giản
-            log.warn("⚠️ Using FALLBACK mode due to API error: {}", e.getMessage());
+    @PreDestroy
+    void shutdownLlmExecutor() {
+        llmExecutor.shutdownNow();
+    }
 
-            try {
-                // KHÔNG gọi vectorService.extractQueryIntents() nữa!
-                // Dùng filteredProducts có sẵn từ scope trên
-
-                String fallbackMsg;
-                if (filteredProducts == null || filteredProducts.isEmpty()) {
-                    // Không tìm thấy sản phẩm - Thông báo thân thiện
-                    fallbackMsg = "Chào bạn, hiện tại tôi không tìm thấy sản phẩm phù hợp với yêu cầu của bạn. Bạn có thể thử tìm kiếm với từ khóa khác hoặc xem các sản phẩm nổi bật của chúng tôi nhé! 😊";
-                } else {
-                    // Có sản phẩm - Thông báo tự nhiên KHÔNG nhắc đến lỗi
-                    fallbackMsg = String.format(
-                        "Chào bạn, tôi đã tìm được %d sản phẩm có thể phù hợp với bạn:",
-                        Math.min(3, filteredProducts.size())
-                    );
-                    filteredProducts = filteredProducts.stream().limit(3).collect(java.util.stream.Collectors.toList());
-                }
-
-                log.info("🛡️ Fallback response generated with {} products",
-                        filteredProducts != null ? filteredProducts.size() : 0);
-
-                return new ConsultationResult(fallbackMsg,
-                        filteredProducts != null ? filteredProducts : List.of());
-
-            } catch (Exception fallbackError) {
-                log.error("❌ Fallback also failed: ", fallbackError);
-                // Thông báo cuối cùng khi mọi thứ đều thất bại
-                return new ConsultationResult(
-                    "Xin lỗi, hệ thống đang bận. Vui lòng thử lại sau giây lát hoặc liên hệ bộ phận hỗ trợ. Cảm ơn bạn! 🙏",
-                    List.of()
+    /**
+     * Lưu câu trả lời vào cả 2 tầng cache (theo câu hỏi và theo ý định)
+     */
+    private void saveToCache(String normalizedQuery, PreparedConsultation prepared,
+                             ConsultationResult result, long cacheSequence) {
+        // Câu trả lời có thể nhắc tới mọi sản phẩm trong context → vô hiệu khi bất kỳ sản phẩm nào đổi
+        List<Integer> referencedIds = prepared.filteredProducts.stream().map(Product::getId).toList();
+        responseCache.put(normalizedQuery, result, referencedIds, CACHE_TTL, cacheSequence);
+        responseCache.putByIntent(prepared.intentSignature, prepared.filteredProducts,
+                isAnswerReusable(prepared.intents) ? result : null, CACHE_TTL, cacheSequence);
+        log.info("💾 Saved to cache: {}", normalizedQuery);
+    }
+
+    /**
+     * FALLBACK: TRẢ VỀ RESPONSE CƠ BẢN khi LLM lỗi
+     */
+    private ConsultationResult buildFallbackResult(List<Product> filteredProducts, Exception e) {
+        // ⚠️ QUAN TRỌNG: KHÔNG GỌI extractQueryIntents() LẠI NỮA
+        // Sử dụng filteredProducts đã có hoặc tạo fallback response đơn giản
+        log.warn("⚠️ Using FALLBACK mode due to API error: {}", e.getMessage());
+
+        try {
+            // KHÔNG gọi vectorService.extractQueryIntents() nữa!
+            // Dùng filteredProducts có sẵn từ scope trên
+
+            String fallbackMsg;
+            if (filteredProducts == null || filteredProducts.isEmpty()) {
+                // Không tìm thấy sản phẩm - Thông báo thân thiện
+                fallbackMsg = "Chào bạn, hiện tại tôi không tìm thấy sản phẩm phù hợp với yêu cầu của bạn. Bạn có thể thử tìm kiếm với từ khóa khác hoặc xem các sản phẩm nổi bật của chúng tôi nhé! 😊";
+            } else {
+                // Có sản phẩm - Thông báo tự nhiên KHÔNG nhắc đến lỗi
+                fallbackMsg = String.format(
+                    "Chào bạn, tôi đã tìm được %d sản phẩm có thể phù hợp với bạn:",
+                    Math.min(3, filteredProducts.size())
                 );
+                filteredProducts = filteredProducts.stream().limit(3).collect(java.util.stream.Collectors.toList());
             }
+
+            log.info("🛡️ Fallback response generated with {} products",
+                    filteredProducts != null ? filteredProducts.size() : 0);
+
+            return new ConsultationResult(fallbackMsg,
+                    filteredProducts != null ? filteredProducts : List.of());
+
+        } catch (Exception fallbackError) {
+            log.error("❌ Fallback also failed: ", fallbackError);
+            // Thông báo cuối cùng khi mọi thứ đều thất bại
+            return new ConsultationResult(
+                "Xin lỗi, hệ thống đang bận. Vui lòng thử lại sau giây lát hoặc liên hệ bộ phận hỗ trợ. Cảm ơn bạn! 🙏",
+                List.of()
+            );
         }
     }
 
@@ -297,277 +624,124 @@ public class ProductConsultantService {
             String statisticsContext,
             Map<String, Object> intents) {
 
-        // Build enhanced prompt with RAG
-        String systemPrompt = """
-            Bạn là chuyên gia tư vấn nước hoa tại ShopNuocHoa với 10 năm kinh nghiệm. 
-            Phong cách của bạn: thân thiện, chuyên nghiệp, nhiệt tình như đang tư vấn trực tiếp cho khách hàng.
-            
-            ═══════════════════════════════════════════════════════
-            🎯 NHIỆM VỤ CỦA BẠN
-            ═══════════════════════════════════════════════════════
-            
-            Tư vấn sản phẩm dựa trên [DỮ LIỆU SẢN PHẨM] bên dưới - đây là những sản phẩm 
-            đã được HỆ THỐNG LỌC SẴN theo yêu cầu của khách hàng.
-            
-            ═══════════════════════════════════════════════════════
-            ✅ CÁCH TƯ VẤN TỰ NHIÊN VÀ CHUYÊN NGHIỆP
-            ═══════════════════════════════════════════════════════
-            
-            1. 💬 GIỌNG ĐIỆU:
-               • Thân thiện, ấm áp như đang nói chuyện trực tiếp
-               • Dùng "mình", "bạn" để gần gũi hơn
-               • Nhiệt tình nhưng không quá thương mại
-               • Tự nhiên, không cứng nhắc
-            
-            2. 🎨 CẤU TRÚC CÂU TRẢ LỜI:
-            
-               📌 Nếu tìm thấy 1 sản phẩm (câu hỏi "nhất"):
-               "Dạ, với [yêu cầu] thì mình gợi ý cho bạn [Tên SP] của [Brand] nhé! 
-               Sản phẩm này [điểm nổi bật], giá [X] VNĐ, hiện đang [tình trạng]. 
-               [Thêm 1-2 câu mô tả ngắn nếu có]"
-               
-               📌 Nếu tìm thấy 2-3 sản phẩm:
-               "Dạ, mình có mấy gợi ý phù hợp với bạn này:
-               
-               🌸 [Tên SP1] - [Brand]
-               → [Điểm nổi bật], giá [X] VNĐ
-               
-               🌸 [Tên SP2] - [Brand]  
-               → [Điểm nổi bật], giá [X] VNĐ
-               
-               [Câu kết: gợi ý thêm hoặc hỏi thêm]"
-               
-               📌 Nếu không tìm thấy:
-               "Dạ, rất tiếc là hiện tại shop chưa có sản phẩm [yêu cầu] ạ. 
-               Bạn có thể thử tìm với [gợi ý khác] hoặc xem các sản phẩm [tương tự] nhé!"
-            
-            3. 🎁 ĐIỂM NỔI BẬT CẦN NHỚ:
-               • Nếu "Đã bán > 0": "đã có [X] khách hàng tin dùng"
-               • Nếu "HOT TREND": "đang rất được yêu thích"
-               • Nếu "Rating cao": "được đánh giá [X]/5 sao"
-               • Nếu "Tồn kho ít": "số lượng có hạn"
-               • Nếu giá cao: "cao cấp", "sang trọng"
-               • Nếu giá thấp: "giá tốt", "phù hợp túi tiền"
-            
-            4. ❌ TUYỆT ĐỐI TRÁNH:
-               • Bịa thông tin không có trong dữ liệu
-               • Nói "đã bán được X" khi không có dữ liệu
-               • Copy nguyên văn format cứng nhắc
-               • Quá dài dòng, lan man
-               • Giới thiệu sản phẩm KHÔNG CÓ trong danh sách
-            
-            5. ✨ MẸO TƯ VẤN HAY:
-               • Dùng emoji phù hợp (🌸 💖 ✨ 🎁) nhưng đừng lạm dụng
-               • Kết thúc bằng câu hỏi mở để tiếp tục hội thoại
-               • Thêm insight nhỏ về mùi hương nếu có info
-               • Gợi ý cách sử dụng hoặc dịp phù hợp
-            
-            ═══════════════════════════════════════════════════════
-            📋 VÍ DỤ CÂU TRẢ LỜI TỐT
-            ═══════════════════════════════════════════════════════
-            
-            ✅ VÍ DỤ 1 (Tìm sản phẩm đắt nhất):
-            "Dạ, sản phẩm cao cấp nhất của Dior mình có là J'adore Eau de Parfum nhé, 
-            giá 3.800.000 VNĐ. Đây là dòng nước hoa sang trọng, mùi hương quyến rũ và 
-            lưu hương cực tốt ạ. Bạn quan tâm mình tư vấn thêm không?"
-            
-            ✅ VÍ DỤ 2 (Gợi ý nhiều sản phẩm):
-            "Dạ, với mức giá này mình gợi ý cho bạn 3 lựa chọn hay ho này:
-            
-            🌸 Dior Sauvage - 2.500.000đ
-            → Mùi hương nam tính, tươi mát, đang rất hot với hơn 150 bạn đã mua ạ
-            
-            🌸 Chanel Bleu - 3.200.000đ  
-            → Thanh lịch, sang trọng, được đánh giá 4.5/5 sao
-            
-            🌸 CK One - 450.000đ
-            → Unisex, giá sinh viên, phù hợp dùng hàng ngày
-            
-            Bạn thích hương nào mạnh mẽ hay nhẹ nhàng để mình tư vấn kỹ hơn nhé?"
-            
-            ✅ VÍ DỤ 3 (Không tìm thấy):
-            "Dạ, rất tiếc là hiện tại shop chưa có sản phẩm trong khoảng giá 500-800k ạ. 
-            Bạn có thể xem các sản phẩm giá tốt dưới 500k hoặc từ 1 triệu trở lên nhé. 
-            Mình tư vấn thêm không?"
-            
-            ═══════════════════════════════════════════════════════
-            ⚠️ QUY TẮC NGHIÊM NGẶT
-            ═══════════════════════════════════════════════════════
-            
-            1. CHỈ giới thiệu sản phẩm từ [DỮ LIỆU SẢN PHẨM] bên dưới
-            2. Giá, tồn kho, đã bán phải CHÍNH XÁC 100%
-            3. Nếu không có dữ liệu → Không nhắc đến thông tin đó
-            4. Phần [THỐNG KÊ] chỉ để tham khảo, KHÔNG phải danh sách giới thiệu
-            5. Tự nhiên, thân thiện nhưng vẫn chính xác về mặt thông tin
-            
-            {products}
-            """;
-
-        String userPromptTemplate = """
-            ═══════════════════════════════════════════════════════
-            💬 YÊU CẦU TƯ VẤN
-            ═══════════════════════════════════════════════════════
-            
-            Câu hỏi: "{query}"
-            
-            Phân tích nhanh: {intents}
-            
-            ⚠️ Lưu ý: Chỉ giới thiệu sản phẩm từ [DỮ LIỆU SẢN PHẨM] ở trên.
-            
-            Hãy tư vấn tự nhiên, thân thiện như đang nói chuyện trực tiếp với khách hàng nhé! 😊
-            """;
-
-        Map<String, Object> variables = new HashMap<>();
-        variables.put("query", userQuery);
-        variables.put("intents", intents.toString());
-
-        // Structure the context to emphasize filtered products
-        String structuredContext = String.format("""
-            ═══════════════════════════════════════════════════════
-            📦 [DỮ LIỆU SẢN PHẨM THỰC TẾ - KẾT QUẢ LỌC]
-            ⚠️ QUAN TRỌNG: CHỈ GIỚI THIỆU CÁC SẢN PHẨM DƯỚI ĐÂY
-            ═══════════════════════════════════════════════════════
-            
-            %s
-            
-            ═══════════════════════════════════════════════════════
-            📊 [THỐNG KÊ TỔNG QUÁT - CHỈ THAM KHẢO]
-            ⚠️ CHÚ Ý: Đây là thống kê chung, KHÔNG phải danh sách giới thiệu
-            ═══════════════════════════════════════════════════════
-            
-            %s
-            """, productContext, statisticsContext);
-
-        variables.put("products", structuredContext);
-
-        // Create prompt
-        PromptTemplate promptTemplate = new PromptTemplate(
-            systemPrompt + "\n\n" + userPromptTemplate);
-        Prompt prompt = promptTemplate.create(variables);
-
-        // Call LLM
         ChatClient chatClient = chatClientBuilder.build();
 
         return chatClient.prompt()
-            .user(prompt.getContents())
+            .user(buildLLMPrompt(userQuery, productContext, statisticsContext, intents))
             .call()
             .content();
     }
 
-    // ========== RATE LIMITING METHODS ==========
-
     /**
-     * Kiểm tra xem user có được phép gửi request không (rate limit check)
-     *
-     * @param userId ID của user
-     * @return true nếu được phép, false nếu vượt quota
+     * Streaming version of {@link #generateLLMResponse}: phát từng đoạn text khi LLM sinh ra
      */
-    private boolean checkRateLimit(String userId) {
-        long currentTime = Instant.now().getEpochSecond();
-
-        RateLimitInfo rateLimitInfo = rateLimitMap.computeIfAbsent(
-            userId,
-            k -> new RateLimitInfo(currentTime)
-        );
-
-        // Kiểm tra xem window đã hết hạn chưa
-        if (currentTime - rateLimitInfo.windowStart >= RATE_LIMIT_WINDOW_SECONDS) {
-            // Reset window mới
-            rateLimitInfo.windowStart = currentTime;
-            rateLimitInfo.requestCount.set(0);
-        }
-
-        // Kiểm tra số lượng request
-        int currentCount = rateLimitInfo.requestCount.get();
+    private Flux<String> streamLLMResponse(
+            String userQuery,
+            String productContext,
+            String statisticsContext,
+            Map<String, Object> intents) {
 
-        if (currentCount >= MAX_REQUESTS_PER_MINUTE) {
-            return false; // Vượt quota
-        }
+        ChatClient chatClient = chatClientBuilder.build();
 
-        // Tăng counter và cho phép
-        rateLimitInfo.requestCount.incrementAndGet();
-        return true;
+        return chatClient.prompt()
+            .user(buildLLMPrompt(userQuery, productContext, statisticsContext, intents))
+            .stream()
+            .content();
     }
 
     /**
-     * Lấy thời gian phải chờ (giây) trước khi có thể request lại
+     * Build enhanced prompt (system prompt + RAG context + câu hỏi)
      *
-     * @param userId ID của user
-     * @return số giây phải chờ
+     * Context sản phẩm là bảng gọn (xem {@link ProductContextBuilder}); chỉ đưa các intent đang bật
+     * để prompt ít token nhất có thể.
      */
-    private long getWaitTime(String userId) {
-        RateLimitInfo info = rateLimitMap.get(userId);
-        if (info == null) {
-            return 0;
-        }
-
-        long currentTime = Instant.now().getEpochSecond();
-        long elapsedTime = currentTime - info.windowStart;
+    private String buildLLMPrompt(
+            String userQuery,
+            String productContext,
+            String statisticsContext,
+            Map<String, Object> intents) {
 
-        if (elapsedTime >= RATE_LIMIT_WINDOW_SECONDS) {
-            return 0;
+        StringBuilder prompt = new StringBuilder(SYSTEM_PROMPT.length() + productContext.length() + 512);
+        prompt.append(SYSTEM_PROMPT)
+            .append("\n[SẢN PHẨM]\n").append(productContext);
+        if (statisticsContext != null && !statisticsContext.isBlank()) {
+            prompt.append("\n\n[THỐNG KÊ - chỉ tham khảo]\n").append(statisticsContext.strip());
         }
+        prompt.append("\n\n[CÂU HỎI]\n").append(userQuery)
+            .append("\nÝ định: ").append(compactIntents(intents));
 
-        return RATE_LIMIT_WINDOW_SECONDS - elapsedTime;
+        String text = prompt.toString();
+        log.info("🧮 Prompt ~{} tokens (product context ~{} tokens)",
+            ProductContextBuilder.estimateTokens(text), ProductContextBuilder.estimateTokens(productContext));
+        return text;
     }
 
-    // ========== CACHING METHODS ==========
-
     /**
-     * Lấy response từ cache (nếu có và còn hạn)
-     *
-     * @param normalizedQuery Câu hỏi đã normalize
-     * @return ConsultationResult nếu có trong cache, null nếu không
+     * Chỉ giữ cờ đang bật và giá trị khác null: "isCheapQuery, gender=NAM, maxPrice=500000"
      */
-    private ConsultationResult getFromCache(String normalizedQuery) {
-        CachedResponse cached = responseCache.get(normalizedQuery);
+    private static String compactIntents(Map<String, Object> intents) {
+        return intents.entrySet().stream()
+            .filter(e -> e.getValue() != null && !Boolean.FALSE.equals(e.getValue()))
+            .sorted(Map.Entry.comparingByKey())
+            .map(e -> Boolean.TRUE.equals(e.getValue()) ? e.getKey()
+                : e.getKey() + "=" + (e.getValue() instanceof Double d ? String.valueOf(Math.round(d)) : e.getValue()))
+            .collect(java.util.stream.Collectors.joining(", "));
+    }
 
-        if (cached != null) {
-            long currentTime = Instant.now().getEpochSecond();
+    // ========== CACHING HELPERS ==========
 
-            if (currentTime - cached.timestamp < CACHE_TTL_SECONDS) {
-                log.info("💾 Cache HIT for query: {}", normalizedQuery);
-                return cached.result;
-            } else {
-                // Cache hết hạn - xóa đi
-                responseCache.remove(normalizedQuery);
-                log.info("⏰ Cache EXPIRED for query: {}", normalizedQuery);
+    /**
+     * Gộp các request trùng khóa đang chạy đồng thời: request đầu tiên thực thi {@code work},
+     * các request sau chờ trên cùng future (tối đa {@link #IN_FLIGHT_MAX_WAIT_SECONDS} giây)
+     */
+    private <T> T singleFlight(ConcurrentHashMap<String, CompletableFuture<T>> inFlight,
+                               String key, Callable<T> work) throws Exception {
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            log.info("🔗 Joining in-flight request: {}", key);
+            try {
+                return existing.get(IN_FLIGHT_MAX_WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
             }
         }
 
-        log.info("❌ Cache MISS for query: {}", normalizedQuery);
-        return null;
+        try {
+            T value = work.call();
+            mine.complete(value);
+            return value;
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+            // Phòng trường hợp work ném Error: không để request đang chờ treo tới hết timeout
+            mine.completeExceptionally(new IllegalStateException("In-flight request aborted: " + key));
+        }
     }
 
     /**
-     * Lưu response vào cache
-     *
-     * @param normalizedQuery Câu hỏi đã normalize
-     * @param result Kết quả cần cache
+     * Chữ ký ý định = tiêu chí lọc chuẩn hóa + các cờ intent đang bật (sắp xếp theo tên),
+     * trong đó có cờ "nhất" (quyết định số sản phẩm trả về)
      */
-    private void saveToCache(String normalizedQuery, ConsultationResult result) {
-        // Kiểm tra kích thước cache
-        if (responseCache.size() >= MAX_CACHE_SIZE) {
-            cleanupOldestCacheEntries(10);
-        }
-
-        long currentTime = Instant.now().getEpochSecond();
-        responseCache.put(normalizedQuery, new CachedResponse(result, currentTime));
-        log.info("💾 Saved to cache: {}", normalizedQuery);
+    private String buildIntentSignature(ProductFilterEngine.FilterCriteria criteria,
+                                        Map<String, Object> intents) {
+        String flags = intents.entrySet().stream()
+            .filter(e -> Boolean.TRUE.equals(e.getValue()))
+            .map(Map.Entry::getKey)
+            .sorted()
+            .collect(java.util.stream.Collectors.joining(","));
+        return criteria.canonicalKey() + "|flags=" + flags;
     }
 
     /**
-     * Xóa các cache entries cũ nhất
-     *
-     * @param count Số lượng entries cần xóa
+     * Câu trả lời chỉ dùng lại cho câu khác chữ khi nó phụ thuộc hoàn toàn vào tiêu chí lọc.
+     * Hỏi theo tên sản phẩm hoặc so sánh thì LLM trả lời theo đúng câu chữ → chỉ dùng lại danh sách sản phẩm.
      */
-    private void cleanupOldestCacheEntries(int count) {
-        log.info("🧹 Cleaning up {} oldest cache entries", count);
-
-        responseCache.entrySet().stream()
-            .sorted((e1, e2) -> Long.compare(e1.getValue().timestamp, e2.getValue().timestamp))
-            .limit(count)
-            .forEach(entry -> responseCache.remove(entry.getKey()));
+    private boolean isAnswerReusable(Map<String, Object> intents) {
+        return !Boolean.TRUE.equals(intents.get("isProductNameQuery"))
+            && !Boolean.TRUE.equals(intents.get("isComparison"));
     }
 
     /**
@@ -588,181 +762,48 @@ public class ProductConsultantService {
     }
 
     /**
-     * Tạo intent bằng regex pattern matching (KHÔNG gọi API)
+     * Tạo intent bằng automaton từ khóa (KHÔNG gọi API, KHÔNG regex)
      *
-     * ⚡ OPTIMIZATION: Thay thế LLM extraction để giảm API calls từ 2 → 1
+     * ⚡ OPTIMIZATION: Thay thế LLM extraction để giảm API calls từ 2 → 1.
+     * Toàn bộ cờ intent, giới tính, khoảng giá và tên sản phẩm được lấy trong một lần duyệt câu hỏi
+     * (xem {@link QueryIntentLexer}).
      *
      * @param userQuery Câu hỏi người dùng
      * @return Map chứa intent đầy đủ
      */
     private Map<String, Object> createFallbackIntents(String userQuery) {
         Map<String, Object> intents = new HashMap<>();
-        String queryLower = userQuery.toLowerCase();
-
-        // ========== GREETING ==========
-        intents.put("isGreeting",
-            queryLower.matches("^(xin chào|chào|hello|hi|hey|chào bạn|chào shop).*"));
-
-        // ========== PRICE QUERIES ==========
-        intents.put("isPriceQuery",
-            queryLower.contains("giá") || queryLower.contains("price") ||
-            queryLower.matches(".*(bao nhiêu|mắc|rẻ|đắt).*"));
-
-        // Cheap/Student-friendly
-        intents.put("isCheapQuery",
-            queryLower.matches(".*(rẻ|giá tốt|sinh viên|học sinh|bình dân|giá mềm|giá rẻ|dưới|duoi).*"));
-
-        // Expensive/Luxury
-        intents.put("isExpensiveQuery",
-            queryLower.matches(".*(đắt|mắc|cao cấp|sang trọng|giá cao|trên|tren|đắt nhất|mắc nhất).*"));
-
-        // ========== PRODUCT QUERIES ==========
-        // Best selling
-        intents.put("isBestSelling",
-            queryLower.matches(".*(bán chạy|phổ biến|bán nhiều|được ưa chuộng|bán chạy nhất).*"));
-
-        // Hot trend
-        intents.put("isHotTrend",
-            queryLower.matches(".*(hot trend|thịnh hành|hot|xu hướng|trend).*"));
-
-        // Recommendation
-        intents.put("isRecommendation",
-            queryLower.matches(".*(gợi ý|tư vấn|đề xuất|giúp|help|recommend).*"));
+        QueryIntentLexer.QueryIntents lexed = intentLexer.analyze(userQuery);
 
-        // Top rated
-        intents.put("isTopRated",
-            queryLower.matches(".*(đánh giá cao|rating cao|tốt nhất|chất lượng).*"));
-
-        // New products
-        intents.put("isNewProducts",
-            queryLower.matches(".*(mới|mới nhất|ra mắt|new).*"));
+        // ========== CỜ INTENT (giá, bán chạy, hot trend, "nhất", so sánh, còn hàng...) ==========
+        for (QueryIntentLexer.Intent intent : QueryIntentLexer.Intent.values()) {
+            intents.put(intent.key(), lexed.has(intent));
+        }
 
         // ========== GENDER ==========
-        String gender = null;
-        if (queryLower.matches(".*(nam|cho nam|dành cho nam|nam giới|men).*")) {
-            gender = "NAM";
-        } else if (queryLower.matches(".*(nữ|nu|cho nữ|dành cho nữ|nữ giới|women).*")) {
-            gender = "NU";
-        } else if (queryLower.matches(".*(unisex|cả nam và nữ).*")) {
-            gender = "UNISEX";
-        }
-        intents.put("gender", gender);
+        intents.put("gender", lexed.getGender());
 
         // ========== BRAND EXTRACTION ==========
-        // Common brands
-        String brandKeyword = null;
-        List<Category> brands = categoryService.getAll();
-
-        for (Category brand : brands) {
-            if (brand.getName() != null && queryLower.contains(brand.getName().toLowerCase())) {
-                brandKeyword = brand.getName().toLowerCase();
-                break;
-            }
-        }
+        // Từ điển thương hiệu trong bộ nhớ (tên danh mục + bí danh), không đọc bảng categories
+        String brand = brandDictionary.findFirst(userQuery);
+        String brandKeyword = brand != null ? brand.toLowerCase() : null;
         intents.put("brandKeyword", brandKeyword);
         intents.put("brand", brandKeyword);
 
-        // ========== PRICE EXTRACTION ==========
-        Double minPrice = null;
-        Double maxPrice = null;
-
-        // Pattern: "dưới 500k", "duoi 1 triệu", "< 2tr"
-        if (queryLower.matches(".*(dưới|duoi|<|thấp hơn|ít hơn)\\s*(\\d+).*")) {
-            String priceStr = queryLower.replaceAll(".*(dưới|duoi|<|thấp hơn|ít hơn)\\s*(\\d+).*", "$2");
-            try {
-                double price = Double.parseDouble(priceStr);
-                // Check unit
-                if (queryLower.contains("triệu") || queryLower.contains("tr")) {
-                    maxPrice = price * 1000000;
-                } else if (queryLower.contains("k") || queryLower.contains("nghìn")) {
-                    maxPrice = price * 1000;
-                } else {
-                    maxPrice = price;
-                }
-            } catch (Exception ignored) {}
-        }
-
-        // Pattern: "trên 1 triệu", "tren 500k", "> 2tr"
-        if (queryLower.matches(".*(trên|tren|>|cao hơn|nhiều hơn)\\s*(\\d+).*")) {
-            String priceStr = queryLower.replaceAll(".*(trên|tren|>|cao hơn|nhiều hơn)\\s*(\\d+).*", "$2");
-            try {
-                double price = Double.parseDouble(priceStr);
-                if (queryLower.contains("triệu") || queryLower.contains("tr")) {
-                    minPrice = price * 1000000;
-                } else if (queryLower.contains("k") || queryLower.contains("nghìn")) {
-                    minPrice = price * 1000;
-                } else {
-                    minPrice = price;
-                }
-            } catch (Exception ignored) {}
-        }
-
-        // Pattern: "từ 1 đến 2 triệu", "1-2tr", "1tr - 2tr"
-        if (queryLower.matches(".*(từ|tu)\\s*(\\d+).*(?:đến|den|-|->)\\s*(\\d+).*")) {
-            // Extract min and max from range
-            java.util.regex.Pattern pattern = java.util.regex.Pattern.compile("(\\d+).*(?:đến|den|-|->)\\s*(\\d+)");
-            java.util.regex.Matcher matcher = pattern.matcher(queryLower);
-            if (matcher.find()) {
-                try {
-                    double min = Double.parseDouble(matcher.group(1));
-                    double max = Double.parseDouble(matcher.group(2));
-                    if (queryLower.contains("triệu") || queryLower.contains("tr")) {
-                        minPrice = min * 1000000;
-                        maxPrice = max * 1000000;
-                    } else if (queryLower.contains("k") || queryLower.contains("nghìn")) {
-                        minPrice = min * 1000;
-                        maxPrice = max * 1000;
-                    } else {
-                        minPrice = min;
-                        maxPrice = max;
-                    }
-                } catch (Exception ignored) {}
-            }
-        }
-
-        intents.put("minPrice", minPrice);
-        intents.put("maxPrice", maxPrice);
+        // ========== PRICE ==========
+        intents.put("minPrice", lexed.getMinPrice());
+        intents.put("maxPrice", lexed.getMaxPrice());
 
         // ========== PRODUCT NAME ==========
-        // Check if asking about specific product with multiple patterns
-        boolean isProductNameQuery = false;
-        String productName = null;
-
-        // Pattern 1: "nước hoa [tên]", "perfume [tên]"
-        if (queryLower.matches(".*(nước hoa|perfume)\\s+([a-zA-Z0-9\\s]+).*")) {
-            isProductNameQuery = true;
-            productName = queryLower.replaceAll(".*(nước hoa|perfume)\\s+([a-zA-Z0-9\\s]+?)(?:\\s|$).*", "$2").trim();
-        }
-        // Pattern 2: "sản phẩm [tên]", "sp [tên]", "product [tên]"
-        else if (queryLower.matches(".*(sản phẩm|san pham|sp|product)\\s+([a-zA-Z0-9\\s]+).*")) {
-            isProductNameQuery = true;
-            productName = queryLower.replaceAll(".*(sản phẩm|san pham|sp|product)\\s+([a-zA-Z0-9\\s]+).*", "$2").trim();
-        }
-        // Pattern 3: Tìm chính xác tên (không có keyword)
-        else if (!queryLower.matches("^(xin chào|chào|hello|hi|giá|rẻ|đắt|bán chạy|hot).*") &&
-                 queryLower.length() > 3 && queryLower.matches("^[a-zA-Z0-9\\s]+$")) {
-            isProductNameQuery = true;
-            productName = queryLower.trim();
-        }
-
-        // Clean up product name (remove trailing words)
-        if (productName != null && !productName.isEmpty()) {
-            // Remove common trailing words
-            productName = productName.replaceAll("\\s+(là gì|nào|thế nào|như thế nào|không|có|à|ạ).*", "").trim();
-            // Limit length to avoid too long queries
-            if (productName.split("\\s+").length > 5) {
-                productName = String.join(" ", java.util.Arrays.copyOfRange(productName.split("\\s+"), 0, 5));
-            }
-        }
-
-        intents.put("isProductNameQuery", isProductNameQuery);
-        intents.put("productName", productName);
+        intents.put("isProductNameQuery", lexed.getProductName() != null);
+        intents.put("productName", lexed.getProductName());
 
-        // ========== OTHER INTENTS ==========
-        intents.put("isComparison", queryLower.matches(".*(so sánh|compare|khác nhau).*"));
-        intents.put("isAvailability", queryLower.matches(".*(còn hàng|có hàng|availability|stock).*"));
+        // ========== MÔ TẢ TỰ DO (đã bỏ giới tính, giá, "nước hoa", thương hiệu) ==========
+        intents.put("descriptiveText", lexed.getDescriptiveText() != null
+            ? brandDictionary.stripBrands(lexed.getDescriptiveText())
+            : null);
 
-        log.info("🔧 Created intents using REGEX (no API call): {}", intents);
+        log.info("🔧 Created intents using keyword lexer (no API call): {}", intents);
         return intents;
     }
 }
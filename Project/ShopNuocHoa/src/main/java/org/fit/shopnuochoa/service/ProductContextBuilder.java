@@ -0,0 +1,149 @@
+package org.fit.shopnuochoa.service;
+
+import lombok.RequiredArgsConstructor;
+import org.fit.shopnuochoa.model.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dựng context RAG dạng bảng gọn (mỗi sản phẩm 1 dòng, cột ngăn bằng "|") trong giới hạn token
+ *
+ * - Dòng của từng sản phẩm (kể cả số lượng đã bán) được cache, chỉ dựng lại khi sản phẩm đó thay đổi
+ *   (sửa, đánh giá, đặt hàng đều phát ProductChangedEvent)
+ * - Thêm dòng theo thứ tự cho tới khi chạm ngân sách token
+ * - Số token chỉ là ước lượng (khoảng 3 ký tự tiếng Việt / token), đủ để giữ prompt nhỏ
+ */
+@Component
+@RequiredArgsConstructor
+public class ProductContextBuilder {
+
+    static final String HEADER = "#|id|tên|hãng|giá VNĐ|ml|giới tính|đánh giá (lượt)|tồn kho|đã bán|hot";
+    private static final int MAX_PRODUCTS = 10;
+
+    private final ProductStatisticsService statisticsService;
+
+    @Value("${consultant.context.token-budget:800}")
+    private int tokenBudget;
+
+    private final Map<Integer, String> rows = new ConcurrentHashMap<>();
+
+    /**
+     * Context đã dựng
+     *
+     * @param text            nội dung đưa vào prompt
+     * @param productCount    số sản phẩm đã đưa vào
+     * @param estimatedTokens số token ước lượng của text
+     */
+    public record ProductContext(String text, int productCount, int estimatedTokens) {
+    }
+
+    public ProductContext build(List<Product> products) {
+        if (products == null || products.isEmpty()) {
+            String text = "Không có sản phẩm phù hợp. Hãy báo khách hiện shop chưa có sản phẩm theo yêu cầu.";
+            return new ProductContext(text, 0, estimateTokens(text));
+        }
+
+        List<Product> candidates = products.subList(0, Math.min(products.size(), MAX_PRODUCTS));
+        Map<Integer, String> candidateRows = resolveRows(candidates);
+
+        StringBuilder text = new StringBuilder(HEADER);
+        int tokens = estimateTokens(HEADER);
+        int count = 0;
+        for (Product p : candidates) {
+            String row = candidateRows.get(p.getId());
+            String line = "\n" + (count + 1) + "|" + row;
+            int lineTokens = estimateTokens(line);
+            // Luôn giữ ít nhất 1 sản phẩm
+            if (count > 0 && tokens + lineTokens > tokenBudget) {
+                break;
+            }
+            text.append(line);
+            tokens += lineTokens;
+            count++;
+        }
+        return new ProductContext(text.toString(), count, tokens);
+    }
+
+    /**
+     * Dòng của từng sản phẩm: lấy từ cache, sản phẩm chưa có thì lấy số lượng đã bán bằng 1 query GROUP BY
+     *
+     * Trả về map cục bộ: một ProductChangedEvent đồng thời xóa dòng khỏi cache không làm mất dòng của lần dựng này
+     */
+    private Map<Integer, String> resolveRows(List<Product> products) {
+        Map<Integer, String> result = new HashMap<>();
+        List<Product> missing = new ArrayList<>();
+        for (Product p : products) {
+            String row = rows.get(p.getId());
+            if (row != null) {
+                result.put(p.getId(), row);
+            } else {
+                missing.add(p);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+        Map<Integer, Integer> soldByProduct = statisticsService.getTotalSoldByProductIds(
+                missing.stream().map(Product::getId).toList());
+        for (Product p : missing) {
+            String row = renderRow(p, soldByProduct.getOrDefault(p.getId(), 0));
+            result.put(p.getId(), row);
+            rows.put(p.getId(), row);
+        }
+        return result;
+    }
+
+    static String renderRow(Product p, int totalSold) {
+        StringBuilder row = new StringBuilder(96);
+        row.append(p.getId()).append('|')
+                .append(clean(p.getName())).append('|')
+                .append(p.getCategory() != null ? clean(p.getCategory().getName()) : "").append('|')
+                .append(p.getPrice() != null ? Math.round(p.getPrice()) : "").append('|')
+                .append(p.getVolume() != null ? p.getVolume().getValueInMl() : "").append('|')
+                .append(p.getGender() != null ? p.getGender().name() : "").append('|');
+        if (p.getAverageRating() != null && p.getAverageRating() > 0) {
+            row.append(Math.round(p.getAverageRating() * 10) / 10.0)
+                    .append(" (").append(p.getRatingCount() != null ? p.getRatingCount() : 0).append(')');
+        } else {
+            row.append('-');
+        }
+        row.append('|').append(p.isInStock() ? "còn " + p.getQuantity() : "hết hàng")
+                .append('|').append(totalSold)
+                .append('|').append(Boolean.TRUE.equals(p.getHotTrend()) ? "hot" : "");
+        return row.toString();
+    }
+
+    // Tên có "|" hoặc xuống dòng sẽ làm lệch cột
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('|', '/').replace('\n', ' ');
+    }
+
+    /**
+     * Ước lượng số token của text (tiếng Việt có dấu ~3 ký tự / token)
+     */
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 2) / 3;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductService.ProductChangedEvent event) {
+        if (event.productId() == null) {
+            rows.clear();
+        } else {
+            rows.remove(event.productId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryService.CategoryChangedEvent event) {
+        // Tên thương hiệu nằm trong dòng đã cache
+        rows.clear();
+    }
+}
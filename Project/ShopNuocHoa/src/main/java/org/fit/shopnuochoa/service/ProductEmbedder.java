@@ -0,0 +1,145 @@
+package org.fit.shopnuochoa.service;
+
+import org.fit.shopnuochoa.component.VietnameseTextUtils;
+import org.fit.shopnuochoa.model.Product;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Embedding cục bộ cho sản phẩm / câu hỏi: TF-IDF trên n-gram ký tự được băm (hashing trick)
+ *
+ * - Đặc trưng: từng từ (đã bỏ dấu) + các trigram ký tự của từ (khớp cả từ viết gần giống / gõ sai nhẹ: "vanila" ~ "vanilla")
+ * - TF dạng log(1 + tf), IDF tính theo từng đặc trưng (trước khi băm) từ catalog lúc dựng
+ * - Trọng số TF-IDF của mỗi đặc trưng băm vào {@link #DIMENSION} chiều kèm dấu ±1 (giảm sai lệch do va chạm),
+ *   vector cuối được chuẩn hóa L2
+ * - Trường của sản phẩm có trọng số khác nhau: tên > thương hiệu > mô tả / giới tính / dung tích
+ *
+ * Bất biến sau khi dựng, dùng chung giữa nhiều thread.
+ */
+final class ProductEmbedder {
+
+    static final int DIMENSION = 1024;
+
+    private static final int WORD_SEED = 0x9747b28c;
+    private static final int GRAM_SEED = 0x5bd1e995;
+    private static final float GRAM_WEIGHT = 0.5f;
+
+    private static final float NAME_WEIGHT = 2.0f;
+    private static final float BRAND_WEIGHT = 1.5f;
+    private static final float DESCRIPTION_WEIGHT = 1.0f;
+    private static final float ATTRIBUTE_WEIGHT = 1.0f;
+
+    private final Map<Integer, Float> idfByFeature;
+    private final float unseenIdf;
+
+    private ProductEmbedder(Map<Integer, Float> idfByFeature, float unseenIdf) {
+        this.idfByFeature = idfByFeature;
+        this.unseenIdf = unseenIdf;
+    }
+
+    /**
+     * Tính IDF của từng đặc trưng từ toàn bộ catalog
+     */
+    static ProductEmbedder fit(ProductCatalogSnapshot catalog) {
+        Map<Integer, Integer> documentFrequency = new HashMap<>();
+        for (int i = 0; i < catalog.size(); i++) {
+            termFrequencies(catalog.product(i)).keySet().forEach(feature -> documentFrequency.merge(feature, 1, Integer::sum));
+        }
+        // Đặc trưng có ở mọi sản phẩm ("nuoc hoa"...) có IDF ≈ 0, không làm nhiễu kết quả
+        int n = catalog.size();
+        Map<Integer, Float> idf = new HashMap<>(documentFrequency.size() * 2);
+        documentFrequency.forEach((feature, df) -> idf.put(feature, (float) Math.log((n + 1.0) / (df + 1.0))));
+        return new ProductEmbedder(idf, (float) Math.log(n + 1.0));
+    }
+
+    /**
+     * @return vector đã chuẩn hóa, null nếu sản phẩm không có đặc trưng nào mang thông tin
+     */
+    float[] embed(Product product) {
+        return vectorize(termFrequencies(product));
+    }
+
+    /**
+     * Từ không có trong catalog vẫn được tính (IDF cao nhất) nên câu hỏi lạc đề có độ tương đồng thấp
+     *
+     * @return vector đã chuẩn hóa, null nếu câu hỏi không có đặc trưng nào mang thông tin
+     */
+    float[] embed(String query) {
+        Map<Integer, Float> termFrequency = new HashMap<>();
+        addText(termFrequency, query, 1.0f);
+        return vectorize(termFrequency);
+    }
+
+    private float[] vectorize(Map<Integer, Float> termFrequency) {
+        float[] vector = new float[DIMENSION];
+        termFrequency.forEach((feature, tf) -> {
+            float w = (float) Math.log1p(tf) * idfByFeature.getOrDefault(feature, unseenIdf);
+            vector[feature & (DIMENSION - 1)] += (feature & 0x8000_0000) == 0 ? w : -w;
+        });
+
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            return null;
+        }
+        float inverse = (float) (1 / Math.sqrt(norm));
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] *= inverse;
+        }
+        return vector;
+    }
+
+    private static Map<Integer, Float> termFrequencies(Product p) {
+        Map<Integer, Float> termFrequency = new HashMap<>();
+        addText(termFrequency, p.getName(), NAME_WEIGHT);
+        if (p.getCategory() != null) {
+            addText(termFrequency, p.getCategory().getName(), BRAND_WEIGHT);
+        }
+        addText(termFrequency, p.getDescription(), DESCRIPTION_WEIGHT);
+        if (p.getGender() != null) {
+            addText(termFrequency, switch (p.getGender()) {
+                case NAM -> "nam";
+                case NU -> "nữ";
+                case UNISEX -> "unisex nam nữ";
+            }, ATTRIBUTE_WEIGHT);
+        }
+        if (p.getVolume() != null) {
+            addText(termFrequency, p.getVolume().getValueInMl() + "ml", ATTRIBUTE_WEIGHT);
+        }
+        return termFrequency;
+    }
+
+    private static void addText(Map<Integer, Float> termFrequency, String text, float weight) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        for (String word : VietnameseTextUtils.foldedTokens(text)) {
+            termFrequency.merge(hash(WORD_SEED, word, 0, word.length()), weight, Float::sum);
+            // "<go>" → "<go", "go>": từ ngắn vẫn có trigram, ranh giới từ được đánh dấu
+            String padded = "<" + word + ">";
+            for (int start = 0; start + 3 <= padded.length(); start++) {
+                termFrequency.merge(hash(GRAM_SEED, padded, start, start + 3), weight * GRAM_WEIGHT, Float::sum);
+            }
+        }
+    }
+
+    /**
+     * FNV-1a trên đoạn ký tự + bước trộn cuối của MurmurHash3 (bit dấu và bit chiều độc lập nhau)
+     */
+    private static int hash(int seed, CharSequence text, int start, int end) {
+        int h = 0x811c9dc5 ^ seed;
+        for (int i = start; i < end; i++) {
+            h ^= text.charAt(i);
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,302 @@
+package org.fit.shopnuochoa.service;
+
+import org.fit.shopnuochoa.Enum.Gender;
+import org.fit.shopnuochoa.Enum.Volume;
+import org.fit.shopnuochoa.model.Category;
+import org.fit.shopnuochoa.model.Product;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Bitmap theo từng thuộc tính lọc của trang danh sách sản phẩm, dựng sẵn từ {@link ProductCatalogSnapshot}
+ *
+ * - Thương hiệu (id danh mục), quốc gia, gender, volume: mỗi giá trị một BitSet
+ * - Rating: BitSet "từ k sao trở lên" cho k = 1..5
+ * - Giá: BitSet cho từng khoảng của histogram (ranh giới cấu hình, khoảng [from, to))
+ *
+ * Bất biến sau khi dựng; catalog đổi version thì dựng index mới (xem {@link ProductFacetService}),
+ * hoặc chép từ index cũ và chỉ sửa bit của các sản phẩm vừa đổi ({@link #withChanges}).
+ */
+public final class ProductFacetIndex {
+
+    public static final int MAX_STARS = 5;
+
+    private final ProductCatalogSnapshot catalog;
+    private final double[] priceBoundaries;
+    private final Map<Integer, BitSet> byCategoryId;
+    private final Map<String, BitSet> byCountry;
+    private final BitSet[] byGender;
+    private final BitSet[] byVolume;
+    private final BitSet[] ratingAtLeast;     // [k] = rating >= k, k = 1..MAX_STARS
+    private final BitSet[] byPriceBucket;     // priceBoundaries.length + 1 khoảng
+
+    private ProductFacetIndex(ProductCatalogSnapshot catalog,
+                              double[] priceBoundaries,
+                              Map<Integer, BitSet> byCategoryId,
+                              Map<String, BitSet> byCountry,
+                              BitSet[] byGender,
+                              BitSet[] byVolume,
+                              BitSet[] ratingAtLeast,
+                              BitSet[] byPriceBucket) {
+        this.catalog = catalog;
+        this.priceBoundaries = priceBoundaries;
+        this.byCategoryId = byCategoryId;
+        this.byCountry = byCountry;
+        this.byGender = byGender;
+        this.byVolume = byVolume;
+        this.ratingAtLeast = ratingAtLeast;
+        this.byPriceBucket = byPriceBucket;
+    }
+
+    private ProductFacetIndex(ProductCatalogSnapshot catalog, double[] priceBoundaries) {
+        int n = catalog.size();
+        this.catalog = catalog;
+        this.priceBoundaries = priceBoundaries;
+        this.byGender = new BitSet[Gender.values().length];
+        for (Gender gender : Gender.values()) {
+            byGender[gender.ordinal()] = catalog.productsWithGender(gender);
+        }
+        this.byVolume = new BitSet[Volume.values().length];
+        for (Volume volume : Volume.values()) {
+            byVolume[volume.ordinal()] = catalog.productsWithVolume(volume);
+        }
+        this.ratingAtLeast = new BitSet[MAX_STARS + 1];
+        for (int stars = 1; stars <= MAX_STARS; stars++) {
+            ratingAtLeast[stars] = new BitSet(n);
+        }
+        this.byPriceBucket = new BitSet[priceBoundaries.length + 1];
+        for (int b = 0; b < byPriceBucket.length; b++) {
+            byPriceBucket[b] = new BitSet(n);
+        }
+        Map<Integer, BitSet> categories = new LinkedHashMap<>();
+        Map<String, BitSet> countries = new LinkedHashMap<>();
+
+        for (int i = 0; i < n; i++) {
+            Category category = catalog.product(i).getCategory();
+            if (category != null && category.getId() != null) {
+                categories.computeIfAbsent(category.getId(), k -> new BitSet(n)).set(i);
+                if (category.getCountry() != null) {
+                    countries.computeIfAbsent(category.getCountry(), k -> new BitSet(n)).set(i);
+                }
+            }
+            // NaN (chưa có rating) không thuộc ngưỡng nào
+            double rating = catalog.rating(i);
+            for (int stars = 1; stars <= MAX_STARS && rating >= stars; stars++) {
+                ratingAtLeast[stars].set(i);
+            }
+            byPriceBucket[bucketOf(catalog.price(i))].set(i);
+        }
+
+        this.byCategoryId = Collections.unmodifiableMap(categories);
+        this.byCountry = Collections.unmodifiableMap(countries);
+    }
+
+    /**
+     * @param priceBoundaries ranh giới tăng dần giữa các khoảng giá (n ranh giới → n + 1 khoảng)
+     */
+    public static ProductFacetIndex build(ProductCatalogSnapshot catalog, double[] priceBoundaries) {
+        double[] boundaries = priceBoundaries.clone();
+        Arrays.sort(boundaries);
+        return new ProductFacetIndex(catalog, boundaries);
+    }
+
+    /**
+     * Index cho snapshot chép từ snapshot của index này ({@link ProductCatalogSnapshot#withChanges}):
+     * chỉ sửa bit của các sản phẩm đã đổi, BitSet không có bit đổi được dùng chung
+     * (đổi tồn kho không đụng bitmap nào; đổi rating chỉ đụng bitmap rating)
+     *
+     * @throws IllegalArgumentException nếu catalog không được chép trực tiếp từ catalog của index này
+     */
+    public ProductFacetIndex withChanges(ProductCatalogSnapshot newCatalog) {
+        if (newCatalog.getParentVersion() != catalog.getVersion()) {
+            throw new IllegalArgumentException("Catalog v" + newCatalog.getVersion() + " is not derived from v" + catalog.getVersion());
+        }
+        Set<BitSet> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<Integer, BitSet> categories = new LinkedHashMap<>(byCategoryId);
+        Map<String, BitSet> countries = new LinkedHashMap<>(byCountry);
+        BitSet[] genders = byGender.clone();
+        BitSet[] volumes = byVolume.clone();
+        BitSet[] ratings = ratingAtLeast.clone();
+        BitSet[] prices = byPriceBucket.clone();
+
+        for (int i : newCatalog.changedIndexes()) {
+            boolean existed = i < catalog.size();
+            Product before = existed ? catalog.product(i) : null;
+            Product after = newCatalog.product(i);
+
+            Category oldCategory = before != null ? before.getCategory() : null;
+            Category newCategory = after.getCategory();
+            Integer oldCategoryId = oldCategory != null ? oldCategory.getId() : null;
+            Integer newCategoryId = newCategory != null ? newCategory.getId() : null;
+            if (!Objects.equals(oldCategoryId, newCategoryId)) {
+                move(categories, oldCategoryId, newCategoryId, i, owned);
+            }
+            String oldCountry = oldCategoryId != null ? oldCategory.getCountry() : null;
+            String newCountry = newCategoryId != null ? newCategory.getCountry() : null;
+            if (!Objects.equals(oldCountry, newCountry)) {
+                move(countries, oldCountry, newCountry, i, owned);
+            }
+
+            Gender oldGender = before != null ? before.getGender() : null;
+            if (oldGender != after.getGender()) {
+                if (oldGender != null) {
+                    genders[oldGender.ordinal()] = writable(owned, genders[oldGender.ordinal()]);
+                    genders[oldGender.ordinal()].clear(i);
+                }
+                if (after.getGender() != null) {
+                    genders[after.getGender().ordinal()] = writable(owned, genders[after.getGender().ordinal()]);
+                    genders[after.getGender().ordinal()].set(i);
+                }
+            }
+            Volume oldVolume = before != null ? before.getVolume() : null;
+            if (oldVolume != after.getVolume()) {
+                if (oldVolume != null) {
+                    volumes[oldVolume.ordinal()] = writable(owned, volumes[oldVolume.ordinal()]);
+                    volumes[oldVolume.ordinal()].clear(i);
+                }
+                if (after.getVolume() != null) {
+                    volumes[after.getVolume().ordinal()] = writable(owned, volumes[after.getVolume().ordinal()]);
+                    volumes[after.getVolume().ordinal()].set(i);
+                }
+            }
+
+            int oldStars = existed ? starsOf(catalog.rating(i)) : 0;
+            int newStars = starsOf(newCatalog.rating(i));
+            for (int stars = Math.min(oldStars, newStars) + 1; stars <= Math.max(oldStars, newStars); stars++) {
+                ratings[stars] = writable(owned, ratings[stars]);
+                ratings[stars].set(i, stars <= newStars);
+            }
+
+            int oldBucket = existed ? bucketOf(catalog.price(i)) : -1;
+            int newBucket = bucketOf(newCatalog.price(i));
+            if (oldBucket != newBucket) {
+                if (oldBucket >= 0) {
+                    prices[oldBucket] = writable(owned, prices[oldBucket]);
+                    prices[oldBucket].clear(i);
+                }
+                prices[newBucket] = writable(owned, prices[newBucket]);
+                prices[newBucket].set(i);
+            }
+        }
+
+        return new ProductFacetIndex(newCatalog, priceBoundaries, Collections.unmodifiableMap(categories),
+                Collections.unmodifiableMap(countries), genders, volumes, ratings, prices);
+    }
+
+    /**
+     * Chuyển bit i từ giá trị cũ sang giá trị mới (null = không thuộc giá trị nào)
+     */
+    private static <K> void move(Map<K, BitSet> bitsByValue, K from, K to, int i, Set<BitSet> owned) {
+        if (from != null && bitsByValue.containsKey(from)) {
+            BitSet bits = writable(owned, bitsByValue.get(from));
+            bits.clear(i);
+            bitsByValue.put(from, bits);
+        }
+        if (to != null) {
+            BitSet bits = bitsByValue.get(to);
+            if (bits != null) {
+                bits = writable(owned, bits);
+            } else {
+                bits = new BitSet();
+                owned.add(bits);
+            }
+            bits.set(i);
+            bitsByValue.put(to, bits);
+        }
+    }
+
+    private static BitSet writable(Set<BitSet> owned, BitSet bits) {
+        if (owned.contains(bits)) {
+            return bits;
+        }
+        BitSet copy = (BitSet) bits.clone();
+        owned.add(copy);
+        return copy;
+    }
+
+    /**
+     * Số ngưỡng sao rating đạt được (NaN = chưa có rating = 0)
+     */
+    private static int starsOf(double rating) {
+        int stars = 0;
+        while (stars < MAX_STARS && rating >= stars + 1) {
+            stars++;
+        }
+        return stars;
+    }
+
+    private int bucketOf(double price) {
+        int i = Arrays.binarySearch(priceBoundaries, price);
+        // Trúng ranh giới → thuộc khoảng bắt đầu từ ranh giới đó
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    // ========== BITMAP (bản gốc dùng chung, caller KHÔNG được sửa) ==========
+
+    public ProductCatalogSnapshot catalog() { return catalog; }
+
+    public long getVersion() { return catalog.getVersion(); }
+
+    public Map<Integer, BitSet> categories() { return byCategoryId; }
+
+    public Map<String, BitSet> countries() { return byCountry; }
+
+    public BitSet gender(Gender gender) { return byGender[gender.ordinal()]; }
+
+    public BitSet volume(Volume volume) { return byVolume[volume.ordinal()]; }
+
+    /**
+     * @param stars 1..{@link #MAX_STARS}
+     */
+    public BitSet ratingAtLeast(int stars) { return ratingAtLeast[stars]; }
+
+    public int priceBucketCount() { return byPriceBucket.length; }
+
+    public BitSet priceBucket(int bucket) { return byPriceBucket[bucket]; }
+
+    /** Cận dưới của khoảng giá, null với khoảng đầu tiên */
+    public Double priceBucketFrom(int bucket) { return bucket > 0 ? priceBoundaries[bucket - 1] : null; }
+
+    /** Cận trên (không gồm) của khoảng giá, null với khoảng cuối cùng */
+    public Double priceBucketTo(int bucket) { return bucket < priceBoundaries.length ? priceBoundaries[bucket] : null; }
+
+    // ========== BITMAP TÍNH THEO THAM SỐ LỌC (bản mới, caller được sửa) ==========
+
+    /**
+     * Sản phẩm có giá trong [min, max] (null = không chặn phía đó), giống điều kiện của ProductRepository.searchProducts
+     */
+    public BitSet priceFilter(Double min, Double max) {
+        BitSet result = new BitSet(catalog.size());
+        for (int i = 0; i < catalog.size(); i++) {
+            double price = catalog.price(i);
+            if ((min == null || price >= min) && (max == null || price <= max)) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sản phẩm có rating trung bình >= minRating (ngưỡng lẻ thì quét mảng rating)
+     */
+    public BitSet ratingFilter(double minRating) {
+        int stars = (int) minRating;
+        if (stars == minRating && stars >= 1 && stars <= MAX_STARS) {
+            return (BitSet) ratingAtLeast[stars].clone();
+        }
+        BitSet result = new BitSet(catalog.size());
+        for (int i = 0; i < catalog.size(); i++) {
+            if (catalog.rating(i) >= minRating) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,225 @@
+package org.fit.shopnuochoa.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.fit.shopnuochoa.Enum.Gender;
+import org.fit.shopnuochoa.Enum.Volume;
+import org.fit.shopnuochoa.dto.ProductFacets;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Đếm số sản phẩm theo từng giá trị bộ lọc (facet) cho sidebar trang danh sách sản phẩm
+ *
+ * - Một lượt cho mọi facet + histogram giá trên bitmap trong RAM ({@link ProductFacetIndex}), không COUNT từng giá trị
+ * - Facet X đếm trên tập đã áp mọi bộ lọc đang chọn TRỪ X (chọn Dior vẫn thấy số lượng của Chanel để đổi)
+ * - Snapshot catalog chỉ sửa vài sản phẩm thì index chỉ sửa bit của các sản phẩm đó; dựng lại toàn bộ khi
+ *   snapshot được dựng lại (danh mục đổi, import, xóa) hoặc index đã lỡ một version
+ * - Cùng bitmap đó cho ProductService.searchProducts tập sản phẩm khớp từ khóa + bộ lọc ({@link #select})
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductFacetService {
+
+    private static final BitSet NONE = new BitSet();
+
+    private enum Facet { CATEGORY, COUNTRY, GENDER, VOLUME, RATING, PRICE }
+
+    private final ProductCatalogService catalogService;
+    private final ProductKeywordIndex keywordIndex;
+
+    // Ranh giới các khoảng giá của histogram (VNĐ, tăng dần)
+    @Value("${facet.price-buckets:500000,1000000,2000000,3000000,5000000}")
+    private double[] priceBoundaries;
+
+    private volatile ProductFacetIndex index;
+
+    /**
+     * Các sản phẩm khớp đủ mọi bộ lọc
+     *
+     * @param catalog  snapshot dùng để tính
+     * @param products index trong snapshot (bản riêng, caller được sửa)
+     */
+    public record Selection(ProductCatalogSnapshot catalog, BitSet products) {
+    }
+
+    /**
+     * Tập sản phẩm khớp từ khóa (toàn bộ, không cắt top-k) và mọi bộ lọc, cùng điều kiện với ProductRepository.searchProducts
+     */
+    public Selection select(String keyword,
+                            Integer categoryId,
+                            Double price,
+                            Double maxPrice,
+                            List<String> countries,
+                            Volume volume,
+                            Gender gender,
+                            Double rating) {
+        ProductFacetIndex facets = currentIndex();
+        BitSet base = keywordMatches(facets.catalog(), keyword);
+        BitSet[] filters = filters(facets, categoryId, price, maxPrice, countries, volume, gender, rating);
+        return new Selection(facets.catalog(), scope(base, filters, null));
+    }
+
+    /**
+     * Số lượng theo facet cho cùng bộ tham số lọc với ProductService.searchProducts
+     */
+    public ProductFacets count(String keyword,
+                               Integer categoryId,
+                               Double price,
+                               Double maxPrice,
+                               List<String> countries,
+                               Volume volume,
+                               Gender gender,
+                               Double rating) {
+        long start = System.nanoTime();
+        ProductFacetIndex facets = currentIndex();
+        ProductCatalogSnapshot catalog = facets.catalog();
+
+        BitSet base = keywordMatches(catalog, keyword);
+        BitSet[] filters = filters(facets, categoryId, price, maxPrice, countries, volume, gender, rating);
+        BitSet scratch = new BitSet(catalog.size());
+
+        Map<Integer, Integer> categoryCounts = new LinkedHashMap<>();
+        BitSet scope = scope(base, filters, Facet.CATEGORY);
+        facets.categories().forEach((id, bits) -> categoryCounts.put(id, intersectionCount(scope, bits, scratch)));
+
+        Map<String, Integer> countryCounts = new LinkedHashMap<>();
+        BitSet countryScope = scope(base, filters, Facet.COUNTRY);
+        facets.countries().forEach((name, bits) -> countryCounts.put(name, intersectionCount(countryScope, bits, scratch)));
+
+        Map<String, Integer> genderCounts = new LinkedHashMap<>();
+        BitSet genderScope = scope(base, filters, Facet.GENDER);
+        for (Gender g : Gender.values()) {
+            genderCounts.put(g.name(), intersectionCount(genderScope, facets.gender(g), scratch));
+        }
+
+        Map<String, Integer> volumeCounts = new LinkedHashMap<>();
+        BitSet volumeScope = scope(base, filters, Facet.VOLUME);
+        for (Volume v : Volume.values()) {
+            volumeCounts.put(v.name(), intersectionCount(volumeScope, facets.volume(v), scratch));
+        }
+
+        Map<Integer, Integer> ratingCounts = new LinkedHashMap<>();
+        BitSet ratingScope = scope(base, filters, Facet.RATING);
+        for (int stars = ProductFacetIndex.MAX_STARS; stars >= 1; stars--) {
+            ratingCounts.put(stars, intersectionCount(ratingScope, facets.ratingAtLeast(stars), scratch));
+        }
+
+        List<ProductFacets.PriceBucket> priceBuckets = new ArrayList<>(facets.priceBucketCount());
+        BitSet priceScope = scope(base, filters, Facet.PRICE);
+        for (int b = 0; b < facets.priceBucketCount(); b++) {
+            priceBuckets.add(new ProductFacets.PriceBucket(b, facets.priceBucketFrom(b), facets.priceBucketTo(b),
+                    intersectionCount(priceScope, facets.priceBucket(b), scratch)));
+        }
+
+        int total = scope(base, filters, null).cardinality();
+        log.debug("🧮 Facet counts: {} matches in {} µs", total, (System.nanoTime() - start) / 1_000);
+        return new ProductFacets(total, categoryCounts, countryCounts, genderCounts, volumeCounts, ratingCounts, priceBuckets);
+    }
+
+    /**
+     * Toàn bộ sản phẩm khớp từ khóa (không có từ khóa = cả catalog)
+     */
+    private BitSet keywordMatches(ProductCatalogSnapshot catalog, String keyword) {
+        BitSet base = catalog.allProducts();
+        if (keyword != null && !keyword.isBlank()) {
+            base.clear();
+            for (Integer productId : keywordIndex.matchingIds(keyword)) {
+                int i = catalog.indexOf(productId);
+                if (i >= 0) {
+                    base.set(i);
+                }
+            }
+        }
+        return base;
+    }
+
+    /**
+     * Bitmap của từng bộ lọc đang chọn (null = không lọc theo facet đó)
+     */
+    private static BitSet[] filters(ProductFacetIndex facets,
+                                    Integer categoryId,
+                                    Double price,
+                                    Double maxPrice,
+                                    List<String> countries,
+                                    Volume volume,
+                                    Gender gender,
+                                    Double rating) {
+        BitSet[] filters = new BitSet[Facet.values().length];
+        if (categoryId != null) {
+            filters[Facet.CATEGORY.ordinal()] = facets.categories().getOrDefault(categoryId, NONE);
+        }
+        if (countries != null && !countries.isEmpty()) {
+            BitSet anyCountry = new BitSet(facets.catalog().size());
+            for (String country : countries) {
+                anyCountry.or(facets.countries().getOrDefault(country, NONE));
+            }
+            filters[Facet.COUNTRY.ordinal()] = anyCountry;
+        }
+        if (gender != null) {
+            filters[Facet.GENDER.ordinal()] = facets.gender(gender);
+        }
+        if (volume != null) {
+            filters[Facet.VOLUME.ordinal()] = facets.volume(volume);
+        }
+        if (rating != null) {
+            filters[Facet.RATING.ordinal()] = facets.ratingFilter(rating);
+        }
+        if (price != null || maxPrice != null) {
+            filters[Facet.PRICE.ordinal()] = facets.priceFilter(price, maxPrice);
+        }
+        return filters;
+    }
+
+    /**
+     * base AND mọi bộ lọc đang chọn, bỏ qua bộ lọc của facet excluded (null = áp tất cả)
+     */
+    private static BitSet scope(BitSet base, BitSet[] filters, Facet excluded) {
+        BitSet result = (BitSet) base.clone();
+        for (Facet facet : Facet.values()) {
+            BitSet filter = filters[facet.ordinal()];
+            if (facet != excluded && filter != null) {
+                result.and(filter);
+            }
+        }
+        return result;
+    }
+
+    private static int intersectionCount(BitSet a, BitSet b, BitSet scratch) {
+        scratch.clear();
+        scratch.or(a);
+        scratch.and(b);
+        return scratch.cardinality();
+    }
+
+    private ProductFacetIndex currentIndex() {
+        ProductCatalogSnapshot catalog = catalogService.current();
+        ProductFacetIndex current = index;
+        if (current != null && current.getVersion() >= catalog.getVersion()) {
+            return current;
+        }
+        synchronized (this) {
+            current = index;
+            if (current == null || current.getVersion() < catalog.getVersion()) {
+                long start = System.nanoTime();
+                if (current != null && current.getVersion() == catalog.getParentVersion()) {
+                    current = current.withChanges(catalog);
+                    log.debug("🧮 Updated facet index v{} in {} µs", catalog.getVersion(), (System.nanoTime() - start) / 1_000);
+                } else {
+                    current = ProductFacetIndex.build(catalog, priceBoundaries);
+                    log.info("🧮 Built facet index v{} with {} products in {} ms",
+                            catalog.getVersion(), catalog.size(), (System.nanoTime() - start) / 1_000_000);
+                }
+                index = current;
+            }
+            return current;
+        }
+    }
+}
@@ -1,15 +1,28 @@
 package org.fit.shopnuochoa.service;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.fit.shopnuochoa.Enum.Gender;
 import org.fit.shopnuochoa.Enum.Volume;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Predicate;
+import org.fit.shopnuochoa.component.Bm25Index;
+import org.fit.shopnuochoa.component.VietnameseTextUtils;
+import org.fit.shopnuochoa.model.Category;
 import org.fit.shopnuochoa.model.Product;
 import org.fit.shopnuochoa.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Structured Filter Engine
@@ -17,206 +30,352 @@ import java.util.stream.Collectors;
  */
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class ProductFilterEngine {
 
+    private final ProductCatalogService catalogService;
     private final ProductRepository productRepository;
+    private final ProductSemanticIndex semanticIndex;
+    private final ProductKeywordIndex keywordIndex;
+
+    // Số sản phẩm tối thiểu được chấm điểm ngữ nghĩa (trong các ứng viên đã lọc), kể cả khi limit nhỏ hơn
+    private static final int SEMANTIC_CANDIDATES = 50;
+
+    // memory (mặc định): lọc trên snapshot trong RAM
+    // database: đẩy tiêu chí xuống DB (cho catalog quá lớn để giữ trong RAM)
+    @Value("${consultant.filter.mode:memory}")
+    private String filterMode;
 
     /**
      * Filter products based on structured criteria
+     *
+     * Chạy trên snapshot dạng cột của catalog (không query DB mỗi lần):
+     * - gender / volume / brand / hot trend / còn hàng → AND các BitSet
+     * - giá / rating → quét khoảng trên mảng nguyên thủy, chỉ duyệt các bit còn lại
+     * - tên sản phẩm / keyword → tập khớp của {@link ProductKeywordIndex}; điểm BM25 chỉ cho top limit khi xếp theo độ liên quan;
+     *   tên không khớp từ nào thì tra {@link ProductNameIndex} (fuzzy, chịu lỗi gõ)
+     * - semanticQuery (phần mô tả tự do của câu hỏi) → độ tương đồng từ {@link ProductSemanticIndex},
+     *   chỉ tìm trong các ứng viên còn lại và chỉ dùng để xếp hạng, không loại sản phẩm nào
+     * - rankByRelevance → xếp theo điểm BM25 / độ tương đồng thay cho sortBy (bằng điểm thì theo sortBy)
      */
     public List<Product> filterProducts(FilterCriteria criteria) {
-        List<Product> products = productRepository.findAll();
-        int initialCount = products.size();
-
-        System.out.println("╔════════════════════════════════════════════════════════════════");
-        System.out.println("║ 🔍 PRODUCT FILTERING DEBUG");
-        System.out.println("╠════════════════════════════════════════════════════════════════");
-        System.out.println("║ 📊 Initial products from DB: " + initialCount);
-        System.out.println("╠════════════════════════════════════════════════════════════════");
-        System.out.println("║ 📋 Filter Criteria:");
-        System.out.println("║   • productName: " + criteria.getProductName());
-        System.out.println("║   • categoryName (brand): " + criteria.getCategoryName());
-        System.out.println("║   • gender: " + criteria.getGender());
-        System.out.println("║   • volume: " + criteria.getVolume());
-        System.out.println("║   • minPrice: " + criteria.getMinPrice());
-        System.out.println("║   • maxPrice: " + criteria.getMaxPrice());
-        System.out.println("║   • minRating: " + criteria.getMinRating());
-        System.out.println("║   • inStockOnly: " + criteria.getInStockOnly());
-        System.out.println("║   • hotTrendOnly: " + criteria.getHotTrendOnly());
-        System.out.println("║   • sortBy: " + criteria.getSortBy());
-        System.out.println("║   • limit: " + criteria.getLimit());
-        System.out.println("╚════════════════════════════════════════════════════════════════");
-
-        // Apply filters
-        // Filter by product name (specific search with fuzzy matching)
-        if (criteria.getProductName() != null && !criteria.getProductName().isEmpty()) {
-            String searchTerm = criteria.getProductName().toLowerCase();
-            products = products.stream()
-                .filter(p -> {
-                    String productName = p.getName().toLowerCase();
-                    // Exact match or contains
-                    if (productName.contains(searchTerm)) {
-                        return true;
-                    }
-                    // Fuzzy matching - check if words match
-                    String[] searchWords = searchTerm.split("\\s+");
-                    String[] productWords = productName.split("\\s+");
-
-                    // Count matching words
-                    int matchCount = 0;
-                    for (String searchWord : searchWords) {
-                        for (String productWord : productWords) {
-                            // Check if words are similar (contains or levenshtein distance)
-                            if (productWord.contains(searchWord) || searchWord.contains(productWord)) {
-                                matchCount++;
-                                break;
-                            }
-                            // Simple typo tolerance
-                            if (Math.abs(productWord.length() - searchWord.length()) <= 2 &&
-                                calculateSimilarity(productWord, searchWord) > 0.6) {
-                                matchCount++;
-                                break;
-                            }
-                        }
-                    }
-
-                    // If more than 50% of search words match, consider it a match
-                    return matchCount >= (searchWords.length * 0.5);
-                })
-                .collect(Collectors.toList());
+        if ("database".equalsIgnoreCase(filterMode)) {
+            return filterProductsInDatabase(criteria);
         }
 
-        // Filter by keyword (general search - name or category)
-        if (criteria.getKeyword() != null && !criteria.getKeyword().isEmpty()) {
-            String keyword = criteria.getKeyword().toLowerCase();
-            products = products.stream()
-                .filter(p -> p.getName().toLowerCase().contains(keyword) ||
-                           p.getCategory().getName().toLowerCase().contains(keyword))
-                .collect(Collectors.toList());
+        ProductCatalogSnapshot catalog = catalogService.current();
+
+        // Log chi tiết (cardinality() duyệt cả BitSet) chỉ khi bật DEBUG
+        boolean debug = log.isDebugEnabled();
+        if (debug) {
+            log.debug("🔍 Filtering catalog snapshot v{} ({} products) - productName={}, semanticQuery={}, brand={}, "
+                            + "gender={}, volume={}, price=[{} - {}], minRating={}, inStockOnly={}, hotTrendOnly={}, "
+                            + "sortBy={}, limit={}",
+                    catalog.getVersion(), catalog.size(), criteria.getProductName(), criteria.getSemanticQuery(),
+                    criteria.getCategoryName(), criteria.getGender(), criteria.getVolume(), criteria.getMinPrice(),
+                    criteria.getMaxPrice(), criteria.getMinRating(), criteria.getInStockOnly(),
+                    criteria.getHotTrendOnly(), criteria.getSortBy(), criteria.getLimit());
         }
 
+        // ========== BITSET INTERSECTIONS ==========
+        BitSet candidates = catalog.allProducts();
+
         if (criteria.getCategoryName() != null) {
-            int beforeFilter = products.size();
-            products = products.stream()
-                .filter(p -> p.getCategory().getName().equalsIgnoreCase(criteria.getCategoryName()))
-                .collect(Collectors.toList());
-            System.out.println("║ ✂️ After brand filter: " + products.size() + " (removed: " + (beforeFilter - products.size()) + ")");
-            if (products.isEmpty()) {
-                System.out.println("║ ❌ NO PRODUCTS LEFT after brand filter!");
-                System.out.println("║    Looking for brand: [" + criteria.getCategoryName() + "]");
+            candidates.and(catalog.productsInCategory(criteria.getCategoryName()));
+            if (debug) {
+                log.debug("✂️ After brand filter [{}]: {}", criteria.getCategoryName(), candidates.cardinality());
             }
         }
 
         if (criteria.getGender() != null) {
-            int beforeFilter = products.size();
-            products = products.stream()
-                .filter(p -> p.getGender() == criteria.getGender())
-                .collect(Collectors.toList());
-            System.out.println("║ ✂️ After gender filter: " + products.size() + " (removed: " + (beforeFilter - products.size()) + ")");
+            candidates.and(catalog.productsWithGender(criteria.getGender()));
+            if (debug) {
+                log.debug("✂️ After gender filter: {}", candidates.cardinality());
+            }
         }
 
         if (criteria.getVolume() != null) {
-            int beforeFilter = products.size();
-            products = products.stream()
-                .filter(p -> p.getVolume() == criteria.getVolume())
-                .collect(Collectors.toList());
-            System.out.println("║ ✂️ After volume filter: " + products.size() + " (removed: " + (beforeFilter - products.size()) + ")");
+            candidates.and(catalog.productsWithVolume(criteria.getVolume()));
+            if (debug) {
+                log.debug("✂️ After volume filter: {}", candidates.cardinality());
+            }
         }
 
-        if (criteria.getMinPrice() != null) {
-            int beforeFilter = products.size();
-            products = products.stream()
-                .filter(p -> p.getPrice() >= criteria.getMinPrice())
-                .collect(Collectors.toList());
-            System.out.println("║ ✂️ After minPrice filter (>=" + criteria.getMinPrice() + "): " + products.size() + " (removed: " + (beforeFilter - products.size()) + ")");
+        if (criteria.getInStockOnly() != null && criteria.getInStockOnly()) {
+            candidates.and(catalog.inStockProducts());
         }
 
-        if (criteria.getMaxPrice() != null) {
-            int beforeFilter = products.size();
-            products = products.stream()
-                .filter(p -> p.getPrice() <= criteria.getMaxPrice())
-                .collect(Collectors.toList());
-            System.out.println("║ ✂️ After maxPrice filter (<=" + criteria.getMaxPrice() + "): " + products.size() + " (removed: " + (beforeFilter - products.size()) + ")");
+        if (criteria.getHotTrendOnly() != null && criteria.getHotTrendOnly()) {
+            candidates.and(catalog.hotTrendProducts());
         }
 
-        if (criteria.getMinRating() != null) {
-            products = products.stream()
-                .filter(p -> p.getAverageRating() != null &&
-                           p.getAverageRating() >= criteria.getMinRating())
-                .collect(Collectors.toList());
+        // ========== RANGE SCANS ==========
+        double minPrice = criteria.getMinPrice() != null ? criteria.getMinPrice() : Double.NEGATIVE_INFINITY;
+        double maxPrice = criteria.getMaxPrice() != null ? criteria.getMaxPrice() : Double.POSITIVE_INFINITY;
+        Double minRating = criteria.getMinRating();
+        if (criteria.getMinPrice() != null || criteria.getMaxPrice() != null || minRating != null) {
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                double price = catalog.price(i);
+                // rating NaN (chưa có) luôn bị loại khi có minRating
+                if (price < minPrice || price > maxPrice
+                        || (minRating != null && !(catalog.rating(i) >= minRating))) {
+                    candidates.clear(i);
+                }
+            }
+            if (debug) {
+                log.debug("✂️ After price/rating filter [{} - {}, rating>={}]: {}",
+                        criteria.getMinPrice(), criteria.getMaxPrice(), minRating, candidates.cardinality());
+            }
         }
 
-        if (criteria.getInStockOnly() != null && criteria.getInStockOnly()) {
-            products = products.stream()
-                .filter(Product::isInStock)
-                .collect(Collectors.toList());
+        // ========== TEXT MATCHING (chỉ trên các ứng viên còn lại) ==========
+        float[] relevance = null;
+        int rankDepth = Boolean.TRUE.equals(criteria.getRankByRelevance())
+                ? (criteria.getLimit() != null && criteria.getLimit() > 0 ? criteria.getLimit() : catalog.size())
+                : 0;
+
+        // Filter by product name: BM25, không khớp thì fuzzy index (bỏ dấu, chịu lỗi gõ nhẹ)
+        if (criteria.getProductName() != null && !criteria.getProductName().isEmpty()) {
+            float[] scores = keywordScores(catalog, candidates, criteria.getProductName(), rankDepth);
+            if (scores == null) {
+                scores = new float[catalog.size()];
+                BitSet nameMatches = new BitSet(catalog.size());
+                for (ProductNameIndex.Match match : catalog.nameIndex().search(criteria.getProductName())) {
+                    int index = catalog.indexOf(match.productId());
+                    if (index >= 0 && candidates.get(index)) {
+                        nameMatches.set(index);
+                        scores[index] = (float) match.score();
+                    }
+                }
+                candidates = nameMatches;
+            }
+            relevance = scores;
+            if (debug) {
+                log.debug("✂️ After product name filter: {}", candidates.cardinality());
+            }
         }
 
-        if (criteria.getHotTrendOnly() != null && criteria.getHotTrendOnly()) {
-            products = products.stream()
-                .filter(p -> p.getHotTrend() != null && p.getHotTrend())
-                .collect(Collectors.toList());
+        // Filter by keyword (general search - name, brand, country, description)
+        if (criteria.getKeyword() != null && !criteria.getKeyword().isEmpty()) {
+            float[] scores = keywordScores(catalog, candidates, criteria.getKeyword(), rankDepth);
+            if (scores == null) {
+                candidates.clear();
+            } else if (relevance == null) {
+                relevance = scores;
+            }
+            if (debug) {
+                log.debug("✂️ After keyword filter: {}", candidates.cardinality());
+            }
         }
 
-        // Apply sorting
-        products = applySorting(products, criteria.getSortBy());
-        System.out.println("║ 🔄 After sorting by [" + criteria.getSortBy() + "]: " + products.size() + " products");
+        // Semantic ranking (câu mô tả mùi hương, dịp dùng...): chỉ xếp hạng, tập ứng viên giữ nguyên
+        if (criteria.getSemanticQuery() != null && !criteria.getSemanticQuery().isBlank() && !candidates.isEmpty()) {
+            BitSet scope = candidates;
+            int depth = Math.max(SEMANTIC_CANDIDATES, criteria.getLimit() != null ? criteria.getLimit() : 0);
+            List<ProductSemanticIndex.Hit> hits = semanticIndex.search(criteria.getSemanticQuery(),
+                    Math.min(scope.cardinality(), depth),
+                    productId -> {
+                        int index = catalog.indexOf(productId);
+                        return index >= 0 && scope.get(index);
+                    });
+            if (!hits.isEmpty()) {
+                float[] scores = new float[catalog.size()];
+                for (ProductSemanticIndex.Hit hit : hits) {
+                    scores[catalog.indexOf(hit.productId())] = hit.similarity();
+                }
+                relevance = scores;
+            }
+            if (debug) {
+                log.debug("🧭 Semantic scores for {}/{} candidates{}", hits.size(), candidates.cardinality(),
+                        hits.isEmpty() ? " (no match, keeping structured order)" : "");
+            }
+        }
 
-        // Apply limit
-        if (criteria.getLimit() != null && criteria.getLimit() > 0) {
-            products = products.stream()
-                .limit(criteria.getLimit())
-                .collect(Collectors.toList());
-            System.out.println("║ ✂️ After limit (" + criteria.getLimit() + "): " + products.size() + " products");
+        // Apply sorting + limit (chỉ materialise Product cho kết quả cuối)
+        boolean byRelevance = relevance != null && Boolean.TRUE.equals(criteria.getRankByRelevance());
+        List<Product> products = sortAndLimit(catalog, candidates, criteria.getSortBy(), criteria.getLimit(),
+                byRelevance ? relevance : null);
+        if (debug) {
+            log.debug("🎯 After sorting by [{}] and limit ({}): {} products {}",
+                    byRelevance ? "relevance" : criteria.getSortBy(), criteria.getLimit(), products.size(),
+                    products.stream().limit(5).map(Product::getName).toList());
         }
 
-        System.out.println("╠════════════════════════════════════════════════════════════════");
-        System.out.println("║ 🎯 FINAL RESULT: " + products.size() + " products");
-        if (!products.isEmpty()) {
-            System.out.println("║ 📦 Products returned:");
-            products.stream().limit(5).forEach(p ->
-                System.out.println("║    • " + p.getName() + " (Price: " + p.getPrice() + ", Brand: " +
-                    (p.getCategory() != null ? p.getCategory().getName() : "N/A") + ")")
-            );
-        } else {
-            System.out.println("║ ⚠️ NO PRODUCTS MATCH THE CRITERIA!");
+        return products;
+    }
+
+    /**
+     * Lọc {@code candidates} theo tập khớp từ khóa của index (không chấm điểm); khi xếp theo độ liên quan
+     * thì chỉ chấm BM25 top {@code rankDepth} (WAND bỏ qua phần còn lại)
+     *
+     * @param rankDepth số sản phẩm cần điểm BM25 (0 = không xếp theo độ liên quan)
+     * @return điểm theo index snapshot (0 ngoài top), null nếu không ứng viên nào khớp ({@code candidates} giữ nguyên)
+     */
+    private float[] keywordScores(ProductCatalogSnapshot catalog, BitSet candidates, String text, int rankDepth) {
+        BitSet matches = new BitSet(catalog.size());
+        for (Integer productId : keywordIndex.matchingIds(text)) {
+            int index = catalog.indexOf(productId);
+            if (index >= 0) {
+                matches.set(index);
+            }
+        }
+        if (!matches.intersects(candidates)) {
+            return null;
+        }
+        candidates.and(matches);
+
+        float[] scores = new float[catalog.size()];
+        if (rankDepth > 0) {
+            for (Bm25Index.Hit hit : keywordIndex.search(text, rankDepth, productId -> {
+                int index = catalog.indexOf(productId);
+                return index >= 0 && candidates.get(index);
+            })) {
+                scores[catalog.indexOf(hit.key())] = hit.score();
+            }
         }
-        System.out.println("╚════════════════════════════════════════════════════════════════");
+        return scores;
+    }
 
+    /**
+     * Lọc bằng truy vấn DB (JPA Specification) thay vì snapshot trong RAM
+     *
+     * - Cùng dạng điều kiện với ProductRepository.searchProducts, dùng các index ghép trên bảng products
+     * - Chỉ lấy top {@code limit} dòng (LIMIT, không có câu COUNT), category được JOIN FETCH cùng query
+     * - productName / keyword dùng LIKE (không có so khớp gần đúng như chế độ memory), semanticQuery bị bỏ qua
+     */
+    public List<Product> filterProductsInDatabase(FilterCriteria criteria) {
+        Specification<Product> specification = toSpecification(criteria);
+        Sort sort = toSort(criteria.getSortBy());
+        Integer limit = criteria.getLimit();
+
+        List<Product> products = productRepository.findBy(specification, query -> {
+            var sorted = query.sortBy(sort);
+            return limit != null && limit > 0 ? sorted.limit(limit).all() : sorted.all();
+        });
+
+        log.debug("🗄️ Database filter [{}, limit {}]: {} products", criteria.getSortBy(), limit, products.size());
         return products;
     }
 
-    private List<Product> applySorting(List<Product> products, String sortBy) {
+    private Specification<Product> toSpecification(FilterCriteria criteria) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            Join<Product, Category> category;
+            // Không fetch khi Spring Data tạo câu đếm (resultType = Long)
+            if (query != null && !Long.class.equals(query.getResultType()) && !long.class.equals(query.getResultType())) {
+                @SuppressWarnings("unchecked")
+                Join<Product, Category> fetched = (Join<Product, Category>) root.<Product, Category>fetch("category", JoinType.INNER);
+                category = fetched;
+            } else {
+                category = root.join("category", JoinType.INNER);
+            }
+
+            predicates.add(cb.or(cb.isNull(root.get("deleted")), cb.isFalse(root.get("deleted"))));
+
+            if (criteria.getProductName() != null && !criteria.getProductName().isEmpty()) {
+                predicates.add(cb.like(cb.lower(root.get("name")), "%" + criteria.getProductName().toLowerCase() + "%"));
+            }
+            if (criteria.getKeyword() != null && !criteria.getKeyword().isEmpty()) {
+                String pattern = "%" + criteria.getKeyword().toLowerCase() + "%";
+                predicates.add(cb.or(
+                        cb.like(cb.lower(root.get("name")), pattern),
+                        cb.like(cb.lower(category.get("name")), pattern)));
+            }
+            if (criteria.getCategoryName() != null) {
+                predicates.add(cb.equal(cb.lower(category.get("name")), criteria.getCategoryName().trim().toLowerCase()));
+            }
+            if (criteria.getGender() != null) {
+                predicates.add(cb.equal(root.get("gender"), criteria.getGender()));
+            }
+            if (criteria.getVolume() != null) {
+                predicates.add(cb.equal(root.get("volume"), criteria.getVolume()));
+            }
+            if (criteria.getMinPrice() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("price"), criteria.getMinPrice()));
+            }
+            if (criteria.getMaxPrice() != null) {
+                predicates.add(cb.lessThanOrEqualTo(root.get("price"), criteria.getMaxPrice()));
+            }
+            if (criteria.getMinRating() != null) {
+                predicates.add(cb.greaterThanOrEqualTo(root.get("averageRating"), criteria.getMinRating()));
+            }
+            if (criteria.getInStockOnly() != null && criteria.getInStockOnly()) {
+                predicates.add(cb.greaterThan(root.get("quantity"), 0));
+            }
+            if (criteria.getHotTrendOnly() != null && criteria.getHotTrendOnly()) {
+                predicates.add(cb.isTrue(root.get("hotTrend")));
+            }
+
+            return cb.and(predicates.toArray(new Predicate[0]));
+        };
+    }
+
+    /**
+     * Cùng thứ tự với chế độ memory; id tăng dần làm tiêu chí phụ để kết quả ổn định
+     */
+    private Sort toSort(String sortBy) {
         if (sortBy == null) sortBy = "popular";
 
         return switch (sortBy.toLowerCase()) {
-            case "price_asc" -> products.stream()
-                .sorted((a, b) -> Double.compare(a.getPrice(), b.getPrice()))
-                .collect(Collectors.toList());
-            case "price_desc" -> products.stream()
-                .sorted((a, b) -> Double.compare(b.getPrice(), a.getPrice()))
-                .collect(Collectors.toList());
-            case "rating" -> products.stream()
-                .sorted((a, b) -> {
-                    double ratingA = a.getAverageRating() != null ? a.getAverageRating() : 0;
-                    double ratingB = b.getAverageRating() != null ? b.getAverageRating() : 0;
-                    return Double.compare(ratingB, ratingA);
-                })
-                .collect(Collectors.toList());
-            case "popular" -> products.stream()
-                .sorted((a, b) -> {
-                    int countA = a.getRatingCount() != null ? a.getRatingCount() : 0;
-                    int countB = b.getRatingCount() != null ? b.getRatingCount() : 0;
-                    return Integer.compare(countB, countA);
-                })
-                .collect(Collectors.toList());
-            case "newest" -> products.stream()
-                .sorted((a, b) -> Integer.compare(b.getId(), a.getId()))
-                .collect(Collectors.toList());
-            default -> products;
+            case "price_asc" -> Sort.by("price").ascending().and(Sort.by("id").ascending());
+            case "price_desc" -> Sort.by("price").descending().and(Sort.by("id").ascending());
+            case "rating" -> Sort.by("averageRating").descending().and(Sort.by("id").ascending());
+            case "popular" -> Sort.by("ratingCount").descending().and(Sort.by("id").ascending());
+            case "newest" -> Sort.by("id").descending();
+            default -> Sort.by("id").ascending();
         };
     }
 
+    /**
+     * Sắp xếp các index ứng viên theo cột nguyên thủy (hoặc theo độ tương đồng nếu có, bằng điểm thì theo cột)
+     * rồi cắt theo limit. Thứ tự gốc (id tăng dần) được giữ cho các phần tử bằng nhau.
+     */
+    private List<Product> sortAndLimit(ProductCatalogSnapshot catalog, BitSet candidates, String sortBy, Integer limit,
+                                       float[] relevance) {
+        Integer[] indexes = candidates.stream().boxed().toArray(Integer[]::new);
+        Comparator<Integer> comparator = sortComparator(catalog, sortBy);
+        if (relevance != null) {
+            Comparator<Integer> byRelevance = (a, b) -> Float.compare(relevance[b], relevance[a]);
+            comparator = comparator != null ? byRelevance.thenComparing(comparator) : byRelevance;
+        }
+        if (comparator != null) {
+            Arrays.sort(indexes, comparator);
+        }
+
+        int size = indexes.length;
+        if (limit != null && limit > 0) {
+            size = Math.min(size, limit);
+        }
+
+        List<Product> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(catalog.product(indexes[i]));
+        }
+        return result;
+    }
+
+    private Comparator<Integer> sortComparator(ProductCatalogSnapshot catalog, String sortBy) {
+        if (sortBy == null) sortBy = "popular";
+
+        return switch (sortBy.toLowerCase()) {
+            case "price_asc" -> (a, b) -> Double.compare(catalog.price(a), catalog.price(b));
+            case "price_desc" -> (a, b) -> Double.compare(catalog.price(b), catalog.price(a));
+            case "rating" -> (a, b) -> Double.compare(ratingOrZero(catalog, b), ratingOrZero(catalog, a));
+            case "popular" -> (a, b) -> Integer.compare(catalog.ratingCount(b), catalog.ratingCount(a));
+            case "newest" -> (a, b) -> Integer.compare(catalog.id(b), catalog.id(a));
+            default -> null;
+        };
+    }
+
+    private static double ratingOrZero(ProductCatalogSnapshot catalog, int index) {
+        double rating = catalog.rating(index);
+        return Double.isNaN(rating) ? 0 : rating;
+    }
+
+    // Intent đã quyết định thứ tự sản phẩm
+    private static final List<String> RANKING_INTENTS = List.of(
+        "isBestSelling", "isTopRated", "isNewProducts", "isHotTrend", "isCheapQuery", "isExpensiveQuery");
+
     /**
      * Build filter criteria from user intents
      */
@@ -305,7 +464,7 @@ public class ProductFilterEngine {
         if ((Boolean) intents.getOrDefault("isCheapQuery", false)) {
             sortBy = "price_asc"; // Sort by price ascending (cheapest first)
             criteria.setLimit(3); // Only show 3 cheapest products
-            System.out.println("💰 Cheap query detected → sortBy=price_asc, limit=3");
+            log.debug("💰 Cheap query detected → sortBy=price_asc, limit=3");
         }
 
         if ((Boolean) intents.getOrDefault("isExpensiveQuery", false)) {
@@ -315,41 +474,11 @@ public class ProductFilterEngine {
 
         criteria.setSortBy(sortBy);
 
-        return criteria;
-    }
-
-    /**
-     * Calculate similarity between two strings using Levenshtein distance
-     * Returns value between 0.0 (no match) and 1.0 (exact match)
-     */
-    private double calculateSimilarity(String s1, String s2) {
-        if (s1 == null || s2 == null) return 0.0;
-        if (s1.equals(s2)) return 1.0;
-
-        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
-
-        for (int i = 0; i <= s1.length(); i++) {
-            dp[i][0] = i;
-        }
-        for (int j = 0; j <= s2.length(); j++) {
-            dp[0][j] = j;
-        }
-
-        for (int i = 1; i <= s1.length(); i++) {
-            for (int j = 1; j <= s2.length(); j++) {
-                int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
-                dp[i][j] = Math.min(Math.min(
-                    dp[i - 1][j] + 1,      // deletion
-                    dp[i][j - 1] + 1),     // insertion
-                    dp[i - 1][j - 1] + cost // substitution
-                );
-            }
-        }
-
-        int maxLen = Math.max(s1.length(), s2.length());
-        if (maxLen == 0) return 1.0;
+        // Không có intent xếp hạng → sản phẩm khớp từ khóa / câu mô tả được xếp theo độ liên quan
+        criteria.setRankByRelevance(RANKING_INTENTS.stream()
+            .noneMatch(key -> Boolean.TRUE.equals(intents.get(key))));
 
-        return 1.0 - ((double) dp[s1.length()][s2.length()] / maxLen);
+        return criteria;
     }
 
     /**
@@ -358,6 +487,7 @@ public class ProductFilterEngine {
     public static class FilterCriteria {
         private String productName;  // Specific product name search
         private String keyword;
+        private String semanticQuery;  // Câu mô tả tự do, xếp hạng bằng index ngữ nghĩa (chỉ chế độ memory)
         private String categoryName;
         private Gender gender;
         private Volume volume;
@@ -367,6 +497,7 @@ public class ProductFilterEngine {
         private Boolean inStockOnly;
         private Boolean hotTrendOnly;
         private String sortBy;
+        private Boolean rankByRelevance;  // Có từ khóa / câu mô tả và không có intent xếp hạng → xếp theo độ liên quan
         private Integer limit;
 
         // Getters and setters
@@ -376,6 +507,9 @@ public class ProductFilterEngine {
         public String getKeyword() { return keyword; }
         public void setKeyword(String keyword) { this.keyword = keyword; }
 
+        public String getSemanticQuery() { return semanticQuery; }
+        public void setSemanticQuery(String semanticQuery) { this.semanticQuery = semanticQuery; }
+
         public String getCategoryName() { return categoryName; }
         public void setCategoryName(String categoryName) { this.categoryName = categoryName; }
 
@@ -403,8 +537,38 @@ public class ProductFilterEngine {
         public String getSortBy() { return sortBy; }
         public void setSortBy(String sortBy) { this.sortBy = sortBy; }
 
+        public Boolean getRankByRelevance() { return rankByRelevance; }
+        public void setRankByRelevance(Boolean rankByRelevance) { this.rankByRelevance = rankByRelevance; }
+
         public Integer getLimit() { return limit; }
         public void setLimit(Integer limit) { this.limit = limit; }
+
+        /**
+         * Khóa chuẩn hóa của bộ lọc: hai câu hỏi diễn đạt khác nhau nhưng ra cùng tiêu chí
+         * sẽ có cùng khóa (bỏ dấu, không phân biệt hoa thường, thứ tự từ trong tên không quan trọng)
+         */
+        public String canonicalKey() {
+            return "name=" + sortedTokens(productName)
+                    + "|kw=" + sortedTokens(keyword)
+                    + (semanticQuery != null && !semanticQuery.isBlank() ? "|sem=" + sortedTokens(semanticQuery) : "")
+                    + "|brand=" + VietnameseTextUtils.fold(categoryName).trim()
+                    + "|gender=" + gender
+                    + "|volume=" + volume
+                    + "|min=" + minPrice
+                    + "|max=" + maxPrice
+                    + "|rating=" + minRating
+                    + "|stock=" + Boolean.TRUE.equals(inStockOnly)
+                    + "|hot=" + Boolean.TRUE.equals(hotTrendOnly)
+                    + "|sort=" + sortBy
+                    + "|relevance=" + Boolean.TRUE.equals(rankByRelevance)
+                    + "|limit=" + limit;
+        }
+
+        private static String sortedTokens(String text) {
+            List<String> tokens = new ArrayList<>(VietnameseTextUtils.foldedTokens(text));
+            tokens.sort(null);
+            return String.join(" ", tokens);
+        }
     }
 }
 
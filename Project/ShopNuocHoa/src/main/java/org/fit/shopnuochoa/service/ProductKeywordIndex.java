@@ -0,0 +1,192 @@
+package org.fit.shopnuochoa.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.fit.shopnuochoa.component.Bm25Index;
+import org.fit.shopnuochoa.component.VietnameseTextUtils;
+import org.fit.shopnuochoa.model.Product;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Tìm kiếm từ khóa xếp hạng BM25 cho storefront và trợ lý tư vấn (thay cho LIKE '%keyword%')
+ *
+ * - Index tên, thương hiệu, quốc gia, mô tả; bỏ dấu tiếng Việt nên "nuoc hoa" khớp "nước hoa"
+ * - Trọng số trường: tên > thương hiệu > quốc gia / mô tả
+ * - Sản phẩm thêm / sửa / xóa mềm → ghi nhận id, lần tìm kế tiếp cập nhật đúng các sản phẩm đó từ snapshot catalog;
+ *   chữ ký nội dung (tên, thương hiệu, quốc gia, mô tả) không đổi (trừ tồn kho, cập nhật rating) thì bỏ qua
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductKeywordIndex {
+
+    private static final float NAME_WEIGHT = 3.0f;
+    private static final float BRAND_WEIGHT = 2.0f;
+    private static final float COUNTRY_WEIGHT = 1.0f;
+    private static final float DESCRIPTION_WEIGHT = 1.0f;
+
+    // Giống bộ lọc cũ: sản phẩm phải chứa ít nhất 50% số từ khóa
+    private static final double MIN_MATCH_RATIO = 0.5;
+
+    private final ProductCatalogService catalogService;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Set<Integer> changedProductIds = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebuildRequested = true;
+
+    // Chỉ đọc / ghi khi giữ lock
+    private Bm25Index index;
+    private final Map<Integer, Integer> signatures = new HashMap<>();
+
+    /**
+     * Top-k sản phẩm khớp từ khóa
+     *
+     * @param filter điều kiện thêm trên productId (null = không lọc)
+     * @return kết quả, điểm BM25 giảm dần
+     */
+    public List<Bm25Index.Hit> search(String keyword, int k, IntPredicate filter) {
+        List<String> words = VietnameseTextUtils.foldedTokens(keyword);
+        if (words.isEmpty() || k <= 0) {
+            return List.of();
+        }
+        applyPendingChanges();
+
+        long start = System.nanoTime();
+        List<Bm25Index.Hit> hits;
+        lock.readLock().lock();
+        try {
+            hits = index != null ? index.search(words, k, minShouldMatch(words), filter) : List.of();
+        } finally {
+            lock.readLock().unlock();
+        }
+        log.debug("🔤 Keyword search [{}]: {} hits in {} µs", keyword, hits.size(), (System.nanoTime() - start) / 1_000);
+        return hits;
+    }
+
+    /**
+     * Id của MỌI sản phẩm khớp từ khóa (cùng điều kiện với {@link #search}), không xếp hạng, không giới hạn
+     */
+    public List<Integer> matchingIds(String keyword) {
+        List<String> words = VietnameseTextUtils.foldedTokens(keyword);
+        if (words.isEmpty()) {
+            return List.of();
+        }
+        applyPendingChanges();
+
+        lock.readLock().lock();
+        try {
+            return index != null ? index.matchAll(words, minShouldMatch(words)) : List.of();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int minShouldMatch(List<String> words) {
+        return (int) Math.ceil(words.size() * MIN_MATCH_RATIO);
+    }
+
+    private void applyPendingChanges() {
+        if (!rebuildRequested && changedProductIds.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        boolean rebuild = false;
+        List<Integer> changed = List.of();
+        try {
+            // Lấy thay đổi TRƯỚC khi đọc snapshot (xem ProductSemanticIndex)
+            rebuild = rebuildRequested || index == null;
+            rebuildRequested = false;
+            changed = new ArrayList<>(changedProductIds);
+            changedProductIds.removeAll(changed);
+
+            ProductCatalogSnapshot catalog = catalogService.current();
+            if (rebuild) {
+                long start = System.nanoTime();
+                Bm25Index fresh = new Bm25Index();
+                Map<Integer, Integer> freshSignatures = new HashMap<>(catalog.size() * 2);
+                for (int i = 0; i < catalog.size(); i++) {
+                    fresh.upsert(catalog.id(i), termFrequencies(catalog.product(i)));
+                    freshSignatures.put(catalog.id(i), signature(catalog.product(i)));
+                }
+                index = fresh;
+                signatures.clear();
+                signatures.putAll(freshSignatures);
+                log.info("🔤 Built keyword index with {} products in {} ms", fresh.size(), (System.nanoTime() - start) / 1_000_000);
+                return;
+            }
+            for (Integer productId : changed) {
+                int i = catalog.indexOf(productId);
+                if (i >= 0) {
+                    int signature = signature(catalog.product(i));
+                    if (!Objects.equals(signature, signatures.get(productId))) {
+                        index.upsert(productId, termFrequencies(catalog.product(i)));
+                        signatures.put(productId, signature);
+                    }
+                } else if (signatures.remove(productId) != null) {
+                    index.remove(productId);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Giữ lại thay đổi để thử lần sau (upsert lặp lại không sao); search vẫn chạy trên index hiện có
+            log.error("❌ Failed to update keyword index: ", e);
+            if (rebuild) {
+                rebuildRequested = true;
+            }
+            changedProductIds.addAll(changed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Chữ ký các trường được index: giống nhau thì nội dung index của sản phẩm không đổi
+     */
+    private static int signature(Product p) {
+        String brand = p.getCategory() != null ? p.getCategory().getName() : null;
+        String country = p.getCategory() != null ? p.getCategory().getCountry() : null;
+        return Objects.hash(p.getName(), brand, country, p.getDescription());
+    }
+
+    private static Map<String, Float> termFrequencies(Product p) {
+        Map<String, Float> termFrequencies = new HashMap<>();
+        addField(termFrequencies, p.getName(), NAME_WEIGHT);
+        if (p.getCategory() != null) {
+            addField(termFrequencies, p.getCategory().getName(), BRAND_WEIGHT);
+            addField(termFrequencies, p.getCategory().getCountry(), COUNTRY_WEIGHT);
+        }
+        addField(termFrequencies, p.getDescription(), DESCRIPTION_WEIGHT);
+        return termFrequencies;
+    }
+
+    private static void addField(Map<String, Float> termFrequencies, String text, float weight) {
+        for (String word : VietnameseTextUtils.foldedTokens(text)) {
+            termFrequencies.merge(word, weight, Float::sum);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductService.ProductChangedEvent event) {
+        if (event.productId() == null) {
+            rebuildRequested = true;
+        } else {
+            changedProductIds.add(event.productId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryService.CategoryChangedEvent event) {
+        // Tên thương hiệu / quốc gia nằm trong nội dung index
+        rebuildRequested = true;
+    }
+}
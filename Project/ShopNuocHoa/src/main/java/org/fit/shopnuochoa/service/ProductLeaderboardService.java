@@ -0,0 +1,196 @@
+package org.fit.shopnuochoa.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.fit.shopnuochoa.model.Product;
+import org.fit.shopnuochoa.repository.ProductRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Bảng xếp hạng sản phẩm (đắt nhất, rẻ nhất, đánh giá cao, mới nhất, hot trend)
+ *
+ * - Mỗi bảng giữ tối đa {@link #CAPACITY} sản phẩm đứng đầu, dạng mảng bất biến (đọc không cần khóa)
+ * - Khi một sản phẩm thay đổi (sửa, đánh giá, đặt hàng...) chỉ sản phẩm đó được nạp lại và chèn / gỡ khỏi bảng
+ * - Bảng chỉ dựng lại toàn bộ (từ snapshot catalog) khi import hàng loạt hoặc bảng bị hụt quá nhiều
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductLeaderboardService {
+
+    static final int CAPACITY = 50;
+    // Bảng hụt dưới mức này (do sản phẩm rớt hạng / hết hàng) thì dựng lại ở lần đọc kế tiếp
+    static final int LOW_WATER_MARK = 20;
+
+    private final ProductRepository productRepository;
+    private final ProductCatalogService catalogService;
+
+    private final Map<Ranking, Leaderboard> boards = createBoards();
+
+    /**
+     * Các tiêu chí xếp hạng (điều kiện lọt bảng + thứ tự)
+     */
+    public enum Ranking {
+        MOST_EXPENSIVE(Product::isInStock,
+                Comparator.comparingDouble(ProductLeaderboardService::price).reversed()),
+        CHEAPEST(Product::isInStock,
+                Comparator.comparingDouble(ProductLeaderboardService::price)),
+        TOP_RATED(p -> p.getAverageRating() != null && p.getAverageRating() > 0,
+                // Sắp xếp theo rating, nếu bằng nhau thì theo số lượt đánh giá
+                Comparator.comparingDouble((Product p) -> p.getAverageRating()).reversed()
+                        .thenComparing(Comparator.comparingInt(ProductLeaderboardService::ratingCount).reversed())),
+        NEWEST(Product::isInStock,
+                Comparator.comparing(Product::getId, Comparator.reverseOrder())),
+        HOT_TREND(p -> Boolean.TRUE.equals(p.getHotTrend()) && p.isInStock(),
+                Comparator.comparing(Product::getId));
+
+        private final Predicate<Product> eligible;
+        private final Comparator<Product> order;
+
+        Ranking(Predicate<Product> eligible, Comparator<Product> order) {
+            this.eligible = eligible;
+            // Hòa nhau thì theo id để thứ tự luôn ổn định
+            this.order = order.thenComparing(Product::getId);
+        }
+    }
+
+    private static double price(Product p) {
+        return p.getPrice() != null ? p.getPrice() : 0.0;
+    }
+
+    private static int ratingCount(Product p) {
+        return p.getRatingCount() != null ? p.getRatingCount() : 0;
+    }
+
+    private static Map<Ranking, Leaderboard> createBoards() {
+        Map<Ranking, Leaderboard> map = new EnumMap<>(Ranking.class);
+        for (Ranking ranking : Ranking.values()) {
+            map.put(ranking, new Leaderboard(ranking));
+        }
+        return map;
+    }
+
+    /**
+     * Top sản phẩm theo tiêu chí - O(limit) khi bảng còn đủ dữ liệu
+     */
+    public List<Product> top(Ranking ranking, int limit) {
+        if (limit > CAPACITY) {
+            // Vượt sức chứa của bảng → quét snapshot
+            return scan(ranking, limit);
+        }
+        Leaderboard board = boards.get(ranking);
+        Product[] entries = board.entries;
+        if (board.dirty || (entries.length < limit && !board.complete)) {
+            entries = rebuild(board, limit);
+        }
+        return List.of(Arrays.copyOf(entries, Math.min(limit, entries.length)));
+    }
+
+    private Product[] rebuild(Leaderboard board, int limit) {
+        synchronized (board) {
+            if (board.dirty || (!board.complete && board.entries.length < limit)) {
+                List<Product> ranked = scan(board.ranking, CAPACITY + 1);
+                board.complete = ranked.size() <= CAPACITY;
+                board.entries = ranked.stream().limit(CAPACITY).toArray(Product[]::new);
+                board.dirty = false;
+                log.debug("🏅 Rebuilt leaderboard {} ({} products)", board.ranking, board.entries.length);
+            }
+            return board.entries;
+        }
+    }
+
+    private List<Product> scan(Ranking ranking, int limit) {
+        ProductCatalogSnapshot catalog = catalogService.current();
+        List<Product> eligible = new ArrayList<>();
+        for (int i = 0; i < catalog.size(); i++) {
+            Product p = catalog.product(i);
+            if (ranking.eligible.test(p)) {
+                eligible.add(p);
+            }
+        }
+        eligible.sort(ranking.order);
+        return eligible.size() > limit ? List.copyOf(eligible.subList(0, limit)) : eligible;
+    }
+
+    // Chạy sau listener của ProductCatalogService (đã tăng version) nên dựng lại luôn thấy dữ liệu mới
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductService.ProductChangedEvent event) {
+        if (event.productId() == null) {
+            // Import hàng loạt → dựng lại ở lần đọc kế tiếp
+            boards.values().forEach(board -> board.dirty = true);
+            return;
+        }
+
+        Product product = productRepository.findByIdWithCategory(event.productId())
+                .filter(p -> !Boolean.TRUE.equals(p.getDeleted()))
+                .orElse(null);
+        for (Leaderboard board : boards.values()) {
+            board.update(event.productId(), product);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryService.CategoryChangedEvent event) {
+        // Tên thương hiệu trong entity đã cache có thể đổi → dựng lại
+        boards.values().forEach(board -> board.dirty = true);
+    }
+
+    /**
+     * Một bảng xếp hạng: mảng đã sắp xếp, thay bằng mảng mới mỗi lần cập nhật (copy-on-write)
+     */
+    private static final class Leaderboard {
+        private final Ranking ranking;
+        private volatile Product[] entries = new Product[0];
+        private volatile boolean dirty = true;
+        // true khi bảng chứa TẤT CẢ sản phẩm đủ điều kiện (ít hơn CAPACITY)
+        private volatile boolean complete;
+
+        Leaderboard(Ranking ranking) {
+            this.ranking = ranking;
+        }
+
+        /**
+         * Gỡ sản phẩm khỏi bảng rồi chèn lại nếu vẫn đủ điều kiện.
+         * Bảng luôn là top-N chính xác: sản phẩm xếp sau phần tử cuối chỉ được thêm khi bảng đầy đủ (complete).
+         */
+        synchronized void update(Integer productId, Product product) {
+            if (dirty) {
+                return;  // Sẽ dựng lại toàn bộ ở lần đọc kế tiếp
+            }
+            List<Product> list = new ArrayList<>(entries.length + 1);
+            for (Product p : entries) {
+                if (!p.getId().equals(productId)) {
+                    list.add(p);
+                }
+            }
+
+            if (product != null && ranking.eligible.test(product)) {
+                int pos = 0;
+                while (pos < list.size() && ranking.order.compare(list.get(pos), product) < 0) {
+                    pos++;
+                }
+                if (pos < list.size() || complete) {
+                    list.add(pos, product);
+                }
+            }
+
+            if (list.size() > CAPACITY) {
+                list.remove(list.size() - 1);
+                complete = false;
+            }
+            entries = list.toArray(new Product[0]);
+            if (!complete && entries.length < LOW_WATER_MARK) {
+                dirty = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package org.fit.shopnuochoa.service;
+
+import org.fit.shopnuochoa.component.VietnameseTextUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index tìm tên sản phẩm gần đúng (fuzzy), dựng sẵn từ {@link ProductCatalogSnapshot}
+ *
+ * - Từ điển token (đã bỏ dấu) → danh sách sản phẩm chứa token đó
+ * - N-gram (1..3 ký tự) → token, để tìm token chứa từ khóa mà không quét toàn bộ từ điển
+ * - BK-tree trên token, để tìm token sai chính tả với khoảng cách Levenshtein bị chặn
+ *
+ * Quy tắc khớp giữ nguyên như bộ lọc cũ: một từ khóa khớp token nếu chứa nhau hoặc
+ * lệch độ dài <= 2 và độ tương đồng > 0.6; sản phẩm khớp khi >= 50% số từ khóa khớp.
+ */
+public final class ProductNameIndex {
+
+    private static final int MAX_GRAM = 3;
+    private static final int MAX_LENGTH_DIFF = 2;
+    private static final double MIN_SIMILARITY = 0.6;
+
+    /**
+     * Kết quả tìm kiếm: sản phẩm và điểm tương đồng trung bình trên các từ khóa (0..1)
+     */
+    public record Match(int productId, double score) {
+    }
+
+    private final String[] tokens;                  // tokenId → token
+    private final Map<String, Integer> tokenIds;
+    private final int[][] postings;                 // tokenId → index sản phẩm trong snapshot
+    private final Map<String, int[]> gramToTokens;  // n-gram → tokenId (tăng dần)
+    private final BkNode bkRoot;
+    private final int[] productIds;                 // index snapshot → productId
+
+    // Bộ đệm 2 hàng cho Levenshtein, dùng lại theo thread (không cấp phát mỗi lần so sánh)
+    private static final ThreadLocal<int[][]> DISTANCE_ROWS = ThreadLocal.withInitial(() -> new int[2][64]);
+
+    private ProductNameIndex(ProductCatalogSnapshot catalog) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> tokenList = new ArrayList<>();
+        List<List<Integer>> postingList = new ArrayList<>();
+
+        productIds = new int[catalog.size()];
+        for (int i = 0; i < catalog.size(); i++) {
+            productIds[i] = catalog.id(i);
+            for (String token : VietnameseTextUtils.foldedTokens(catalog.product(i).getName())) {
+                Integer tokenId = ids.get(token);
+                if (tokenId == null) {
+                    tokenId = tokenList.size();
+                    ids.put(token, tokenId);
+                    tokenList.add(token);
+                    postingList.add(new ArrayList<>());
+                }
+                List<Integer> posting = postingList.get(tokenId);
+                if (posting.isEmpty() || posting.get(posting.size() - 1) != i) {
+                    posting.add(i);
+                }
+            }
+        }
+
+        this.tokens = tokenList.toArray(new String[0]);
+        this.tokenIds = ids;
+        this.postings = new int[tokens.length][];
+        for (int t = 0; t < tokens.length; t++) {
+            postings[t] = postingList.get(t).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        Map<String, List<Integer>> grams = new HashMap<>();
+        for (int t = 0; t < tokens.length; t++) {
+            String token = tokens[t];
+            for (int n = 1; n <= MAX_GRAM; n++) {
+                for (int start = 0; start + n <= token.length(); start++) {
+                    List<Integer> list = grams.computeIfAbsent(token.substring(start, start + n), k -> new ArrayList<>());
+                    if (list.isEmpty() || list.get(list.size() - 1) != t) {
+                        list.add(t);
+                    }
+                }
+            }
+        }
+        this.gramToTokens = new HashMap<>(grams.size() * 2);
+        grams.forEach((gram, list) -> gramToTokens.put(gram, list.stream().mapToInt(Integer::intValue).toArray()));
+
+        BkNode root = null;
+        for (int t = 0; t < tokens.length; t++) {
+            if (root == null) {
+                root = new BkNode(t);
+            } else {
+                root.add(t, tokens);
+            }
+        }
+        this.bkRoot = root;
+    }
+
+    public static ProductNameIndex build(ProductCatalogSnapshot catalog) {
+        return new ProductNameIndex(catalog);
+    }
+
+    /**
+     * Tìm các sản phẩm có tên khớp (gần đúng) với cụm từ khóa
+     *
+     * @return danh sách sản phẩm khớp, điểm cao trước
+     */
+    public List<Match> search(String searchTerm) {
+        List<String> words = VietnameseTextUtils.foldedTokens(searchTerm);
+        if (words.isEmpty() || tokens.length == 0) {
+            return List.of();
+        }
+
+        // index snapshot → [số từ khóa khớp, tổng điểm]
+        Map<Integer, double[]> hits = new HashMap<>();
+        for (String word : words) {
+            Map<Integer, Double> bestPerToken = matchingTokens(word);
+            Map<Integer, Double> bestPerProduct = new HashMap<>();
+            bestPerToken.forEach((tokenId, similarity) -> {
+                for (int productIndex : postings[tokenId]) {
+                    bestPerProduct.merge(productIndex, similarity, Math::max);
+                }
+            });
+            bestPerProduct.forEach((productIndex, similarity) -> {
+                double[] hit = hits.computeIfAbsent(productIndex, k -> new double[2]);
+                hit[0]++;
+                hit[1] += similarity;
+            });
+        }
+
+        double required = words.size() * 0.5;
+        List<Match> matches = new ArrayList<>();
+        hits.forEach((productIndex, hit) -> {
+            if (hit[0] >= required) {
+                matches.add(new Match(productIds[productIndex], hit[1] / words.size()));
+            }
+        });
+        matches.sort((a, b) -> Double.compare(b.score(), a.score()));
+        return matches;
+    }
+
+    /**
+     * Các token khớp với một từ khóa, kèm độ tương đồng tốt nhất
+     */
+    private Map<Integer, Double> matchingTokens(String word) {
+        Map<Integer, Double> result = new HashMap<>();
+
+        // 1. Token chứa từ khóa (kể cả trùng khớp)
+        for (int tokenId : tokensContaining(word)) {
+            result.put(tokenId, containmentScore(word, tokens[tokenId]));
+        }
+
+        // 2. Từ khóa chứa token (duyệt các chuỗi con của từ khóa, không duyệt từ điển)
+        for (int start = 0; start < word.length(); start++) {
+            for (int end = start + 1; end <= word.length(); end++) {
+                Integer tokenId = tokenIds.get(word.substring(start, end));
+                if (tokenId != null) {
+                    result.merge(tokenId, containmentScore(tokens[tokenId], word), Math::max);
+                }
+            }
+        }
+
+        // 3. Sai chính tả: BK-tree với bán kính suy ra từ ngưỡng similarity > 0.6
+        int maxLen = word.length() + MAX_LENGTH_DIFF;
+        int radius = (int) Math.ceil((1 - MIN_SIMILARITY) * maxLen) - 1;
+        if (bkRoot != null && radius >= 1) {
+            bkRoot.search(word, radius, tokens, (tokenId, distance) -> {
+                String token = tokens[tokenId];
+                if (Math.abs(token.length() - word.length()) > MAX_LENGTH_DIFF) {
+                    return;
+                }
+                double similarity = 1.0 - (double) distance / Math.max(token.length(), word.length());
+                if (similarity > MIN_SIMILARITY) {
+                    result.merge(tokenId, similarity, Math::max);
+                }
+            });
+        }
+        return result;
+    }
+
+    private int[] tokensContaining(String word) {
+        if (word.length() <= MAX_GRAM) {
+            return gramToTokens.getOrDefault(word, new int[0]);
+        }
+        // Giao các danh sách trigram rồi kiểm tra lại bằng contains
+        int[] candidates = null;
+        for (int start = 0; start + MAX_GRAM <= word.length(); start++) {
+            int[] posting = gramToTokens.get(word.substring(start, start + MAX_GRAM));
+            if (posting == null) {
+                return new int[0];
+            }
+            candidates = candidates == null ? posting : intersect(candidates, posting);
+            if (candidates.length == 0) {
+                return candidates;
+            }
+        }
+        return Arrays.stream(candidates).filter(t -> tokens[t].contains(word)).toArray();
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, k = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { out[k++] = a[i]; i++; j++; }
+        }
+        return Arrays.copyOf(out, k);
+    }
+
+    private static double containmentScore(String inner, String outer) {
+        return outer.isEmpty() ? 1.0 : (double) inner.length() / outer.length();
+    }
+
+    /**
+     * Levenshtein có chặn: dừng sớm và trả về limit + 1 khi chắc chắn vượt ngưỡng.
+     * Dùng 2 hàng đệm theo thread nên không cấp phát trong vòng lặp tìm kiếm.
+     */
+    static int boundedDistance(String a, String b, int limit) {
+        int n = a.length(), m = b.length();
+        if (Math.abs(n - m) > limit) {
+            return limit + 1;
+        }
+        int[][] rows = DISTANCE_ROWS.get();
+        if (rows[0].length <= m) {
+            rows = new int[2][m + 1];
+            DISTANCE_ROWS.set(rows);
+        }
+        int[] prev = rows[0], curr = rows[1];
+        for (int j = 0; j <= m; j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            curr[0] = i;
+            int rowMin = curr[0];
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                curr[j] = Math.min(Math.min(prev[j] + 1, curr[j - 1] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, curr[j]);
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+            int[] tmp = prev;
+            prev = curr;
+            curr = tmp;
+        }
+        return Math.min(prev[m], limit + 1);
+    }
+
+    @FunctionalInterface
+    private interface TokenVisitor {
+        void visit(int tokenId, int distance);
+    }
+
+    /**
+     * Nút BK-tree: con được đánh khóa theo khoảng cách tới token của nút
+     */
+    private static final class BkNode {
+        private final int tokenId;
+        private final Map<Integer, BkNode> children = new HashMap<>();
+
+        BkNode(int tokenId) {
+            this.tokenId = tokenId;
+        }
+
+        void add(int newTokenId, String[] tokens) {
+            BkNode node = this;
+            while (true) {
+                int distance = boundedDistance(tokens[node.tokenId], tokens[newTokenId], Integer.MAX_VALUE - 1);
+                if (distance == 0) {
+                    return;
+                }
+                BkNode child = node.children.get(distance);
+                if (child == null) {
+                    node.children.put(distance, new BkNode(newTokenId));
+                    return;
+                }
+                node = child;
+            }
+        }
+
+        void search(String word, int radius, String[] tokens, TokenVisitor visitor) {
+            List<BkNode> stack = new ArrayList<>();
+            stack.add(this);
+            while (!stack.isEmpty()) {
+                BkNode node = stack.remove(stack.size() - 1);
+                String token = tokens[node.tokenId];
+                // Cần khoảng cách chính xác của nút để cắt nhánh theo bất đẳng thức tam giác
+                int distance = boundedDistance(word, token, Math.max(word.length(), token.length()));
+                if (distance <= radius) {
+                    visitor.visit(node.tokenId, distance);
+                }
+                for (Map.Entry<Integer, BkNode> child : node.children.entrySet()) {
+                    int edge = child.getKey();
+                    if (edge >= distance - radius && edge <= distance + radius) {
+                        stack.add(child.getValue());
+                    }
+                }
+            }
+        }
+    }
+}
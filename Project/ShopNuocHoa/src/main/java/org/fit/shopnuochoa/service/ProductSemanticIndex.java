@@ -0,0 +1,244 @@
+package org.fit.shopnuochoa.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.fit.shopnuochoa.component.HnswVectorIndex;
+import org.fit.shopnuochoa.model.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+/**
+ * Tìm sản phẩm theo ngữ nghĩa (câu mô tả như "mùi gỗ ấm cho mùa đông") không cần quét catalog
+ *
+ * - Embedding tính cục bộ bằng {@link ProductEmbedder} (không gọi dịch vụ ngoài)
+ * - Vector int8 trong đồ thị HNSW ({@link HnswVectorIndex}): top-k chỉ chạm vài trăm node
+ * - Sản phẩm thay đổi → ghi nhận id, lần search kế tiếp upsert đúng các sản phẩm đó từ snapshot catalog;
+ *   chữ ký nội dung embedding không đổi (trừ tồn kho, cập nhật rating) thì bỏ qua, không tạo node xóa trong đồ thị.
+ *   IDF giữ nguyên từ lần dựng; thay đổi quá {@link #REFIT_RATIO} catalog (hoặc import / đổi danh mục) thì dựng lại toàn bộ
+ * - Dựng lại chạy ngoài read/write lock rồi mới thay tham chiếu: trong lúc dựng, các request khác vẫn search trên index cũ
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ProductSemanticIndex {
+
+    private static final int MAX_LINKS = 16;
+    private static final int EF_CONSTRUCTION = 100;
+    private static final int EF_SEARCH = 64;
+    private static final double REFIT_RATIO = 0.2;
+
+    private final ProductCatalogService catalogService;
+
+    // Dưới ngưỡng này coi như câu hỏi không khớp sản phẩm nào (tránh xếp hạng theo nhiễu)
+    @Value("${consultant.semantic.min-similarity:0.2}")
+    private double minSimilarity;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock updateLock = new ReentrantLock();
+    private final Set<Integer> changedProductIds = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebuildRequested = true;
+
+    // Đọc khi giữ read lock, thay / sửa khi giữ write lock
+    private ProductEmbedder embedder;
+    private HnswVectorIndex index;
+    private int changesSinceBuild;     // chỉ dùng khi giữ updateLock
+    private final Map<Integer, Integer> signatures = new HashMap<>();  // chỉ dùng khi giữ updateLock
+
+    /**
+     * Sản phẩm khớp và độ tương đồng cosine (0..1)
+     */
+    public record Hit(int productId, float similarity) {
+    }
+
+    /**
+     * Top-k sản phẩm gần câu hỏi nhất trong các sản phẩm được {@code acceptProductId} chấp nhận
+     * (bộ lọc áp ngay trong lúc đi trên đồ thị; chỉ các sản phẩm đạt ngưỡng độ tương đồng)
+     *
+     * @return kết quả, độ tương đồng giảm dần
+     */
+    public List<Hit> search(String query, int k, IntPredicate acceptProductId) {
+        if (query == null || query.isBlank() || k <= 0) {
+            return List.of();
+        }
+        applyPendingChanges();
+
+        long start = System.nanoTime();
+        List<HnswVectorIndex.Hit> found;
+        lock.readLock().lock();
+        try {
+            if (index == null) {
+                return List.of();
+            }
+            float[] vector = embedder.embed(query);
+            if (vector == null) {
+                return List.of();
+            }
+            found = index.search(vector, k, Math.max(EF_SEARCH, k), acceptProductId);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Hit> hits = new ArrayList<>(found.size());
+        for (HnswVectorIndex.Hit hit : found) {
+            if (hit.similarity() >= minSimilarity) {
+                hits.add(new Hit(hit.key(), hit.similarity()));
+            }
+        }
+        log.debug("🧭 Semantic search [{}]: {} hits in {} µs", query, hits.size(), (System.nanoTime() - start) / 1_000);
+        return hits;
+    }
+
+    /**
+     * Đưa các thay đổi đã ghi nhận vào index (dựng lại toàn bộ khi cần)
+     *
+     * Mỗi lúc chỉ một thread cập nhật; thread khác thấy đang cập nhật thì search luôn trên index hiện có
+     * (chỉ chờ khi index chưa từng được dựng).
+     */
+    private void applyPendingChanges() {
+        if (!rebuildRequested && changedProductIds.isEmpty()) {
+            return;
+        }
+        if (!updateLock.tryLock()) {
+            if (hasIndex()) {
+                return;
+            }
+            updateLock.lock();
+        }
+        boolean rebuild = false;
+        List<Integer> changed = List.of();
+        try {
+            // Lấy thay đổi TRƯỚC khi đọc snapshot: version catalog đã tăng trước khi id được ghi nhận,
+            // nên snapshot đọc sau chắc chắn chứa các thay đổi này; thay đổi đến sau sẽ được áp ở lần kế tiếp
+            rebuild = rebuildRequested;
+            rebuildRequested = false;
+            changed = new ArrayList<>(changedProductIds);
+            changedProductIds.removeAll(changed);
+            if (!rebuild && changed.isEmpty()) {
+                return;
+            }
+
+            ProductCatalogSnapshot catalog = catalogService.current();
+            if (rebuild || !hasIndex()) {
+                rebuild(catalog);
+                return;
+            }
+
+            // Chỉ các sản phẩm có nội dung embedding đổi (hoặc thêm / xóa)
+            List<Integer> dirty = new ArrayList<>();
+            for (Integer productId : changed) {
+                int i = catalog.indexOf(productId);
+                Integer signature = i >= 0 ? signature(catalog.product(i)) : null;
+                if (!Objects.equals(signature, signatures.get(productId))) {
+                    dirty.add(productId);
+                }
+            }
+            if (dirty.isEmpty()) {
+                return;
+            }
+            if (changesSinceBuild + dirty.size() > REFIT_RATIO * catalog.size()) {
+                rebuild(catalog);
+                return;
+            }
+
+            lock.writeLock().lock();
+            try {
+                for (Integer productId : dirty) {
+                    int i = catalog.indexOf(productId);
+                    float[] vector = i >= 0 ? embedder.embed(catalog.product(i)) : null;
+                    if (vector != null) {
+                        index.upsert(productId, vector);
+                    } else {
+                        index.remove(productId);
+                    }
+                    if (i >= 0) {
+                        signatures.put(productId, signature(catalog.product(i)));
+                    } else {
+                        signatures.remove(productId);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            changesSinceBuild += dirty.size();
+        } catch (RuntimeException e) {
+            // Giữ lại thay đổi để thử lần sau; search vẫn chạy trên index cũ (hoặc trả rỗng nếu chưa có)
+            log.error("❌ Failed to update semantic index: ", e);
+            if (rebuild) {
+                rebuildRequested = true;
+            }
+            changedProductIds.addAll(changed);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    private void rebuild(ProductCatalogSnapshot catalog) {
+        long start = System.nanoTime();
+        ProductEmbedder newEmbedder = ProductEmbedder.fit(catalog);
+        HnswVectorIndex newIndex = new HnswVectorIndex(ProductEmbedder.DIMENSION, MAX_LINKS, EF_CONSTRUCTION);
+        Map<Integer, Integer> newSignatures = new HashMap<>(catalog.size() * 2);
+        for (int i = 0; i < catalog.size(); i++) {
+            float[] vector = newEmbedder.embed(catalog.product(i));
+            if (vector != null) {
+                newIndex.upsert(catalog.id(i), vector);
+            }
+            newSignatures.put(catalog.id(i), signature(catalog.product(i)));
+        }
+
+        lock.writeLock().lock();
+        try {
+            embedder = newEmbedder;
+            index = newIndex;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        signatures.clear();
+        signatures.putAll(newSignatures);
+        changesSinceBuild = 0;
+        log.info("🧭 Built semantic index with {} products in {} ms", newIndex.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Chữ ký các trường đưa vào embedding (xem ProductEmbedder): giống nhau thì vector không đổi
+     */
+    private static int signature(Product p) {
+        String brand = p.getCategory() != null ? p.getCategory().getName() : null;
+        return Objects.hash(p.getName(), brand, p.getDescription(), p.getGender(), p.getVolume());
+    }
+
+    private boolean hasIndex() {
+        lock.readLock().lock();
+        try {
+            return index != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductService.ProductChangedEvent event) {
+        if (event.productId() == null) {
+            rebuildRequested = true;
+        } else {
+            changedProductIds.add(event.productId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryService.CategoryChangedEvent event) {
+        // Tên thương hiệu là một phần của embedding
+        rebuildRequested = true;
+    }
+}
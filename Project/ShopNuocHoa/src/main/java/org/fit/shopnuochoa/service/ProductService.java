@@ -6,7 +6,9 @@ import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.fit.shopnuochoa.Enum.Gender;
+import org.fit.shopnuochoa.component.Bm25Index;
 import org.fit.shopnuochoa.Enum.Volume;
+import org.fit.shopnuochoa.dto.ProductCard;
 import org.fit.shopnuochoa.dto.ProductImportDTO;
 import org.fit.shopnuochoa.dto.RatingStats;
 import org.fit.shopnuochoa.model.Category;
@@ -14,18 +16,25 @@ import org.fit.shopnuochoa.model.Product;
 import org.fit.shopnuochoa.repository.CategoryRepository;
 import org.fit.shopnuochoa.repository.CommentRepository;
 import org.fit.shopnuochoa.repository.ProductRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.PriorityQueue;
 
 @Service
 public class ProductService {
@@ -34,12 +43,31 @@ public class ProductService {
     private CategoryRepository categoryRepository;
     private CommentRepository commentRepository;
     private CloudinaryService cloudinaryService;
+    private ApplicationEventPublisher eventPublisher;
+    private ProductKeywordIndex keywordIndex;
+    private ProductFacetService facetService;
+    private SimilarProductService similarProductService;
 
-    public ProductService(ProductRepository productRepository, CategoryRepository categoryRepository,CommentRepository commentRepository, CloudinaryService cloudinaryService) {
+    public ProductService(ProductRepository productRepository, CategoryRepository categoryRepository,CommentRepository commentRepository, CloudinaryService cloudinaryService, ApplicationEventPublisher eventPublisher, ProductKeywordIndex keywordIndex, ProductFacetService facetService, SimilarProductService similarProductService) {
         this.productRepository = productRepository;
         this.categoryRepository = categoryRepository;
         this.commentRepository = commentRepository;
         this.cloudinaryService = cloudinaryService;
+        this.eventPublisher = eventPublisher;
+        this.keywordIndex = keywordIndex;
+        this.facetService = facetService;
+        this.similarProductService = similarProductService;
+    }
+
+    /**
+     * Sự kiện phát ra sau mỗi lần ghi vào bảng products (thêm, sửa, xóa mềm, import, tồn kho, rating).
+     * productId = null nghĩa là nhiều sản phẩm cùng thay đổi (import).
+     */
+    public record ProductChangedEvent(Integer productId) {
+    }
+
+    private void publishProductChanged(Integer productId) {
+        eventPublisher.publishEvent(new ProductChangedEvent(productId));
     }
 
     public List<Product> getAll() {return productRepository.findAll();}
@@ -48,6 +76,13 @@ public class ProductService {
         return productRepository.findAll(pageable);
     }
 
+    /**
+     * Thẻ sản phẩm chưa xóa (1 query, không nạp entity) - trang chủ
+     */
+    public List<ProductCard> getActiveCards(Pageable pageable) {
+        return productRepository.findActiveCards(pageable);
+    }
+
     //    public List<Product> getByCategory(Integer categoryId) {return productRepository.findByCategoryId(categoryId);}
 
     /**
@@ -81,7 +116,9 @@ public class ProductService {
             product.setImageUrl(url);
         }
 
-        return productRepository.save(product);
+        Product saved = productRepository.save(product);
+        publishProductChanged(saved.getId());
+        return saved;
     }
 
     // Cập nhật
@@ -106,7 +143,9 @@ public class ProductService {
             }
 
 
-            return productRepository.save(product);
+            Product saved = productRepository.save(product);
+            publishProductChanged(saved.getId());
+            return saved;
         });
     }
 
@@ -115,6 +154,7 @@ public class ProductService {
         emp.ifPresent(product -> {
             product.setDeleted(true);
             productRepository.save(product);
+            publishProductChanged(product.getId());
         });
         return emp;
     }
@@ -124,6 +164,7 @@ public class ProductService {
         product.ifPresent(p -> {
             p.setDeleted(false);
             productRepository.save(p);
+            publishProductChanged(p.getId());
         });
         return product;
     }
@@ -144,17 +185,28 @@ public class ProductService {
         return productRepository.findProductsByCategoryWithPriceGreaterThan(categoryId,price,pageable);
     }
 
-    public List<Product> findSimilarProducts(Integer categoryId, Integer productId) {
-        List<Product> allSimilar = productRepository.findByCategoryIdAndIdNot(categoryId, productId);
-        // Trả về tối đa 4 sản phẩm
-        return allSimilar.stream().toList();
+    /**
+     * Top-K sản phẩm tương tự tính sẵn (thuộc tính + mua cùng, xem {@link SimilarProductService});
+     * sản phẩm chưa có trong danh sách tính sẵn (vừa thêm) thì tạm lấy K sản phẩm cùng thương hiệu
+     */
+    public List<ProductCard> findSimilarProducts(Integer categoryId, Integer productId) {
+        return similarProductService.findSimilar(productId)
+                .orElseGet(() -> productRepository.findCardsByCategoryIdAndIdNot(
+                        categoryId, productId, PageRequest.of(0, similarProductService.topK())));
     }
 
     /**
      * Tìm kiếm sản phẩm tổng hợp (dùng cho cả tải trang và AJAX)
      * Nhận TẤT CẢ các tham số lọc từ controller.
+     *
+     * Từ khóa được tra trong index BM25 (bỏ dấu; tên, thương hiệu, quốc gia, mô tả) thay cho LIKE '%...%'.
+     * Tập khớp từ khóa + bộ lọc lấy đủ (không cắt top-k) từ bitmap của {@link ProductFacetService}:
+     * - Pageable có Sort → sắp trên cột giá / lượt đánh giá / id của snapshot, chỉ giữ tới hết trang hiện tại
+     * - Pageable không có Sort → xếp theo độ liên quan: BM25 chỉ lấy tới hết trang hiện tại
+     * - Tổng = số phần tử của tập; thẻ của trang dựng từ snapshot, không query DB
+     * Kết quả là thẻ sản phẩm (projection), không phải entity.
      */
-    public Page<Product> searchProducts(String keyword,
+    public Page<ProductCard> searchProducts(String keyword,
                                         Integer categoryId,
                                         Double price,
                                         Double maxPrice,
@@ -164,9 +216,87 @@ public class ProductService {
                                         Double rating,
                                         Pageable pageable) {
 
-        return productRepository.searchProducts(
-                keyword, categoryId, price, maxPrice, countries, volume, gender, rating, pageable
-        );
+        if (keyword == null || keyword.isBlank()) {
+            return productRepository.searchProducts(
+                    null, categoryId, price, maxPrice, countries, volume, gender, rating, pageable
+            );
+        }
+
+        ProductFacetService.Selection selection = facetService.select(
+                keyword, categoryId, price, maxPrice, countries, volume, gender, rating);
+        ProductCatalogSnapshot catalog = selection.catalog();
+        BitSet matches = selection.products();
+        if (matches.isEmpty()) {
+            return Page.empty(pageable);
+        }
+        int total = matches.cardinality();
+        int from = pageable.isPaged() ? (int) Math.min(pageable.getOffset(), total) : 0;
+        int to = pageable.isPaged() ? Math.min(from + pageable.getPageSize(), total) : total;
+        if (from >= to) {
+            return new PageImpl<>(List.of(), pageable, total);
+        }
+        List<Integer> ranked = pageable.getSort().isSorted()
+                ? topIndexes(matches, sortComparator(catalog, pageable.getSort()), to)
+                : relevanceIndexes(catalog, matches, keyword, to);
+        List<ProductCard> content = new ArrayList<>(to - from);
+        for (int rank = from; rank < ranked.size(); rank++) {
+            content.add(ProductCard.from(catalog.product(ranked.get(rank))));
+        }
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    /**
+     * Top {@code limit} của BM25 trong tập đã lọc (index snapshot, điểm giảm dần)
+     */
+    private List<Integer> relevanceIndexes(ProductCatalogSnapshot catalog, BitSet matches, String keyword, int limit) {
+        List<Bm25Index.Hit> hits = keywordIndex.search(keyword, limit, productId -> {
+            int i = catalog.indexOf(productId);
+            return i >= 0 && matches.get(i);
+        });
+        List<Integer> indexes = new ArrayList<>(hits.size());
+        for (Bm25Index.Hit hit : hits) {
+            indexes.add(catalog.indexOf(hit.key()));
+        }
+        return indexes;
+    }
+
+    /**
+     * {@code limit} phần tử đầu của tập theo thứ tự (heap giới hạn, không sắp cả tập)
+     */
+    private static List<Integer> topIndexes(BitSet matches, Comparator<Integer> order, int limit) {
+        PriorityQueue<Integer> worstFirst = new PriorityQueue<>(limit + 1, order.reversed());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+            worstFirst.add(i);
+            if (worstFirst.size() > limit) {
+                worstFirst.poll();
+            }
+        }
+        List<Integer> indexes = new ArrayList<>(worstFirst);
+        indexes.sort(order);
+        return indexes;
+    }
+
+    /**
+     * Thứ tự của Sort (cột giá / lượt đánh giá / rating / id) trên cột của snapshot; bằng nhau thì id giảm dần
+     */
+    private static Comparator<Integer> sortComparator(ProductCatalogSnapshot catalog, Sort sort) {
+        Comparator<Integer> comparator = null;
+        for (Sort.Order order : sort) {
+            Comparator<Integer> column = switch (order.getProperty()) {
+                case "id" -> Comparator.comparingInt(catalog::id);
+                case "price" -> Comparator.comparingDouble(catalog::price);
+                case "ratingCount" -> Comparator.comparingInt(catalog::ratingCount);
+                // Chưa có rating (NaN) xếp như 0
+                case "averageRating" -> Comparator.comparingDouble(i -> Double.isNaN(catalog.rating(i)) ? 0 : catalog.rating(i));
+                default -> throw new IllegalArgumentException("Unsupported sort property: " + order.getProperty());
+            };
+            if (order.isDescending()) {
+                column = column.reversed();
+            }
+            comparator = comparator == null ? column : comparator.thenComparing(column);
+        }
+        Comparator<Integer> newestFirst = Comparator.<Integer>comparingInt(catalog::id).reversed();
+        return comparator == null ? newestFirst : comparator.thenComparing(newestFirst);
     }
 
     // ============= NEW IMPORT FLOW METHODS =============
@@ -294,6 +424,7 @@ public class ProductService {
         }
 
         productRepository.saveAll(products);
+        publishProductChanged(null);
     }
 
     // Helper methods for Excel cell reading
@@ -408,6 +539,7 @@ public class ProductService {
 
 
         productRepository.saveAll(products);
+        publishProductChanged(null);
         workbook.close();
     }
 
@@ -442,6 +574,7 @@ public class ProductService {
         }
 
         productRepository.save(product);
+        publishProductChanged(productId);
     }
 
     @Transactional // Kiểm tra tồn kho
@@ -460,6 +593,7 @@ public class ProductService {
         // 3. Trừ và lưu lại
         product.setQuantity(currentStock - quantityToReduce);
         productRepository.save(product);
+        publishProductChanged(productId);
     }
 
     public long count() {
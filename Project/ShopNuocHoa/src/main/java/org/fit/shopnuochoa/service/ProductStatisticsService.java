@@ -2,10 +2,11 @@ package org.fit.shopnuochoa.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.fit.shopnuochoa.model.OrderLine;
+import org.fit.shopnuochoa.dto.ProductSalesStats;
 import org.fit.shopnuochoa.model.Product;
 import org.fit.shopnuochoa.repository.OrderLineRepository;
 import org.fit.shopnuochoa.repository.ProductRepository;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
@@ -25,7 +26,7 @@ public class ProductStatisticsService {
 
     private final OrderLineRepository orderLineRepository;
     private final ProductRepository productRepository;
-    private final ProductService productService;
+    private final ProductLeaderboardService leaderboardService;
 
     /**
      * DTO cho thống kê sản phẩm
@@ -48,104 +49,73 @@ public class ProductStatisticsService {
 
     /**
      * Lấy top sản phẩm bán chạy nhất
+     * - GROUP BY / ORDER BY / LIMIT chạy trong database (không tải toàn bộ OrderLine)
+     * - Sản phẩm của top N được lấy bằng 1 query IN
      */
     public List<ProductStats> getBestSellingProducts(int limit) {
-        List<OrderLine> allOrderLines = orderLineRepository.findAll();
-
-        // Nhóm theo product và tính tổng số lượng bán
-        Map<Integer, Integer> productSales = new HashMap<>();
-        Map<Integer, Double> productRevenue = new HashMap<>();
-
-        for (OrderLine line : allOrderLines) {
-            Integer productId = line.getProduct().getId();
-            productSales.merge(productId, line.getAmount(), Integer::sum);
-            productRevenue.merge(productId,
-                line.getPurchasePrice().doubleValue() * line.getAmount(),
-                Double::sum);
+        List<ProductSalesStats> topSales = orderLineRepository.findTopSellingProducts(PageRequest.of(0, limit));
+        if (topSales.isEmpty()) {
+            return List.of();
         }
 
-        // Sắp xếp và lấy top N
-        return productSales.entrySet().stream()
-            .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed())
-            .limit(limit)
-            .map(entry -> {
-                Product product = productService.getById(entry.getKey());
-                return new ProductStats(
-                    product,
-                    entry.getValue(),
-                    productRevenue.get(entry.getKey())
-                );
-            })
-            .collect(Collectors.toList());
+        Map<Integer, Product> productsById = productRepository.findAllById(
+                topSales.stream().map(ProductSalesStats::productId).toList())
+            .stream()
+            .collect(Collectors.toMap(Product::getId, p -> p));
+
+        // Giữ thứ tự theo số lượng bán từ database
+        List<ProductStats> result = new ArrayList<>(topSales.size());
+        for (ProductSalesStats sales : topSales) {
+            Product product = productsById.get(sales.productId());
+            if (product == null) {
+                continue;
+            }
+            result.add(new ProductStats(
+                product,
+                sales.totalSold().intValue(),
+                sales.totalRevenue() != null ? sales.totalRevenue().doubleValue() : 0.0
+            ));
+        }
+        return result;
     }
 
     /**
      * Lấy sản phẩm mắt nhất
      */
     public List<Product> getMostExpensiveProducts(int limit) {
-        return productRepository.findAll().stream()
-            .filter(Product::isInStock)
-            .sorted((a, b) -> Double.compare(b.getPrice(), a.getPrice()))
-            .limit(limit)
-            .collect(Collectors.toList());
+        return leaderboardService.top(ProductLeaderboardService.Ranking.MOST_EXPENSIVE, limit);
     }
 
     /**
      * Lấy sản phẩm rẻ nhất
      */
     public List<Product> getCheapestProducts(int limit) {
-        return productRepository.findAll().stream()
-            .filter(Product::isInStock)
-            .sorted(Comparator.comparingDouble(Product::getPrice))
-            .limit(limit)
-            .collect(Collectors.toList());
+        return leaderboardService.top(ProductLeaderboardService.Ranking.CHEAPEST, limit);
     }
 
     /**
-     * Lấy sản phẩm đánh giá cao nhất
+     * Lấy sản phẩm đánh giá cao nhất (theo rating, bằng nhau thì theo số lượt đánh giá)
      */
     public List<Product> getTopRatedProducts(int limit) {
-        return productRepository.findAll().stream()
-            .filter(p -> p.getAverageRating() != null && p.getAverageRating() > 0)
-            .sorted((a, b) -> {
-                double ratingA = a.getAverageRating() != null ? a.getAverageRating() : 0;
-                double ratingB = b.getAverageRating() != null ? b.getAverageRating() : 0;
-                // Sắp xếp theo rating, nếu bằng nhau thì theo số lượt đánh giá
-                if (ratingB != ratingA) {
-                    return Double.compare(ratingB, ratingA);
-                }
-                int countA = a.getRatingCount() != null ? a.getRatingCount() : 0;
-                int countB = b.getRatingCount() != null ? b.getRatingCount() : 0;
-                return Integer.compare(countB, countA);
-            })
-            .limit(limit)
-            .collect(Collectors.toList());
+        return leaderboardService.top(ProductLeaderboardService.Ranking.TOP_RATED, limit);
     }
 
     /**
      * Lấy sản phẩm mới nhất
      */
     public List<Product> getNewestProducts(int limit) {
-        return productRepository.findAll().stream()
-            .filter(Product::isInStock)
-            .sorted((a, b) -> Integer.compare(b.getId(), a.getId()))
-            .limit(limit)
-            .collect(Collectors.toList());
+        return leaderboardService.top(ProductLeaderboardService.Ranking.NEWEST, limit);
     }
 
     /**
      * Lấy sản phẩm hot trend
      */
     public List<Product> getHotTrendProducts(int limit) {
-        return productRepository.findAll().stream()
-            .filter(p -> p.getHotTrend() != null && p.getHotTrend())
-            .filter(Product::isInStock)
-            .limit(limit)
-            .collect(Collectors.toList());
+        return leaderboardService.top(ProductLeaderboardService.Ranking.HOT_TREND, limit);
     }
 
     /**
-     * Tạo context thống kê chi tiết cho RAG
+     * Tạo context thống kê cho RAG: mỗi nhóm 1 dòng, các sản phẩm ngăn bằng ";" để tiết kiệm token
      */
     public String generateEnhancedStatistics() {
         StringBuilder stats = new StringBuilder();
@@ -153,34 +123,35 @@ public class ProductStatisticsService {
         // Top bán chạy
         List<ProductStats> bestSellers = getBestSellingProducts(5);
         if (!bestSellers.isEmpty()) {
-            stats.append("🏆 TOP SẢN PHẨM BÁN CHẠY:\n");
+            stats.append("Bán chạy (đã bán): ");
             for (int i = 0; i < bestSellers.size(); i++) {
                 ProductStats ps = bestSellers.get(i);
-                stats.append(String.format("%d. %s - Đã bán: %d sản phẩm (Doanh thu: %,.0f VNĐ)\n",
-                    i + 1, ps.getProduct().getName(), ps.getTotalSold(), ps.getTotalRevenue()));
+                stats.append(i > 0 ? "; " : "").append(ps.getProduct().getName()).append(" (").append(ps.getTotalSold()).append(')');
             }
-            stats.append("\n");
+            stats.append('\n');
         }
 
         // Top đánh giá cao
         List<Product> topRated = getTopRatedProducts(5);
         if (!topRated.isEmpty()) {
-            stats.append("⭐ TOP SẢN PHẨM ĐÁNH GIÁ CAO:\n");
+            stats.append("Đánh giá cao (sao/lượt): ");
             for (int i = 0; i < topRated.size(); i++) {
                 Product p = topRated.get(i);
-                stats.append(String.format("%d. %s - %.1f/5 ⭐ (%d lượt)\n",
-                    i + 1, p.getName(), p.getAverageRating(), p.getRatingCount()));
+                stats.append(i > 0 ? "; " : "")
+                    .append(String.format("%s (%.1f/%d)", p.getName(), p.getAverageRating(), p.getRatingCount()));
             }
-            stats.append("\n");
+            stats.append('\n');
         }
 
         // Hot trend
         List<Product> hotTrends = getHotTrendProducts(3);
         if (!hotTrends.isEmpty()) {
-            stats.append("🔥 SẢN PHẨM HOT TREND:\n");
-            hotTrends.forEach(p -> stats.append(String.format("- %s (%,.0f VNĐ)\n",
-                p.getName(), p.getPrice())));
-            stats.append("\n");
+            stats.append("Hot trend (giá VNĐ): ");
+            for (int i = 0; i < hotTrends.size(); i++) {
+                Product p = hotTrends.get(i);
+                stats.append(i > 0 ? "; " : "").append(p.getName()).append(" (").append(p.getPrice() != null ? Math.round(p.getPrice()) : "-").append(')');
+            }
+            stats.append('\n');
         }
 
         return stats.toString();
@@ -191,11 +162,23 @@ public class ProductStatisticsService {
      * Lấy tổng số lượng đã bán của một sản phẩm
      */
     public Integer getTotalSoldByProductId(Integer productId) {
-        List<OrderLine> orderLines = orderLineRepository.findAll();
-        return orderLines.stream()
-            .filter(line -> line.getProduct().getId().equals(productId))
-            .mapToInt(OrderLine::getAmount)
-            .sum();
+        return getTotalSoldByProductIds(List.of(productId)).getOrDefault(productId, 0);
+    }
+
+    /**
+     * Lấy tổng số lượng đã bán của nhiều sản phẩm bằng 1 query GROUP BY
+     *
+     * @return productId → số lượng đã bán (0 nếu chưa bán được)
+     */
+    public Map<Integer, Integer> getTotalSoldByProductIds(Collection<Integer> productIds) {
+        if (productIds == null || productIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Integer, Integer> totals = new HashMap<>();
+        productIds.forEach(id -> totals.put(id, 0));
+        orderLineRepository.findSalesStatsByProductIds(productIds)
+            .forEach(stats -> totals.put(stats.productId(), stats.totalSold().intValue()));
+        return totals;
     }
 }
 
@@ -1,7 +1,6 @@
 package org.fit.shopnuochoa.service;
 
 import lombok.RequiredArgsConstructor;
-import org.fit.shopnuochoa.model.Category;
 import org.fit.shopnuochoa.model.Product;
 import org.springframework.stereotype.Service;
 
@@ -17,139 +16,36 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class ProductVectorService {
 
-    private final CategoryService categoryService;
+    private final BrandDictionary brandDictionary;
     private final ProductStatisticsService statisticsService;
+    private final ProductContextBuilder contextBuilder;
 
     /**
      * Tạo context đặc biệt cho sản phẩm bán chạy
-     * Format rõ ràng để LLM thấy số lượng bán thực tế
+     * Dạng bảng gọn, số lượng bán lấy từ OrderLines (xếp theo số lượng bán giảm dần)
      */
     public String generateBestSellingContext(List<ProductStatisticsService.ProductStats> bestSellers) {
         if (bestSellers == null || bestSellers.isEmpty()) {
-            return "CẢNH BÁO: Không có dữ liệu bán hàng.\n" +
-                   "HƯỚNG DẪN: Thông báo cho khách hàng chưa có sản phẩm nào được bán.";
+            return "Chưa có dữ liệu bán hàng. Hãy báo khách shop chưa có sản phẩm nào được bán.";
         }
 
-        StringBuilder context = new StringBuilder();
-        context.append("===== TOP SẢN PHẨM BÁN CHẠY NHẤT =====\n");
-        context.append("DỮ LIỆU THỰC TẾ từ bảng OrderLines, được sắp xếp theo số lượng bán giảm dần:\n\n");
-
+        StringBuilder context = new StringBuilder(ProductContextBuilder.HEADER).append("|doanh thu VNĐ");
         for (int i = 0; i < bestSellers.size(); i++) {
             ProductStatisticsService.ProductStats ps = bestSellers.get(i);
-            Product p = ps.getProduct();
-
-            context.append(String.format("【XẾP HẠNG #%d - BÁN CHẠY NHẤT】\n", i + 1));
-            context.append(String.format("├─ Tên: %s\n", p.getName()));
-            context.append(String.format("├─ ID: %d\n", p.getId()));
-            context.append(String.format("├─ Giá: %,.0f VNĐ\n", p.getPrice()));
-            context.append(String.format("├─ Thương hiệu: %s\n", p.getCategory().getName()));
-            context.append(String.format("├─ Dung tích: %s\n",
-                p.getVolume() != null ? p.getVolume().name().replace("ML_", "") + "ml" : "Không rõ"));
-            context.append(String.format("├─ Giới tính: %s\n",
-                p.getGender() != null ? p.getGender().name() : "Không rõ"));
-
-            // QUAN TRỌNG: Số lượng đã bán THỰC TẾ
-            context.append(String.format("├─ ⭐ ĐÃ BÁN: %d sản phẩm (Dữ liệu chính xác từ OrderLines)\n",
-                ps.getTotalSold()));
-            context.append(String.format("├─ Doanh thu: %,.0f VNĐ\n", ps.getTotalRevenue()));
-
-            // Đánh giá
-            if (p.getAverageRating() != null && p.getAverageRating() > 0) {
-                context.append(String.format("├─ Đánh giá: %.1f/5 ⭐ (%d lượt)\n",
-                    p.getAverageRating(),
-                    p.getRatingCount() != null ? p.getRatingCount() : 0));
-            } else {
-                context.append("├─ Đánh giá: Chưa có\n");
-            }
-
-            // Tồn kho
-            if (p.isInStock()) {
-                context.append(String.format("└─ Tồn kho: CÒN HÀNG (%d sản phẩm)\n", p.getQuantity()));
-            } else {
-                context.append("└─ Tồn kho: HẾT HÀNG\n");
-            }
-
-            context.append("\n");
+            context.append('\n').append(i + 1).append('|')
+                .append(ProductContextBuilder.renderRow(ps.getProduct(), ps.getTotalSold().intValue()))
+                .append('|').append(Math.round(ps.getTotalRevenue()));
         }
-
-        context.append("===== KẾT THÚC BẢNG XẾP HẠNG =====\n");
-        context.append("CHÚ THÍCH: Số liệu \"ĐÃ BÁN\" là tổng số lượng từ TẤT CẢ đơn hàng thành công.\n");
-        context.append("CẢNH BÁO: CHỈ sử dụng số liệu \"ĐÃ BÁN\" được ghi rõ ở trên, KHÔNG được đoán mò.\n");
-
         return context.toString();
     }
 
     /**
-     * Tạo product embeddings/context cho RAG với thông tin bán hàng thực tế
-     * Context này được format để LLM không thể bịa thông tin
+     * Tạo context sản phẩm cho RAG: bảng gọn, giới hạn token (xem {@link ProductContextBuilder})
      */
     public String generateProductContext(List<Product> products) {
-        if (products == null || products.isEmpty()) {
-            return "CẢNH BÁO: Không tìm thấy sản phẩm phù hợp trong kho.\n" +
-                   "HƯỚNG DẪN: Thông báo cho khách hàng rằng hiện không có sản phẩm phù hợp.";
-        }
-
-        StringBuilder context = new StringBuilder();
-        context.append("===== DỮ LIỆU SẢN PHẨM THỰC TẾ =====\n");
-        context.append("CẢNH BÁO: CHỈ sử dụng thông tin dưới đây. KHÔNG bịa số liệu.\n\n");
-
-        for (int i = 0; i < Math.min(products.size(), 10); i++) {
-            Product p = products.get(i);
-
-            // Lấy số lượng đã bán THỰC TẾ
-            Integer totalSold = statisticsService.getTotalSoldByProductId(p.getId());
-
-            context.append(String.format("【SẢN PHẨM #%d】\n", i + 1));
-            context.append(String.format("├─ Tên: %s\n", p.getName()));
-            context.append(String.format("├─ ID: %d\n", p.getId()));
-            context.append(String.format("├─ Giá: %,.0f VNĐ (Chính xác)\n", p.getPrice()));
-            context.append(String.format("├─ Thương hiệu: %s\n", p.getCategory().getName()));
-            context.append(String.format("├─ Dung tích: %s\n",
-                p.getVolume() != null ? p.getVolume().name().replace("ML_", "") + "ml" : "Không rõ"));
-            context.append(String.format("├─ Giới tính: %s\n",
-                p.getGender() != null ? p.getGender().name() : "Không rõ"));
-
-            // Thông tin đánh giá - RÕ RÀNG
-            if (p.getAverageRating() != null && p.getAverageRating() > 0) {
-                context.append(String.format("├─ Đánh giá: %.1f/5 ⭐ (%d lượt đánh giá)\n",
-                    p.getAverageRating(),
-                    p.getRatingCount() != null ? p.getRatingCount() : 0));
-            } else {
-                context.append("├─ Đánh giá: Chưa có đánh giá\n");
-            }
-
-            // Thông tin tồn kho - RÕ RÀNG
-            if (p.isInStock()) {
-                context.append(String.format("├─ Tồn kho: CÒN HÀNG (%d sản phẩm)\n", p.getQuantity()));
-            } else {
-                context.append("├─ Tồn kho: HẾT HÀNG\n");
-            }
-
-            // Thông tin bán hàng - RÕ RÀNG VÀ THỰC TẾ
-            if (totalSold != null && totalSold > 0) {
-                context.append(String.format("├─ Đã bán: %d sản phẩm (Dữ liệu thực tế từ OrderLines)\n", totalSold));
-            } else {
-                context.append("├─ Đã bán: 0 sản phẩm (Chưa có đơn hàng nào)\n");
-            }
-
-            // Hot trend
-            if (p.getHotTrend() != null && p.getHotTrend()) {
-                context.append("└─ Đặc biệt: 🔥 HOT TREND\n");
-            } else {
-                context.append("└─ Đặc biệt: Không\n");
-            }
-
-            context.append("\n");
-        }
-
-        context.append("===== KẾT THÚC DỮ LIỆU =====\n");
-        context.append("LƯU Ý: Tất cả thông tin trên là CHÍNH XÁC từ database.\n");
-        context.append("KHÔNG được tự ý thêm/sửa/bịa số liệu không có trong danh sách.\n");
-
-        return context.toString();
+        return contextBuilder.build(products).text();
     }
 
-
     private final org.springframework.ai.chat.client.ChatClient.Builder chatClientBuilder;
 
     /**
@@ -345,170 +241,10 @@ public class ProductVectorService {
      * Extract brand from query by matching with database brands
      */
     private String extractBrandFromQuery(String queryLower) {
-        List<Category> brands = categoryService.getAll().stream().toList();
-        for (Category brand : brands) {
-            String brandNameLower = brand.getName().toLowerCase().trim();
-            if (queryLower.contains(brandNameLower)) {
-                System.out.println("✅ Brand matched: " + brand.getName());
-                return brand.getName();
-            }
+        String brand = brandDictionary.findFirst(queryLower);
+        if (brand != null) {
+            System.out.println("✅ Brand matched: " + brand);
         }
-        return null;
-    }
-
-    /**
-     * Extract product name from user query (kept as fallback)
-     */
-    private String extractProductName(String query) {
-        String cleaned = query.toLowerCase();
-
-        // Check if this is NOT a product name query but a criteria query
-        // These patterns indicate criteria search, not product name search
-        String[] criteriaPatterns = {
-            ".*phù hợp.*", ".*thích hợp.*", ".*dành cho.*", ".*cho.*nam.*", ".*cho.*nữ.*",
-            ".*nam giới.*", ".*nữ giới.*", ".*đàn ông.*", ".*phụ nữ.*",
-            ".*bán chạy.*", ".*hot.*trend.*", ".*đánh giá cao.*", ".*mới nhất.*",
-            ".*giá rẻ.*", ".*giá cao.*", ".*rẻ nhất.*", ".*đắt nhất.*"
-        };
-
-        for (String pattern : criteriaPatterns) {
-            if (cleaned.matches(pattern)) {
-                return null; // This is criteria search, not product name
-            }
-        }
-
-        // Remove common question words and keywords
-        String[] stopWords = {
-            "có", "không", "nào", "giá", "bao nhiêu", "tiền", "chi phí",
-            "tìm", "kiếm", "cho", "tôi", "mua", "bán", "của", "nhà", "hãng",
-            "sản phẩm", "loại", "nước hoa", "còn", "hết", "có bán", "giới thiệu",
-            "gợi ý", "tư vấn", "đề xuất", "có sẵn", "phù hợp", "thích hợp", "dành"
-        };
-
-        for (String stopWord : stopWords) {
-            cleaned = cleaned.replaceAll("\\b" + stopWord + "\\b", " ");
-        }
-
-        // Remove price patterns
-        cleaned = cleaned.replaceAll("\\d+\\s*(triệu|nghìn|k|tr|vnđ|đồng|vnd)", " ");
-
-        // Remove special characters but keep alphanumeric and Vietnamese
-        cleaned = cleaned.replaceAll("[^a-zA-Z0-9\\sàáạảãâầấậẩẫăằắặẳẵèéẹẻẽêềếệểễìíịỉĩòóọỏõôồốộổỗơờớợởỡùúụủũưừứựửữỳýỵỷỹđ]", " ");
-
-        // Clean up multiple spaces
-        cleaned = cleaned.trim().replaceAll("\\s+", " ");
-
-        // If result is too short or empty, return null
-        if (cleaned.length() < 3) {
-            return null;
-        }
-
-        // Final check: if cleaned result contains generic words only, return null
-        String[] genericWords = {"nam", "nữ", "unisex", "giới", "tính"};
-        boolean onlyGeneric = true;
-        String[] words = cleaned.split("\\s+");
-        for (String word : words) {
-            boolean isGeneric = false;
-            for (String generic : genericWords) {
-                if (word.equals(generic)) {
-                    isGeneric = true;
-                    break;
-                }
-            }
-            if (!isGeneric) {
-                onlyGeneric = false;
-                break;
-            }
-        }
-
-        if (onlyGeneric) {
-            return null;
-        }
-
-        return cleaned;
-    }
-
-    /**
-     * Extract giá từ query với đơn vị (triệu, nghìn, k)
-     * Hỗ trợ format: 500k, 500 k, 500nghìn, 500.000, 500,000
-     */
-    private Double extractPriceFromQuery(String text) {
-        try {
-            String lower = text.toLowerCase();
-            // Pattern hỗ trợ số có dấu chấm/phẩy: 500.000, 500,000, hoặc số thường: 500
-            // Tìm pattern: số + đơn vị (triệu/nghìn/k/tr)
-            java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(
-                "(\\d+(?:[.,]\\d+)*)\\s*(triệu|nghìn|ngàn|k|tr)");
-            java.util.regex.Matcher matcher = pattern.matcher(lower);
-
-            Double result = null;
-            while (matcher.find()) {
-                String numberStr = matcher.group(1).replaceAll("[.,]", ""); // Remove dots/commas
-                String unit = matcher.group(2);
-
-                double number = Double.parseDouble(numberStr);
-
-                // Convert based on unit
-                if (unit.equals("triệu") || unit.equals("tr")) {
-                    result = number * 1_000_000;
-                } else if (unit.equals("nghìn") || unit.equals("ngàn") || unit.equals("k")) {
-                    result = number * 1_000;
-                }
-
-                // Return first valid price found
-                if (result != null) {
-                    System.out.println("✅ Extracted price: " + result + " VNĐ from [" + matcher.group(0) + "]");
-                    return result;
-                }
-            }
-
-            if (result == null) {
-                System.out.println("⚠️ No price found in: [" + text + "]");
-            }
-        } catch (Exception e) {
-            System.out.println("⚠️ Error extracting price from: " + text + " - " + e.getMessage());
-        }
-        return null;
-    }
-
-    /**
-     * Extract khoảng giá từ query (VD: 1-2 triệu, 500k-1tr, 2 đến 3 triệu)
-     * Hỗ trợ format với dấu chấm/phẩy
-     */
-    private Map<String, Double> extractPriceRange(String text) {
-        try {
-            String lower = text.toLowerCase();
-            // Pattern hỗ trợ: "2-3 triệu", "2 đến 3 triệu", "500.000-1.000.000"
-            java.util.regex.Pattern pattern = java.util.regex.Pattern.compile(
-                "(\\d+(?:[.,]\\d+)*)\\s*(?:đến|-)\\s*(\\d+(?:[.,]\\d+)*)\\s*(triệu|nghìn|ngàn|k|tr)");
-            java.util.regex.Matcher matcher = pattern.matcher(lower);
-
-            if (matcher.find()) {
-                String num1Str = matcher.group(1).replaceAll("[.,]", "");
-                String num2Str = matcher.group(2).replaceAll("[.,]", "");
-                String unit = matcher.group(3);
-
-                double num1 = Double.parseDouble(num1Str);
-                double num2 = Double.parseDouble(num2Str);
-
-                double multiplier = 1;
-                if (unit.equals("triệu") || unit.equals("tr")) {
-                    multiplier = 1_000_000;
-                } else if (unit.equals("nghìn") || unit.equals("ngàn") || unit.equals("k")) {
-                    multiplier = 1_000;
-                }
-
-                Map<String, Double> range = new HashMap<>();
-                range.put("min", num1 * multiplier);
-                range.put("max", num2 * multiplier);
-
-                System.out.println("✅ Extracted price range: " + range.get("min") + " - " + range.get("max"));
-                return range;
-            }
-        } catch (Exception e) {
-            System.out.println("⚠️ Error extracting price range from: " + text + " - " + e.getMessage());
-        }
-        return null;
+        return brand;
     }
 }
-
@@ -0,0 +1,355 @@
+package org.fit.shopnuochoa.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.fit.shopnuochoa.Enum.Gender;
+import org.fit.shopnuochoa.dto.CoPurchaseCount;
+import org.fit.shopnuochoa.dto.ProductCard;
+import org.fit.shopnuochoa.model.Product;
+import org.fit.shopnuochoa.repository.OrderLineRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Sản phẩm tương tự ở trang chi tiết: top-K láng giềng của mỗi sản phẩm được tính sẵn
+ *
+ * - Điểm = độ giống thuộc tính (thương hiệu, giới tính, mức giá, dung tích) + số lần được mua cùng đơn (OrderLine)
+ * - Tính lại toàn bộ theo lô song song ở nền, trong lúc tính vẫn trả lời bằng danh sách cũ; chỉ chờ khi chưa từng tính
+ * - Đọc O(K): tra id láng giềng rồi lấy thẻ từ snapshot catalog (giá / tồn kho luôn mới, sản phẩm đã xóa bị bỏ qua)
+ * - Sản phẩm thay đổi chỉ kích hoạt tính lại khi thuộc tính dùng để chấm điểm đổi (tồn kho, rating thì không);
+ *   số lần mua cùng được làm mới định kỳ
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SimilarProductService {
+
+    // Trọng số thuộc tính (tổng 1.0)
+    private static final double BRAND_WEIGHT = 0.35;
+    private static final double GENDER_WEIGHT = 0.25;
+    private static final double PRICE_WEIGHT = 0.3;
+    private static final double VOLUME_WEIGHT = 0.1;
+    // Cặp mua cùng nhiều nhất catalog được cộng đủ trọng số này (thang log), ngang điểm thuộc tính tối đa
+    private static final double CO_PURCHASE_WEIGHT = 1.0;
+    // Giá chênh từ 2 lần trở lên thì không còn điểm giá
+    private static final double MAX_LOG_PRICE_GAP = Math.log(2);
+    // Số sản phẩm mỗi lô khi tính song song
+    private static final int BATCH_SIZE = 256;
+
+    private final ProductCatalogService catalogService;
+    private final OrderLineRepository orderLineRepository;
+
+    @Value("${similar.top-k:8}")
+    private int topK;
+
+    private final AtomicBoolean stale = new AtomicBoolean(true);
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final Set<Integer> changedProductIds = ConcurrentHashMap.newKeySet();
+    private volatile Neighbours neighbours;
+
+    /**
+     * Top-K sản phẩm tương tự, giống nhất trước
+     *
+     * @return empty nếu sản phẩm chưa có trong danh sách tính sẵn (vd vừa thêm, đang chờ tính lại)
+     */
+    public Optional<List<ProductCard>> findSimilar(Integer productId) {
+        ProductCatalogSnapshot catalog = catalogService.current();
+        int[] neighbourIds = currentNeighbours(catalog).byProductId().get(productId);
+        if (neighbourIds == null) {
+            return Optional.empty();
+        }
+        List<ProductCard> cards = new ArrayList<>(neighbourIds.length);
+        for (int neighbourId : neighbourIds) {
+            int i = catalog.indexOf(neighbourId);
+            if (i >= 0) {
+                cards.add(ProductCard.from(catalog.product(i)));
+            }
+        }
+        return Optional.of(cards);
+    }
+
+    /**
+     * Số láng giềng lưu cho mỗi sản phẩm
+     */
+    public int topK() {
+        return topK;
+    }
+
+    private Neighbours currentNeighbours(ProductCatalogSnapshot catalog) {
+        Neighbours current = neighbours;
+        if (current == null) {
+            synchronized (this) {
+                if (neighbours == null) {
+                    stale.set(false);
+                    changedProductIds.clear();
+                    neighbours = compute(catalogService.current());
+                }
+                return neighbours;
+            }
+        }
+        if (!changedProductIds.isEmpty()) {
+            checkChangedProducts(current, catalog);
+        }
+        if (stale.get() && rebuilding.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    // Xóa cờ TRƯỚC khi đọc dữ liệu: thay đổi đến trong lúc tính sẽ kích hoạt lượt kế tiếp
+                    stale.set(false);
+                    neighbours = compute(catalogService.current());
+                } catch (RuntimeException e) {
+                    log.error("❌ Failed to rebuild similar products: ", e);
+                    stale.set(true);
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        }
+        return current;
+    }
+
+    /**
+     * So chữ ký thuộc tính của các sản phẩm vừa thay đổi với lúc tính: khác (hoặc thêm / xóa) thì đánh dấu cần tính lại
+     */
+    private void checkChangedProducts(Neighbours current, ProductCatalogSnapshot catalog) {
+        for (Integer productId : List.copyOf(changedProductIds)) {
+            changedProductIds.remove(productId);
+            int i = catalog.indexOf(productId);
+            Integer signature = i >= 0 ? signature(catalog.product(i)) : null;
+            if (!Objects.equals(signature, current.signatures().get(productId))) {
+                stale.set(true);
+            }
+        }
+    }
+
+    private static int signature(Product p) {
+        Integer categoryId = p.getCategory() != null ? p.getCategory().getId() : null;
+        return Objects.hash(categoryId, p.getGender(), p.getVolume(), p.getPrice());
+    }
+
+    private Neighbours compute(ProductCatalogSnapshot catalog) {
+        long start = System.nanoTime();
+        int n = catalog.size();
+        Features features = new Features(n);
+        Map<Integer, Integer> signatures = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            Product p = catalog.product(i);
+            features.ids[i] = catalog.id(i);
+            features.brands[i] = p.getCategory() != null && p.getCategory().getId() != null ? p.getCategory().getId() : -1;
+            features.genders[i] = p.getGender() != null ? p.getGender().ordinal() : -1;
+            features.volumes[i] = p.getVolume() != null ? p.getVolume().getValueInMl() : 0;
+            features.logPrices[i] = Math.log(Math.max(1.0, catalog.price(i)));
+            signatures.put(catalog.id(i), signature(p));
+        }
+        int pairs = loadCoPurchases(catalog, features);
+
+        int k = Math.max(1, topK);
+        int[][] result = new int[n][];
+        int batches = (n + BATCH_SIZE - 1) / BATCH_SIZE;
+        IntStream.range(0, batches).parallel().forEach(batch -> {
+            int end = Math.min(n, (batch + 1) * BATCH_SIZE);
+            for (int i = batch * BATCH_SIZE; i < end; i++) {
+                result[i] = topNeighbours(features, i, k);
+            }
+        });
+
+        Map<Integer, int[]> byProductId = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            byProductId.put(features.ids[i], result[i]);
+        }
+        log.info("🔗 Computed similar products for {} products ({} co-purchase pairs) in {} ms",
+                n, pairs, (System.nanoTime() - start) / 1_000_000);
+        return new Neighbours(byProductId, signatures);
+    }
+
+    /**
+     * Nạp số lần mua cùng vào danh sách kề (theo index snapshot, tăng dần) của từng sản phẩm
+     *
+     * @return số cặp sản phẩm đang bán có mua cùng
+     */
+    private int loadCoPurchases(ProductCatalogSnapshot catalog, Features features) {
+        int n = catalog.size();
+        List<int[]> resolved = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        int[] degree = new int[n];
+        long maxCount = 0;
+        for (CoPurchaseCount pair : orderLineRepository.findCoPurchaseCounts()) {
+            int a = catalog.indexOf(pair.productId());
+            int b = catalog.indexOf(pair.otherProductId());
+            if (a < 0 || b < 0 || pair.orders() == null || pair.orders() <= 0) {
+                continue;
+            }
+            resolved.add(new int[]{a, b});
+            counts.add(pair.orders());
+            degree[a]++;
+            degree[b]++;
+            maxCount = Math.max(maxCount, pair.orders());
+        }
+
+        int[] filled = new int[n];
+        for (int i = 0; i < n; i++) {
+            features.coPartners[i] = new int[degree[i]];
+            features.coScores[i] = new double[degree[i]];
+        }
+        double scale = maxCount > 0 ? CO_PURCHASE_WEIGHT / Math.log1p(maxCount) : 0;
+        for (int p = 0; p < resolved.size(); p++) {
+            double score = Math.log1p(counts.get(p)) * scale;
+            for (int side = 0; side < 2; side++) {
+                int self = resolved.get(p)[side];
+                int other = resolved.get(p)[1 - side];
+                features.coPartners[self][filled[self]] = other;
+                features.coScores[self][filled[self]] = score;
+                filled[self]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            sortByPartner(features.coPartners[i], features.coScores[i]);
+        }
+        return resolved.size();
+    }
+
+    private static void sortByPartner(int[] partners, double[] scores) {
+        if (partners.length < 2) {
+            return;
+        }
+        Integer[] order = new Integer[partners.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> partners[i]));
+        int[] sortedPartners = new int[partners.length];
+        double[] sortedScores = new double[scores.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedPartners[i] = partners[order[i]];
+            sortedScores[i] = scores[order[i]];
+        }
+        System.arraycopy(sortedPartners, 0, partners, 0, partners.length);
+        System.arraycopy(sortedScores, 0, scores, 0, scores.length);
+    }
+
+    /**
+     * Quét toàn bộ catalog cho sản phẩm i, giữ K điểm cao nhất (mảng sắp xếp sẵn, chèn từ cuối)
+     *
+     * @return id sản phẩm láng giềng, giống nhất trước (hòa điểm thì id nhỏ trước)
+     */
+    private static int[] topNeighbours(Features f, int i, int k) {
+        int[] bestIndex = new int[k];
+        double[] bestScore = new double[k];
+        int size = 0;
+
+        int[] partners = f.coPartners[i];
+        double[] partnerScores = f.coScores[i];
+        int next = 0;
+        for (int j = 0; j < f.ids.length; j++) {
+            if (j == i) {
+                continue;
+            }
+            double score = attributeScore(f, i, j);
+            // Danh sách kề tăng dần theo index: duyệt song song với j
+            if (next < partners.length && partners[next] == j) {
+                score += partnerScores[next++];
+            }
+            if (score <= 0 || (size == k && score <= bestScore[k - 1])) {
+                continue;
+            }
+            int pos = size < k ? size++ : k - 1;
+            while (pos > 0 && bestScore[pos - 1] < score) {
+                bestScore[pos] = bestScore[pos - 1];
+                bestIndex[pos] = bestIndex[pos - 1];
+                pos--;
+            }
+            bestScore[pos] = score;
+            bestIndex[pos] = j;
+        }
+
+        int[] ids = new int[size];
+        for (int r = 0; r < size; r++) {
+            ids[r] = f.ids[bestIndex[r]];
+        }
+        return ids;
+    }
+
+    private static double attributeScore(Features f, int i, int j) {
+        double score = 0;
+        if (f.brands[i] >= 0 && f.brands[i] == f.brands[j]) {
+            score += BRAND_WEIGHT;
+        }
+        if (f.genders[i] >= 0 && f.genders[j] >= 0) {
+            if (f.genders[i] == f.genders[j]) {
+                score += GENDER_WEIGHT;
+            } else if (f.genders[i] == Gender.UNISEX.ordinal() || f.genders[j] == Gender.UNISEX.ordinal()) {
+                score += GENDER_WEIGHT / 2;
+            }
+        }
+        double priceGap = Math.abs(f.logPrices[i] - f.logPrices[j]);
+        if (priceGap < MAX_LOG_PRICE_GAP) {
+            score += PRICE_WEIGHT * (1 - priceGap / MAX_LOG_PRICE_GAP);
+        }
+        if (f.volumes[i] > 0 && f.volumes[i] == f.volumes[j]) {
+            score += VOLUME_WEIGHT;
+        }
+        return score;
+    }
+
+    // Số lần mua cùng thay đổi theo đơn hàng mới: làm mới định kỳ (tính lại ở lần đọc kế tiếp)
+    @Scheduled(fixedDelayString = "${similar.refresh-ms:3600000}", initialDelayString = "${similar.refresh-ms:3600000}")
+    public void refreshCoPurchases() {
+        stale.set(true);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProductChanged(ProductService.ProductChangedEvent event) {
+        if (event.productId() == null) {
+            // Import hàng loạt
+            stale.set(true);
+        } else {
+            changedProductIds.add(event.productId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCategoryChanged(CategoryService.CategoryChangedEvent event) {
+        stale.set(true);
+    }
+
+    /**
+     * Thuộc tính dạng cột theo index snapshot (chỉ đọc khi tính song song)
+     */
+    private static final class Features {
+        final int[] ids;
+        final int[] brands;        // id danh mục, -1 nếu không có
+        final int[] genders;       // ordinal, -1 nếu không có
+        final int[] volumes;       // ml, 0 nếu không có
+        final double[] logPrices;
+        final int[][] coPartners;  // index sản phẩm mua cùng, tăng dần
+        final double[][] coScores; // điểm mua cùng tương ứng
+
+        Features(int n) {
+            ids = new int[n];
+            brands = new int[n];
+            genders = new int[n];
+            volumes = new int[n];
+            logPrices = new double[n];
+            coPartners = new int[n][];
+            coScores = new double[n][];
+        }
+    }
+
+    private record Neighbours(Map<Integer, int[]> byProductId, Map<Integer, Integer> signatures) {
+    }
+}
@@ -1,5 +1,6 @@
 package org.fit.shopnuochoa.service;
 
+import org.fit.shopnuochoa.dto.ProductCard;
 import org.fit.shopnuochoa.model.Customer;
 import org.fit.shopnuochoa.model.Product;
 import org.fit.shopnuochoa.model.Users;
@@ -70,4 +71,9 @@ public class WishlistService {
     public List<Wishlist> getWishlistByCustomerId(Integer customerId) {
         return wishlistRepository.findAllByCustomerId(customerId);
     }
+
+    // Thẻ sản phẩm cho trang danh sách yêu thích (không nạp entity Wishlist / Product)
+    public List<ProductCard> getWishlistCards(Integer customerId) {
+        return wishlistRepository.findProductCardsByCustomerId(customerId);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,206 @@
+package org.fit.shopnuochoa.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Bm25IndexTest {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    // Cùng độ dài: không từ nào là tiền tố của từ khác, nên không có mở rộng tiền tố khi so với brute-force
+    private static final int VOCABULARY = 40;
+
+    // ========== SO VỚI BRUTE-FORCE ==========
+
+    @Test
+    void searchMatchesBruteForceAcrossUpsertsAndRemovals() {
+        Random random = new Random(42);
+        Bm25Index index = new Bm25Index();
+        Map<Integer, Map<String, Float>> documents = new HashMap<>();
+
+        for (int step = 1; step <= 2000; step++) {
+            int key = random.nextInt(300);
+            if (random.nextInt(4) == 0) {
+                index.remove(key);
+                documents.remove(key);
+            } else {
+                Map<String, Float> terms = randomDocument(random);
+                index.upsert(key, terms);
+                documents.put(key, terms);
+            }
+
+            if (step % 100 == 0) {
+                assertEquals(documents.size(), index.size());
+                for (int q = 0; q < 20; q++) {
+                    List<String> words = randomQuery(random);
+                    int minShouldMatch = 1 + random.nextInt(words.size());
+                    int k = 1 + random.nextInt(15);
+                    assertSameTopK(bruteForce(documents, words, minShouldMatch, null),
+                            index.search(words, k, minShouldMatch, null), k);
+                    IntPredicate even = candidate -> candidate % 2 == 0;
+                    assertSameTopK(bruteForce(documents, words, minShouldMatch, even),
+                            index.search(words, k, minShouldMatch, even), k);
+                }
+            }
+        }
+    }
+
+    @Test
+    void matchAllReturnsEveryLiveMatch() {
+        Random random = new Random(7);
+        Bm25Index index = new Bm25Index();
+        Map<Integer, Map<String, Float>> documents = new HashMap<>();
+
+        for (int step = 1; step <= 1500; step++) {
+            int key = random.nextInt(200);
+            if (random.nextInt(3) == 0) {
+                index.remove(key);
+                documents.remove(key);
+            } else {
+                Map<String, Float> terms = randomDocument(random);
+                index.upsert(key, terms);
+                documents.put(key, terms);
+            }
+
+            if (step % 100 == 0) {
+                for (int q = 0; q < 20; q++) {
+                    List<String> words = randomQuery(random);
+                    int minShouldMatch = 1 + random.nextInt(words.size());
+                    TreeSet<Integer> expected = new TreeSet<>(
+                            bruteForce(documents, words, minShouldMatch, null).keySet());
+                    List<Integer> actual = index.matchAll(words, minShouldMatch);
+                    assertEquals(expected.size(), actual.size());
+                    assertEquals(expected, new TreeSet<>(actual));
+                }
+            }
+        }
+    }
+
+    // ========== MỞ RỘNG TIỀN TỐ ==========
+
+    @Test
+    void unknownWordExpandsByPrefix() {
+        Bm25Index index = new Bm25Index();
+        index.upsert(1, Map.of("dior", 1f, "sauvage", 1f));
+        index.upsert(2, Map.of("chanel", 1f, "bleu", 1f));
+
+        List<Bm25Index.Hit> hits = index.search(List.of("sauv"), 10, 1, null);
+        assertEquals(1, hits.size());
+        assertEquals(1, hits.get(0).key());
+        assertEquals(List.of(1), index.matchAll(List.of("sauv"), 1));
+    }
+
+    @Test
+    void singleCharacterIsNotExpanded() {
+        Bm25Index index = new Bm25Index();
+        index.upsert(1, Map.of("sauvage", 1f));
+
+        assertTrue(index.search(List.of("s"), 10, 1, null).isEmpty());
+        assertTrue(index.matchAll(List.of("s"), 1).isEmpty());
+    }
+
+    @Test
+    void removedDocumentIsNotReturned() {
+        Bm25Index index = new Bm25Index();
+        index.upsert(1, Map.of("sauvage", 1f));
+        index.upsert(2, Map.of("sauvage", 2f));
+        index.remove(2);
+
+        List<Bm25Index.Hit> hits = index.search(List.of("sauvage"), 10, 1, null);
+        assertEquals(1, hits.size());
+        assertEquals(1, hits.get(0).key());
+        assertEquals(List.of(1), index.matchAll(List.of("sauvage"), 1));
+    }
+
+    // ========== HỖ TRỢ ==========
+
+    private static Map<String, Float> randomDocument(Random random) {
+        Map<String, Float> terms = new HashMap<>();
+        int count = 1 + random.nextInt(8);
+        for (int i = 0; i < count; i++) {
+            terms.merge(term(random.nextInt(VOCABULARY)), 0.5f + random.nextInt(4) * 0.5f, Float::sum);
+        }
+        return terms;
+    }
+
+    private static List<String> randomQuery(Random random) {
+        int count = 1 + random.nextInt(3);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            words.add(term(random.nextInt(VOCABULARY)));
+        }
+        return words;
+    }
+
+    private static String term(int i) {
+        return String.format("t%02d", i);
+    }
+
+    /**
+     * Điểm BM25 của mọi tài liệu khớp, tính trực tiếp theo công thức
+     */
+    private static Map<Integer, Float> bruteForce(Map<Integer, Map<String, Float>> documents,
+                                                  List<String> words, int minShouldMatch, IntPredicate filter) {
+        int documentCount = documents.size();
+        double totalLength = 0;
+        for (Map<String, Float> terms : documents.values()) {
+            for (float tf : terms.values()) {
+                totalLength += tf;
+            }
+        }
+        double averageLength = totalLength / documentCount;
+
+        List<String> distinctWords = new ArrayList<>(new LinkedHashSet<>(words));
+        Map<String, Double> idf = new HashMap<>();
+        for (String word : distinctWords) {
+            long df = documents.values().stream().filter(terms -> terms.containsKey(word)).count();
+            idf.put(word, Math.log(1 + (documentCount - df + 0.5) / (df + 0.5)));
+        }
+
+        Map<Integer, Float> scores = new HashMap<>();
+        documents.forEach((key, terms) -> {
+            if (filter != null && !filter.test(key)) {
+                return;
+            }
+            double length = 0;
+            for (float tf : terms.values()) {
+                length += tf;
+            }
+            double score = 0;
+            int matched = 0;
+            for (String word : distinctWords) {
+                Float tf = terms.get(word);
+                if (tf != null) {
+                    matched++;
+                    score += idf.get(word) * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / averageLength));
+                }
+            }
+            if (matched >= Math.max(1, minShouldMatch)) {
+                scores.put(key, (float) score);
+            }
+        });
+        return scores;
+    }
+
+    private static void assertSameTopK(Map<Integer, Float> expected, List<Bm25Index.Hit> actual, int k) {
+        List<Float> expectedScores = new ArrayList<>(expected.values());
+        expectedScores.sort((a, b) -> Float.compare(b, a));
+        assertEquals(Math.min(k, expectedScores.size()), actual.size());
+        for (int i = 0; i < actual.size(); i++) {
+            Bm25Index.Hit hit = actual.get(i);
+            assertEquals(expectedScores.get(i), hit.score(), 1e-4f);
+            assertEquals(expected.get(hit.key()), hit.score(), 1e-4f);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.fit.shopnuochoa.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswVectorIndexTest {
+
+    private static final int DIMENSION = 32;
+    private static final int COUNT = 2000;
+    private static final int K = 10;
+    private static final int EF = 100;
+
+    // ========== RECALL ==========
+
+    @Test
+    void recallAgainstBruteForce() {
+        Random random = new Random(1);
+        Map<Integer, float[]> vectors = randomVectors(random, COUNT);
+        HnswVectorIndex index = build(vectors);
+
+        double recall = averageRecall(random, index, vectors, key -> true);
+        assertTrue(recall >= 0.9, "recall@" + K + " = " + recall);
+    }
+
+    @Test
+    void filteredSearchReturnsOnlyAcceptedKeys() {
+        Random random = new Random(2);
+        Map<Integer, float[]> vectors = randomVectors(random, COUNT);
+        HnswVectorIndex index = build(vectors);
+        IntPredicate fifth = key -> key % 5 == 0;
+
+        for (int q = 0; q < 20; q++) {
+            List<HnswVectorIndex.Hit> hits = index.search(randomVector(random), K, EF, fifth);
+            assertEquals(K, hits.size());
+            for (HnswVectorIndex.Hit hit : hits) {
+                assertTrue(fifth.test(hit.key()), "key " + hit.key() + " rejected by filter");
+            }
+        }
+        double recall = averageRecall(random, index, vectors, fifth);
+        assertTrue(recall >= 0.9, "filtered recall@" + K + " = " + recall);
+    }
+
+    // ========== XÓA / THAY ==========
+
+    @Test
+    void removedKeysAreNeverReturned() {
+        Random random = new Random(3);
+        Map<Integer, float[]> vectors = randomVectors(random, COUNT);
+        HnswVectorIndex index = build(vectors);
+        for (int key = 0; key < COUNT; key += 2) {
+            index.remove(key);
+            vectors.remove(key);
+        }
+        assertEquals(COUNT / 2, index.size());
+        assertEquals(COUNT / 2, index.deletedCount());
+
+        for (int q = 0; q < 20; q++) {
+            for (HnswVectorIndex.Hit hit : index.search(randomVector(random), K, EF)) {
+                assertTrue(hit.key() % 2 == 1, "removed key " + hit.key() + " returned");
+            }
+        }
+        double recall = averageRecall(random, index, vectors, key -> true);
+        assertTrue(recall >= 0.9, "recall@" + K + " after removal = " + recall);
+    }
+
+    @Test
+    void upsertReplacesVector() {
+        Random random = new Random(4);
+        Map<Integer, float[]> vectors = randomVectors(random, 200);
+        HnswVectorIndex index = build(vectors);
+
+        float[] target = randomVector(random);
+        index.upsert(7, target);
+        List<HnswVectorIndex.Hit> hits = index.search(target, 1, EF);
+        assertEquals(7, hits.get(0).key());
+        assertEquals(200, index.size());
+
+        Set<Integer> keys = new HashSet<>();
+        for (HnswVectorIndex.Hit hit : index.search(target, 200, 400)) {
+            assertTrue(keys.add(hit.key()), "key " + hit.key() + " returned twice");
+        }
+        assertFalse(keys.isEmpty());
+    }
+
+    // ========== HỖ TRỢ ==========
+
+    private static HnswVectorIndex build(Map<Integer, float[]> vectors) {
+        HnswVectorIndex index = new HnswVectorIndex(DIMENSION, 16, 100);
+        vectors.forEach(index::upsert);
+        return index;
+    }
+
+    private static double averageRecall(Random random, HnswVectorIndex index,
+                                        Map<Integer, float[]> vectors, IntPredicate accept) {
+        int queries = 50;
+        int found = 0;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random);
+            Set<Integer> expected = new HashSet<>(bruteForce(vectors, query, accept));
+            for (HnswVectorIndex.Hit hit : index.search(query, K, EF, accept)) {
+                if (expected.contains(hit.key())) {
+                    found++;
+                }
+            }
+        }
+        return (double) found / (queries * K);
+    }
+
+    private static List<Integer> bruteForce(Map<Integer, float[]> vectors, float[] query, IntPredicate accept) {
+        List<Map.Entry<Integer, Float>> scored = new ArrayList<>();
+        vectors.forEach((key, vector) -> {
+            if (accept.test(key)) {
+                scored.add(Map.entry(key, dot(vector, query)));
+            }
+        });
+        scored.sort((a, b) -> Float.compare(b.getValue(), a.getValue()));
+        List<Integer> keys = new ArrayList<>(K);
+        for (int i = 0; i < K && i < scored.size(); i++) {
+            keys.add(scored.get(i).getKey());
+        }
+        return keys;
+    }
+
+    private static Map<Integer, float[]> randomVectors(Random random, int count) {
+        Map<Integer, float[]> vectors = new HashMap<>();
+        for (int key = 0; key < count; key++) {
+            vectors.put(key, randomVector(random));
+        }
+        return vectors;
+    }
+
+    /**
+     * Vector Gauss đã chuẩn hóa L2 (tích vô hướng = cosine)
+     */
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        double norm = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,54 @@
+package org.fit.shopnuochoa.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeysetCursorTest {
+
+    // ========== MÃ HÓA ==========
+
+    @Test
+    void roundTripKeepsKeyAndId() {
+        LocalDateTime date = LocalDateTime.of(2024, 3, 15, 10, 0);
+        KeysetCursor cursor = KeysetCursor.decode(KeysetCursor.of(date, 42).encode());
+        assertEquals(new KeysetCursor(date.toString(), 42), cursor);
+        assertEquals(date, LocalDateTime.parse(cursor.key()));
+    }
+
+    @Test
+    void roundTripWithoutKey() {
+        assertEquals(new KeysetCursor("", 7), KeysetCursor.decode(KeysetCursor.of(null, 7).encode()));
+    }
+
+    @Test
+    void keyContainingSeparatorSurvives() {
+        KeysetCursor cursor = KeysetCursor.of("a|b|c", 3);
+        assertEquals(cursor, KeysetCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void encodedCursorIsUrlSafe() {
+        String encoded = KeysetCursor.of("giá ~ 1.000.000đ ??>>", Integer.MAX_VALUE).encode();
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"), encoded);
+    }
+
+    @Test
+    void malformedCursorMeansFirstPage() {
+        assertNull(KeysetCursor.decode(null));
+        assertNull(KeysetCursor.decode(" "));
+        assertNull(KeysetCursor.decode("%%%"));
+        assertNull(KeysetCursor.decode(encodeRaw("no-separator")));
+        assertNull(KeysetCursor.decode(encodeRaw("2024-03-15T10:00|abc")));
+    }
+
+    private static String encodeRaw(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,151 @@
+package org.fit.shopnuochoa.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryIntentLexerTest {
+
+    private final QueryIntentLexer lexer = new QueryIntentLexer();
+
+    // ========== GIÁ ==========
+
+    @Test
+    void rangeWithUnitOnlyOnUpperBound() {
+        QueryIntentLexer.QueryIntents intents = lexer.analyze("nước hoa 500 đến 700k");
+        assertEquals(500_000.0, intents.getMinPrice());
+        assertEquals(700_000.0, intents.getMaxPrice());
+        assertNull(intents.getProductName());
+    }
+
+    @Test
+    void dashRangeTakesUnitOfOtherBound() {
+        QueryIntentLexer.QueryIntents intents = lexer.analyze("nước hoa 1-2tr");
+        assertEquals(1_000_000.0, intents.getMinPrice());
+        assertEquals(2_000_000.0, intents.getMaxPrice());
+        assertNull(intents.getProductName());
+    }
+
+    @Test
+    void maxAndMinOperators() {
+        QueryIntentLexer.QueryIntents under = lexer.analyze("nước hoa nam dưới 1,5 triệu");
+        assertEquals(1_500_000.0, under.getMaxPrice());
+        assertNull(under.getMinPrice());
+        assertTrue(under.has(QueryIntentLexer.Intent.CHEAP));
+
+        QueryIntentLexer.QueryIntents over = lexer.analyze("trên 500.000đ");
+        assertEquals(500_000.0, over.getMinPrice());
+        assertNull(over.getMaxPrice());
+    }
+
+    @Test
+    void bareNumberAfterOperatorMeansThousands() {
+        assertEquals(500_000.0, lexer.analyze("dưới 500").getMaxPrice());
+    }
+
+    @Test
+    void tokenizerHandlesGroupingDecimalsAndSkipsVolume() {
+        List<QueryIntentLexer.PriceAmount> amounts = QueryIntentLexer.tokenizePrices("chai 100ml giá 1.200.000 vnđ hoặc 1,5tr");
+        assertEquals(2, amounts.size());
+        assertEquals(1_200_000.0, amounts.get(0).value());
+        assertEquals(1_500_000.0, amounts.get(1).value());
+    }
+
+    @Test
+    void tokenizerSpanIncludesUnit() {
+        String text = "perfume 300 nghìn";
+        List<QueryIntentLexer.PriceAmount> amounts = QueryIntentLexer.tokenizePrices(text);
+        assertEquals(1, amounts.size());
+        assertEquals("300 nghìn", text.substring(amounts.get(0).start(), amounts.get(0).end()));
+    }
+
+    // ========== TÊN SẢN PHẨM ==========
+
+    @Test
+    void priceIsNotTakenAsProductName() {
+        assertNull(lexer.analyze("perfume 300 nghìn").getProductName());
+        assertNull(lexer.analyze("nước hoa 2tr").getProductName());
+    }
+
+    @Test
+    void nameStopsAtStopWordAndKeyword() {
+        QueryIntentLexer.QueryIntents intents = lexer.analyze("nước hoa dior sauvage cho nam");
+        assertEquals("dior sauvage", intents.getProductName());
+        assertEquals("NAM", intents.getGender());
+
+        assertEquals("chanel", lexer.analyze("nước hoa chanel giá bao nhiêu").getProductName());
+    }
+
+    @Test
+    void nameStopsBeforePriceOperand() {
+        QueryIntentLexer.QueryIntents intents = lexer.analyze("nước hoa gucci dưới 2 triệu");
+        assertEquals("gucci", intents.getProductName());
+        assertEquals(2_000_000.0, intents.getMaxPrice());
+    }
+
+    @Test
+    void bareNumberWithoutPriceOperatorStaysInName() {
+        assertEquals("212 vip", lexer.analyze("nước hoa 212 vip").getProductName());
+        assertEquals("chanel no 5", lexer.analyze("nước hoa chanel no 5").getProductName());
+    }
+
+    @Test
+    void volumeIsNotPartOfName() {
+        assertEquals("bleu", lexer.analyze("nước hoa bleu 100ml").getProductName());
+    }
+
+    @Test
+    void unaccentedQueryUsesWholeSentence() {
+        assertEquals("versace eros", lexer.analyze("versace eros").getProductName());
+    }
+
+    // ========== INTENT / GIỚI TÍNH ==========
+
+    @Test
+    void keywordsMatchWholeWordsOnly() {
+        QueryIntentLexer.QueryIntents women = lexer.analyze("perfume for women");
+        assertEquals("NU", women.getGender());
+
+        QueryIntentLexer.QueryIntents notGreeting = lexer.analyze("hiện shop có nước hoa nào hot");
+        assertFalse(notGreeting.has(QueryIntentLexer.Intent.GREETING));
+        assertTrue(notGreeting.has(QueryIntentLexer.Intent.HOT_TREND));
+    }
+
+    @Test
+    void greetingOnlyAtStart() {
+        assertTrue(lexer.analyze("chào shop").has(QueryIntentLexer.Intent.GREETING));
+        assertFalse(lexer.analyze("nước hoa nam, chào").has(QueryIntentLexer.Intent.GREETING));
+    }
+
+    @Test
+    void unisexWinsOverSingleGender() {
+        assertEquals("UNISEX", lexer.analyze("nước hoa cả nam và nữ").getGender());
+    }
+
+    // ========== MÔ TẢ TỰ DO ==========
+
+    @Test
+    void descriptiveTextKeepsOnlyFreeDescription() {
+        assertEquals("mùi gỗ ấm mùa đông", lexer.analyze("mùi gỗ ấm cho mùa đông").getDescriptiveText());
+        assertEquals("mùi gỗ ấm", lexer.analyze("gợi ý nước hoa nam mùi gỗ ấm dưới 2 triệu").getDescriptiveText());
+    }
+
+    @Test
+    void structuredQueriesHaveNoDescriptiveText() {
+        assertNull(lexer.analyze("gợi ý nước hoa nữ").getDescriptiveText());
+        assertNull(lexer.analyze("nước hoa cho nam").getDescriptiveText());
+        assertNull(lexer.analyze("nước hoa nam dưới 2 triệu").getDescriptiveText());
+        assertNull(lexer.analyze("nước hoa 500 đến 700k").getDescriptiveText());
+    }
+
+    @Test
+    void brandIsLeftInDescriptiveTextForTheBrandDictionary() {
+        // Thương hiệu do BrandDictionary nhận diện và loại ở tầng service
+        assertEquals("dior", lexer.analyze("nước hoa nam Dior dưới 2 triệu").getDescriptiveText());
+    }
+}
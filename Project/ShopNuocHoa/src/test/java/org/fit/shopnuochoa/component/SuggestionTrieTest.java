@@ -0,0 +1,116 @@
+package org.fit.shopnuochoa.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SuggestionTrieTest {
+
+    private static final int MAX_SUGGESTIONS = 5;
+
+    private record Entry(String key, int value, double weight) {
+    }
+
+    // ========== SO VỚI BRUTE-FORCE ==========
+
+    @Test
+    void suggestMatchesBruteForceForEveryPrefix() {
+        Random random = new Random(11);
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            // Bảng chữ nhỏ để các khóa dùng chung tiền tố; trọng số ngẫu nhiên nên không trùng nhau
+            entries.add(new Entry(randomKey(random), random.nextInt(120), random.nextDouble()));
+        }
+        SuggestionTrie.Builder<Integer> builder = SuggestionTrie.builder(MAX_SUGGESTIONS);
+        entries.forEach(entry -> builder.add(entry.key(), entry.value(), entry.weight()));
+        SuggestionTrie<Integer> trie = builder.build();
+
+        assertEquals(bruteForce(entries, ""), trie.suggest(""));
+        for (Entry entry : entries) {
+            for (int end = 1; end <= entry.key().length(); end++) {
+                String prefix = entry.key().substring(0, end);
+                assertEquals(bruteForce(entries, prefix), trie.suggest(prefix), "prefix '" + prefix + "'");
+            }
+        }
+    }
+
+    // ========== TRƯỜNG HỢP BIÊN ==========
+
+    @Test
+    void unknownPrefixOrNullReturnsEmpty() {
+        SuggestionTrie<String> trie = SuggestionTrie.<String>builder(3)
+                .add("dior sauvage", "Dior Sauvage", 1)
+                .build();
+
+        assertTrue(trie.suggest("chanel").isEmpty());
+        assertTrue(trie.suggest("dior sauvagex").isEmpty());
+        assertTrue(trie.suggest(null).isEmpty());
+    }
+
+    @Test
+    void valueUnderSeveralKeysIsListedOnceWithItsBestWeight() {
+        SuggestionTrie<String> trie = SuggestionTrie.<String>builder(3)
+                .add("sauvage", "Dior Sauvage", 1)
+                .add("dior sauvage", "Dior Sauvage", 5)
+                .add("sauvage elixir", "Dior Sauvage Elixir", 3)
+                .add("sa", "Santal 33", 2)
+                .build();
+
+        assertEquals(List.of("Dior Sauvage Elixir", "Santal 33", "Dior Sauvage"), trie.suggest("sa"));
+        assertEquals(List.of("Dior Sauvage", "Dior Sauvage Elixir", "Santal 33"), trie.suggest(""));
+    }
+
+    @Test
+    void emptyKeyAndNullValueAreIgnored() {
+        SuggestionTrie<String> trie = SuggestionTrie.<String>builder(3)
+                .add("", "empty", 1)
+                .add(null, "null key", 1)
+                .add("dior", null, 1)
+                .build();
+
+        assertTrue(trie.suggest("").isEmpty());
+    }
+
+    @Test
+    void nonPositiveMaxSuggestionsIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> SuggestionTrie.builder(0));
+    }
+
+    // ========== HỖ TRỢ ==========
+
+    private static String randomKey(Random random) {
+        int length = 1 + random.nextInt(6);
+        StringBuilder key = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            key.append("abc ".charAt(random.nextInt(4)));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Mọi giá trị có khóa bắt đầu bằng tiền tố, lấy trọng số lớn nhất của mỗi giá trị, giữ top
+     */
+    private static List<Integer> bruteForce(List<Entry> entries, String prefix) {
+        Map<Integer, Double> best = new HashMap<>();
+        for (Entry entry : entries) {
+            if (entry.key().startsWith(prefix)) {
+                best.merge(entry.value(), entry.weight(), Math::max);
+            }
+        }
+        List<Map.Entry<Integer, Double>> ranked = new ArrayList<>(best.entrySet());
+        ranked.sort((a, b) -> Double.compare(b.getValue(), a.getValue()));
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < ranked.size() && i < MAX_SUGGESTIONS; i++) {
+            values.add(ranked.get(i).getKey());
+        }
+        return values;
+    }
+}
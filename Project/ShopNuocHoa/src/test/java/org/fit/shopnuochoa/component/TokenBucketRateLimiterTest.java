@@ -0,0 +1,116 @@
+package org.fit.shopnuochoa.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TokenBucketRateLimiterTest {
+
+    private static final int CAPACITY = 10;
+    private static final Duration REFILL = Duration.ofSeconds(60);
+    // 60s / 10 lượt → hồi 1 lượt mỗi 6s
+    private static final long NANOS_PER_TOKEN = TimeUnit.SECONDS.toNanos(6);
+
+    private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(CAPACITY, REFILL, 1000, now::get);
+
+    // ========== BURST / HỒI LƯỢT ==========
+
+    @Test
+    void burstUpToCapacityThenWait() {
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(0L, limiter.tryAcquire("a"), "request " + i);
+        }
+        assertEquals(6L, limiter.tryAcquire("a"));
+    }
+
+    @Test
+    void waitShrinksAndTokenRefillsAfterItsPeriod() {
+        drain("a");
+        now.addAndGet(NANOS_PER_TOKEN - TimeUnit.SECONDS.toNanos(2));
+        assertEquals(2L, limiter.tryAcquire("a"));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(2) - 1);
+        assertEquals(1L, limiter.tryAcquire("a"));
+
+        now.addAndGet(1);
+        assertEquals(0L, limiter.tryAcquire("a"));
+        assertEquals(6L, limiter.tryAcquire("a"));
+    }
+
+    @Test
+    void idleBucketDoesNotGrowBeyondCapacity() {
+        drain("a");
+        now.addAndGet(REFILL.toNanos() * 10);
+        for (int i = 0; i < CAPACITY; i++) {
+            assertEquals(0L, limiter.tryAcquire("a"), "request " + i);
+        }
+        assertEquals(6L, limiter.tryAcquire("a"));
+    }
+
+    @Test
+    void clientsHaveSeparateBuckets() {
+        drain("a");
+        assertEquals(0L, limiter.tryAcquire("b"));
+        assertEquals(6L, limiter.tryAcquire("a"));
+    }
+
+    // ========== ĐỒNG THỜI ==========
+
+    @Test
+    void concurrentRequestsNeverExceedCapacity() throws Exception {
+        int threads = 8;
+        int perThread = 50;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    int allowed = 0;
+                    for (int i = 0; i < perThread; i++) {
+                        if (limiter.tryAcquire("shared") == 0) {
+                            allowed++;
+                        }
+                    }
+                    return allowed;
+                }));
+            }
+            start.countDown();
+            int allowed = 0;
+            for (Future<Integer> result : results) {
+                allowed += result.get(10, TimeUnit.SECONDS);
+            }
+            // Đồng hồ đứng yên: không lượt nào được hồi trong lúc chạy
+            assertEquals(CAPACITY, allowed);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // ========== THAM SỐ ==========
+
+    @Test
+    void invalidArgumentsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucketRateLimiter(0, REFILL, 10));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucketRateLimiter(5, Duration.ZERO, 10));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucketRateLimiter(5, Duration.ofSeconds(-1), 10));
+    }
+
+    private void drain(String clientKey) {
+        for (int i = 0; i < CAPACITY; i++) {
+            limiter.tryAcquire(clientKey);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.fit.shopnuochoa.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private static final int THRESHOLD = 3;
+    private static final long OPEN_MS = 10_000;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final GeminiChatModel.CircuitBreaker breaker =
+            new GeminiChatModel.CircuitBreaker(THRESHOLD, OPEN_MS, now::get);
+
+    // ========== CLOSED ==========
+
+    @Test
+    void staysClosedBelowThreshold() {
+        for (int i = 0; i < THRESHOLD - 1; i++) {
+            assertTrue(breaker.allowRequest());
+            breaker.recordFailure();
+        }
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    void successResetsConsecutiveFailures() {
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    void ignoredErrorsDoNotCount() {
+        for (int i = 0; i < THRESHOLD * 2; i++) {
+            breaker.recordIgnored();
+        }
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.isOpen());
+    }
+
+    // ========== OPEN ==========
+
+    @Test
+    void opensAtThresholdAndRejectsUntilOpenPeriodEnds() {
+        openBreaker();
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+
+        now.addAndGet(OPEN_MS - 1);
+        assertFalse(breaker.allowRequest());
+    }
+
+    // ========== HALF-OPEN ==========
+
+    @Test
+    void halfOpenAllowsExactlyOneProbe() {
+        openBreaker();
+        now.addAndGet(OPEN_MS);
+
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void successfulProbeCloses() {
+        openBreaker();
+        now.addAndGet(OPEN_MS);
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void failedProbeReopensForAFullPeriod() {
+        openBreaker();
+        now.addAndGet(OPEN_MS);
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+        assertTrue(breaker.isOpen());
+        now.addAndGet(OPEN_MS - 1);
+        assertFalse(breaker.allowRequest());
+        now.addAndGet(1);
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void ignoredProbeFreesTheProbeSlot() {
+        openBreaker();
+        now.addAndGet(OPEN_MS);
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordIgnored();
+        assertTrue(breaker.allowRequest());
+    }
+
+    private void openBreaker() {
+        for (int i = 0; i < THRESHOLD; i++) {
+            breaker.recordFailure();
+        }
+    }
+}
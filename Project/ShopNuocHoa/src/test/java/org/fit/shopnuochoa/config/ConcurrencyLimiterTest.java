@@ -0,0 +1,221 @@
+package org.fit.shopnuochoa.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimiterTest {
+
+    private static final long MAX_WAIT_MS = 5_000;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    // Hẹn giờ chạy tay: test tự quyết định lúc nào waiter hết hạn
+    private final List<Runnable> timers = new ArrayList<>();
+
+    private GeminiChatModel.ConcurrencyLimiter limiter(int initialLimit, int maxLimit) {
+        return new GeminiChatModel.ConcurrencyLimiter(initialLimit, maxLimit, now::get,
+                (task, delayMillis) -> timers.add(task));
+    }
+
+    // ========== CẤP LƯỢT / HÀNG CHỜ ==========
+
+    @Test
+    void grantsUpToLimitThenQueues() {
+        GeminiChatModel.ConcurrencyLimiter limiter = limiter(2, 10);
+        assertTrue(limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS).isDone());
+        assertTrue(limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS).isDone());
+
+        CompletableFuture<Void> third = limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+        assertFalse(third.isDone());
+        assertEquals(2, limiter.inFlight());
+        assertEquals(1, limiter.queued());
+
+        limiter.releaseCancelled();
+        assertTrue(third.isDone());
+        assertEquals(2, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test
+    void shedsImmediatelyWithoutWaitBudget() {
+        GeminiChatModel.ConcurrencyLimiter limiter = limiter(1, 10);
+        limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+
+        CompletableFuture<Void> shed = limiter.acquire(LlmPriority.CUSTOMER, 0);
+        assertRejected(shed);
+        assertEquals(0, limiter.queued());
+    }
+
+    @Test
+    void higherPriorityIsGrantedFirstThenFifo() {
+        GeminiChatModel.ConcurrencyLimiter limiter = limiter(1, 1);
+        limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+
+        CompletableFuture<Void> anonymous = limiter.acquire(LlmPriority.ANONYMOUS, MAX_WAIT_MS);
+        CompletableFuture<Void> firstCustomer = limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+        CompletableFuture<Void> secondCustomer = limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+        CompletableFuture<Void> cart = limiter.acquire(LlmPriority.CART_WITH_ITEMS, MAX_WAIT_MS);
+
+        limiter.releaseCancelled();
+        assertTrue(cart.isDone());
+        assertFalse(firstCustomer.isDone());
+
+        limiter.releaseCancelled();
+        assertTrue(firstCustomer.isDone());
+        assertFalse(secondCustomer.isDone());
+
+        limiter.releaseCancelled();
+        assertTrue(secondCustomer.isDone());
+        assertFalse(anonymous.isDone());
+    }
+
+    // ========== HẾT HẠN / HỦY ==========
+
+    @Test
+    void expiredWaiterIsShedAndLeavesQueue() {
+        GeminiChatModel.ConcurrencyLimiter limiter = limiter(1, 10);
+        limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+        CompletableFuture<Void> waiting = limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+
+        runTimers();
+        assertRejected(waiting);
+        assertEquals(0, limiter.queued());
+
+        limiter.release(false);
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void timerAfterGrantDoesNothing() {
+        GeminiChatModel.ConcurrencyLimiter limiter = limiter(1, 10);
+        limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+        CompletableFuture<Void> waiting = limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+        limiter.releaseCancelled();
+
+        runTimers();
+        assertTrue(waiting.isDone());
+        assertFalse(waiting.isCompletedExceptionally());
+        assertEquals(1, limiter.inFlight());
+    }
+
+    @Test
+    void cancelledWaiterLeavesQueueAndIsNeverGranted() {
+        GeminiChatModel.ConcurrencyLimiter limiter = limiter(1, 10);
+        limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+        CompletableFuture<Void> cancelled = limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+        CompletableFuture<Void> next = limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+
+        cancelled.cancel(true);
+        assertEquals(1, limiter.queued());
+
+        limiter.releaseCancelled();
+        assertTrue(next.isDone());
+        assertEquals(1, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+    }
+
+    // ========== AIMD ==========
+
+    @Test
+    void successIncreasesLimitAdditively() {
+        GeminiChatModel.ConcurrencyLimiter limiter = limiter(2, 10);
+        // 2 → 2.5 → 2.9 → 3.24
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+            limiter.release(false);
+        }
+        assertEquals(3, limiter.limit());
+    }
+
+    @Test
+    void limitNeverExceedsMax() {
+        GeminiChatModel.ConcurrencyLimiter limiter = limiter(2, 3);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+            limiter.release(false);
+        }
+        assertEquals(3, limiter.limit());
+    }
+
+    @Test
+    void overloadHalvesLimitOncePerCooldown() {
+        GeminiChatModel.ConcurrencyLimiter limiter = limiter(8, 8);
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+        }
+
+        limiter.release(true);
+        assertEquals(4, limiter.limit());
+        // Các request cùng đợt nhận 429 cùng lúc: chỉ giảm một lần
+        limiter.release(true);
+        assertEquals(4, limiter.limit());
+
+        now.addAndGet(1_000);
+        limiter.release(true);
+        assertEquals(2, limiter.limit());
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void limitNeverDropsBelowOne() {
+        GeminiChatModel.ConcurrencyLimiter limiter = limiter(2, 2);
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+            limiter.release(true);
+            now.addAndGet(1_000);
+        }
+        assertEquals(1, limiter.limit());
+        assertTrue(limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS).isDone());
+    }
+
+    @Test
+    void cancelledReleaseKeepsLimit() {
+        GeminiChatModel.ConcurrencyLimiter limiter = limiter(2, 10);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+            limiter.releaseCancelled();
+        }
+        assertEquals(2, limiter.limit());
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void loweredLimitHoldsBackQueuedRequests() {
+        GeminiChatModel.ConcurrencyLimiter limiter = limiter(4, 4);
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+        }
+        CompletableFuture<Void> waiting = limiter.acquire(LlmPriority.CUSTOMER, MAX_WAIT_MS);
+
+        // limit 4 → 2 với 3 request còn bay: chưa cấp thêm
+        limiter.release(true);
+        assertFalse(waiting.isDone());
+        limiter.release(false);
+        assertFalse(waiting.isDone());
+        limiter.releaseCancelled();
+        assertTrue(waiting.isDone());
+        assertEquals(2, limiter.inFlight());
+    }
+
+    private void runTimers() {
+        List<Runnable> due = new ArrayList<>(timers);
+        timers.clear();
+        due.forEach(Runnable::run);
+    }
+
+    private static void assertRejected(CompletableFuture<Void> future) {
+        assertTrue(future.isCompletedExceptionally());
+        CompletionException error = assertThrows(CompletionException.class, future::join);
+        assertTrue(error.getCause() instanceof RejectedExecutionException);
+    }
+}